@@ -0,0 +1,135 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.identity.federation.core.saml.v2.holders.DestinationInfoHolder;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.web.util.PostBindingUtil;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmarks sending a SAML Response with the HTTP-POST binding, through the buffered
+ * {@link PostBindingUtil#sendPost(DestinationInfoHolder, HttpServletResponse, boolean)} path and through the streaming
+ * {@link PostBindingUtil#sendPost(Document, String, String, HttpServletResponse, boolean)} one. Run it with "-prof gc" to
+ * compare the bytes allocated per operation (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PostBindingBenchmark {
+
+    @Param({ "20", "150", "300" })
+    public int attributes;
+
+    private Document response;
+
+    private CountingWriter writer = new CountingWriter();
+
+    private HttpServletResponse servletResponse;
+
+    @Setup
+    public void setup() throws Exception {
+        response = DocumentUtil.getDocument(new ByteArrayInputStream(SAMLPayloads.toBytes(SAMLPayloads.response(attributes))));
+        servletResponse = servletResponse(writer);
+    }
+
+    /**
+     * The steps IDPWebRequestUtil.send used to go through
+     */
+    @Benchmark
+    public long buffered() throws Exception {
+        byte[] responseBytes = DocumentUtil.getDocumentAsString(response).getBytes("UTF-8");
+        String samlResponse = PostBindingUtil.base64Encode(new String(responseBytes));
+        PostBindingUtil.sendPost(new DestinationInfoHolder(SAMLPayloads.DESTINATION, samlResponse, null), servletResponse,
+                false);
+        return writer.count;
+    }
+
+    @Benchmark
+    public long streaming() throws Exception {
+        PostBindingUtil.sendPost(response, SAMLPayloads.DESTINATION, null, servletResponse, false);
+        return writer.count;
+    }
+
+    /**
+     * A response whose writers wrap the given one, every other method being a no-op. A new PrintWriter is handed out on each
+     * call as the binding closes it once the page is written.
+     */
+    private static HttpServletResponse servletResponse(final Writer writer) {
+        return (HttpServletResponse) Proxy.newProxyInstance(PostBindingBenchmark.class.getClassLoader(),
+                new Class<?>[] { HttpServletResponse.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return "getWriter".equals(method.getName()) ? new PrintWriter(writer) : null;
+                    }
+                });
+    }
+
+    /**
+     * Discards what is written, only counting the characters
+     */
+    private static class CountingWriter extends Writer {
+        private long count;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
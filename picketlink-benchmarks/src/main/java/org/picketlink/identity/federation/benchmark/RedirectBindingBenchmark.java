@@ -0,0 +1,82 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.benchmark;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.identity.federation.web.util.RedirectBindingUtil;
+
+/**
+ * Benchmarks the HTTP-Redirect binding encoding (deflate, base64 and URL encoding) with {@link RedirectBindingUtil} and the
+ * matching decoding, on the messages that are usually sent with that binding.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RedirectBindingBenchmark {
+
+    @Param({ "saml2-authnrequest.xml", "saml2-logout-request.xml" })
+    public String message;
+
+    private byte[] plain;
+
+    private String encoded;
+
+    private byte[] buffer = new byte[4096];
+
+    @Setup
+    public void setup() throws Exception {
+        plain = SAMLPayloads.resource("saml2/" + message);
+        encoded = RedirectBindingUtil.deflateBase64URLEncode(plain);
+    }
+
+    @Benchmark
+    public String encode() throws Exception {
+        return RedirectBindingUtil.deflateBase64URLEncode(plain);
+    }
+
+    @Benchmark
+    public int decode() throws Exception {
+        InputStream is = RedirectBindingUtil.urlBase64DeflateDecode(encoded);
+        int total = 0;
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.benchmark;
+
+import java.net.URLEncoder;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLConstants;
+import org.picketlink.identity.federation.web.util.RedirectBindingSignatureUtil;
+import org.picketlink.identity.federation.web.util.RedirectBindingUtil;
+
+/**
+ * Benchmarks the HTTP-Redirect binding signatures of {@link RedirectBindingSignatureUtil}: the verification of a query
+ * string signed with a rsa-sha256 and a rsa-sha1 SigAlg, and the signing of an AuthnRequest, all threads sharing the
+ * same key pair as an IDP or SP does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedirectSignatureBenchmark {
+
+    private static final String RELAY_STATE = "state";
+
+    private KeyPair keyPair;
+
+    private String urlEncodedRequest;
+
+    private String sha256URL;
+
+    private byte[] sha256Signature;
+
+    private String sha1URL;
+
+    private byte[] sha1Signature;
+
+    @Setup
+    public void setup() throws Exception {
+        keyPair = SAMLPayloads.keyPair();
+        urlEncodedRequest = RedirectBindingUtil.deflateBase64URLEncode(SAMLPayloads.resource("saml2/saml2-authnrequest.xml"));
+
+        String signedContent = "SAMLRequest=" + urlEncodedRequest + "&RelayState=" + RELAY_STATE + "&SigAlg="
+                + URLEncoder.encode(JBossSAMLConstants.SIGNATURE_SHA256_WITH_RSA.get(), "UTF-8");
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(signedContent.getBytes("UTF-8"));
+        sha256Signature = signature.sign();
+        sha256URL = signedContent + "&Signature=" + RedirectBindingUtil.base64URLEncode(sha256Signature);
+
+        sha1URL = sign();
+        sha1Signature = RedirectBindingSignatureUtil.getSignatureValueFromSignedURL(sha1URL);
+
+        if (!verifyRSASHA256() || !verifyRSASHA1())
+            throw new IllegalStateException("Signature of the benchmark query string is not valid");
+    }
+
+    @Benchmark
+    public boolean verifyRSASHA256() throws Exception {
+        return RedirectBindingSignatureUtil.validateSignature(sha256URL, keyPair.getPublic(), sha256Signature);
+    }
+
+    @Benchmark
+    public boolean verifyRSASHA1() throws Exception {
+        return RedirectBindingSignatureUtil.validateSignature(sha1URL, keyPair.getPublic(), sha1Signature);
+    }
+
+    @Benchmark
+    public String sign() throws Exception {
+        return RedirectBindingSignatureUtil.getSAMLRequestURLWithSignature(urlEncodedRequest, RELAY_STATE,
+                keyPair.getPrivate());
+    }
+}
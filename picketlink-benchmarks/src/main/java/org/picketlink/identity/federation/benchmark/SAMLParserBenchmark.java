@@ -0,0 +1,85 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
+
+/**
+ * Benchmarks {@link SAMLParser} on the three payloads it sees the most: the AuthnRequest received by an IDP, and the
+ * Response and Assertion received by a SP.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SAMLParserBenchmark {
+
+    /**
+     * Number of attributes in the assertion of the Response and Assertion payloads
+     */
+    @Param({ "1", "20", "100" })
+    public int attributes;
+
+    private byte[] authnRequest;
+
+    private byte[] response;
+
+    private byte[] assertion;
+
+    @Setup
+    public void setup() throws Exception {
+        authnRequest = SAMLPayloads.resource("saml2/saml2-authnrequest.xml");
+        response = SAMLPayloads.toBytes(SAMLPayloads.response(attributes));
+        assertion = SAMLPayloads.toBytes(SAMLPayloads.assertion(attributes));
+    }
+
+    @Benchmark
+    public Object parseAuthnRequest() throws Exception {
+        return new SAMLParser().parse(new ByteArrayInputStream(authnRequest));
+    }
+
+    @Benchmark
+    public Object parseResponse() throws Exception {
+        return new SAMLParser().parse(new ByteArrayInputStream(response));
+    }
+
+    @Benchmark
+    public Object parseAssertion() throws Exception {
+        return new SAMLParser().parse(new ByteArrayInputStream(assertion));
+    }
+}
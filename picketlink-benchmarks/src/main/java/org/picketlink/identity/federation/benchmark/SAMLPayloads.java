@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.picketlink.identity.federation.api.saml.v2.response.SAML2Response;
+import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
+import org.picketlink.identity.federation.core.saml.v2.holders.IDPInfoHolder;
+import org.picketlink.identity.federation.core.saml.v2.holders.IssuerInfoHolder;
+import org.picketlink.identity.federation.core.saml.v2.holders.SPInfoHolder;
+import org.picketlink.identity.federation.core.saml.v2.util.AssertionUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.StatementUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
+import org.picketlink.identity.federation.core.saml.v2.writers.SAMLAssertionWriter;
+import org.picketlink.identity.federation.core.saml.v2.writers.SAMLResponseWriter;
+import org.picketlink.identity.federation.core.util.StaxUtil;
+import org.picketlink.identity.federation.saml.v2.assertion.AssertionType;
+import org.picketlink.identity.federation.saml.v2.protocol.ResponseType;
+
+/**
+ * Payloads shared by the benchmarks. SAML responses and assertions are generated with a configurable number of attributes so
+ * that the benchmarks can be run against the sizes seen in real deployments, from a bare authentication statement up to the
+ * group heavy assertions issued for enterprise users.
+ */
+public class SAMLPayloads {
+
+    public static final String ISSUER = "http://localhost:8080/idp/";
+
+    public static final String DESTINATION = "http://localhost:8080/sales/";
+
+    public static final String USER = "jduke";
+
+    /**
+     * Create a SAML2 {@link ResponseType} carrying an assertion with the given number of attributes
+     *
+     * @param attributeCount
+     * @return
+     * @throws Exception
+     */
+    public static ResponseType response(int attributeCount) throws Exception {
+        IssuerInfoHolder issuerInfo = new IssuerInfoHolder(ISSUER);
+
+        IDPInfoHolder idp = new IDPInfoHolder();
+        idp.setNameIDFormatValue(USER);
+
+        SPInfoHolder sp = new SPInfoHolder();
+        sp.setResponseDestinationURI(DESTINATION);
+        sp.setRequestID(IDGenerator.create("ID_"));
+
+        return new SAML2Response().createResponseType(IDGenerator.create("ID_"), sp, idp, issuerInfo,
+                assertion(attributeCount));
+    }
+
+    /**
+     * Create a SAML2 {@link AssertionType} with a subject, timed conditions, an authentication statement and an attribute
+     * statement with the given number of attributes
+     *
+     * @param attributeCount
+     * @return
+     * @throws Exception
+     */
+    public static AssertionType assertion(int attributeCount) throws Exception {
+        AssertionType assertion = AssertionUtil.createAssertion(IDGenerator.create("ID_"),
+                new IssuerInfoHolder(ISSUER).getIssuer());
+        assertion.setSubject(AssertionUtil.createAssertionSubject(USER));
+        AssertionUtil.createTimedConditions(assertion, 5 * 60 * 1000L);
+        assertion.addStatement(StatementUtil.createAuthnStatement(XMLTimeUtil.getIssueInstant(),
+                "urn:oasis:names:tc:SAML:2.0:ac:classes:PasswordProtectedTransport"));
+
+        if (attributeCount > 0) {
+            Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < attributeCount; i++) {
+                attributes.put("urn:oid:1.3.6.1.4.1.5923.1.5.1.1." + i, "cn=group-" + i + ",ou=groups,dc=example,dc=org");
+            }
+            assertion.addStatement(StatementUtil.createAttributeStatement(attributes));
+        }
+        return assertion;
+    }
+
+    public static byte[] toBytes(ResponseType response) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new SAMLResponseWriter(StaxUtil.getXMLStreamWriter(baos)).write(response);
+        return baos.toByteArray();
+    }
+
+    public static byte[] toBytes(AssertionType assertion) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new SAMLAssertionWriter(StaxUtil.getXMLStreamWriter(baos)).write(assertion);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Read a resource of the benchmark module
+     *
+     * @param name
+     * @return
+     * @throws IOException
+     */
+    public static byte[] resource(String name) throws IOException {
+        InputStream is = SAMLPayloads.class.getClassLoader().getResourceAsStream(name);
+        if (is == null)
+            throw new IOException("Resource not found:" + name);
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                baos.write(buffer, 0, read);
+            }
+            return baos.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    public static KeyPair keyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+}
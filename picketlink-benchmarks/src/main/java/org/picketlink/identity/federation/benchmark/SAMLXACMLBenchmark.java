@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.security.xacml.core.JBossPDP;
+import org.jboss.security.xacml.interfaces.PolicyDecisionPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.SOAPSAMLXACMLUtil;
+import org.picketlink.identity.federation.core.saml.v2.writers.SAMLResponseWriter;
+import org.picketlink.identity.federation.core.util.StaxUtil;
+import org.picketlink.identity.federation.saml.v2.protocol.ResponseType;
+import org.picketlink.identity.federation.saml.v2.protocol.XACMLAuthzDecisionQueryType;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmarks the SAML-XACML decisions of {@link SOAPSAMLXACMLUtil}: the query is parsed from its DOM, evaluated by a
+ * {@link JBossPDP} shared by all the threads and the SAML response carrying the decision statement is written out,
+ * as done by the SOAP-XACML PDP endpoint.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SAMLXACMLBenchmark {
+
+    private static final String ISSUER = "http://localhost:8080/pdp/";
+
+    private PolicyDecisionPoint pdp;
+
+    private byte[] query;
+
+    @Setup
+    public void setup() throws Exception {
+        InputStream is = new ByteArrayInputStream(SAMLPayloads.resource("xacml/policyConfig.xml"));
+        pdp = new JBossPDP(is);
+        query = SAMLPayloads.resource("xacml/saml-xacml-query.xml");
+    }
+
+    @Benchmark
+    public Object parse() throws Exception {
+        Document document = DocumentUtil.getDocument(new ByteArrayInputStream(query));
+        return SOAPSAMLXACMLUtil.getXACMLQueryType(document);
+    }
+
+    @Benchmark
+    public byte[] decide() throws Exception {
+        Document document = DocumentUtil.getDocument(new ByteArrayInputStream(query));
+        XACMLAuthzDecisionQueryType xacmlQuery = SOAPSAMLXACMLUtil.getXACMLQueryType(document);
+        ResponseType response = SOAPSAMLXACMLUtil.handleXACMLQuery(pdp, ISSUER, xacmlQuery);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new SAMLResponseWriter(StaxUtil.getXMLStreamWriter(baos)).write(response);
+        return baos.toByteArray();
+    }
+}
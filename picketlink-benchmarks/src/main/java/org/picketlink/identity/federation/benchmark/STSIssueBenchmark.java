@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.identity.federation.core.config.STSType;
+import org.picketlink.identity.federation.core.parsers.sts.STSConfigParser;
+import org.picketlink.identity.federation.core.parsers.wst.WSTrustParser;
+import org.picketlink.identity.federation.core.wstrust.PicketLinkSTSConfiguration;
+import org.picketlink.identity.federation.core.wstrust.StandardRequestHandler;
+import org.picketlink.identity.federation.core.wstrust.WSTrustRequestHandler;
+import org.picketlink.identity.federation.core.wstrust.WSTrustServiceFactory;
+import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityToken;
+import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityTokenResponse;
+
+/**
+ * Benchmarks the issuing of a signed SAML2 assertion by the {@link StandardRequestHandler}, from the parsed
+ * RequestSecurityToken to the RequestSecurityTokenResponse, using the key store and token providers of the STS
+ * configuration of this module.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class STSIssueBenchmark {
+
+    private static final Principal CALLER = new Principal() {
+        public String getName() {
+            return SAMLPayloads.USER;
+        }
+    };
+
+    private WSTrustRequestHandler handler;
+
+    private byte[] request;
+
+    // the handler fills in the request, so every invocation gets a freshly parsed one
+    private RequestSecurityToken token;
+
+    @Setup
+    public void setup() throws Exception {
+        STSType stsType = (STSType) new STSConfigParser().parse(new ByteArrayInputStream(SAMLPayloads
+                .resource("sts/picketlink-sts.xml")));
+        handler = WSTrustServiceFactory.getInstance().createRequestHandler(StandardRequestHandler.class.getName(),
+                new PicketLinkSTSConfiguration(stsType));
+        request = SAMLPayloads.resource("wstrust/wstrust-rst-usekey.xml");
+    }
+
+    @Setup(Level.Invocation)
+    public void parseRequest() throws Exception {
+        token = (RequestSecurityToken) new WSTrustParser().parse(new ByteArrayInputStream(request));
+    }
+
+    @Benchmark
+    public RequestSecurityTokenResponse issue() throws Exception {
+        return handler.issue(token, CALLER);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.namespace.QName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLConstants;
+import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.util.XMLEncryptionUtil;
+import org.picketlink.identity.federation.core.wstrust.WSTrustUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Benchmarks the encryption of the assertion of a SAML2 Response with {@link XMLEncryptionUtil}, as done by the
+ * SAML2EncryptionHandler of the IDP, and its decryption as done by the SAML2AuthenticationHandler of the SP.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class XMLEncryptionBenchmark {
+
+    private static final String ASSERTION_NSURI = JBossSAMLURIConstants.ASSERTION_NSURI.get();
+
+    private static final int KEY_SIZE = 128;
+
+    @Param({ "1", "20", "100" })
+    public int attributes;
+
+    private KeyPair keyPair;
+
+    private SecretKey secretKey;
+
+    private QName assertionQName;
+
+    private QName encryptedAssertionQName;
+
+    private Document plain;
+
+    private Document encrypted;
+
+    // encryption and decryption modify the document, so every invocation gets its own copy
+    private Document toEncrypt;
+
+    private Document toDecrypt;
+
+    @Setup
+    public void setup() throws Exception {
+        keyPair = SAMLPayloads.keyPair();
+        secretKey = new SecretKeySpec(WSTrustUtil.createRandomSecret(KEY_SIZE / 8), "AES");
+
+        plain = DocumentUtil.getDocument(new ByteArrayInputStream(SAMLPayloads.toBytes(SAMLPayloads.response(attributes))));
+
+        Element assertion = (Element) plain.getElementsByTagNameNS(ASSERTION_NSURI, JBossSAMLConstants.ASSERTION.get())
+                .item(0);
+        assertionQName = new QName(ASSERTION_NSURI, JBossSAMLConstants.ASSERTION.get(), assertion.getPrefix());
+        encryptedAssertionQName = new QName(ASSERTION_NSURI, JBossSAMLConstants.ENCRYPTED_ASSERTION.get(),
+                assertion.getPrefix());
+
+        // the SP decrypts the EncryptedAssertion after moving it to a document of its own
+        Document document = (Document) plain.cloneNode(true);
+        XMLEncryptionUtil.encryptElement(assertionQName, document, keyPair.getPublic(), secretKey, KEY_SIZE,
+                encryptedAssertionQName, true);
+        Element encryptedAssertion = (Element) document.getElementsByTagNameNS(ASSERTION_NSURI,
+                JBossSAMLConstants.ENCRYPTED_ASSERTION.get()).item(0);
+        encrypted = DocumentUtil.getDocument(DocumentUtil.getNodeAsString(encryptedAssertion));
+    }
+
+    @Setup(Level.Invocation)
+    public void copyDocuments() {
+        toEncrypt = (Document) plain.cloneNode(true);
+        toDecrypt = (Document) encrypted.cloneNode(true);
+    }
+
+    @Benchmark
+    public Document encrypt() throws Exception {
+        XMLEncryptionUtil.encryptElement(assertionQName, toEncrypt, keyPair.getPublic(), secretKey, KEY_SIZE,
+                encryptedAssertionQName, true);
+        return toEncrypt;
+    }
+
+    @Benchmark
+    public Element decrypt() throws Exception {
+        return XMLEncryptionUtil.decryptElementInDocument(toDecrypt, keyPair.getPrivate());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.identity.federation.core.util.XMLFactoryUtil;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmarks the XML plumbing done for every message: build the DOM of a SAML2 Response, read it with StAX and open a
+ * stream writer. {@code lookup} follows what PicketLink did before {@link XMLFactoryUtil}: {@code DocumentUtil} shared its
+ * {@code DocumentBuilderFactory} but created a {@code DocumentBuilder} per message, {@code StaxParserUtil} and
+ * {@code StaxUtil} looked the StAX factories up for every message. {@code shared} uses the factories and the per thread
+ * {@code DocumentBuilder} of {@link XMLFactoryUtil}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class XMLFactoryBenchmark {
+
+    @Param({ "1", "20", "100" })
+    public int attributes;
+
+    private byte[] response;
+
+    // configured as the DocumentBuilderFactory that DocumentUtil used to cache
+    private DocumentBuilderFactory documentBuilderFactory;
+
+    @Setup
+    public void setup() throws Exception {
+        response = SAMLPayloads.toBytes(SAMLPayloads.response(attributes));
+        documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        documentBuilderFactory.setXIncludeAware(true);
+    }
+
+    @Benchmark
+    public int lookup() throws Exception {
+        Document document = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(response));
+
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+
+        return process(document, xmlInputFactory, XMLOutputFactory.newInstance());
+    }
+
+    @Benchmark
+    public int shared() throws Exception {
+        Document document = XMLFactoryUtil.getDocumentBuilder().parse(new ByteArrayInputStream(response));
+        return process(document, XMLFactoryUtil.getXMLInputFactory(), XMLFactoryUtil.getXMLOutputFactory());
+    }
+
+    private int process(Document document, XMLInputFactory xmlInputFactory, XMLOutputFactory xmlOutputFactory)
+            throws Exception {
+        int events = document.getDocumentElement().getChildNodes().getLength();
+
+        XMLEventReader reader = xmlInputFactory.createXMLEventReader(new ByteArrayInputStream(response));
+        while (reader.hasNext()) {
+            reader.nextEvent();
+            events++;
+        }
+        reader.close();
+
+        XMLStreamWriter writer = xmlOutputFactory.createXMLStreamWriter(new ByteArrayOutputStream());
+        writer.writeStartDocument();
+        writer.close();
+        return events;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.SignatureMethod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.util.XMLSignatureUtil;
+import org.picketlink.identity.federation.saml.v2.protocol.ResponseType;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmarks the enveloped RSA-SHA1 signature of a SAML2 Response with {@link XMLSignatureUtil}, and the validation of
+ * that signature.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class XMLSignatureBenchmark {
+
+    @Param({ "1", "20", "100" })
+    public int attributes;
+
+    private KeyPair keyPair;
+
+    private String referenceURI;
+
+    private Document unsigned;
+
+    private Document signed;
+
+    // signing modifies the document, so every invocation gets its own copy
+    private Document toSign;
+
+    @Setup
+    public void setup() throws Exception {
+        keyPair = SAMLPayloads.keyPair();
+
+        ResponseType response = SAMLPayloads.response(attributes);
+        referenceURI = "#" + response.getID();
+        unsigned = DocumentUtil.getDocument(new ByteArrayInputStream(SAMLPayloads.toBytes(response)));
+
+        Document document = copy(unsigned);
+        XMLSignatureUtil.sign(document, keyPair, DigestMethod.SHA1, SignatureMethod.RSA_SHA1, referenceURI);
+        // a received document has its IDness established before validation, as SAML2Signature does
+        signed = DocumentUtil.getDocument(DocumentUtil.getDocumentAsString(document));
+        signed.getDocumentElement().setIdAttribute("ID", true);
+
+        if (!XMLSignatureUtil.validate(signed, keyPair.getPublic()))
+            throw new IllegalStateException("Signature of the benchmark payload is not valid");
+    }
+
+    @Setup(Level.Invocation)
+    public void copyUnsigned() {
+        toSign = copy(unsigned);
+    }
+
+    @Benchmark
+    public Document sign() throws Exception {
+        return XMLSignatureUtil.sign(toSign, keyPair, DigestMethod.SHA1, SignatureMethod.RSA_SHA1, referenceURI);
+    }
+
+    @Benchmark
+    public boolean validate() throws Exception {
+        return XMLSignatureUtil.validate(signed, keyPair.getPublic());
+    }
+
+    private static Document copy(Document document) {
+        Document copy = (Document) document.cloneNode(true);
+        copy.getDocumentElement().setIdAttribute("ID", true);
+        return copy;
+    }
+}
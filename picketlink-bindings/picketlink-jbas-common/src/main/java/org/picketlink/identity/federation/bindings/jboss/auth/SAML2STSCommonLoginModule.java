@@ -34,8 +34,6 @@ import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
 import javax.security.auth.login.LoginException;
 import javax.xml.datatype.XMLGregorianCalendar;
-import javax.xml.transform.Source;
-import javax.xml.ws.Dispatch;
 
 import org.jboss.security.SecurityConstants;
 import org.jboss.security.SimplePrincipal;
@@ -45,6 +43,7 @@ import org.picketlink.identity.federation.bindings.jboss.subject.PicketLinkPrinc
 import org.picketlink.identity.federation.core.ErrorCodes;
 import org.picketlink.identity.federation.core.constants.AttributeConstants;
 import org.picketlink.identity.federation.core.constants.PicketLinkFederationConstants;
+import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
 import org.picketlink.identity.federation.core.factories.JBossAuthCacheInvalidationFactory.TimeCacheExpiry;
 import org.picketlink.identity.federation.core.saml.v2.util.AssertionUtil;
@@ -52,9 +51,11 @@ import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
 import org.picketlink.identity.federation.core.util.StringUtil;
 import org.picketlink.identity.federation.core.wstrust.STSClient;
 import org.picketlink.identity.federation.core.wstrust.STSClientConfig.Builder;
+import org.picketlink.identity.federation.core.wstrust.STSClientFactory;
 import org.picketlink.identity.federation.core.wstrust.SamlCredential;
 import org.picketlink.identity.federation.core.wstrust.WSTrustException;
 import org.picketlink.identity.federation.core.wstrust.auth.AbstractSTSLoginModule;
+import org.picketlink.identity.federation.core.wstrust.auth.ValidationResultCache;
 import org.picketlink.identity.federation.core.wstrust.plugins.saml.SAMLUtil;
 import org.picketlink.identity.federation.saml.v2.assertion.AssertionType;
 import org.picketlink.identity.federation.saml.v2.assertion.BaseIDAbstractType;
@@ -107,6 +108,29 @@ import org.w3c.dom.Element;
  * <li>
  * samlTokenHttpHeaderRegExGroup - Group value to be used when parsing out value of http request header specified by "samlTokenHttpHeader" using "samlTokenHttpHeaderRegEx".
  * </li>
+ * <li>
+ * validationCache: set it to true to remember the assertions successfully validated by the STS, so that the same assertion
+ * presented again is not sent to the STS. An assertion is remembered until its NotOnOrAfter condition at most.
+ * </li>
+ * <li>
+ * validationCache.maxEntries: maximum number of assertions remembered. Defaults to 1000.
+ * </li>
+ * <li>
+ * validationCache.timeToLive: maximum time an assertion is remembered, in milliseconds. Defaults to 5 minutes.
+ * </li>
+ * <li>
+ * validationCache.revocationRegistry: the revocation registry of the STS, so that remembered assertions it revoked are sent
+ * to the STS again. Either INDEXED, which only sees the revocations of an STS running in the same server, JPA or the fully
+ * qualified name of a {@code RevocationRegistry} backed by a store shared with the STS. FILE and in-memory registries never
+ * see the revocations of the STS and are rejected.
+ * </li>
+ * <li>
+ * validationCache.revocationRegistryFile: the file of an INDEXED registry, as configured in the STS. Defaults to the
+ * default file of the STS.
+ * </li>
+ * <li>
+ * validationCache.revocationRegistryJPAConfig: the persistence unit of a JPA registry, as configured in the STS.
+ * </li>
  * </ul>
  * </p>
  * <p>
@@ -200,6 +224,23 @@ public abstract class SAML2STSCommonLoginModule extends SAMLTokenFromHttpRequest
      */
     public static final String PASSWORD_KEY = "password";
 
+    /**
+     * Key to enable the cache of the assertions validated by the STS
+     */
+    public static final String VALIDATION_CACHE = "validationCache";
+
+    public static final String VALIDATION_CACHE_MAX_ENTRIES = "validationCache.maxEntries";
+
+    public static final String VALIDATION_CACHE_TIME_TO_LIVE = "validationCache.timeToLive";
+
+    public static final String VALIDATION_CACHE_REVOCATION_REGISTRY = "validationCache.revocationRegistry";
+
+    public static final String VALIDATION_CACHE_REVOCATION_REGISTRY_FILE = "validationCache.revocationRegistryFile";
+
+    public static final String VALIDATION_CACHE_REVOCATION_REGISTRY_JPA_CONFIG = "validationCache.revocationRegistryJPAConfig";
+
+    protected ValidationResultCache validationCache;
+
     // A variable used by the unit test to pass local validation
     protected boolean localTestingOnly = false;
 
@@ -230,6 +271,33 @@ public abstract class SAML2STSCommonLoginModule extends SAMLTokenFromHttpRequest
                 throw logger.optionNotSet(SecurityConstants.SECURITY_DOMAIN_OPTION);
         }
 
+        String validationCacheStr = (String) this.options.remove(VALIDATION_CACHE);
+        String maxEntries = (String) this.options.remove(VALIDATION_CACHE_MAX_ENTRIES);
+        String timeToLive = (String) this.options.remove(VALIDATION_CACHE_TIME_TO_LIVE);
+        String revocationRegistry = (String) this.options.remove(VALIDATION_CACHE_REVOCATION_REGISTRY);
+        String revocationRegistryFile = (String) this.options.remove(VALIDATION_CACHE_REVOCATION_REGISTRY_FILE);
+        String revocationRegistryJPAConfig = (String) this.options.remove(VALIDATION_CACHE_REVOCATION_REGISTRY_JPA_CONFIG);
+        if (Boolean.parseBoolean(validationCacheStr)) {
+            // the cache outlives this login module instance and is shared by the modules calling the same STS
+            String cacheName = getClass().getName() + ":"
+                    + (this.stsConfigurationFile != null ? this.stsConfigurationFile : options.get(ENDPOINT_ADDRESS));
+            this.validationCache = ValidationResultCache.getCache(cacheName,
+                    StringUtil.isNotNull(maxEntries) ? Integer.parseInt(maxEntries) : 1000,
+                    StringUtil.isNotNull(timeToLive) ? Long.parseLong(timeToLive) : 5 * 60 * 1000);
+
+            if (StringUtil.isNotNull(revocationRegistry) && this.validationCache.getRevocationRegistry() == null) {
+                // a single registry instance is shared by the caches of every login module
+                try {
+                    String configuration = "JPA".equalsIgnoreCase(revocationRegistry) ? revocationRegistryJPAConfig
+                            : revocationRegistryFile;
+                    this.validationCache.setRevocationRegistry(ValidationResultCache.getRevocationRegistry(
+                            revocationRegistry, configuration, SecurityActions.getClassLoader(getClass())));
+                } catch (ProcessingException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
         String roleKeyStr = (String) options.get("roleKey");
         if (StringUtil.isNotNull(roleKeyStr)) {
             roleKey = roleKeyStr.trim();
@@ -328,15 +396,24 @@ public abstract class SAML2STSCommonLoginModule extends SAMLTokenFromHttpRequest
             if (this.stsConfigurationFile == null)
                 throw logger.authSTSConfigFileNotFound();
 
-            // send the assertion to the STS for validation.
-            STSClient client = this.getSTSClient();
-            try {
-                boolean isValid = client.validateToken(assertionElement);
-                // if the STS says the assertion is invalid, throw an exception to signal that authentication has failed.
-                if (isValid == false)
-                    throw logger.authInvalidSAMLAssertionBySTS();
-            } catch (WSTrustException we) {
-                throw logger.authAssertionValidationError(we);
+            if (this.validationCache != null && this.validationCache.isValid(assertionElement)) {
+                logger.trace("Assertion already validated by the STS");
+            } else {
+                // send the assertion to the STS for validation.
+                STSClient client = this.getSTSClient();
+                try {
+                    boolean isValid = client.validateToken(assertionElement);
+                    // if the STS says the assertion is invalid, throw an exception to signal that authentication has failed.
+                    if (isValid == false)
+                        throw logger.authInvalidSAMLAssertionBySTS();
+                } catch (WSTrustException we) {
+                    throw logger.authAssertionValidationError(we);
+                } finally {
+                    STSClientFactory.getInstance().release(client);
+                }
+
+                if (this.validationCache != null)
+                    this.validationCache.put(assertionElement);
             }
         }
 
@@ -474,10 +551,8 @@ public abstract class SAML2STSCommonLoginModule extends SAMLTokenFromHttpRequest
          */
 
         Builder builder = null;
-        STSClient client = null;
         if (rawOptions.containsKey(STS_CONFIG_FILE)) {
             builder = new Builder(this.stsConfigurationFile);
-            client = new STSClient(builder.build());
         } else {
             builder = new Builder();
             builder.endpointAddress((String) rawOptions.get(ENDPOINT_ADDRESS));
@@ -502,17 +577,15 @@ public abstract class SAML2STSCommonLoginModule extends SAMLTokenFromHttpRequest
                     throw logger.unableToDecodePasswordError(passwordString);
                 }
             }
-            client = new STSClient(builder.build());
         }
 
         // if the login module options map still contains any properties, assume they are for configuring the connection
-        // to the STS and set them in the Dispatch request context.
-        if (!this.options.isEmpty()) {
-            Dispatch<Source> dispatch = client.getDispatch();
-            for (Map.Entry<String, ?> entry : this.options.entrySet())
-                dispatch.getRequestContext().put(entry.getKey(), entry.getValue());
+        // to the STS and set them in the Dispatch request context. The client is pooled, it is released once used.
+        try {
+            return STSClientFactory.getInstance().borrow(builder.build(), this.options);
+        } catch (ParsingException e) {
+            throw logger.authCouldNotCreateWSTrustClient(e);
         }
-        return client;
     }
     
     /**
@@ -89,4 +89,18 @@ class SecurityActions {
             return System.getProperty(key);
         }
     }
-}
\ No newline at end of file
+
+    static ClassLoader getClassLoader(final Class<?> clazz) {
+        SecurityManager sm = System.getSecurityManager();
+        
+        if (sm != null) {
+            return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
+                public ClassLoader run() {
+                    return clazz.getClassLoader();
+                }
+            });
+        } else {
+            return clazz.getClassLoader();
+        }
+    }
+}
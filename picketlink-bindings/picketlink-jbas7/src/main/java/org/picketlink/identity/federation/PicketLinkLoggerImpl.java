@@ -43,8 +43,10 @@ import org.picketlink.identity.federation.core.saml.v2.exceptions.AssertionExpir
 import org.picketlink.identity.federation.core.saml.v2.exceptions.IssueInstantMissingException;
 import org.picketlink.identity.federation.core.saml.v2.exceptions.IssuerNotTrustedException;
 import org.picketlink.identity.federation.core.saml.v2.exceptions.SignatureValidationException;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
 import org.picketlink.identity.federation.core.wstrust.WSTrustException;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 /**
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
@@ -1010,6 +1012,20 @@ public final class PicketLinkLoggerImpl implements PicketLinkLogger {
     public ProcessingException samlHandlerFailedInResponseToVerificarionError() {
         return MESSAGES.samlHandlerFailedInResponseToVerificarionError();
     }
+
+    /* (non-Javadoc)
+     * @see org.picketlink.identity.federation.PicketLinkLogger#samlHandlerMessageReplayedError(java.lang.String)
+     */
+    public ProcessingException samlHandlerMessageReplayedError(String id) {
+        return MESSAGES.samlHandlerMessageReplayedError(id);
+    }
+
+    /* (non-Javadoc)
+     * @see org.picketlink.identity.federation.PicketLinkLogger#samlHandlerReplayDetectionBeforeSignatureValidationError()
+     */
+    public ConfigurationException samlHandlerReplayDetectionBeforeSignatureValidationError() {
+        return MESSAGES.samlHandlerReplayDetectionBeforeSignatureValidationError();
+    }
     
     /* (non-Javadoc)
      * @see org.picketlink.identity.federation.PicketLinkLogger#samlHandlerIssuerNotTrustedError(java.lang.String)
@@ -1361,6 +1377,32 @@ public final class PicketLinkLoggerImpl implements PicketLinkLogger {
         PicketLinkLoggerMessages.ROOT_LOGGER.trace(message, t);
     }
 
+    /* (non-Javadoc)
+     * @see org.picketlink.identity.federation.PicketLinkLogger#tracef(java.lang.String, java.lang.Object[])
+     */
+    public void tracef(String format, Object... params) {
+        if (isTraceEnabled()) {
+            PicketLinkLoggerMessages.ROOT_LOGGER.tracef(format, serializeNodes(params));
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.picketlink.identity.federation.PicketLinkLogger#debugf(java.lang.String, java.lang.Object[])
+     */
+    public void debugf(String format, Object... params) {
+        if (isDebugEnabled()) {
+            PicketLinkLoggerMessages.ROOT_LOGGER.debugf(format, serializeNodes(params));
+        }
+    }
+
+    private Object[] serializeNodes(Object[] params) {
+        Object[] args = new Object[params.length];
+        for (int i = 0; i < params.length; i++) {
+            args[i] = params[i] instanceof Node ? DocumentUtil.asString((Node) params[i]) : params[i];
+        }
+        return args;
+    }
+
     /* (non-Javadoc)
      * @see org.picketlink.identity.federation.PicketLinkLogger#samlIDPHandlingSAML11Error(java.lang.Throwable)
      */
@@ -1578,4 +1620,25 @@ public final class PicketLinkLoggerImpl implements PicketLinkLogger {
         ROOT_LOGGER.authorizationManagerError(e);
     }
 
-}
\ No newline at end of file
+    /* (non-Javadoc)
+     * @see org.picketlink.identity.federation.PicketLinkLogger#samlHandlerBackChannelLogoutFailed(java.lang.String, java.lang.Throwable)
+     */
+    public void samlHandlerBackChannelLogoutFailed(String participant, Throwable t) {
+        ROOT_LOGGER.samlHandlerBackChannelLogoutFailed(participant, t);
+    }
+
+    /* (non-Javadoc)
+     * @see org.picketlink.identity.federation.PicketLinkLogger#metricsMBeanRegistrationFailed(java.lang.String, java.lang.Throwable)
+     */
+    public void metricsMBeanRegistrationFailed(String objectName, Throwable t) {
+        ROOT_LOGGER.metricsMBeanRegistrationFailed(objectName, t);
+    }
+
+    /* (non-Javadoc)
+     * @see org.picketlink.identity.federation.PicketLinkLogger#samlHandlerNoBackChannelLogoutEndpoint(java.lang.String)
+     */
+    public void samlHandlerNoBackChannelLogoutEndpoint(String participant) {
+        ROOT_LOGGER.samlHandlerNoBackChannelLogoutEndpoint(participant);
+    }
+
+}
@@ -321,5 +321,17 @@ public interface PicketLinkLoggerMessages extends BasicLogger {
     @LogMessage(level = Level.ERROR)
     @Message(id = 267, value = "Error loading the AuthorizationManager.")
     void authorizationManagerError(@Cause ConfigurationException e);
-    
-}
\ No newline at end of file
+
+    @LogMessage(level = Level.WARN)
+    @Message(id = 268, value = "Back channel logout failed for participant %s")
+    void samlHandlerBackChannelLogoutFailed(String participant, @Cause Throwable t);
+
+    @LogMessage(level = Level.WARN)
+    @Message(id = 269, value = "Could not register the metrics MBean %s")
+    void metricsMBeanRegistrationFailed(String objectName, @Cause Throwable t);
+
+    @LogMessage(level = Level.WARN)
+    @Message(id = 270, value = "No SOAP single logout service in the metadata of participant %s")
+    void samlHandlerNoBackChannelLogoutEndpoint(String participant);
+
+}
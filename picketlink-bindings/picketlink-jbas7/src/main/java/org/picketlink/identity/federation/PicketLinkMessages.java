@@ -493,4 +493,10 @@ public interface PicketLinkMessages {
     @Message(id = 173, value = "The security domain name could not be found. Check your jboss-web.xml.")
     ConfigurationException securityDomainNotFound();
 
+    @Message(id = 174, value = "Message has already been processed: %s")
+    ProcessingException samlHandlerMessageReplayedError(String id);
+
+    @Message(id = 175, value = "The replay detection handler must come after the signature validation handler")
+    ConfigurationException samlHandlerReplayDetectionBeforeSignatureValidationError();
+
 }
\ No newline at end of file
@@ -36,12 +36,11 @@ import java.security.Principal;
 import java.security.PublicKey;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
@@ -58,6 +57,7 @@ import org.apache.catalina.valves.ValveBase;
 import org.jboss.security.audit.AuditLevel;
 import org.picketlink.identity.federation.PicketLinkLogger;
 import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+import org.picketlink.identity.federation.api.util.DeflateUtil;
 import org.picketlink.identity.federation.bindings.tomcat.TomcatRoleGenerator;
 import org.picketlink.identity.federation.core.audit.PicketLinkAuditEvent;
 import org.picketlink.identity.federation.core.audit.PicketLinkAuditEventType;
@@ -75,6 +75,11 @@ import org.picketlink.identity.federation.core.interfaces.AttributeManager;
 import org.picketlink.identity.federation.core.interfaces.ProtocolContext;
 import org.picketlink.identity.federation.core.interfaces.RoleGenerator;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyManager;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Operation;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Phase;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
+import org.picketlink.identity.federation.core.saml.md.providers.SPMetadataRegistry;
 import org.picketlink.identity.federation.core.saml.v1.SAML11Constants;
 import org.picketlink.identity.federation.core.saml.v1.SAML11ProtocolContext;
 import org.picketlink.identity.federation.core.saml.v1.writers.SAML11ResponseWriter;
@@ -87,6 +92,7 @@ import org.picketlink.identity.federation.core.saml.v2.holders.IssuerInfoHolder;
 import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerChainConfig;
 import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerRequest;
 import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.impl.SAML2HandlerChainLock;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler.HANDLER_TYPE;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerChain;
@@ -113,9 +119,9 @@ import org.picketlink.identity.federation.saml.v1.assertion.SAML11SubjectType.SA
 import org.picketlink.identity.federation.saml.v1.protocol.SAML11ResponseType;
 import org.picketlink.identity.federation.saml.v1.protocol.SAML11StatusType;
 import org.picketlink.identity.federation.saml.v2.SAML2Object;
-import org.picketlink.identity.federation.saml.v2.metadata.EntityDescriptorType;
 import org.picketlink.identity.federation.saml.v2.metadata.SPSSODescriptorType;
 import org.picketlink.identity.federation.saml.v2.protocol.AuthnRequestType;
+import org.picketlink.identity.federation.saml.v2.protocol.LogoutRequestType;
 import org.picketlink.identity.federation.saml.v2.protocol.RequestAbstractType;
 import org.picketlink.identity.federation.saml.v2.protocol.StatusResponseType;
 import org.picketlink.identity.federation.web.config.AbstractSAMLConfigurationProvider;
@@ -138,6 +144,8 @@ public abstract class AbstractIDPValve extends ValveBase {
 
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
 
+    private static final PicketLinkMetrics metrics = PicketLinkMetricsFactory.getMetrics();
+
     protected boolean enableAudit = false;
 
     protected PicketLinkAuditHelper auditHelper = null;
@@ -162,11 +170,14 @@ public abstract class AbstractIDPValve extends ValveBase {
     protected SAMLConfigurationProvider configProvider = null;
 
     /**
-     * A Lock for Handler operations in the chain
+     * A Lock for Handler operations in the chain. It does not serialize requests if all handlers are thread safe.
      */
-    private final Lock chainLock = new ReentrantLock();
+    private final SAML2HandlerChainLock chainLock = new SAML2HandlerChainLock();
 
-    private Map<String, SPSSODescriptorType> spSSOMetadataMap = new HashMap<String, SPSSODescriptorType>();
+    /**
+     * Metadata of the service providers, indexed by entityID and assertion consumer service location
+     */
+    private SPMetadataRegistry spMetadataRegistry = new SPMetadataRegistry();
 
     // Set a list of attributes we are interested in separated by comma
     public void setAttributeList(String attribList) {
@@ -472,10 +483,12 @@ public abstract class AbstractIDPValve extends ValveBase {
 
     protected void processSAMLRequestMessage(IDPWebRequestUtil webRequestUtil, Request request, Response response)
             throws IOException {
+        long operationStart = metrics.start();
         Principal userPrincipal = request.getPrincipal();
         Session session = request.getSessionInternal();
         SAMLDocumentHolder samlDocumentHolder = null;
         SAML2Object samlObject = null;
+        String issuer = null;
 
         Document samlResponse = null;
         boolean isErrorResponse = false;
@@ -510,7 +523,7 @@ public abstract class AbstractIDPValve extends ValveBase {
 
             // Get the SAML Request Message
             RequestAbstractType requestAbstractType = (RequestAbstractType) samlObject;
-            String issuer = requestAbstractType.getIssuer().getValue();
+            issuer = requestAbstractType.getIssuer().getValue();
 
             if (samlRequestMessage == null)
                 throw logger.samlIDPValidationCheckFailed();
@@ -531,7 +544,8 @@ public abstract class AbstractIDPValve extends ValveBase {
             Map<String, Object> requestOptions = new HashMap<String, Object>();
 
             requestOptions.put(GeneralConstants.IGNORE_SIGNATURES, willIgnoreSignatureOfCurrentRequest(issuer));
-            requestOptions.put(GeneralConstants.SP_SSO_METADATA_DESCRIPTOR, spSSOMetadataMap.get(issuer));
+            requestOptions.put(GeneralConstants.SP_SSO_METADATA_DESCRIPTOR, spMetadataRegistry.getSPDescriptor(issuer));
+            requestOptions.put(GeneralConstants.SP_METADATA_REGISTRY, spMetadataRegistry);
             requestOptions.put(GeneralConstants.ROLE_GENERATOR, roleGenerator);
             requestOptions.put(GeneralConstants.CONFIGURATION, this.idpConfiguration);
             requestOptions.put(GeneralConstants.SAML_IDP_STRICT_POST_BINDING, this.idpConfiguration.isStrictPostBinding());
@@ -541,8 +555,9 @@ public abstract class AbstractIDPValve extends ValveBase {
                 requestOptions.put(GeneralConstants.ASSERTION_ID, assertionID);
 
             if (this.keyManager != null) {
-                PublicKey validatingKey = getIssuerPublicKey(request, issuer);
-                requestOptions.put(GeneralConstants.SENDER_PUBLIC_KEY, validatingKey);
+                List<PublicKey> validatingKeys = getIssuerPublicKeys(request, issuer);
+                requestOptions.put(GeneralConstants.SENDER_PUBLIC_KEY, validatingKeys.isEmpty() ? null : validatingKeys.get(0));
+                requestOptions.put(GeneralConstants.SENDER_PUBLIC_KEYS, validatingKeys);
                 requestOptions.put(GeneralConstants.DECRYPTING_KEY, keyManager.getSigningKey());
             }
 
@@ -572,13 +587,16 @@ public abstract class AbstractIDPValve extends ValveBase {
             // webRequestUtil.isTrusted(issuer);
 
             if (handlers != null) {
+                long start = 0;
                 try {
                     chainLock.lock();
+                    start = metrics.start();
                     for (SAML2Handler handler : handlers) {
                         handler.handleRequestType(saml2HandlerRequest, saml2HandlerResponse);
                         willSendRequest = saml2HandlerResponse.getSendRequest();
                     }
                 } finally {
+                    metrics.phase(Phase.HANDLER_CHAIN, start);
                     chainLock.unlock();
                 }
             }
@@ -648,22 +666,26 @@ public abstract class AbstractIDPValve extends ValveBase {
                 logger.samlAssertionPasingFailed(e);
             } catch (GeneralSecurityException e) {
                 logger.trace("Security Exception:", e);
+            } finally {
+                metrics.operation(samlObject instanceof LogoutRequestType ? Operation.SLO : Operation.SSO, issuer,
+                        operationStart, isErrorResponse);
             }
         }
         return;
     }
 
     /**
-     * Returns the PublicKey to be used for the token's signature verification. This key is related with the issuer of the SAML
-     * message received by the IDP.
+     * Returns the PublicKeys to be used for the token's signature verification. These keys are related with the issuer of the
+     * SAML message received by the IDP: the key of the trust key manager, or else all the keys declared in the signed
+     * metadata of the issuer, so that a key rollover of the SP is accepted.
      * 
      * @param request
      * @param issuer
-     * @return
+     * @return an empty list if no key was found
      * @throws ProcessingException
      * @throws ConfigurationException
      */
-    private PublicKey getIssuerPublicKey(Request request, String issuer) throws ConfigurationException, ProcessingException {
+    private List<PublicKey> getIssuerPublicKeys(Request request, String issuer) throws ConfigurationException, ProcessingException {
         String issuerHost = null;
         PublicKey issuerPublicKey = null;
 
@@ -681,6 +703,14 @@ public abstract class AbstractIDPValve extends ValveBase {
             logger.trace("Token issuer is not found for: " + issuer, ise);
         }
         
+        if (issuerPublicKey == null) {
+            List<PublicKey> metadataKeys = spMetadataRegistry.getValidatingKeys(issuer);
+            if (!metadataKeys.isEmpty()) {
+                logger.trace("Using the signing keys from the metadata of " + issuer + " to check signatures.");
+                return metadataKeys;
+            }
+        }
+
         if (issuerPublicKey == null) {
             issuerHost = request.getRemoteAddr();
             
@@ -690,14 +720,18 @@ public abstract class AbstractIDPValve extends ValveBase {
         
         logger.trace("Using Validating Alias=" + issuerHost + " to check signatures.");
 
-        return issuerPublicKey;
+        if (issuerPublicKey == null)
+            return Collections.emptyList();
+        return Collections.singletonList(issuerPublicKey);
     }
 
     protected void processSAMLResponseMessage(IDPWebRequestUtil webRequestUtil, Request request, Response response)
             throws ServletException, IOException {
+        long operationStart = metrics.start();
         Session session = request.getSessionInternal();
         SAMLDocumentHolder samlDocumentHolder = null;
         SAML2Object samlObject = null;
+        String issuer = null;
 
         Document samlResponse = null;
         boolean isErrorResponse = false;
@@ -727,7 +761,7 @@ public abstract class AbstractIDPValve extends ValveBase {
             }
 
             StatusResponseType statusResponseType = (StatusResponseType) samlObject;
-            String issuer = statusResponseType.getIssuer().getValue();
+            issuer = statusResponseType.getIssuer().getValue();
 
             boolean isValid = samlResponseMessage != null;
 
@@ -742,8 +776,9 @@ public abstract class AbstractIDPValve extends ValveBase {
             Map<String, Object> options = new HashMap<String, Object>();
 
             if (this.idpConfiguration.isSupportsSignature() || this.idpConfiguration.isEncrypt()) {
-                PublicKey publicKey = getIssuerPublicKey(request, issuer);
-                options.put(GeneralConstants.SENDER_PUBLIC_KEY, publicKey);
+                List<PublicKey> publicKeys = getIssuerPublicKeys(request, issuer);
+                options.put(GeneralConstants.SENDER_PUBLIC_KEY, publicKeys.isEmpty() ? null : publicKeys.get(0));
+                options.put(GeneralConstants.SENDER_PUBLIC_KEYS, publicKeys);
             }
 
             options.put(GeneralConstants.SAML_IDP_STRICT_POST_BINDING, this.idpConfiguration.isStrictPostBinding()); 
@@ -764,14 +799,17 @@ public abstract class AbstractIDPValve extends ValveBase {
             // webRequestUtil.isTrusted(issuer);
 
             if (handlers != null) {
+                long start = 0;
                 try {
                     chainLock.lock();
+                    start = metrics.start();
                     for (SAML2Handler handler : handlers) {
                         handler.reset();
                         handler.handleStatusResponseType(saml2HandlerRequest, saml2HandlerResponse);
                         willSendRequest = saml2HandlerResponse.getSendRequest();
                     }
                 } finally {
+                    metrics.phase(Phase.HANDLER_CHAIN, start);
                     chainLock.unlock();
                 }
             }
@@ -828,6 +866,8 @@ public abstract class AbstractIDPValve extends ValveBase {
                 logger.samlAssertionPasingFailed(e);
             } catch (GeneralSecurityException e) {
                 logger.trace("Security Exception:", e);
+            } finally {
+                metrics.operation(Operation.SLO, issuer, operationStart, isErrorResponse);
             }
         }
         return;
@@ -988,6 +1028,8 @@ public abstract class AbstractIDPValve extends ValveBase {
             for (SAML2Handler handler : samlHandlers) {
                 handler.initChainConfig(handlerChainConfig);
             }
+
+            chainLock.configure(samlHandlers);
         } catch (Exception e) {
             logger.samlHandlerConfigurationError(e);
             throw new LifecycleException(e.getLocalizedMessage());
@@ -1121,17 +1163,19 @@ public abstract class AbstractIDPValve extends ValveBase {
                     throw new RuntimeException(logger.classNotLoadedError(roleGeneratorAttribute));
                 roleGenerator = (RoleGenerator) clazz.newInstance();
             }
+        } catch (Exception e) {
+            throw logger.samlIDPConfigurationError(e);
+        }
+    }
 
-            // Read SP Metadata if provided
-            List<EntityDescriptorType> entityDescriptors = CoreConfigUtil.getMetadataConfiguration(idpConfiguration, getContext().getServletContext());
-            if (entityDescriptors != null) {
-                for (EntityDescriptorType entityDescriptorType : entityDescriptors) {
-                    SPSSODescriptorType spSSODescriptor = CoreConfigUtil.getSPDescriptor(entityDescriptorType);
-                    if (spSSODescriptor != null) {
-                        spSSOMetadataMap.put(entityDescriptorType.getEntityID(), spSSODescriptor);
-                    }
-                }
-            }
+    /**
+     * Read the SP metadata, if provided. The key manager must be initialized first, it holds the key that verifies the
+     * signature of the metadata.
+     */
+    protected void initSPMetadataRegistry() {
+        try {
+            spMetadataRegistry.stop();
+            spMetadataRegistry = SPMetadataRegistry.create(idpConfiguration, getContext().getServletContext(), keyManager);
         } catch (Exception e) {
             throw logger.samlIDPConfigurationError(e);
         }
@@ -1198,6 +1242,17 @@ public abstract class AbstractIDPValve extends ValveBase {
         return result;
     }
     
+    /**
+     * Release the resources acquired by {@link #startPicketLink()}
+     */
+    protected void stopPicketLink() {
+        if (chain != null)
+            HandlerUtil.destroy(chain.handlers());
+        spMetadataRegistry.stop();
+        PicketLinkMetricsFactory.release();
+        DeflateUtil.clear();
+    }
+
     protected void startPicketLink() throws LifecycleException{
 
         SystemPropertiesUtil.ensure();
@@ -1205,6 +1260,7 @@ public abstract class AbstractIDPValve extends ValveBase {
         initIDPConfiguration();
         initSTSConfiguration();
         initKeyManager();
+        initSPMetadataRegistry();
         initHandlersChain();
         initIdentityServer();
 
@@ -1213,6 +1269,8 @@ public abstract class AbstractIDPValve extends ValveBase {
         "facsimileTelephoneNumber" };
 
         this.attributeKeys.addAll(Arrays.asList(ak));
+
+        PicketLinkMetricsFactory.acquire();
     }
     
     /**
@@ -1246,7 +1304,7 @@ public abstract class AbstractIDPValve extends ValveBase {
     * @return true if signature is not expected in SAMLRequest and so signature validation should be ignored
     */
     private Boolean willIgnoreSignatureOfCurrentRequest(String spIssuer) {
-        SPSSODescriptorType currentSPMetadata = spSSOMetadataMap.get(spIssuer);
+        SPSSODescriptorType currentSPMetadata = spMetadataRegistry.getSPDescriptor(spIssuer);
 
         if (currentSPMetadata == null) {
             return false;
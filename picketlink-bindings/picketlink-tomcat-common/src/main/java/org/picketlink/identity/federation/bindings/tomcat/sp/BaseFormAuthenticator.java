@@ -31,8 +31,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletContext;
@@ -65,6 +63,7 @@ import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
 import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants;
 import org.picketlink.identity.federation.core.saml.v2.factories.SAML2HandlerChainFactory;
 import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerChainConfig;
+import org.picketlink.identity.federation.core.saml.v2.impl.SAML2HandlerChainLock;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerChain;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerChainConfig;
@@ -127,9 +126,9 @@ public abstract class BaseFormAuthenticator extends FormAuthenticator {
     protected boolean saveRestoreRequest = true;
 
     /**
-     * A Lock for Handler operations in the chain
+     * A Lock for Handler operations in the chain. It does not serialize requests if all handlers are thread safe.
      */
-    protected Lock chainLock = new ReentrantLock();
+    protected SAML2HandlerChainLock chainLock = new SAML2HandlerChainLock();
 
     protected String canonicalizationMethod = CanonicalizationMethod.EXCLUSIVE_WITH_COMMENTS;
 
@@ -533,6 +532,8 @@ public abstract class BaseFormAuthenticator extends FormAuthenticator {
         for (SAML2Handler handler : samlHandlers) {
             handler.initChainConfig(handlerChainConfig);
         }
+
+        chainLock.configure(samlHandlers);
     }
 
     protected void populateChainConfig() throws ConfigurationException, ProcessingException {
@@ -106,6 +106,7 @@ public class IDPWebBrowserSSOValve extends AbstractIDPValve implements Lifecycle
         if (!started)
             throw new LifecycleException(ErrorCodes.IDP_WEBBROWSER_VALVE_NOT_STARTED);
         lifecycle.fireLifecycleEvent(STOP_EVENT, null);
+        stopPicketLink();
         started = false;
     }
 
@@ -96,6 +96,7 @@ public class IDPWebBrowserSSOValve extends AbstractIDPValve implements Lifecycle
         // Validate and update our current component state
         if (!started)
             throw new LifecycleException(ErrorCodes.IDP_WEBBROWSER_VALVE_NOT_STARTED);
+        stopPicketLink();
         super.stopInternal();
         started = false;
     }
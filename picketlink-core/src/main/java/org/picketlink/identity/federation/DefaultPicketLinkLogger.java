@@ -46,10 +46,12 @@ import org.picketlink.identity.federation.core.saml.v2.exceptions.AssertionExpir
 import org.picketlink.identity.federation.core.saml.v2.exceptions.IssueInstantMissingException;
 import org.picketlink.identity.federation.core.saml.v2.exceptions.IssuerNotTrustedException;
 import org.picketlink.identity.federation.core.saml.v2.exceptions.SignatureValidationException;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
 import org.picketlink.identity.federation.core.wstrust.WSTrustConstants;
 import org.picketlink.identity.federation.core.wstrust.WSTrustException;
 import org.picketlink.identity.federation.web.constants.GeneralConstants;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 /**
  * @author <a href="mailto:psilva@redhat.com">Pedro Silva</a>
@@ -115,6 +117,38 @@ public class DefaultPicketLinkLogger implements PicketLinkLogger {
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.picketlink.identity.federation.PicketLinkLogger#tracef(java.lang.String, java.lang.Object[])
+     */
+    @Override
+    public void tracef(String format, Object... params) {
+        if (logger.isTraceEnabled()) {
+            logger.trace(format(format, params));
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.picketlink.identity.federation.PicketLinkLogger#debugf(java.lang.String, java.lang.Object[])
+     */
+    @Override
+    public void debugf(String format, Object... params) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(format(format, params));
+        }
+    }
+
+    private String format(String format, Object[] params) {
+        Object[] args = new Object[params.length];
+        for (int i = 0; i < params.length; i++) {
+            args[i] = params[i] instanceof Node ? DocumentUtil.asString((Node) params[i]) : params[i];
+        }
+        return String.format(format, args);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -1488,6 +1522,26 @@ public class DefaultPicketLinkLogger implements PicketLinkLogger {
         return new ProcessingException(ErrorCodes.AUTHN_REQUEST_ID_VERIFICATION_FAILED);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.picketlink.identity.federation.PicketLinkLogger#samlHandlerMessageReplayedError(java.lang.String)
+     */
+    @Override
+    public ProcessingException samlHandlerMessageReplayedError(String id) {
+        return new ProcessingException(ErrorCodes.MESSAGE_REPLAYED + id);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.picketlink.identity.federation.PicketLinkLogger#samlHandlerReplayDetectionBeforeSignatureValidationError()
+     */
+    @Override
+    public ConfigurationException samlHandlerReplayDetectionBeforeSignatureValidationError() {
+        return new ConfigurationException(ErrorCodes.REPLAY_DETECTION_BEFORE_SIGNATURE_VALIDATION);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -2321,4 +2375,36 @@ public class DefaultPicketLinkLogger implements PicketLinkLogger {
         error("Error loading AuthorizationManager.", e);
     }
 
-}
\ No newline at end of file
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.picketlink.identity.federation.PicketLinkLogger#samlHandlerBackChannelLogoutFailed(java.lang.String,
+     * java.lang.Throwable)
+     */
+    @Override
+    public void samlHandlerBackChannelLogoutFailed(String participant, Throwable t) {
+        logger.warn("Back channel logout failed for participant " + participant, t);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.picketlink.identity.federation.PicketLinkLogger#metricsMBeanRegistrationFailed(java.lang.String,
+     * java.lang.Throwable)
+     */
+    @Override
+    public void metricsMBeanRegistrationFailed(String objectName, Throwable t) {
+        logger.warn("Could not register the metrics MBean " + objectName, t);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.picketlink.identity.federation.PicketLinkLogger#samlHandlerNoBackChannelLogoutEndpoint(java.lang.String)
+     */
+    @Override
+    public void samlHandlerNoBackChannelLogoutEndpoint(String participant) {
+        logger.warn("No SOAP single logout service in the metadata of participant " + participant);
+    }
+
+}
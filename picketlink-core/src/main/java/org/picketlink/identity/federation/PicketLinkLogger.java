@@ -441,6 +441,15 @@ public interface PicketLinkLogger {
      */
     void trace(String message, Throwable t);
 
+    /**
+     * Log a trace message built with {@link String#format(String, Object...)}. The message is only built when trace is
+     * enabled, which is also when the {@link org.w3c.dom.Node} parameters are serialized.
+     *
+     * @param format
+     * @param params
+     */
+    void tracef(String format, Object... params);
+
     /**
      * @param algo
      * @return
@@ -465,6 +474,15 @@ public interface PicketLinkLogger {
      */
     void debug(String message);
 
+    /**
+     * Log a debug message built with {@link String#format(String, Object...)}. The message is only built when debug is
+     * enabled, which is also when the {@link org.w3c.dom.Node} parameters are serialized.
+     *
+     * @param format
+     * @param params
+     */
+    void debugf(String format, Object... params);
+
     /**
      * @param fileName
      */
@@ -879,6 +897,17 @@ public interface PicketLinkLogger {
      */
     ProcessingException samlHandlerFailedInResponseToVerificarionError();
 
+    /**
+     * @param id
+     * @return
+     */
+    ProcessingException samlHandlerMessageReplayedError(String id);
+
+    /**
+     * @return
+     */
+    ConfigurationException samlHandlerReplayDetectionBeforeSignatureValidationError();
+
     /**
      * @param issuer
      * @return
@@ -1289,4 +1318,21 @@ public interface PicketLinkLogger {
 
     void authorizationManagerError(ConfigurationException e);
 
-}
\ No newline at end of file
+    /**
+     * @param participant
+     * @param t
+     */
+    void samlHandlerBackChannelLogoutFailed(String participant, Throwable t);
+
+    /**
+     * @param objectName
+     * @param t
+     */
+    void metricsMBeanRegistrationFailed(String objectName, Throwable t);
+
+    /**
+     * @param participant
+     */
+    void samlHandlerNoBackChannelLogoutEndpoint(String participant);
+
+}
@@ -38,6 +38,9 @@ import org.picketlink.identity.federation.PicketLinkLoggerFactory;
 import org.picketlink.identity.federation.core.exceptions.ConfigurationException;
 import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Phase;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
 import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
 import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
 import org.picketlink.identity.federation.core.saml.v2.common.SAMLDocumentHolder;
@@ -68,6 +71,8 @@ import org.xml.sax.SAXException;
 public class SAML2Request {
     
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    private static final PicketLinkMetrics metrics = PicketLinkMetricsFactory.getMetrics();
     
     private SAMLDocumentHolder samlDocumentHolder = null;
 
@@ -160,11 +165,13 @@ public class SAML2Request {
         if (is == null)
             throw logger.nullArgumentError("InputStream");
 
+        long start = metrics.start();
         Document samlDocument = DocumentUtil.getDocument(is);
 
         SAMLParser samlParser = new SAMLParser();
         JAXPValidationUtil.checkSchemaValidation(samlDocument);
-        SAML2Object requestType = (SAML2Object) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
+        SAML2Object requestType = (SAML2Object) samlParser.parse(samlDocument);
+        metrics.phase(Phase.PARSE, start);
 
         samlDocumentHolder = new SAMLDocumentHolder(requestType, samlDocument);
         return requestType;
@@ -189,7 +196,7 @@ public class SAML2Request {
 
         SAMLParser samlParser = new SAMLParser();
         JAXPValidationUtil.checkSchemaValidation(samlDocument);
-        RequestAbstractType requestType = (RequestAbstractType) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
+        RequestAbstractType requestType = (RequestAbstractType) samlParser.parse(samlDocument);
 
         samlDocumentHolder = new SAMLDocumentHolder(requestType, samlDocument);
         return requestType;
@@ -215,7 +222,7 @@ public class SAML2Request {
         SAMLParser samlParser = new SAMLParser();
         JAXPValidationUtil.checkSchemaValidation(samlDocument);
 
-        AuthnRequestType requestType = (AuthnRequestType) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
+        AuthnRequestType requestType = (AuthnRequestType) samlParser.parse(samlDocument);
         samlDocumentHolder = new SAMLDocumentHolder(requestType, samlDocument);
         return requestType;
     }
@@ -41,6 +41,9 @@ import org.picketlink.identity.federation.PicketLinkLoggerFactory;
 import org.picketlink.identity.federation.core.exceptions.ConfigurationException;
 import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Phase;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
 import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
 import org.picketlink.identity.federation.core.saml.v2.common.SAMLDocumentHolder;
 import org.picketlink.identity.federation.core.saml.v2.common.SAMLProtocolContext;
@@ -91,6 +94,8 @@ public class SAML2Response {
     
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
 
+    private static final PicketLinkMetrics metrics = PicketLinkMetricsFactory.getMetrics();
+
     private SAMLDocumentHolder samlDocumentHolder = null;
 
     /**
@@ -365,7 +370,7 @@ public class SAML2Response {
         SAMLParser samlParser = new SAMLParser();
         JAXPValidationUtil.checkSchemaValidation(samlDocument);
 
-        return (EncryptedAssertionType) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
+        return (EncryptedAssertionType) samlParser.parse(samlDocument);
 
     }
 
@@ -385,7 +390,7 @@ public class SAML2Response {
 
         SAMLParser samlParser = new SAMLParser();
         JAXPValidationUtil.checkSchemaValidation(samlDocument);
-        return (AssertionType) samlParser.parse(DocumentUtil.getNodeAsStream(samlDocument));
+        return (AssertionType) samlParser.parse(samlDocument);
     }
 
     /**
@@ -414,7 +419,7 @@ public class SAML2Response {
         SAMLParser samlParser = new SAMLParser();
         JAXPValidationUtil.checkSchemaValidation(samlResponseDocument);
 
-        ResponseType responseType = (ResponseType) samlParser.parse(DocumentUtil.getNodeAsStream(samlResponseDocument));
+        ResponseType responseType = (ResponseType) samlParser.parse(samlResponseDocument);
 
         samlDocumentHolder = new SAMLDocumentHolder(responseType, samlResponseDocument);
         return responseType;
@@ -434,17 +439,16 @@ public class SAML2Response {
         if (is == null)
             throw logger.nullArgumentError("InputStream");
 
+        long start = metrics.start();
         Document samlResponseDocument = DocumentUtil.getDocument(is);
 
-        if (logger.isTraceEnabled()) {
-            logger.trace("SAML Response Document: " + DocumentUtil.asString(samlResponseDocument));
-        }
+        logger.tracef("SAML Response Document: %s", samlResponseDocument);
 
         SAMLParser samlParser = new SAMLParser();
         JAXPValidationUtil.checkSchemaValidation(samlResponseDocument);
 
-        InputStream responseStream = DocumentUtil.getNodeAsStream(samlResponseDocument);
-        SAML2Object responseType = (SAML2Object) samlParser.parse(responseStream);
+        SAML2Object responseType = (SAML2Object) samlParser.parse(samlResponseDocument);
+        metrics.phase(Phase.PARSE, start);
 
         samlDocumentHolder = new SAMLDocumentHolder(responseType, samlResponseDocument);
         return responseType;
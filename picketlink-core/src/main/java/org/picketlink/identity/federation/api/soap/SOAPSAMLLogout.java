@@ -0,0 +1,147 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.api.soap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPMessage;
+
+import org.picketlink.identity.federation.PicketLinkLogger;
+import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+import org.picketlink.identity.federation.core.exceptions.ParsingException;
+import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Phase;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
+import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
+import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants;
+import org.picketlink.identity.federation.core.util.SOAPUtil;
+import org.picketlink.identity.federation.saml.v2.protocol.StatusCodeType;
+import org.picketlink.identity.federation.saml.v2.protocol.StatusResponseType;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Class that sends SAML LogoutRequests to participants over the SOAP binding
+ */
+public class SOAPSAMLLogout {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    private static final PicketLinkMetrics metrics = PicketLinkMetricsFactory.getMetrics();
+
+    private static final String SOAP_ACTION = "http://www.oasis-open.org/committees/security";
+
+    /**
+     * Send a LogoutRequest and return the LogoutResponse of the participant
+     *
+     * @param endpoint the SOAP endpoint of the participant
+     * @param logoutRequest the LogoutRequest document, moved into the SOAP body
+     * @param timeout connect and read timeout in milliseconds
+     * @return
+     * @throws ProcessingException
+     */
+    public StatusResponseType send(String endpoint, Document logoutRequest, int timeout) throws ProcessingException {
+        try {
+            SOAPMessage soapMessage = SOAPUtil.create();
+            soapMessage.getSOAPBody().addDocument(logoutRequest);
+
+            long start = metrics.start();
+            HttpURLConnection connection = (HttpURLConnection) new URL(endpoint).openConnection();
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "text/xml; charset=utf-8");
+            connection.setRequestProperty("SOAPAction", SOAP_ACTION);
+
+            OutputStream os = connection.getOutputStream();
+            try {
+                soapMessage.writeTo(os);
+            } finally {
+                os.close();
+            }
+
+            // a SOAP fault comes with a 500 status
+            InputStream is = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (is == null)
+                throw logger.nullValueError("SOAP response from " + endpoint);
+
+            SOAPMessage response;
+            try {
+                response = SOAPUtil.getSOAPMessage(is);
+            } finally {
+                is.close();
+            }
+            metrics.phase(Phase.SEND, start);
+
+            if (response.getSOAPBody().hasFault())
+                throw logger.processingError(new SOAPException(response.getSOAPBody().getFault().getFaultString()));
+
+            Node node = response.getSOAPBody().getFirstChild();
+            while (node != null && node.getNodeType() != Node.ELEMENT_NODE)
+                node = node.getNextSibling();
+            if (node == null)
+                throw logger.nullValueError("Did not find LogoutResponse node");
+
+            Object samlObject = new SAMLParser().parse(node);
+            if (samlObject instanceof StatusResponseType == false)
+                throw logger.wrongTypeError(samlObject.getClass().getName());
+            return (StatusResponseType) samlObject;
+        } catch (IOException e) {
+            throw logger.processingError(e);
+        } catch (SOAPException e) {
+            throw logger.processingError(e);
+        } catch (ParsingException e) {
+            throw logger.processingError(e);
+        }
+    }
+
+    /**
+     * Whether a LogoutResponse reports a complete logout. The success status code may be nested in a top level one, a
+     * partial logout status code at any level is not a success.
+     *
+     * @param logoutResponse
+     * @return
+     */
+    public static boolean isSuccess(StatusResponseType logoutResponse) {
+        if (logoutResponse == null || logoutResponse.getStatus() == null)
+            return false;
+
+        boolean success = false;
+        StatusCodeType statusCode = logoutResponse.getStatus().getStatusCode();
+        while (statusCode != null) {
+            String value = statusCode.getValue() != null ? statusCode.getValue().toString() : null;
+            if (JBossSAMLURIConstants.STATUS_SUCCESS.get().equals(value))
+                success = true;
+            else if (JBossSAMLURIConstants.STATUS_PARTIAL_LOGOUT.get().equals(value))
+                return false;
+            statusCode = statusCode.getStatusCode();
+        }
+        return success;
+    }
+}
@@ -25,18 +25,43 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 /**
+ * <p>
  * Encoder of saml messages based on DEFLATE compression
+ * </p>
+ * <p>
+ * The {@link Deflater}s and {@link Inflater}s hold native zlib memory that is only freed by {@link Deflater#end()} or at
+ * finalization. They are reset and kept in pools once a message is processed, at most {@link #POOL_SIZE} idle instances of
+ * each. {@link #clear()} ends the idle instances.
+ * </p>
  *
  * @author Anil.Saldhana@redhat.com
  * @since Dec 11, 2008
  */
 public class DeflateUtil {
+    /**
+     * System property holding the maximum number of idle deflaters, and of idle inflaters, kept in the pools. Defaults to 16.
+     */
+    public static final String POOL_SIZE = "picketlink.deflate.pool.size";
+
+    private static final int maxIdle = Integer.parseInt(SecurityActions.getSystemProperty(POOL_SIZE, "16"));
+
+    private static final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+
+    private static final AtomicInteger idleDeflaters = new AtomicInteger();
+
+    private static final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<Inflater>();
+
+    private static final AtomicInteger idleInflaters = new AtomicInteger();
+
     /**
      * Apply DEFLATE encoding
      *
@@ -46,14 +71,38 @@ public class DeflateUtil {
      */
     public static byte[] encode(byte[] message) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        Deflater deflater = new Deflater(Deflater.DEFLATED, true);
-        DeflaterOutputStream deflaterStream = new DeflaterOutputStream(baos, deflater);
-        deflaterStream.write(message);
-        deflaterStream.finish();
-
+        encode(message, baos);
         return baos.toByteArray();
     }
 
+    /**
+     * Apply DEFLATE encoding, writing the compressed message to the output stream. The stream is not closed.
+     *
+     * @param message
+     * @param os
+     * @throws IOException
+     */
+    public static void encode(byte[] message, OutputStream os) throws IOException {
+        Deflater deflater = deflaters.poll();
+        if (deflater != null)
+            idleDeflaters.decrementAndGet();
+        else
+            deflater = new Deflater(Deflater.DEFLATED, true);
+
+        try {
+            deflater.setInput(message);
+            deflater.finish();
+
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                os.write(buffer, 0, count);
+            }
+        } finally {
+            release(deflater);
+        }
+    }
+
     /**
      * Apply DEFLATE encoding
      *
@@ -66,13 +115,125 @@ public class DeflateUtil {
     }
 
     /**
-     * DEFLATE decoding
+     * DEFLATE decoding. The inflater goes back to the pool once the stream is read to the end or closed.
      *
      * @param msgToDecode the message that needs decoding
      * @return
      */
     public static InputStream decode(byte[] msgToDecode) {
+        Inflater inflater = inflaters.poll();
+        if (inflater != null)
+            idleInflaters.decrementAndGet();
+        else
+            inflater = new Inflater(true);
+
         ByteArrayInputStream bais = new ByteArrayInputStream(msgToDecode);
-        return new InflaterInputStream(bais, new Inflater(true));
+        return new PooledInflaterInputStream(bais, inflater);
+    }
+
+    /**
+     * Number of idle deflaters in the pool
+     *
+     * @return
+     */
+    public static int getIdleDeflaterCount() {
+        return idleDeflaters.get();
+    }
+
+    /**
+     * Number of idle inflaters in the pool
+     *
+     * @return
+     */
+    public static int getIdleInflaterCount() {
+        return idleInflaters.get();
+    }
+
+    /**
+     * End the idle deflaters and inflaters, freeing their native memory. The instances in use are pooled again once
+     * released.
+     */
+    public static void clear() {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            idleDeflaters.decrementAndGet();
+            deflater.end();
+        }
+
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            idleInflaters.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    private static void release(Deflater deflater) {
+        deflater.reset();
+        if (idleDeflaters.incrementAndGet() <= maxIdle) {
+            deflaters.offer(deflater);
+        } else {
+            idleDeflaters.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    private static void release(Inflater inflater) {
+        inflater.reset();
+        if (idleInflaters.incrementAndGet() <= maxIdle) {
+            inflaters.offer(inflater);
+        } else {
+            idleInflaters.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    /**
+     * Hands its inflater back to the pool at the end of the stream or when closed, and never uses it afterwards
+     */
+    private static class PooledInflaterInputStream extends InflaterInputStream {
+        private boolean released;
+
+        private boolean closed;
+
+        private PooledInflaterInputStream(InputStream in, Inflater inflater) {
+            super(in, inflater);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed)
+                throw new IOException("Stream closed");
+            if (released)
+                return -1;
+
+            int count = super.read(b, off, len);
+            if (count == -1)
+                releaseInflater();
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (closed)
+                throw new IOException("Stream closed");
+            return released ? 0 : super.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                releaseInflater();
+                closed = true;
+                // the inflater is not ended, as it was not created by the stream
+                super.close();
+            }
+        }
+
+        private void releaseInflater() {
+            if (!released) {
+                released = true;
+                release(inf);
+            }
+        }
     }
-}
\ No newline at end of file
+}
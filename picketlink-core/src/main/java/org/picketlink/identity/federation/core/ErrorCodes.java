@@ -202,6 +202,10 @@ public interface ErrorCodes {
     
     String LOCAL_VALIDATION_SEC_DOMAIN_MUST_BE_SPECIFIED = "PL00105: When using local validation 'localValidationSecurityDomain' must be specified.";
     
+    String MESSAGE_REPLAYED = "PL00106: Message has already been processed:";
+
+    String REPLAY_DETECTION_BEFORE_SIGNATURE_VALIDATION = "PL00107: The replay detection handler must come after the signature validation handler";
+    
     String COMPRESSION_ENABLED_SAML_CRED = "When compression is enabled, received credential should be SamlCredential, but got ";
     
 }
\ No newline at end of file
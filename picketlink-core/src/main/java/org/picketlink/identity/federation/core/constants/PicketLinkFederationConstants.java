@@ -37,6 +37,7 @@ public interface PicketLinkFederationConstants {
     String SCHEMA_IDFED_HANDLER = "schema/config/picketlink-fed-handler.xsd";
     String DSA_SIGNATURE_ALGORITHM = "SHA1withDSA";
     String RSA_SIGNATURE_ALGORITHM = "SHA1withRSA";
+    String RSA_SHA256_SIGNATURE_ALGORITHM = "SHA256withRSA";
 
     // File Based Meta data Configuration Constants
     String SERIALIZATION_EXTENSION = ".SER";
@@ -0,0 +1,325 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.picketlink.identity.federation.PicketLinkLogger;
+import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+import org.picketlink.identity.federation.core.config.AuthPropertyType;
+import org.picketlink.identity.federation.core.config.KeyValueType;
+import org.picketlink.identity.federation.core.interfaces.TrustKeyConfigurationException;
+import org.picketlink.identity.federation.core.interfaces.TrustKeyManager;
+import org.picketlink.identity.federation.core.interfaces.TrustKeyProcessingException;
+
+/**
+ * <p>
+ * {@link KeyStoreKeyManager} that resolves the signing key pair, the validating keys of the configured domains and the
+ * certificates of the KeyStore once, into an immutable snapshot. Requests are served from the snapshot without any KeyStore
+ * lookup.
+ * </p>
+ * <p>
+ * When the KeyStore is a file, its modification time and size are checked at most once every
+ * {@link #KEYSTORE_RELOAD_INTERVAL} milliseconds (60 seconds by default, 0 disables the check) by the first request after the
+ * interval has elapsed. A changed file is loaded into a new snapshot that replaces the current one atomically, so that a key
+ * rollover does not need a restart. If the new file cannot be loaded, the current snapshot is kept and the load is retried
+ * at the next check.
+ * </p>
+ */
+public class CachingKeyStoreKeyManager extends KeyStoreKeyManager {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    public static final String KEYSTORE_RELOAD_INTERVAL = "KeyStoreReloadInterval";
+
+    public static final long DEFAULT_RELOAD_INTERVAL = 60 * 1000L;
+
+    private long reloadInterval = DEFAULT_RELOAD_INTERVAL;
+
+    private volatile Snapshot snapshot;
+
+    private volatile long nextCheck;
+
+    private final AtomicBoolean checking = new AtomicBoolean();
+
+    /**
+     * @see TrustKeyManager#setAuthProperties(List)
+     */
+    @Override
+    public void setAuthProperties(List<AuthPropertyType> authList) throws TrustKeyConfigurationException,
+            TrustKeyProcessingException {
+        super.setAuthProperties(authList);
+        for (AuthPropertyType auth : authList) {
+            if (KEYSTORE_RELOAD_INTERVAL.equals(auth.getKey()))
+                this.reloadInterval = Long.parseLong(auth.getValue());
+        }
+        this.snapshot = null;
+    }
+
+    /**
+     * @see TrustKeyManager#setValidatingAlias(List)
+     */
+    @Override
+    public void setValidatingAlias(List<KeyValueType> aliases) throws TrustKeyConfigurationException,
+            TrustKeyProcessingException {
+        super.setValidatingAlias(aliases);
+        this.snapshot = null;
+    }
+
+    /**
+     * @see TrustKeyManager#getSigningKey()
+     */
+    @Override
+    public PrivateKey getSigningKey() throws TrustKeyConfigurationException, TrustKeyProcessingException {
+        Snapshot current = getSnapshot();
+        current.checkSigningKey();
+        return current.signingKey;
+    }
+
+    /**
+     * Get the signing key pair. As with {@link KeyStoreKeyManager#getSigningKeyPair()}, the pair is never null; its public
+     * or private key is null when the signing alias has no certificate or no private key.
+     *
+     * @see TrustKeyManager#getSigningKeyPair()
+     */
+    @Override
+    public KeyPair getSigningKeyPair() throws TrustKeyConfigurationException, TrustKeyProcessingException {
+        Snapshot current = getSnapshot();
+        current.checkSigningKey();
+        return current.signingKeyPair;
+    }
+
+    /**
+     * @see TrustKeyManager#getCertificate(String)
+     */
+    @Override
+    public Certificate getCertificate(String alias) throws TrustKeyConfigurationException, TrustKeyProcessingException {
+        if (alias == null || alias.length() == 0)
+            throw logger.keyStoreNullAlias();
+        return getSnapshot().certificates.get(alias);
+    }
+
+    /**
+     * @see TrustKeyManager#getPublicKey(String)
+     */
+    @Override
+    public PublicKey getPublicKey(String alias) throws TrustKeyConfigurationException, TrustKeyProcessingException {
+        Certificate cert = getSnapshot().certificates.get(alias);
+        if (cert == null) {
+            logger.keyStoreNullPublicKeyForAlias(alias);
+            return null;
+        }
+        return cert.getPublicKey();
+    }
+
+    /**
+     * @see TrustKeyManager#getValidatingKey(String)
+     */
+    @Override
+    public PublicKey getValidatingKey(String domain) throws TrustKeyConfigurationException, TrustKeyProcessingException {
+        Snapshot current = getSnapshot();
+        if (!current.validatingKeys.containsKey(domain))
+            throw logger.keyStoreMissingDomainAlias(domain);
+        return current.validatingKeys.get(domain);
+    }
+
+    /**
+     * Force the KeyStore to be loaded again on the next request
+     */
+    public void reload() {
+        this.snapshot = null;
+    }
+
+    private Snapshot getSnapshot() throws TrustKeyConfigurationException, TrustKeyProcessingException {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = loadSnapshot();
+                    snapshot = current;
+                }
+            }
+        } else if (current.file != null && reloadInterval > 0 && System.currentTimeMillis() >= nextCheck
+                && checking.compareAndSet(false, true)) {
+            // a single request checks the file, the others keep using the current snapshot
+            try {
+                nextCheck = System.currentTimeMillis() + reloadInterval;
+                if (current.isStale()) {
+                    current = loadSnapshot();
+                    snapshot = current;
+                    logger.trace("KeyStore " + current.file + " reloaded");
+                }
+            } catch (Exception e) {
+                logger.error(e);
+            } finally {
+                checking.set(false);
+            }
+        }
+        return current;
+    }
+
+    private Snapshot loadSnapshot() throws TrustKeyConfigurationException, TrustKeyProcessingException {
+        logger.keyStoreSetup();
+        try {
+            // the file is stat'ed before it is read so that a change during the load is seen by the next check
+            File file = getKeyStoreFile();
+            long lastModified = file != null ? file.lastModified() : 0;
+            long length = file != null ? file.length() : 0;
+
+            KeyStore ks = loadKeyStore();
+            if (ks == null)
+                throw logger.keyStoreNullStore();
+
+            if (file == null) {
+                // the location may only be known once loaded, when it comes from the HTTPS connector
+                file = getKeyStoreFile();
+                lastModified = file != null ? file.lastModified() : 0;
+                length = file != null ? file.length() : 0;
+            }
+
+            Map<String, Certificate> certificates = new HashMap<String, Certificate>();
+            Enumeration<String> aliases = ks.aliases();
+            while (aliases.hasMoreElements()) {
+                String alias = aliases.nextElement();
+                Certificate cert = ks.getCertificate(alias);
+                if (cert != null)
+                    certificates.put(alias, cert);
+            }
+
+            Map<String, PublicKey> validatingKeys = new HashMap<String, PublicKey>();
+            for (Map.Entry<String, String> entry : domainAliasMap.entrySet()) {
+                Certificate cert = certificates.get(entry.getValue());
+                validatingKeys.put(entry.getKey(), cert != null ? cert.getPublicKey() : null);
+            }
+
+            PrivateKey signingKey = null;
+            KeyPair signingKeyPair = null;
+            GeneralSecurityException signingKeyError = null;
+            try {
+                Key key = signingAlias != null ? ks.getKey(signingAlias, signingKeyPass) : null;
+                if (key instanceof PrivateKey)
+                    signingKey = (PrivateKey) key;
+                // as KeyStoreKeyManager, a pair is always returned, with the keys the alias has
+                Certificate cert = signingAlias != null ? certificates.get(signingAlias) : null;
+                signingKeyPair = new KeyPair(cert != null ? cert.getPublicKey() : null, signingKey);
+            } catch (GeneralSecurityException e) {
+                // only fail the requests that need the signing key
+                signingKeyError = e;
+            }
+
+            return new Snapshot(file, lastModified, length, certificates, validatingKeys, signingKey, signingKeyPair,
+                    signingKeyError);
+        } catch (GeneralSecurityException e) {
+            throw logger.keyStoreProcessingError(e);
+        } catch (IOException e) {
+            throw logger.keyStoreProcessingError(e);
+        }
+    }
+
+    /**
+     * Get the file of the KeyStore, if it is one
+     *
+     * @return
+     */
+    private File getKeyStoreFile() {
+        if (keyStoreURL == null)
+            return null;
+
+        File file = new File(keyStoreURL);
+        if (file.isFile())
+            return file;
+
+        URL url = null;
+        try {
+            url = new URL(keyStoreURL);
+        } catch (Exception e) {
+            url = SecurityActions.loadResource(getClass(), keyStoreURL);
+        }
+        if (url != null && "file".equals(url.getProtocol())) {
+            try {
+                file = new File(url.toURI());
+                if (file.isFile())
+                    return file;
+            } catch (Exception e) {
+                logger.trace(e);
+            }
+        }
+        return null;
+    }
+
+    private static class Snapshot {
+
+        private final File file;
+
+        private final long lastModified;
+
+        private final long length;
+
+        private final Map<String, Certificate> certificates;
+
+        private final Map<String, PublicKey> validatingKeys;
+
+        private final PrivateKey signingKey;
+
+        private final KeyPair signingKeyPair;
+
+        private final GeneralSecurityException signingKeyError;
+
+        Snapshot(File file, long lastModified, long length, Map<String, Certificate> certificates,
+                Map<String, PublicKey> validatingKeys, PrivateKey signingKey, KeyPair signingKeyPair,
+                GeneralSecurityException signingKeyError) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.certificates = Collections.unmodifiableMap(certificates);
+            this.validatingKeys = Collections.unmodifiableMap(validatingKeys);
+            this.signingKey = signingKey;
+            this.signingKeyPair = signingKeyPair;
+            this.signingKeyError = signingKeyError;
+        }
+
+        boolean isStale() {
+            return file.lastModified() != lastModified || file.length() != length;
+        }
+
+        void checkSigningKey() throws TrustKeyProcessingException {
+            if (signingKeyError != null)
+                throw logger.keyStoreProcessingError(signingKeyError);
+        }
+    }
+}
@@ -71,19 +71,19 @@ public class KeyStoreKeyManager implements TrustKeyManager {
 
     private final Map<String, Object> options = new HashMap<String, Object>();
 
-    private final HashMap<String, String> domainAliasMap = new HashMap<String, String>();
+    protected final HashMap<String, String> domainAliasMap = new HashMap<String, String>();
 
     private final HashMap<String, String> authPropsMap = new HashMap<String, String>();
 
     private KeyStore ks = null;
 
-    private String keyStoreURL;
+    protected String keyStoreURL;
 
-    private char[] signingKeyPass;
+    protected char[] signingKeyPass;
 
-    private String signingAlias;
+    protected String signingAlias;
 
-    private String keyStorePass;
+    protected String keyStorePass;
 
     public static final String KEYSTORE_URL = "KeyStoreURL";
 
@@ -288,6 +288,17 @@ public class KeyStoreKeyManager implements TrustKeyManager {
     }
 
     private void setUpKeyStore() throws GeneralSecurityException, IOException {
+        ks = loadKeyStore();
+    }
+
+    /**
+     * Load the configured KeyStore
+     *
+     * @return
+     * @throws GeneralSecurityException
+     * @throws IOException
+     */
+    protected KeyStore loadKeyStore() throws GeneralSecurityException, IOException {
         // Keystore URL/Pass can be either by configuration or on the HTTPS connector
         if (this.keyStoreURL == null) {
             this.keyStoreURL = SecurityActions.getProperty("javax.net.ssl.keyStore", null);
@@ -297,7 +308,11 @@ public class KeyStoreKeyManager implements TrustKeyManager {
         }
 
         InputStream is = this.getKeyStoreInputStream(this.keyStoreURL);
-        ks = KeyStoreUtil.getKeyStore(is, keyStorePass.toCharArray());
+        try {
+            return KeyStoreUtil.getKeyStore(is, keyStorePass.toCharArray());
+        } finally {
+            is.close();
+        }
     }
 
     /**
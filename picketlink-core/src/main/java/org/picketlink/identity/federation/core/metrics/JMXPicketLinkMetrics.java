@@ -0,0 +1,204 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.picketlink.identity.federation.PicketLinkLogger;
+import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+
+/**
+ * <p>
+ * {@link PicketLinkMetrics} kept in memory and exposed as an MXBean, under the name given by the {@link #OBJECT_NAME}
+ * system property.
+ * </p>
+ * <p>
+ * Recording only touches atomic counters. The operations are keyed by service provider, issuer or token type, which
+ * may come from unauthenticated messages: past {@link #MAX_KEYS} distinct keys, the new ones are counted together under
+ * "other". Operations without a key are counted under "unknown".
+ * </p>
+ */
+public class JMXPicketLinkMetrics implements PicketLinkMetrics, PicketLinkMetricsMXBean {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    /**
+     * System property holding the name the MXBean is registered with
+     */
+    public static final String OBJECT_NAME = "picketlink.metrics.jmx.name";
+
+    public static final String DEFAULT_OBJECT_NAME = "org.picketlink:service=Metrics";
+
+    /**
+     * System property holding the maximum number of distinct operation keys. Defaults to 1000.
+     */
+    public static final String MAX_KEYS = "picketlink.metrics.max.keys";
+
+    public static final int DEFAULT_MAX_KEYS = 1000;
+
+    private static final String OTHER = "other";
+
+    private static final String UNKNOWN = "unknown";
+
+    private final int maxKeys;
+
+    private volatile Counters counters = new Counters();
+
+    private ObjectName objectName;
+
+    public JMXPicketLinkMetrics() {
+        this(Integer.parseInt(SecurityActions.getSystemProperty(MAX_KEYS, String.valueOf(DEFAULT_MAX_KEYS))));
+    }
+
+    public JMXPicketLinkMetrics(int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Register in the platform MBean server, unless already registered. If another instance, from another deployment,
+     * already holds the name, this one is registered with an additional instance key.
+     */
+    public synchronized void register() {
+        if (objectName != null)
+            return;
+
+        String name = SecurityActions.getSystemProperty(OBJECT_NAME, DEFAULT_OBJECT_NAME);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            try {
+                objectName = server.registerMBean(this, new ObjectName(name)).getObjectName();
+            } catch (InstanceAlreadyExistsException e) {
+                name = name + ",instance=" + System.identityHashCode(this);
+                objectName = server.registerMBean(this, new ObjectName(name)).getObjectName();
+            }
+        } catch (Exception e) {
+            logger.metricsMBeanRegistrationFailed(name, e);
+        }
+    }
+
+    /**
+     * Remove from the platform MBean server
+     */
+    public synchronized void unregister() {
+        if (objectName == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            logger.trace(e);
+        }
+        objectName = null;
+    }
+
+    public boolean isEnabled() {
+        return true;
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void phase(Phase phase, long start) {
+        counters.phases[phase.ordinal()].record(System.nanoTime() - start);
+    }
+
+    public void operation(Operation operation, String key, long start, boolean failed) {
+        long nanos = System.nanoTime() - start;
+
+        ConcurrentMap<String, OperationCounter> operations = counters.operations;
+        String name = operation.name() + " " + (key != null ? key : UNKNOWN);
+        OperationCounter counter = operations.get(name);
+        if (counter == null) {
+            if (operations.size() >= maxKeys) {
+                name = operation.name() + " " + OTHER;
+                counter = operations.get(name);
+            }
+            if (counter == null) {
+                OperationCounter newCounter = new OperationCounter();
+                counter = operations.putIfAbsent(name, newCounter);
+                if (counter == null)
+                    counter = newCounter;
+            }
+        }
+
+        counter.requests.incrementAndGet();
+        if (failed)
+            counter.errors.incrementAndGet();
+        counter.latency.record(nanos);
+    }
+
+    public Map<String, LatencyStatistics> getPhases() {
+        Counters current = counters;
+        Map<String, LatencyStatistics> phases = new TreeMap<String, LatencyStatistics>();
+        for (Phase phase : Phase.values())
+            phases.put(phase.name(), current.phases[phase.ordinal()].getStatistics());
+        return phases;
+    }
+
+    public Map<String, OperationStatistics> getOperations() {
+        Counters current = counters;
+        double seconds = Math.max(System.currentTimeMillis() - current.since, 1) / 1000d;
+
+        Map<String, OperationStatistics> operations = new TreeMap<String, OperationStatistics>();
+        for (Map.Entry<String, OperationCounter> entry : current.operations.entrySet()) {
+            OperationCounter counter = entry.getValue();
+            long requests = counter.requests.get();
+            operations.put(entry.getKey(), new OperationStatistics(requests, counter.errors.get(), requests / seconds,
+                    counter.latency.getStatistics()));
+        }
+        return operations;
+    }
+
+    public void reset() {
+        counters = new Counters();
+    }
+
+    private static class Counters {
+        private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+
+        private final ConcurrentMap<String, OperationCounter> operations = new ConcurrentHashMap<String, OperationCounter>();
+
+        private final long since = System.currentTimeMillis();
+
+        private Counters() {
+            for (int i = 0; i < phases.length; i++)
+                phases[i] = new LatencyHistogram();
+        }
+    }
+
+    private static class OperationCounter {
+        private final AtomicLong requests = new AtomicLong();
+
+        private final AtomicLong errors = new AtomicLong();
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+}
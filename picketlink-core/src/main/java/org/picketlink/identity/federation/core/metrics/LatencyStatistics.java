@@ -0,0 +1,76 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.metrics;
+
+/**
+ * Snapshot of a latency histogram, in milliseconds
+ */
+public class LatencyStatistics {
+
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    private final long count;
+
+    private final long totalNanos;
+
+    private final long maxNanos;
+
+    private final long medianNanos;
+
+    private final long percentile90Nanos;
+
+    private final long percentile99Nanos;
+
+    public LatencyStatistics(long count, long totalNanos, long maxNanos, long medianNanos, long percentile90Nanos,
+            long percentile99Nanos) {
+        this.count = count;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.medianNanos = medianNanos;
+        this.percentile90Nanos = percentile90Nanos;
+        this.percentile99Nanos = percentile99Nanos;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMillis() {
+        return count == 0 ? 0 : totalNanos / NANOS_PER_MILLI / count;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos / NANOS_PER_MILLI;
+    }
+
+    public double getMedianMillis() {
+        return medianNanos / NANOS_PER_MILLI;
+    }
+
+    public double getPercentile90Millis() {
+        return percentile90Nanos / NANOS_PER_MILLI;
+    }
+
+    public double getPercentile99Millis() {
+        return percentile99Nanos / NANOS_PER_MILLI;
+    }
+}
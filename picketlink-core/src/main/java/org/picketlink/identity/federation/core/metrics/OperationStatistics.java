@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.metrics;
+
+/**
+ * Snapshot of the requests, errors and latency of an operation
+ */
+public class OperationStatistics {
+
+    private final long requests;
+
+    private final long errors;
+
+    private final double throughput;
+
+    private final LatencyStatistics latency;
+
+    public OperationStatistics(long requests, long errors, double throughput, LatencyStatistics latency) {
+        this.requests = requests;
+        this.errors = errors;
+        this.throughput = throughput;
+        this.latency = latency;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Requests per second since the metrics were started or reset
+     *
+     * @return
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public LatencyStatistics getLatency() {
+        return latency;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.metrics;
+
+/**
+ * <p>
+ * Records the latency of the phases of the processing of SAML and WS-Trust messages, and the requests, errors and
+ * latency of the SSO, SLO and STS operations per service provider, issuer or token type.
+ * </p>
+ * <p>
+ * Instances are obtained from {@link PicketLinkMetricsFactory}. The call sites take a timestamp with {@link #start()}
+ * and hand it back once the phase or operation is done:
+ * </p>
+ *
+ * <pre>
+ * long start = metrics.start();
+ * signature.sign(dsc);
+ * metrics.phase(Phase.SIGN, start);
+ * </pre>
+ *
+ * <p>
+ * When metrics are disabled all the methods are empty, not even the clock is read.
+ * </p>
+ */
+public interface PicketLinkMetrics {
+
+    /**
+     * Phases of the processing of a message
+     */
+    enum Phase {
+        PARSE, SIGNATURE_VALIDATION, HANDLER_CHAIN, SIGN, ENCRYPT, SEND
+    }
+
+    /**
+     * Operations counted per service provider, issuer or token type. XACML decision queries are counted per outcome of
+     * the decision cache.
+     */
+    enum Operation {
+        SSO, SLO, STS, XACML
+    }
+
+    /**
+     * Whether anything is recorded
+     *
+     * @return
+     */
+    boolean isEnabled();
+
+    /**
+     * Timestamp to hand to {@link #phase(Phase, long)} or {@link #operation(Operation, String, long, boolean)}
+     *
+     * @return the value of {@link System#nanoTime()}, or 0 when disabled
+     */
+    long start();
+
+    /**
+     * Record the latency of a phase
+     *
+     * @param phase
+     * @param start the value returned by {@link #start()} when the phase began
+     */
+    void phase(Phase phase, long start);
+
+    /**
+     * Record an operation
+     *
+     * @param operation
+     * @param key the service provider or issuer for SSO and SLO, the request and token type for STS, the decision cache
+     *        outcome for XACML
+     * @param start the value returned by {@link #start()} when the operation began
+     * @param failed whether the operation ended in an error
+     */
+    void operation(Operation operation, String key, long start, boolean failed);
+}
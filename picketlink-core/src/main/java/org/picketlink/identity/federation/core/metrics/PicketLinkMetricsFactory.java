@@ -0,0 +1,104 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.metrics;
+
+import org.picketlink.identity.federation.PicketLinkLogger;
+import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+
+/**
+ * <p>
+ * Provides the {@link PicketLinkMetrics} instance, chosen with the {@link #METRICS} system property:
+ * </p>
+ * <ul>
+ * <li>not set or "false": metrics are disabled</li>
+ * <li>"jmx" or "true": a {@link JMXPicketLinkMetrics}, registered in the platform MBean server while a component is
+ * started</li>
+ * <li>any other value: the fully qualified name of a {@link PicketLinkMetrics} implementation</li>
+ * </ul>
+ * <p>
+ * The IDP valve, the IDP servlet, the SP filter and the STS call {@link #acquire()} when they are started and
+ * {@link #release()} when they are stopped. The MBean is unregistered with the last of them, so that it does not keep
+ * the class loader of an undeployed application.
+ * </p>
+ */
+public final class PicketLinkMetricsFactory {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    /**
+     * System property selecting the metrics implementation
+     */
+    public static final String METRICS = "picketlink.metrics";
+
+    private static final PicketLinkMetrics INSTANCE = create(SecurityActions.getSystemProperty(METRICS, null));
+
+    private static int users = 0;
+
+    private PicketLinkMetricsFactory() {
+    }
+
+    /**
+     * Returns the {@link PicketLinkMetrics} instance
+     *
+     * @return
+     */
+    public static PicketLinkMetrics getMetrics() {
+        return INSTANCE;
+    }
+
+    /**
+     * Register the metrics MBean, if any, for a component being started. Each call is paired with a call to
+     * {@link #release()}.
+     */
+    public static synchronized void acquire() {
+        if (users++ == 0 && INSTANCE instanceof JMXPicketLinkMetrics)
+            ((JMXPicketLinkMetrics) INSTANCE).register();
+    }
+
+    /**
+     * Unregister the metrics MBean, if any, when the last component using it is stopped
+     */
+    public static synchronized void release() {
+        if (users == 0)
+            return;
+        if (--users == 0 && INSTANCE instanceof JMXPicketLinkMetrics)
+            ((JMXPicketLinkMetrics) INSTANCE).unregister();
+    }
+
+    static PicketLinkMetrics create(String metrics) {
+        if (metrics == null || metrics.length() == 0 || "false".equalsIgnoreCase(metrics))
+            return new DisabledPicketLinkMetrics();
+
+        if ("jmx".equalsIgnoreCase(metrics) || "true".equalsIgnoreCase(metrics))
+            return new JMXPicketLinkMetrics();
+
+        Class<?> clazz = SecurityActions.loadClass(PicketLinkMetricsFactory.class, metrics);
+        if (clazz == null)
+            throw new RuntimeException(logger.classNotLoadedError(metrics));
+
+        try {
+            return (PicketLinkMetrics) clazz.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(logger.couldNotCreateInstance(metrics, e));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link JMXPicketLinkMetrics}
+ */
+public interface PicketLinkMetricsMXBean {
+
+    /**
+     * Latency of each {@link PicketLinkMetrics.Phase}, keyed by phase name
+     *
+     * @return
+     */
+    Map<String, LatencyStatistics> getPhases();
+
+    /**
+     * Statistics of each operation, keyed by operation name and service provider, issuer or token type
+     *
+     * @return
+     */
+    Map<String, OperationStatistics> getOperations();
+
+    /**
+     * Start counting again from zero
+     */
+    void reset();
+}
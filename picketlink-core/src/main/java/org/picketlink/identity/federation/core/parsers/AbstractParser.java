@@ -25,7 +25,6 @@ import java.io.InputStream;
 
 import javax.xml.stream.EventFilter;
 import javax.xml.stream.XMLEventReader;
-import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.Characters;
 import javax.xml.stream.events.XMLEvent;
@@ -34,6 +33,8 @@ import org.picketlink.identity.federation.PicketLinkLogger;
 import org.picketlink.identity.federation.PicketLinkLoggerFactory;
 import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.parsers.util.StaxParserUtil;
+import org.picketlink.identity.federation.core.util.XMLFactoryUtil;
+import org.w3c.dom.Node;
 
 /**
  * Base class for parsers
@@ -57,12 +58,26 @@ public abstract class AbstractParser implements ParserNamespaceSupport {
         if (configStream == null)
             throw logger.nullArgumentError("InputStream");
 
-        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        return parse(filterWhitespaces(StaxParserUtil.getXMLEventReader(configStream)));
+    }
 
-        XMLEventReader xmlEventReader = StaxParserUtil.getXMLEventReader(configStream);
+    /**
+     * Parse a DOM node that has already been read, without serializing it back to a stream
+     *
+     * @param node a {@code Document} or an {@code Element}
+     * @return
+     * @throws {@link IllegalArgumentException} when the node is null
+     */
+    public Object parse(Node node) throws ParsingException {
+        if (node == null)
+            throw logger.nullArgumentError("Node");
+
+        return parse(filterWhitespaces(StaxParserUtil.getXMLEventReader(node)));
+    }
 
+    private XMLEventReader filterWhitespaces(XMLEventReader xmlEventReader) throws ParsingException {
         try {
-            xmlEventReader = xmlInputFactory.createFilteredReader(xmlEventReader, new EventFilter() {
+            xmlEventReader = XMLFactoryUtil.getXMLInputFactory().createFilteredReader(xmlEventReader, new EventFilter() {
                 public boolean accept(XMLEvent xmlEvent) {
                     // We are going to disregard characters that are new line and whitespace
                     if (xmlEvent.isCharacters()) {
@@ -83,7 +98,7 @@ public abstract class AbstractParser implements ParserNamespaceSupport {
             throw logger.parserException(e);
         }
 
-        return parse(xmlEventReader);
+        return xmlEventReader;
     }
 
-}
\ No newline at end of file
+}
@@ -37,6 +37,7 @@ import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLConsta
 import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants;
 import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
 import org.picketlink.identity.federation.saml.v2.metadata.EntitiesDescriptorType;
+import org.picketlink.identity.federation.saml.v2.metadata.EntityDescriptorType;
 import org.picketlink.identity.federation.saml.v2.metadata.ExtensionsType;
 import org.w3c.dom.Element;
 
@@ -111,6 +112,59 @@ public class SAMLEntitiesDescriptorParser extends AbstractDescriptorParser imple
         return entitiesDescriptorType;
     }
 
+    /**
+     * <p>
+     * Stream the entity descriptors of a metadata document to a callback. The document may be a single EntityDescriptor or
+     * an EntitiesDescriptor aggregate, possibly nested. Each EntityDescriptor is parsed in turn and handed over to the
+     * callback, the aggregate itself is never built so that large federation metadata can be processed without holding the
+     * whole tree in memory. Extensions and signatures of the aggregates are skipped.
+     * </p>
+     *
+     * @param xmlEventReader
+     * @param callback
+     * @throws ParsingException
+     */
+    public void parse(XMLEventReader xmlEventReader, EntityDescriptorCallback callback) throws ParsingException {
+        xmlEventReader = filterWhiteSpaceCharacters(xmlEventReader);
+
+        StartElement startElement = StaxParserUtil.peekNextStartElement(xmlEventReader);
+        if (startElement == null)
+            throw logger.parserUnableParsingNullToken();
+
+        String localPart = startElement.getName().getLocalPart();
+        if (JBossSAMLConstants.ENTITY_DESCRIPTOR.get().equals(localPart)) {
+            callback.entityDescriptor((EntityDescriptorType) new SAMLEntityDescriptorParser().parse(xmlEventReader));
+            return;
+        }
+
+        StaxParserUtil.validate(startElement, EDT);
+        StaxParserUtil.getNextStartElement(xmlEventReader);
+
+        int depth = 1;
+        while (depth > 0 && xmlEventReader.hasNext()) {
+            XMLEvent xmlEvent = StaxParserUtil.peek(xmlEventReader);
+            if (xmlEvent instanceof EndElement) {
+                StaxParserUtil.validate((EndElement) xmlEvent, EDT);
+                StaxParserUtil.getNextEndElement(xmlEventReader);
+                depth--;
+                continue;
+            }
+            startElement = (StartElement) xmlEvent;
+            localPart = startElement.getName().getLocalPart();
+
+            if (JBossSAMLConstants.ENTITY_DESCRIPTOR.get().equals(localPart)) {
+                callback.entityDescriptor((EntityDescriptorType) new SAMLEntityDescriptorParser().parse(xmlEventReader));
+            } else if (JBossSAMLConstants.ENTITIES_DESCRIPTOR.get().equalsIgnoreCase(localPart)) {
+                StaxParserUtil.getNextStartElement(xmlEventReader);
+                depth++;
+            } else if (JBossSAMLConstants.EXTENSIONS.get().equalsIgnoreCase(localPart)
+                    || localPart.equals(JBossSAMLConstants.SIGNATURE.get())) {
+                StaxParserUtil.bypassElementBlock(xmlEventReader, localPart);
+            } else
+                throw logger.parserUnknownTag(localPart, startElement.getLocation());
+        }
+    }
+
     public boolean supports(QName qname) {
         String nsURI = qname.getNamespaceURI();
         String localPart = qname.getLocalPart();
@@ -124,4 +178,11 @@ public class SAMLEntitiesDescriptorParser extends AbstractDescriptorParser imple
         extensions.setElement(extElement);
         return extensions;
     }
-}
\ No newline at end of file
+
+    /**
+     * Receives the entity descriptors streamed by {@link SAMLEntitiesDescriptorParser#parse(XMLEventReader, EntityDescriptorCallback)}
+     */
+    public interface EntityDescriptorCallback {
+        void entityDescriptor(EntityDescriptorType entityDescriptor) throws ParsingException;
+    }
+}
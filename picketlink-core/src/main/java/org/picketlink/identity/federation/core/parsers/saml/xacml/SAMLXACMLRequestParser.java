@@ -21,24 +21,19 @@
  */
 package org.picketlink.identity.federation.core.parsers.saml.xacml;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
-import javax.xml.bind.Unmarshaller;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.events.EndElement;
 import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 
-import org.jboss.security.xacml.core.model.context.RequestType;
 import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.parsers.ParserNamespaceSupport;
 import org.picketlink.identity.federation.core.parsers.saml.SAMLRequestAbstractParser;
 import org.picketlink.identity.federation.core.parsers.util.StaxParserUtil;
 import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLConstants;
-import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.SAMLXACMLUtil;
 import org.picketlink.identity.federation.saml.v2.protocol.XACMLAuthzDecisionQueryType;
-import org.w3c.dom.Element;
 
 /**
  * Parse the XACML Elements as specified by the SAML-XACML Profile.
@@ -71,7 +66,6 @@ public class SAMLXACMLRequestParser extends SAMLRequestAbstractParser implements
         return false;
     }
 
-    @SuppressWarnings("unchecked")
     private XACMLAuthzDecisionQueryType parseXACMLAuthzDecisionQuery(StartElement startElement, XMLEventReader xmlEventReader)
             throws ParsingException {
         super.parseRequiredAttributes(startElement);
@@ -105,20 +99,7 @@ public class SAMLXACMLRequestParser extends SAMLRequestAbstractParser implements
             String tag = StaxParserUtil.getStartElementName(startElement);
 
             if (tag.equals(JBossSAMLConstants.REQUEST.get())) {
-                Element xacmlRequest = StaxParserUtil.getDOMElement(xmlEventReader);
-                // xacml request
-                String xacmlPath = "org.jboss.security.xacml.core.model.context";
-                try {
-                    JAXBContext jaxb = JAXBContext.newInstance(xacmlPath);
-                    Unmarshaller un = jaxb.createUnmarshaller();
-                    un.setEventHandler(new javax.xml.bind.helpers.DefaultValidationEventHandler());
-                    JAXBElement<RequestType> jaxbRequestType = (JAXBElement<RequestType>) un.unmarshal(DocumentUtil
-                            .getNodeAsStream(xacmlRequest));
-                    RequestType req = jaxbRequestType.getValue();
-                    xacmlQuery.setRequest(req);
-                } catch (Exception e) {
-                    throw logger.parserException(e);
-                }
+                xacmlQuery.setRequest(SAMLXACMLUtil.parseXACMLRequest(xmlEventReader));
             }
         }
         return xacmlQuery;
@@ -0,0 +1,329 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.parsers.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.XMLEvent;
+
+import org.picketlink.identity.federation.core.util.XMLFactoryUtil;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * <p>
+ * An {@code XMLEventReader} that walks a DOM tree instead of reading a stream, so that a document that has already been
+ * parsed into a DOM can be handed to the stax based parsers without being serialized and parsed again.
+ * </p>
+ * <p>
+ * The events are equivalent to the ones produced by the reader returned by
+ * {@link StaxParserUtil#getXMLEventReader(java.io.InputStream)}: adjacent text and CDATA sections are coalesced and the
+ * namespace declarations are reported as {@code Namespace}s instead of attributes. The DOM must be namespace aware and must
+ * not be modified while it is being read.
+ * </p>
+ */
+public class DOMXMLEventReader implements XMLEventReader {
+
+    private final XMLEventFactory eventFactory = XMLFactoryUtil.getXMLEventFactory();
+
+    private final Node root;
+
+    private Node current;
+
+    // whether all the children of the current node have been read
+    private boolean leaving;
+
+    private boolean started;
+
+    private boolean finished;
+
+    private XMLEvent peeked;
+
+    public DOMXMLEventReader(Node node) {
+        if (node instanceof Document)
+            node = ((Document) node).getDocumentElement();
+        if (node == null)
+            throw new IllegalArgumentException("node");
+        this.root = node;
+        this.current = node;
+    }
+
+    public XMLEvent nextEvent() throws XMLStreamException {
+        XMLEvent event = peek();
+        if (event == null)
+            throw new NoSuchElementException();
+        peeked = null;
+        return event;
+    }
+
+    public boolean hasNext() {
+        return peeked != null || !finished;
+    }
+
+    public XMLEvent peek() throws XMLStreamException {
+        if (peeked == null)
+            peeked = advance();
+        return peeked;
+    }
+
+    public Object next() {
+        try {
+            return nextEvent();
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    public String getElementText() throws XMLStreamException {
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+            XMLEvent event = nextEvent();
+            switch (event.getEventType()) {
+                case XMLEvent.CHARACTERS:
+                case XMLEvent.CDATA:
+                case XMLEvent.SPACE:
+                    builder.append(event.asCharacters().getData());
+                    break;
+                case XMLEvent.COMMENT:
+                case XMLEvent.PROCESSING_INSTRUCTION:
+                    break;
+                case XMLEvent.END_ELEMENT:
+                    return builder.toString();
+                default:
+                    throw new XMLStreamException("Text only element expected, found event " + event.getEventType());
+            }
+        }
+    }
+
+    public XMLEvent nextTag() throws XMLStreamException {
+        while (hasNext()) {
+            XMLEvent event = nextEvent();
+            if (event.isStartElement() || event.isEndElement())
+                return event;
+            if (event.isCharacters() && !((Characters) event).isWhiteSpace())
+                throw new XMLStreamException("Start or end tag expected, found text");
+        }
+        throw new XMLStreamException("Start or end tag expected, found end of document");
+    }
+
+    public Object getProperty(String name) throws IllegalArgumentException {
+        return null;
+    }
+
+    public void close() throws XMLStreamException {
+        finished = true;
+        peeked = null;
+    }
+
+    private XMLEvent advance() {
+        if (!started) {
+            started = true;
+            return eventFactory.createStartDocument();
+        }
+        if (finished)
+            return null;
+
+        while (true) {
+            if (current == null) {
+                finished = true;
+                return eventFactory.createEndDocument();
+            }
+
+            Node node = current;
+            if (leaving) {
+                moveToNext();
+                if (node.getNodeType() == Node.ELEMENT_NODE)
+                    return endElement((Element) node);
+                continue;
+            }
+
+            switch (node.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    XMLEvent start = startElement((Element) node);
+                    if (node.hasChildNodes())
+                        current = node.getFirstChild();
+                    else
+                        leaving = true;
+                    return start;
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                    StringBuilder text = new StringBuilder(node.getNodeValue());
+                    Node sibling = node.getNextSibling();
+                    while (sibling != null
+                            && (sibling.getNodeType() == Node.TEXT_NODE || sibling.getNodeType() == Node.CDATA_SECTION_NODE)) {
+                        text.append(sibling.getNodeValue());
+                        current = sibling;
+                        sibling = sibling.getNextSibling();
+                    }
+                    leaving = true;
+                    return eventFactory.createCharacters(text.toString());
+                case Node.COMMENT_NODE:
+                    leaving = true;
+                    return eventFactory.createComment(node.getNodeValue());
+                case Node.PROCESSING_INSTRUCTION_NODE:
+                    leaving = true;
+                    return eventFactory.createProcessingInstruction(node.getNodeName(), node.getNodeValue());
+                case Node.ENTITY_REFERENCE_NODE:
+                    if (node.hasChildNodes())
+                        current = node.getFirstChild();
+                    else
+                        leaving = true;
+                    break;
+                default:
+                    leaving = true;
+            }
+        }
+    }
+
+    private void moveToNext() {
+        if (current == root) {
+            current = null;
+        } else if (current.getNextSibling() != null) {
+            current = current.getNextSibling();
+            leaving = false;
+        } else {
+            current = current.getParentNode();
+        }
+    }
+
+    private XMLEvent startElement(Element element) {
+        List<Attribute> attributes = new ArrayList<Attribute>();
+
+        NamedNodeMap attrs = element.getAttributes();
+        for (int i = 0; i < attrs.getLength(); i++) {
+            Attr attr = (Attr) attrs.item(i);
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr.getNamespaceURI()))
+                continue;
+            if (attr.getNamespaceURI() != null)
+                attributes.add(eventFactory.createAttribute(prefix(attr), attr.getNamespaceURI(), attr.getLocalName(),
+                        attr.getValue()));
+            else
+                attributes.add(eventFactory.createAttribute(localName(attr), attr.getValue()));
+        }
+
+        return eventFactory.createStartElement(prefix(element), uri(element), localName(element), attributes.iterator(),
+                namespaces(element), new DOMNamespaceContext(element));
+    }
+
+    private XMLEvent endElement(Element element) {
+        return eventFactory.createEndElement(prefix(element), uri(element), localName(element), namespaces(element));
+    }
+
+    private Iterator<Namespace> namespaces(Element element) {
+        List<Namespace> namespaces = new ArrayList<Namespace>();
+        // the root also gets the declarations inherited from its ancestors, as it would if it was serialized
+        Set<String> declared = new HashSet<String>();
+        for (Node node = element; node instanceof Element; node = node.getParentNode()) {
+            NamedNodeMap attrs = node.getAttributes();
+            for (int i = 0; i < attrs.getLength(); i++) {
+                Attr attr = (Attr) attrs.item(i);
+                if (!XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr.getNamespaceURI()) || !declared.add(attr.getName()))
+                    continue;
+                if (XMLConstants.XMLNS_ATTRIBUTE.equals(attr.getName()))
+                    namespaces.add(eventFactory.createNamespace(attr.getValue()));
+                else
+                    namespaces.add(eventFactory.createNamespace(attr.getLocalName(), attr.getValue()));
+            }
+            if (element != root)
+                break;
+        }
+        return namespaces.iterator();
+    }
+
+    private static String prefix(Node node) {
+        String prefix = node.getPrefix();
+        return prefix == null ? XMLConstants.DEFAULT_NS_PREFIX : prefix;
+    }
+
+    private static String uri(Node node) {
+        String uri = node.getNamespaceURI();
+        return uri == null ? XMLConstants.NULL_NS_URI : uri;
+    }
+
+    private static String localName(Node node) {
+        String localName = node.getLocalName();
+        return localName == null ? node.getNodeName() : localName;
+    }
+
+    /**
+     * Resolves the prefixes in scope of an element, as required by the attribute values that hold a QName (xsi:type)
+     */
+    private static class DOMNamespaceContext implements NamespaceContext {
+        private final Element element;
+
+        DOMNamespaceContext(Element element) {
+            this.element = element;
+        }
+
+        public String getNamespaceURI(String prefix) {
+            if (prefix == null)
+                throw new IllegalArgumentException("prefix");
+            if (XMLConstants.XML_NS_PREFIX.equals(prefix))
+                return XMLConstants.XML_NS_URI;
+            if (XMLConstants.XMLNS_ATTRIBUTE.equals(prefix))
+                return XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+            String uri = element.lookupNamespaceURI(prefix.length() == 0 ? null : prefix);
+            return uri == null ? XMLConstants.NULL_NS_URI : uri;
+        }
+
+        public String getPrefix(String namespaceURI) {
+            if (namespaceURI == null)
+                throw new IllegalArgumentException("namespaceURI");
+            if (XMLConstants.XML_NS_URI.equals(namespaceURI))
+                return XMLConstants.XML_NS_PREFIX;
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(namespaceURI))
+                return XMLConstants.XMLNS_ATTRIBUTE;
+            if (element.isDefaultNamespace(namespaceURI))
+                return XMLConstants.DEFAULT_NS_PREFIX;
+            return element.lookupPrefix(namespaceURI);
+        }
+
+        @SuppressWarnings("rawtypes")
+        public Iterator getPrefixes(String namespaceURI) {
+            String prefix = getPrefix(namespaceURI);
+            if (prefix == null)
+                return Collections.emptyList().iterator();
+            return Collections.singletonList(prefix).iterator();
+        }
+    }
+}
@@ -29,7 +29,6 @@ import java.io.InputStream;
 import javax.xml.namespace.QName;
 import javax.xml.stream.Location;
 import javax.xml.stream.XMLEventReader;
-import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.EndElement;
@@ -50,8 +49,10 @@ import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
 import org.picketlink.identity.federation.core.util.JAXPValidationUtil;
 import org.picketlink.identity.federation.core.util.StringUtil;
 import org.picketlink.identity.federation.core.util.TransformerUtil;
+import org.picketlink.identity.federation.core.util.XMLFactoryUtil;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 /**
@@ -173,22 +174,25 @@ public class StaxParserUtil {
      * @return
      */
     public static XMLEventReader getXMLEventReader(InputStream is) {
-        XMLInputFactory xmlInputFactory = null;
         XMLEventReader xmlEventReader = null;
         try {
-            xmlInputFactory = XMLInputFactory.newInstance();
-            xmlInputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
-            xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
-            xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
-            xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
-
-            xmlEventReader = xmlInputFactory.createXMLEventReader(is);
+            xmlEventReader = XMLFactoryUtil.getXMLInputFactory().createXMLEventReader(is);
         } catch (Exception ex) {
             throw new RuntimeException(ex);
         }
         return xmlEventReader;
     }
 
+    /**
+     * Get an XML event reader that walks an already parsed DOM node
+     *
+     * @param node a {@code Document} or an {@code Element}
+     * @return
+     */
+    public static XMLEventReader getXMLEventReader(Node node) {
+        return new DOMXMLEventReader(node);
+    }
+
     /**
      * Given a {@code Location}, return a formatted string [lineNum,colNum]
      *
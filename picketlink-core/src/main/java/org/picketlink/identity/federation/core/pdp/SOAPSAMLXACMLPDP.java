@@ -29,6 +29,7 @@ import java.net.URL;
 import java.security.PrivilegedActionException;
 
 import javax.annotation.Resource;
+import javax.xml.bind.JAXBException;
 import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.Source;
 import javax.xml.transform.dom.DOMSource;
@@ -41,8 +42,10 @@ import org.jboss.security.xacml.interfaces.PolicyDecisionPoint;
 import org.picketlink.identity.federation.PicketLinkLogger;
 import org.picketlink.identity.federation.PicketLinkLoggerFactory;
 import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.SAMLXACMLUtil;
 import org.picketlink.identity.federation.core.saml.v2.util.SOAPSAMLXACMLUtil;
 import org.picketlink.identity.federation.core.saml.v2.writers.SAMLResponseWriter;
+import org.picketlink.identity.federation.core.util.JAXBUtil;
 import org.picketlink.identity.federation.core.util.StaxUtil;
 import org.picketlink.identity.federation.core.util.SystemPropertiesUtil;
 import org.picketlink.identity.federation.saml.v2.protocol.ResponseType;
@@ -65,28 +68,51 @@ public class SOAPSAMLXACMLPDP implements Provider<Source> {
 
     protected String policyConfigFileName = "policyConfig.xml";
 
-    protected PolicyDecisionPoint pdp;
+    protected volatile PolicyDecisionPoint pdp;
+
+    /**
+     * Cache of the decisions of the pdp, configured by the {@link XACMLDecisionCache#CACHE_SIZE} and
+     * {@link XACMLDecisionCache#CACHE_TTL} system properties. Null when disabled.
+     */
+    protected XACMLDecisionCache decisionCache = XACMLDecisionCache.fromSystemProperties();
 
     protected String issuer = "PicketLinkPDP";
 
     public SOAPSAMLXACMLPDP() {
+        reloadPolicies();
+
+        if (JAXBUtil.isWarmUpEnabled()) {
+            try {
+                SAMLXACMLUtil.warmUp();
+            } catch (JAXBException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Load the policy configuration again into a new PDP, dropping the cached decisions of the previous one
+     */
+    public void reloadPolicies() {
+        PolicyDecisionPoint newPdp;
         try {
-            pdp = getPDP();
+            newPdp = getPDP();
         } catch (PrivilegedActionException e) {
             throw new RuntimeException(e);
         }
+        if (decisionCache != null)
+            decisionCache.setPolicyDecisionPoint(newPdp);
+        pdp = newPdp;
     }
 
     public Source invoke(Source request) {
         try {
             Document doc = (Document) DocumentUtil.getNodeFromSource(request);
             
-            if (logger.isTraceEnabled()) {
-                logger.trace("XACML Received Message: " + DocumentUtil.asString(doc));
-            }
+            logger.tracef("XACML Received Message: %s", doc);
             
             XACMLAuthzDecisionQueryType xacmlQuery = SOAPSAMLXACMLUtil.getXACMLQueryType(doc);
-            ResponseType samlResponseType = SOAPSAMLXACMLUtil.handleXACMLQuery(pdp, issuer, xacmlQuery);
+            ResponseType samlResponseType = SOAPSAMLXACMLUtil.handleXACMLQuery(pdp, decisionCache, issuer, xacmlQuery);
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
             XMLStreamWriter xmlStreamWriter = StaxUtil.getXMLStreamWriter(baos);
 
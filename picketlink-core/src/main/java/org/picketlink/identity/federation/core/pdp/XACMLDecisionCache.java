@@ -0,0 +1,333 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.pdp;
+
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.security.xacml.core.model.context.AttributeType;
+import org.jboss.security.xacml.core.model.context.AttributeValueType;
+import org.jboss.security.xacml.core.model.context.DecisionType;
+import org.jboss.security.xacml.core.model.context.RequestType;
+import org.jboss.security.xacml.core.model.context.ResourceType;
+import org.jboss.security.xacml.core.model.context.ResultType;
+import org.jboss.security.xacml.core.model.context.SubjectType;
+import org.jboss.security.xacml.interfaces.PolicyDecisionPoint;
+import org.picketlink.identity.federation.PicketLinkLogger;
+import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+import org.picketlink.identity.federation.core.util.Base64;
+
+/**
+ * <p>
+ * Bounded cache of the XACML decisions of a {@link PolicyDecisionPoint}, so that a query asking the same question again
+ * does not go through the evaluation of the policies.
+ * </p>
+ * <p>
+ * Entries are keyed by a SHA-256 digest of a canonical form of the request: the subjects, resources, action and
+ * environment with their attributes and values, where the order of the attributes and of the values of an attribute
+ * does not matter. Requests with a ResourceContent or with attribute values that are not plain text are not cached.
+ * Indeterminate decisions are not cached either.
+ * </p>
+ * <p>
+ * An entry expires after the configured time to live, which also bounds how long a decision that depends on the
+ * current time, or on attributes resolved by the PDP itself, may be served. When full, the oldest entry is evicted.
+ * Lookups do not lock: only the decisions being added are serialized. Decisions are only served for the PDP given to {@link #setPolicyDecisionPoint(PolicyDecisionPoint)}: when the
+ * policy configuration is reloaded into a new PDP, the decisions of the previous one are dropped, including those of
+ * evaluations still running against it.
+ * </p>
+ */
+public class XACMLDecisionCache {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    /**
+     * System property holding the maximum number of cached decisions. Defaults to 0, no cache.
+     */
+    public static final String CACHE_SIZE = "picketlink.xacml.decision.cache.size";
+
+    /**
+     * System property holding the time to live of a cached decision, in milliseconds. Defaults to 60s.
+     */
+    public static final String CACHE_TTL = "picketlink.xacml.decision.cache.ttl";
+
+    public static final long DEFAULT_TTL = 60000;
+
+    private final int maxEntries;
+
+    private final long timeToLive;
+
+    private volatile Decisions decisions;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a cache configured by the {@link #CACHE_SIZE} and {@link #CACHE_TTL} system properties
+     *
+     * @return the cache, or null when no size is configured
+     */
+    public static XACMLDecisionCache fromSystemProperties() {
+        int maxEntries = Integer.parseInt(SecurityActions.getSystemProperty(CACHE_SIZE, "0"));
+        if (maxEntries <= 0)
+            return null;
+        long timeToLive = Long.parseLong(SecurityActions.getSystemProperty(CACHE_TTL, String.valueOf(DEFAULT_TTL)));
+        return new XACMLDecisionCache(maxEntries, timeToLive);
+    }
+
+    /**
+     * @param maxEntries maximum number of decisions kept
+     * @param timeToLive maximum time a decision is kept, in milliseconds
+     */
+    public XACMLDecisionCache(int maxEntries, long timeToLive) {
+        this.maxEntries = maxEntries;
+        this.timeToLive = timeToLive;
+        this.decisions = new Decisions(null);
+    }
+
+    /**
+     * Set the PDP whose decisions are cached, dropping all the cached decisions
+     *
+     * @param pdp
+     */
+    public void setPolicyDecisionPoint(PolicyDecisionPoint pdp) {
+        decisions = new Decisions(pdp);
+    }
+
+    /**
+     * Drop all the cached decisions
+     */
+    public void invalidateAll() {
+        setPolicyDecisionPoint(decisions.pdp);
+    }
+
+    /**
+     * Key of a request
+     *
+     * @param request
+     * @return the key, or null when the request is not cached
+     */
+    public String getKey(RequestType request) {
+        if (request == null)
+            return null;
+
+        StringBuilder canonical = new StringBuilder();
+
+        List<String> subjects = new ArrayList<String>();
+        for (SubjectType subject : request.getSubject()) {
+            StringBuilder builder = new StringBuilder();
+            append(builder, subject.getSubjectCategory());
+            if (!appendAttributes(builder, subject.getAttribute()))
+                return null;
+            subjects.add(builder.toString());
+        }
+        appendSorted(canonical.append('S'), subjects);
+
+        List<String> resources = new ArrayList<String>();
+        for (ResourceType resource : request.getResource()) {
+            if (resource.getResourceContent() != null)
+                return null;
+            StringBuilder builder = new StringBuilder();
+            if (!appendAttributes(builder, resource.getAttribute()))
+                return null;
+            resources.add(builder.toString());
+        }
+        appendSorted(canonical.append('R'), resources);
+
+        canonical.append('A');
+        if (request.getAction() != null && !appendAttributes(canonical, request.getAction().getAttribute()))
+            return null;
+
+        canonical.append('E');
+        if (request.getEnvironment() != null && !appendAttributes(canonical, request.getEnvironment().getAttribute()))
+            return null;
+
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return Base64.encodeBytes(messageDigest.digest(canonical.toString().getBytes("UTF-8")));
+        } catch (Exception e) {
+            logger.trace("Unable to digest XACML request", e);
+            return null;
+        }
+    }
+
+    /**
+     * Get the cached decision of a request
+     *
+     * @param pdp the PDP the decision is asked to
+     * @param key the key of the request, see {@link #getKey(RequestType)}
+     * @return a copy of the decision, or null when none is cached. The status and obligations of the copy are shared with
+     *         the cached decision and must not be modified.
+     */
+    public ResultType get(PolicyDecisionPoint pdp, String key) {
+        Decisions current = decisions;
+        Entry entry = null;
+        if (key != null && current.pdp == pdp) {
+            entry = current.entries.get(key);
+            // an expired entry is replaced by the next decision, or evicted
+            if (entry != null && System.currentTimeMillis() >= entry.expiration)
+                entry = null;
+        }
+
+        if (entry != null) {
+            hits.incrementAndGet();
+            return copy(entry.result);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Cache the decision a PDP made on a request
+     *
+     * @param pdp the PDP that made the decision
+     * @param key the key of the request, see {@link #getKey(RequestType)}
+     * @param result the decision, copied so that the caller may go on modifying it
+     */
+    public void put(PolicyDecisionPoint pdp, String key, ResultType result) {
+        if (key == null || result == null || result.getDecision() == DecisionType.INDETERMINATE)
+            return;
+
+        Decisions current = decisions;
+        if (current.pdp != pdp)
+            return;
+        synchronized (current) {
+            if (current.entries.put(key, new Entry(copy(result), System.currentTimeMillis() + timeToLive)) == null)
+                current.keys.add(key);
+            while (current.keys.size() > maxEntries)
+                current.entries.remove(current.keys.poll());
+        }
+    }
+
+    /**
+     * Number of cached decisions, including the expired ones that have not been replaced or evicted yet
+     *
+     * @return
+     */
+    public int size() {
+        return decisions.entries.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Ratio of the lookups that found a decision
+     *
+     * @return
+     */
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    private static ResultType copy(ResultType result) {
+        ResultType copy = new ResultType();
+        copy.setDecision(result.getDecision());
+        copy.setStatus(result.getStatus());
+        copy.setObligations(result.getObligations());
+        copy.setResourceId(result.getResourceId());
+        return copy;
+    }
+
+    private boolean appendAttributes(StringBuilder builder, List<AttributeType> attributes) {
+        List<String> canonical = new ArrayList<String>(attributes.size());
+        for (AttributeType attribute : attributes) {
+            StringBuilder attributeBuilder = new StringBuilder();
+            append(attributeBuilder, attribute.getAttributeId());
+            append(attributeBuilder, attribute.getDataType());
+            append(attributeBuilder, attribute.getIssuer());
+
+            List<String> values = new ArrayList<String>(attribute.getAttributeValue().size());
+            for (AttributeValueType value : attribute.getAttributeValue()) {
+                if (!value.getOtherAttributes().isEmpty())
+                    return false;
+                StringBuilder valueBuilder = new StringBuilder();
+                for (Object content : value.getContent()) {
+                    if (content instanceof String == false)
+                        return false;
+                    valueBuilder.append((String) content);
+                }
+                values.add(valueBuilder.toString());
+            }
+            appendSorted(attributeBuilder, values);
+            canonical.add(attributeBuilder.toString());
+        }
+        appendSorted(builder, canonical);
+        return true;
+    }
+
+    /**
+     * Append sorted strings, each prefixed by its length so that no two lists give the same form
+     */
+    private void appendSorted(StringBuilder builder, List<String> values) {
+        Collections.sort(values);
+        builder.append(values.size()).append('[');
+        for (String value : values)
+            append(builder, value);
+        builder.append(']');
+    }
+
+    private void append(StringBuilder builder, String value) {
+        if (value == null)
+            builder.append('-');
+        else
+            builder.append(value.length()).append(':').append(value);
+    }
+
+    private static class Decisions {
+        private final PolicyDecisionPoint pdp;
+
+        private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+        // keys in the order they were added, guarded by the Decisions
+        private final Queue<String> keys = new ArrayDeque<String>();
+
+        private Decisions(PolicyDecisionPoint pdp) {
+            this.pdp = pdp;
+        }
+    }
+
+    private static class Entry {
+        private final ResultType result;
+
+        private final long expiration;
+
+        private Entry(ResultType result, long expiration) {
+            this.result = result;
+            this.expiration = expiration;
+        }
+    }
+}
@@ -0,0 +1,477 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.saml.md.providers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletContext;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.stream.XMLEventReader;
+
+import org.picketlink.identity.federation.PicketLinkLogger;
+import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+import org.picketlink.identity.federation.core.config.KeyValueType;
+import org.picketlink.identity.federation.core.config.MetadataProviderType;
+import org.picketlink.identity.federation.core.config.ProviderType;
+import org.picketlink.identity.federation.core.exceptions.ParsingException;
+import org.picketlink.identity.federation.core.interfaces.TrustKeyManager;
+import org.picketlink.identity.federation.core.parsers.saml.metadata.SAMLEntitiesDescriptorParser;
+import org.picketlink.identity.federation.core.parsers.saml.metadata.SAMLEntitiesDescriptorParser.EntityDescriptorCallback;
+import org.picketlink.identity.federation.core.parsers.util.DOMXMLEventReader;
+import org.picketlink.identity.federation.core.parsers.util.StaxParserUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.SAMLMetadataUtil;
+import org.picketlink.identity.federation.core.util.CoreConfigUtil;
+import org.picketlink.identity.federation.core.util.XMLSignatureUtil;
+import org.picketlink.identity.federation.saml.v2.metadata.EndpointType;
+import org.picketlink.identity.federation.saml.v2.metadata.EntityDescriptorType;
+import org.picketlink.identity.federation.saml.v2.metadata.IndexedEndpointType;
+import org.picketlink.identity.federation.saml.v2.metadata.KeyDescriptorType;
+import org.picketlink.identity.federation.saml.v2.metadata.KeyTypes;
+import org.picketlink.identity.federation.saml.v2.metadata.SPSSODescriptorType;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * <p>
+ * Registry of the SP metadata known to an IDP.
+ * </p>
+ * <p>
+ * The metadata is indexed by entityID and by assertion consumer service location. Every load builds a new immutable
+ * snapshot which replaces the previous one, so lookups never lock. When the metadata comes from a file, the aggregate is
+ * streamed one EntityDescriptor at a time and can be refreshed in the background every {@link #REFRESH_INTERVAL}
+ * milliseconds. A failed refresh keeps the previous snapshot.
+ * </p>
+ * <p>
+ * The validating keys declared by the signing key descriptors are only trusted when the metadata document carries an
+ * enveloped signature verified with the key set by {@link #setMetadataSigningKey(PublicKey)}, the key of the
+ * {@link #METADATA_SIGNING_ALIAS} option. Metadata that fails this check is not loaded. Without a metadata signing key,
+ * the metadata is loaded without its keys.
+ * </p>
+ */
+public class SPMetadataRegistry {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    /**
+     * Metadata provider option holding the refresh interval, in milliseconds. Zero or no value disables the refresh.
+     */
+    public static final String REFRESH_INTERVAL = "RefreshInterval";
+
+    /**
+     * Metadata provider option holding the alias, in the trust key manager, of the certificate that signs the metadata
+     */
+    public static final String METADATA_SIGNING_ALIAS = "MetadataSigningAlias";
+
+    private volatile Snapshot snapshot = new Snapshot(false);
+
+    private volatile PublicKey metadataSigningKey;
+
+    private URL source;
+
+    private long lastModified = -1;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a registry for the metadata provider of an IDP configuration. File based providers are streamed from the
+     * servlet context, other providers are asked for their metadata once. When the {@link #METADATA_SIGNING_ALIAS} option
+     * is set, the file must be signed by the certificate of that alias in the key manager.
+     *
+     * @param providerType
+     * @param servletContext
+     * @param keyManager may be null when no metadata signing alias is configured
+     * @return
+     * @throws ParsingException
+     * @throws IOException
+     * @throws GeneralSecurityException if the metadata signing key cannot be read from the key manager
+     */
+    public static SPMetadataRegistry create(ProviderType providerType, ServletContext servletContext,
+            TrustKeyManager keyManager) throws ParsingException, IOException, GeneralSecurityException {
+        SPMetadataRegistry registry = new SPMetadataRegistry();
+        MetadataProviderType metadataProviderType = providerType.getMetaDataProvider();
+
+        if (metadataProviderType == null)
+            return registry;
+
+        Map<String, String> options = new HashMap<String, String>();
+        List<KeyValueType> keyValues = metadataProviderType.getOption();
+        if (keyValues != null) {
+            for (KeyValueType kvt : keyValues)
+                options.put(kvt.getKey(), kvt.getValue());
+        }
+
+        String signingAlias = options.get(METADATA_SIGNING_ALIAS);
+        if (signingAlias != null) {
+            PublicKey signingKey = keyManager != null ? keyManager.getPublicKey(signingAlias) : null;
+            if (signingKey == null)
+                throw logger.nullValueError("SP Metadata signing key " + signingAlias);
+            registry.setMetadataSigningKey(signingKey);
+        }
+
+        String fqn = metadataProviderType.getClassName();
+        String fileName = options.get(AbstractFileBasedMetadataProvider.FILENAME_KEY);
+        URL url = fileName != null ? servletContext.getResource(fileName) : null;
+
+        if (url != null && (FileBasedEntitiesMetadataProvider.class.getName().equals(fqn)
+                || FileBasedEntityMetadataProvider.class.getName().equals(fqn))) {
+            registry.setSource(url);
+            if (!registry.refresh())
+                throw logger.nullValueError("SP Metadata " + fileName);
+
+            String interval = options.get(REFRESH_INTERVAL);
+            if (interval != null)
+                registry.start(Long.parseLong(interval));
+        } else {
+            registry.load(CoreConfigUtil.getMetadataConfiguration(providerType, servletContext));
+        }
+        return registry;
+    }
+
+    /**
+     * Set the location the metadata is read from by {@link #refresh()}
+     *
+     * @param source
+     */
+    public synchronized void setSource(URL source) {
+        this.source = source;
+        this.lastModified = -1;
+    }
+
+    /**
+     * Set the key that verifies the signature of the metadata read by {@link #load(InputStream)}
+     *
+     * @param metadataSigningKey
+     */
+    public void setMetadataSigningKey(PublicKey metadataSigningKey) {
+        this.metadataSigningKey = metadataSigningKey;
+    }
+
+    /**
+     * Replace the registry content with the given entity descriptors. Their signatures cannot be verified, so their keys
+     * are not trusted.
+     *
+     * @param entityDescriptors
+     */
+    public void load(List<EntityDescriptorType> entityDescriptors) {
+        Snapshot newSnapshot = new Snapshot(false);
+        if (entityDescriptors != null) {
+            for (EntityDescriptorType entityDescriptor : entityDescriptors)
+                newSnapshot.add(entityDescriptor);
+        }
+        this.snapshot = newSnapshot;
+    }
+
+    /**
+     * Replace the registry content with the metadata read from the stream, which may hold a single EntityDescriptor or an
+     * EntitiesDescriptor aggregate. When a metadata signing key is set, the document must carry a valid enveloped signature
+     * made with that key, and the keys it declares are trusted.
+     *
+     * @param metadata
+     * @throws ParsingException if the metadata cannot be parsed or its signature is not valid
+     */
+    public void load(InputStream metadata) throws ParsingException {
+        PublicKey signingKey = this.metadataSigningKey;
+        XMLEventReader xmlEventReader;
+        if (signingKey != null) {
+            // the signature covers the whole document, which must be in memory to be verified
+            Document document;
+            try {
+                document = DocumentUtil.getDocument(metadata);
+            } catch (ParsingException e) {
+                throw e;
+            } catch (Exception e) {
+                throw logger.parserError(e);
+            }
+            if (!isSigned(document, signingKey))
+                throw logger.parserError(logger.signatureInvalidError("SP Metadata signature is not valid", null));
+            xmlEventReader = new DOMXMLEventReader(document);
+        } else {
+            xmlEventReader = StaxParserUtil.getXMLEventReader(metadata);
+        }
+
+        final Snapshot newSnapshot = new Snapshot(signingKey != null);
+        new SAMLEntitiesDescriptorParser().parse(xmlEventReader, new EntityDescriptorCallback() {
+            public void entityDescriptor(EntityDescriptorType entityDescriptor) {
+                newSnapshot.add(entityDescriptor);
+            }
+        });
+        this.snapshot = newSnapshot;
+    }
+
+    /**
+     * Check that the document element carries the first signature of the document, that this signature references the
+     * whole document and that it is valid for the given key
+     */
+    private static boolean isSigned(Document document, PublicKey signingKey) {
+        Element root = document.getDocumentElement();
+        NodeList signatures = document.getElementsByTagNameNS(XMLSignature.XMLNS, "Signature");
+        if (signatures.getLength() == 0 || signatures.item(0).getParentNode() != root)
+            return false;
+
+        NodeList references = ((Element) signatures.item(0)).getElementsByTagNameNS(XMLSignature.XMLNS, "Reference");
+        if (references.getLength() != 1)
+            return false;
+        String uri = ((Element) references.item(0)).getAttribute("URI");
+        String id = root.getAttribute("ID");
+        if (uri.length() > 0 && (id.length() == 0 || !uri.equals("#" + id)))
+            return false;
+
+        try {
+            return XMLSignatureUtil.validate(document, signingKey);
+        } catch (Exception e) {
+            logger.samlMetaDataServiceProviderLoadingError(e);
+            return false;
+        }
+    }
+
+    /**
+     * Reload the metadata from the source, unless the source reports that it has not been modified since the last load.
+     * On failure the current content is kept.
+     *
+     * @return false if the metadata could not be loaded
+     */
+    public synchronized boolean refresh() {
+        if (source == null)
+            return false;
+
+        InputStream is = null;
+        try {
+            URLConnection connection = source.openConnection();
+            long modified = connection.getLastModified();
+            is = connection.getInputStream();
+            if (modified > 0 && modified == lastModified)
+                return true;
+
+            load(is);
+            lastModified = modified;
+            logger.trace("Loaded metadata of " + size() + " service providers from " + source);
+            return true;
+        } catch (Exception e) {
+            logger.samlMetaDataServiceProviderLoadingError(e);
+            return false;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Refresh the metadata in the background
+     *
+     * @param interval refresh interval, in milliseconds. Zero or less does nothing.
+     */
+    public synchronized void start(long interval) {
+        if (interval <= 0 || scheduler != null)
+            return;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "PicketLink SP Metadata Refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                refresh();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the background refresh
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Get the SP descriptor for an issuer. The issuer is looked up as an entityID first, then as an assertion consumer
+     * service location, then as a single logout service location.
+     *
+     * @param issuer
+     * @return null if the issuer is unknown
+     */
+    public SPSSODescriptorType getSPDescriptor(String issuer) {
+        Snapshot current = this.snapshot;
+        String entityID = current.getEntityID(issuer);
+        return entityID != null ? current.spDescriptors.get(entityID) : null;
+    }
+
+    /**
+     * Get the entity descriptor for an entityID
+     *
+     * @param entityID
+     * @return
+     */
+    public EntityDescriptorType getEntityDescriptor(String entityID) {
+        return snapshot.entityIDs.get(entityID);
+    }
+
+    /**
+     * Get the entityID of the SP declaring the given assertion consumer service location
+     *
+     * @param location
+     * @return
+     */
+    public String getEntityIDByAssertionConsumerService(String location) {
+        return snapshot.acsIndex.get(location);
+    }
+
+    /**
+     * Get the location of the single logout service of an SP for a binding. The issuer is resolved as by
+     * {@link #getSPDescriptor(String)}.
+     *
+     * @param issuer
+     * @param binding the URI of the binding, such as the SOAP binding
+     * @return null if the issuer is unknown or has no single logout service for the binding
+     */
+    public String getSingleLogoutService(String issuer, String binding) {
+        SPSSODescriptorType spDescriptor = getSPDescriptor(issuer);
+        if (spDescriptor == null)
+            return null;
+        for (EndpointType slo : spDescriptor.getSingleLogoutService()) {
+            if (slo.getLocation() != null && slo.getBinding() != null && binding.equals(slo.getBinding().toString()))
+                return slo.getLocation().toString();
+        }
+        return null;
+    }
+
+    /**
+     * Get the signature validating keys declared in the signed metadata of an SP, in document order. The issuer is resolved
+     * as by {@link #getSPDescriptor(String)}. All the keys are returned, so that a message signed with any of them during a
+     * key rollover is accepted.
+     *
+     * @param issuer
+     * @return an empty list if none, or if the metadata signature was not verified
+     */
+    public List<PublicKey> getValidatingKeys(String issuer) {
+        Snapshot current = this.snapshot;
+        String entityID = current.getEntityID(issuer);
+        List<PublicKey> keys = entityID != null ? current.validatingKeys.get(entityID) : null;
+        if (keys == null)
+            return Collections.emptyList();
+        return keys;
+    }
+
+    /**
+     * Number of service providers in the registry
+     *
+     * @return
+     */
+    public int size() {
+        return snapshot.spDescriptors.size();
+    }
+
+    /**
+     * Content of the registry at a point in time. Only filled before being published.
+     */
+    private static class Snapshot {
+
+        // whether the signature of the metadata was verified, and its keys can be trusted
+        private final boolean trusted;
+
+        private final Map<String, EntityDescriptorType> entityIDs = new HashMap<String, EntityDescriptorType>();
+
+        private final Map<String, SPSSODescriptorType> spDescriptors = new HashMap<String, SPSSODescriptorType>();
+
+        private final Map<String, String> acsIndex = new HashMap<String, String>();
+
+        private final Map<String, String> sloIndex = new HashMap<String, String>();
+
+        private final Map<String, List<PublicKey>> validatingKeys = new HashMap<String, List<PublicKey>>();
+
+        private Snapshot(boolean trusted) {
+            this.trusted = trusted;
+        }
+
+        private String getEntityID(String issuer) {
+            if (entityIDs.containsKey(issuer))
+                return issuer;
+            String entityID = acsIndex.get(issuer);
+            return entityID != null ? entityID : sloIndex.get(issuer);
+        }
+
+        private void add(EntityDescriptorType entityDescriptor) {
+            String entityID = entityDescriptor.getEntityID();
+            SPSSODescriptorType spDescriptor = CoreConfigUtil.getSPDescriptor(entityDescriptor);
+            if (entityID == null || spDescriptor == null)
+                return;
+
+            entityIDs.put(entityID, entityDescriptor);
+            spDescriptors.put(entityID, spDescriptor);
+
+            for (IndexedEndpointType acs : spDescriptor.getAssertionConsumerService()) {
+                if (acs.getLocation() != null)
+                    acsIndex.put(acs.getLocation().toString(), entityID);
+            }
+
+            // participants are registered by their single logout service location when the IDP has their metadata
+            for (EndpointType slo : spDescriptor.getSingleLogoutService()) {
+                if (slo.getLocation() != null)
+                    sloIndex.put(slo.getLocation().toString(), entityID);
+            }
+
+            if (!trusted)
+                return;
+
+            List<PublicKey> keys = new ArrayList<PublicKey>();
+            for (KeyDescriptorType keyDescriptor : spDescriptor.getKeyDescriptor()) {
+                if (keyDescriptor.getUse() != null && keyDescriptor.getUse() != KeyTypes.SIGNING)
+                    continue;
+                try {
+                    X509Certificate certificate = SAMLMetadataUtil.getCertificate(keyDescriptor);
+                    if (certificate != null)
+                        keys.add(certificate.getPublicKey());
+                } catch (Exception e) {
+                    logger.samlMetaDataServiceProviderLoadingError(e);
+                }
+            }
+            if (!keys.isEmpty())
+                validatingKeys.put(entityID, Collections.unmodifiableList(keys));
+        }
+    }
+}
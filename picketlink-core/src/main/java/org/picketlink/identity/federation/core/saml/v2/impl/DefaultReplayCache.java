@@ -0,0 +1,187 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.saml.v2.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.picketlink.identity.federation.PicketLinkLogger;
+import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.ReplayCache;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerConfig;
+import org.picketlink.identity.federation.core.util.StringUtil;
+
+/**
+ * <p>
+ * In-memory {@link ReplayCache} with bounded memory.
+ * </p>
+ * <p>
+ * The IDs are spread over a fixed number of stripes, each one guarded by its own lock and keeping its IDs in insertion
+ * order. As messages are consumed shortly after being issued, insertion order is close to expiration order: expired IDs are
+ * purged from the head of the stripe when a new ID is added, so that both operations run in constant amortized time. When a
+ * stripe is full of IDs that have not expired yet, its oldest ID is evicted and counted in {@link #getEvictionCount()}, which
+ * should stay at zero for a correctly sized cache.
+ * </p>
+ */
+public class DefaultReplayCache implements ReplayCache {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    /**
+     * Handler option with the maximum number of IDs kept in memory
+     */
+    public static final String REPLAY_CACHE_MAX_ENTRIES = "REPLAY_CACHE_MAX_ENTRIES";
+
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    public static final int DEFAULT_STRIPES = 16;
+
+    private Stripe[] stripes;
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DefaultReplayCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param maxEntries maximum number of IDs kept in memory
+     * @param stripeCount number of stripes, rounded up to a power of two
+     */
+    public DefaultReplayCache(int maxEntries, int stripeCount) {
+        configure(maxEntries, stripeCount);
+    }
+
+    public void initialize(SAML2HandlerConfig handlerConfig) {
+        String maxEntries = (String) handlerConfig.getParameter(REPLAY_CACHE_MAX_ENTRIES);
+        if (StringUtil.isNotNull(maxEntries)) {
+            configure(Integer.parseInt(maxEntries), stripes.length);
+        }
+    }
+
+    public boolean add(String id, long notOnOrAfter) {
+        if (id == null)
+            throw logger.nullArgumentError("id");
+        return stripe(id).add(id, notOnOrAfter, System.currentTimeMillis());
+    }
+
+    public boolean contains(String id) {
+        if (id == null)
+            throw logger.nullArgumentError("id");
+        return stripe(id).contains(id, System.currentTimeMillis());
+    }
+
+    /**
+     * Number of IDs currently in the cache, including the expired ones that have not been purged yet
+     *
+     * @return
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Number of IDs that were evicted before their expiration because the cache was full
+     *
+     * @return
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private void configure(int maxEntries, int stripeCount) {
+        if (maxEntries <= 0)
+            throw logger.invalidArgumentError(REPLAY_CACHE_MAX_ENTRIES + "=" + maxEntries);
+        int count = 1;
+        while (count < stripeCount && count < maxEntries) {
+            count <<= 1;
+        }
+        Stripe[] newStripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            newStripes[i] = new Stripe((maxEntries + count - 1) / count);
+        }
+        this.stripes = newStripes;
+    }
+
+    private Stripe stripe(String id) {
+        int hash = id.hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[hash & (stripes.length - 1)];
+    }
+
+    private class Stripe {
+
+        private final int capacity;
+
+        private final LinkedHashMap<String, Long> entries;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.entries = new LinkedHashMap<String, Long>(Math.min(capacity, 1024) * 4 / 3 + 1);
+        }
+
+        synchronized boolean add(String id, long notOnOrAfter, long now) {
+            purge(now);
+
+            Long expiration = entries.get(id);
+            if (expiration != null) {
+                if (expiration.longValue() > now)
+                    return false;
+                entries.remove(id);
+            }
+
+            if (entries.size() >= capacity) {
+                Iterator<String> oldest = entries.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+                evictions.incrementAndGet();
+            }
+
+            entries.put(id, Long.valueOf(notOnOrAfter));
+            return true;
+        }
+
+        synchronized boolean contains(String id, long now) {
+            Long expiration = entries.get(id);
+            return expiration != null && expiration.longValue() > now;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        private void purge(long now) {
+            Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getValue().longValue() > now)
+                    break;
+                iterator.remove();
+            }
+        }
+    }
+}
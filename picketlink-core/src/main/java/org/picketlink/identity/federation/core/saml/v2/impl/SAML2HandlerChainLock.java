@@ -0,0 +1,205 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.saml.v2.impl;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.ThreadSafeSAML2Handler;
+
+/**
+ * <p>
+ * {@link Lock} guarding the execution of a SAML2 handler chain.
+ * </p>
+ * <p>
+ * Once configured with the handlers of the chain, the lock becomes a no-op if every handler implements
+ * {@link ThreadSafeSAML2Handler}, so that concurrent SSO requests are not serialized. Otherwise it behaves as a
+ * {@link ReentrantLock}. In both modes it records the number of acquisitions, how many of them had to wait for another
+ * thread and the total time spent waiting.
+ * </p>
+ */
+public class SAML2HandlerChainLock implements Lock {
+
+    private final ReentrantLock delegate = new ReentrantLock();
+
+    private volatile boolean concurrent = false;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+
+    private final AtomicLong contendedAcquisitions = new AtomicLong();
+
+    private final AtomicLong waitTimeNanos = new AtomicLong();
+
+    /**
+     * Check whether all the handlers declare themselves as thread safe
+     *
+     * @param handlers
+     * @return
+     */
+    public static boolean isThreadSafe(Set<SAML2Handler> handlers) {
+        if (handlers == null)
+            return true;
+        for (SAML2Handler handler : handlers) {
+            if (!(handler instanceof ThreadSafeSAML2Handler))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Configure the execution mode from the handlers of the chain. Should be called once the chain has been initialized
+     * and before any request is processed.
+     *
+     * @param handlers
+     */
+    public void configure(Set<SAML2Handler> handlers) {
+        this.concurrent = isThreadSafe(handlers);
+    }
+
+    /**
+     * Whether the chain is executed without mutual exclusion
+     *
+     * @return
+     */
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
+    public void setConcurrent(boolean concurrent) {
+        this.concurrent = concurrent;
+    }
+
+    public void lock() {
+        if (!concurrent && !delegate.tryLock()) {
+            contendedAcquisitions.incrementAndGet();
+            long start = System.nanoTime();
+            delegate.lock();
+            waitTimeNanos.addAndGet(System.nanoTime() - start);
+        }
+        acquisitions.incrementAndGet();
+    }
+
+    public void lockInterruptibly() throws InterruptedException {
+        if (!concurrent && !delegate.tryLock()) {
+            contendedAcquisitions.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                delegate.lockInterruptibly();
+            } finally {
+                waitTimeNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+        acquisitions.incrementAndGet();
+    }
+
+    public boolean tryLock() {
+        if (concurrent || delegate.tryLock()) {
+            acquisitions.incrementAndGet();
+            return true;
+        }
+        contendedAcquisitions.incrementAndGet();
+        return false;
+    }
+
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (concurrent || delegate.tryLock()) {
+            acquisitions.incrementAndGet();
+            return true;
+        }
+        contendedAcquisitions.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            boolean acquired = delegate.tryLock(time, unit);
+            if (acquired)
+                acquisitions.incrementAndGet();
+            return acquired;
+        } finally {
+            waitTimeNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Release the lock. Like {@link ReentrantLock#unlock()}, throws an {@link IllegalMonitorStateException} when the
+     * chain is serialized and the current thread does not hold the lock.
+     */
+    public void unlock() {
+        // a lock taken before the chain was switched to the concurrent mode is still released
+        if (!concurrent || delegate.isHeldByCurrentThread())
+            delegate.unlock();
+    }
+
+    public Condition newCondition() {
+        if (concurrent)
+            throw new UnsupportedOperationException();
+        return delegate.newCondition();
+    }
+
+    /**
+     * Number of times the lock was acquired (or bypassed in concurrent mode)
+     *
+     * @return
+     */
+    public long getAcquisitionCount() {
+        return acquisitions.get();
+    }
+
+    /**
+     * Number of acquisitions that found the lock held by another thread
+     *
+     * @return
+     */
+    public long getContendedAcquisitionCount() {
+        return contendedAcquisitions.get();
+    }
+
+    /**
+     * Total time threads spent waiting for the lock, in nanoseconds
+     *
+     * @return
+     */
+    public long getWaitTimeNanos() {
+        return waitTimeNanos.get();
+    }
+
+    /**
+     * Number of threads currently waiting for the lock
+     *
+     * @return
+     */
+    public int getQueueLength() {
+        return delegate.getQueueLength();
+    }
+
+    /**
+     * Reset the statistics
+     */
+    public void resetStatistics() {
+        acquisitions.set(0);
+        contendedAcquisitions.set(0);
+        waitTimeNanos.set(0);
+    }
+}
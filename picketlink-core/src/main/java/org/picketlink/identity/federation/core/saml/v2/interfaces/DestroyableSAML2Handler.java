@@ -0,0 +1,38 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.saml.v2.interfaces;
+
+/**
+ * <p>
+ * A {@link SAML2Handler} holding resources, such as threads, that outlive a request.
+ * </p>
+ * <p>
+ * The IDP valve, the IDP servlet and the SP filter call {@link #destroy()} on the handlers of their chain when they are
+ * stopped. Unlike {@link SAML2Handler#reset()}, which is called before each request, it is called once.
+ * </p>
+ */
+public interface DestroyableSAML2Handler extends SAML2Handler {
+    /**
+     * Release the resources of the handler
+     */
+    void destroy();
+}
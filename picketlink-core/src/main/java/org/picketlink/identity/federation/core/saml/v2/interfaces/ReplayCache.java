@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.saml.v2.interfaces;
+
+/**
+ * <p>
+ * Cache of the IDs of the SAML messages and assertions that have already been consumed, used to detect replays.
+ * </p>
+ * <p>
+ * An ID only needs to be remembered until the message carrying it expires, after which the message is rejected by the
+ * validity checks anyway. Implementations are used concurrently by all the requests of a deployment and must be thread safe.
+ * The in-memory implementation only protects a single node: deployments behind a load balancer without session affinity
+ * should provide an implementation backed by a store shared by all the nodes (database, distributed cache), in which
+ * {@link #add(String, long)} is atomic across the nodes.
+ * </p>
+ */
+public interface ReplayCache {
+
+    /**
+     * Initialize the cache from the configuration of the handler using it
+     *
+     * @param handlerConfig
+     */
+    void initialize(SAML2HandlerConfig handlerConfig);
+
+    /**
+     * Record an ID as consumed. The check and the insertion are atomic.
+     *
+     * @param id
+     * @param notOnOrAfter time in milliseconds after which the ID can be forgotten
+     * @return true if the ID was recorded, false if it had already been consumed and has not expired yet
+     */
+    boolean add(String id, long notOnOrAfter);
+
+    /**
+     * Check whether an ID has been consumed and has not expired yet
+     *
+     * @param id
+     * @return
+     */
+    boolean contains(String id);
+}
@@ -26,13 +26,13 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
@@ -50,6 +50,7 @@ import org.picketlink.identity.federation.core.exceptions.ConfigurationException
 import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
 import org.picketlink.identity.federation.core.util.TransformerUtil;
+import org.picketlink.identity.federation.core.util.XMLFactoryUtil;
 import org.w3c.dom.DOMConfiguration;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
@@ -69,8 +70,6 @@ public class DocumentUtil {
     
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
     
-    private static DocumentBuilderFactory documentBuilderFactory;
-
     /**
      * Check whether a node belongs to a document
      *
@@ -97,10 +96,9 @@ public class DocumentUtil {
      * @throws ParserConfigurationException
      */
     public static Document createDocument() throws ConfigurationException {
-        DocumentBuilderFactory factory = getDocumentBuilderFactory();
         DocumentBuilder builder;
         try {
-            builder = factory.newDocumentBuilder();
+            builder = XMLFactoryUtil.getDocumentBuilder();
         } catch (ParserConfigurationException e) {
             throw new ConfigurationException(e);
         }
@@ -116,8 +114,7 @@ public class DocumentUtil {
      */
     public static Document createDocumentWithBaseNamespace(String baseNamespace, String localPart) throws ProcessingException {
         try {
-            DocumentBuilderFactory factory = getDocumentBuilderFactory();
-            DocumentBuilder builder = factory.newDocumentBuilder();
+            DocumentBuilder builder = XMLFactoryUtil.getDocumentBuilder();
             return builder.getDOMImplementation().createDocument(baseNamespace, localPart, null);
         } catch (DOMException e) {
             throw logger.processingError(e);
@@ -151,8 +148,7 @@ public class DocumentUtil {
      */
     public static Document getDocument(Reader reader) throws ConfigurationException, ProcessingException, ParsingException {
         try {
-            DocumentBuilderFactory factory = getDocumentBuilderFactory();
-            DocumentBuilder builder = factory.newDocumentBuilder();
+            DocumentBuilder builder = XMLFactoryUtil.getDocumentBuilder();
             return builder.parse(new InputSource(reader));
         } catch (ParserConfigurationException e) {
             throw logger.configurationError(e);
@@ -173,9 +169,8 @@ public class DocumentUtil {
      * @throws SAXException
      */
     public static Document getDocument(File file) throws ConfigurationException, ProcessingException, ParsingException {
-        DocumentBuilderFactory factory = getDocumentBuilderFactory();
         try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
+            DocumentBuilder builder = XMLFactoryUtil.getDocumentBuilder();
             return builder.parse(file);
         } catch (ParserConfigurationException e) {
             throw logger.configurationError(e);
@@ -196,9 +191,8 @@ public class DocumentUtil {
      * @throws SAXException
      */
     public static Document getDocument(InputStream is) throws ConfigurationException, ProcessingException, ParsingException {
-        DocumentBuilderFactory factory = getDocumentBuilderFactory();
         try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
+            DocumentBuilder builder = XMLFactoryUtil.getDocumentBuilder();
             return builder.parse(is);
         } catch (ParserConfigurationException e) {
             throw logger.configurationError(e);
@@ -341,6 +335,23 @@ public class DocumentUtil {
         return new ByteArrayInputStream(baos.toByteArray());
     }
 
+    /**
+     * Serialize a DOM Node, UTF-8 encoded, into an output stream. The stream is not closed.
+     *
+     * @param node
+     * @param os
+     * @throws ConfigurationException
+     * @throws ProcessingException
+     */
+    public static void writeNode(Node node, OutputStream os) throws ConfigurationException, ProcessingException {
+        Transformer transformer = TransformerUtil.getTransformer();
+        try {
+            transformer.transform(new DOMSource(node), new StreamResult(os));
+        } catch (TransformerException e) {
+            throw logger.processingError(e);
+        }
+    }
+
     /**
      * Stream a DOM Node as a String
      *
@@ -439,6 +450,22 @@ public class DocumentUtil {
         return str;
     }
 
+    /**
+     * Get the node as a string while ignoring any exceptions
+     *
+     * @param node
+     * @return
+     */
+    public static String asString(Node node) {
+        String str = null;
+
+        try {
+            str = getNodeAsString(node);
+        } catch (Exception ignore) {
+        }
+        return str;
+    }
+
     /**
      * Log the nodes in the document
      *
@@ -483,19 +510,4 @@ public class DocumentUtil {
             visit(childNode, level + 1);
         }
     }
-
-    /**
-     * <p>Creates a namespace aware {@link DocumentBuilderFactory}. The returned instance is cached and shared between different threads.</p>
-     *
-     * @return
-     */
-    private static DocumentBuilderFactory getDocumentBuilderFactory() {
-        if (documentBuilderFactory == null) {
-            documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            documentBuilderFactory.setNamespaceAware(true);
-            documentBuilderFactory.setXIncludeAware(true);
-        }
-        
-        return documentBuilderFactory;
-    }
 }
\ No newline at end of file
@@ -34,8 +34,11 @@ import org.picketlink.identity.federation.core.exceptions.ConfigurationException
 import org.picketlink.identity.federation.core.handler.config.Handler;
 import org.picketlink.identity.federation.core.handler.config.Handlers;
 import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerConfig;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.DestroyableSAML2Handler;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerConfig;
+import org.picketlink.identity.federation.web.handlers.saml2.SAML2ReplayDetectionHandler;
+import org.picketlink.identity.federation.web.handlers.saml2.SAML2SignatureValidationHandler;
 
 /**
  * Deals with SAML2 Handlers
@@ -82,6 +85,38 @@ public class HandlerUtil {
                 throw logger.configurationError(e);
             }
         }
+        checkReplayDetection(handlerSet);
         return handlerSet;
     }
+
+    /**
+     * A replay detection handler records the ID of every message that reaches it, so it must not be reached by messages
+     * whose signature has not been validated yet: a forged message could consume the ID of a genuine one.
+     */
+    private static void checkReplayDetection(Set<SAML2Handler> handlers) throws ConfigurationException {
+        boolean signatureValidated = false;
+        boolean replayDetected = false;
+        for (SAML2Handler handler : handlers) {
+            if (handler instanceof SAML2SignatureValidationHandler) {
+                if (replayDetected)
+                    throw logger.samlHandlerReplayDetectionBeforeSignatureValidationError();
+                signatureValidated = true;
+            } else if (handler instanceof SAML2ReplayDetectionHandler && !signatureValidated)
+                replayDetected = true;
+        }
+    }
+
+    /**
+     * Destroy the handlers of a chain that hold resources outliving a request
+     *
+     * @param handlers may be null
+     */
+    public static void destroy(Set<SAML2Handler> handlers) {
+        if (handlers == null)
+            return;
+        for (SAML2Handler handler : handlers) {
+            if (handler instanceof DestroyableSAML2Handler)
+                ((DestroyableSAML2Handler) handler).destroy();
+        }
+    }
 }
\ No newline at end of file
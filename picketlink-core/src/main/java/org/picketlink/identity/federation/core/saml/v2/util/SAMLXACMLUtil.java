@@ -21,24 +21,40 @@
  */
 package org.picketlink.identity.federation.core.saml.v2.util;
 
-import java.io.ByteArrayOutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.helpers.DefaultValidationEventHandler;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.dom.DOMResult;
 
 import org.jboss.security.xacml.core.model.context.ObjectFactory;
 import org.jboss.security.xacml.core.model.context.RequestType;
 import org.jboss.security.xacml.core.model.context.ResponseType;
 import org.picketlink.identity.federation.PicketLinkLogger;
 import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
-import org.picketlink.identity.federation.core.util.TransformerUtil;
+import org.picketlink.identity.federation.core.util.JAXBUtil;
 import org.w3c.dom.Document;
 
 /**
+ * <p>
  * Utility for SAML and XACML
+ * </p>
+ * <p>
+ * The XACML context types are bound with JAXB. The {@link JAXBContext} is created once, and the marshallers and
+ * unmarshallers, which are not thread safe, are kept in pools once a message is processed, at most {@link #POOL_SIZE}
+ * idle instances of each. The XACML elements are read from and written to the stax reader and writer of the enclosing
+ * SAML message, without going through a separate document.
+ * </p>
  *
  * @author Anil.Saldhana@redhat.com
  * @since Dec 20, 2010
@@ -49,36 +65,162 @@ public class SAMLXACMLUtil {
     
     public final static String XACML_PKG_PATH = "org.jboss.security.xacml.core.model.context";
 
+    /**
+     * System property holding the maximum number of idle marshallers, and of idle unmarshallers, kept in the pools.
+     * Defaults to 16.
+     */
+    public static final String POOL_SIZE = "picketlink.xacml.jaxb.pool.size";
+
+    private static final int maxIdle = Integer.parseInt(SecurityActions.getSystemProperty(POOL_SIZE, "16"));
+
+    private static final ObjectFactory objectFactory = new ObjectFactory();
+
+    private static final Queue<Marshaller> marshallers = new ConcurrentLinkedQueue<Marshaller>();
+
+    private static final AtomicInteger idleMarshallers = new AtomicInteger();
+
+    private static final Queue<Unmarshaller> unmarshallers = new ConcurrentLinkedQueue<Unmarshaller>();
+
+    private static final AtomicInteger idleUnmarshallers = new AtomicInteger();
+
     public static JAXBContext getJAXBContext() throws JAXBException {
-        return JAXBContext.newInstance(XACML_PKG_PATH);
+        return JAXBUtil.getJAXBContext(XACML_PKG_PATH);
+    }
+
+    /**
+     * Build the XACML context and put a marshaller and an unmarshaller in the pools, so that the first query does not pay
+     * for the JAXB bootstrap
+     *
+     * @throws JAXBException
+     */
+    public static void warmUp() throws JAXBException {
+        release(getMarshaller());
+        release(getUnmarshaller());
     }
 
     public static Document getXACMLResponse(ResponseType responseType) throws ProcessingException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        JAXBElement<?> jaxb = (new ObjectFactory()).createResponse(responseType);
+        return marshal(objectFactory.createResponse(responseType));
+    }
+
+    public static Document getXACMLRequest(RequestType requestType) throws ProcessingException {
+        return marshal(objectFactory.createRequest(requestType));
+    }
+
+    /**
+     * Write a XACML response to a stax writer
+     *
+     * @param writer
+     * @param responseType
+     * @throws ProcessingException
+     */
+    public static void writeXACMLResponse(XMLStreamWriter writer, ResponseType responseType) throws ProcessingException {
+        marshal(objectFactory.createResponse(responseType), writer);
+    }
+
+    /**
+     * Write a XACML request to a stax writer
+     *
+     * @param writer
+     * @param requestType
+     * @throws ProcessingException
+     */
+    public static void writeXACMLRequest(XMLStreamWriter writer, RequestType requestType) throws ProcessingException {
+        marshal(objectFactory.createRequest(requestType), writer);
+    }
+
+    /**
+     * Read a XACML response from a stax reader whose next event is the start of the response element. The reader is left
+     * after the end of the element.
+     *
+     * @param xmlEventReader
+     * @return
+     * @throws ParsingException
+     */
+    public static ResponseType parseXACMLResponse(XMLEventReader xmlEventReader) throws ParsingException {
+        return unmarshal(xmlEventReader, ResponseType.class);
+    }
 
-        StreamResult result = new StreamResult(baos);
+    /**
+     * Read a XACML request from a stax reader whose next event is the start of the request element. The reader is left
+     * after the end of the element.
+     *
+     * @param xmlEventReader
+     * @return
+     * @throws ParsingException
+     */
+    public static RequestType parseXACMLRequest(XMLEventReader xmlEventReader) throws ParsingException {
+        return unmarshal(xmlEventReader, RequestType.class);
+    }
 
+    private static Document marshal(JAXBElement<?> jaxb) throws ProcessingException {
         try {
-            TransformerUtil.transform(SAMLXACMLUtil.getJAXBContext(), jaxb, result);
-            return DocumentUtil.getDocument(new String(baos.toByteArray()));
+            Document document = DocumentUtil.createDocument();
+            Marshaller marshaller = getMarshaller();
+            marshaller.marshal(jaxb, new DOMResult(document));
+            release(marshaller);
+            return document;
         } catch (Exception e) {
             throw logger.processingError(e);
         }
     }
 
-    public static Document getXACMLRequest(RequestType requestType) throws ProcessingException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        // Marshaller marshaller = getMarshaller();
-        JAXBElement<?> jaxb = (new ObjectFactory()).createRequest(requestType);
-
-        StreamResult result = new StreamResult(baos);
-
+    private static void marshal(JAXBElement<?> jaxb, XMLStreamWriter writer) throws ProcessingException {
         try {
-            TransformerUtil.transform(getJAXBContext(), jaxb, result);
-            return DocumentUtil.getDocument(new String(baos.toByteArray()));
-        } catch (Exception e) {
+            Marshaller marshaller = getMarshaller();
+            marshaller.marshal(jaxb, writer);
+            release(marshaller);
+        } catch (JAXBException e) {
             throw logger.processingError(e);
         }
     }
-}
\ No newline at end of file
+
+    private static <T> T unmarshal(XMLEventReader xmlEventReader, Class<T> declaredType) throws ParsingException {
+        try {
+            Unmarshaller unmarshaller = getUnmarshaller();
+            T value = unmarshaller.unmarshal(xmlEventReader, declaredType).getValue();
+            release(unmarshaller);
+            return value;
+        } catch (JAXBException e) {
+            throw logger.parserException(e);
+        }
+    }
+
+    private static Marshaller getMarshaller() throws JAXBException {
+        Marshaller marshaller = marshallers.poll();
+        if (marshaller != null) {
+            idleMarshallers.decrementAndGet();
+        } else {
+            marshaller = getJAXBContext().createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.FALSE);
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+        }
+        return marshaller;
+    }
+
+    private static Unmarshaller getUnmarshaller() throws JAXBException {
+        Unmarshaller unmarshaller = unmarshallers.poll();
+        if (unmarshaller != null) {
+            idleUnmarshallers.decrementAndGet();
+        } else {
+            unmarshaller = getJAXBContext().createUnmarshaller();
+            unmarshaller.setEventHandler(new DefaultValidationEventHandler());
+        }
+        return unmarshaller;
+    }
+
+    // the (un)marshallers that failed are not released, they are dropped
+    private static void release(Marshaller marshaller) {
+        if (idleMarshallers.incrementAndGet() <= maxIdle)
+            marshallers.offer(marshaller);
+        else
+            idleMarshallers.decrementAndGet();
+    }
+
+    private static void release(Unmarshaller unmarshaller) {
+        if (idleUnmarshallers.incrementAndGet() <= maxIdle)
+            unmarshallers.offer(unmarshaller);
+        else
+            idleUnmarshallers.decrementAndGet();
+    }
+}
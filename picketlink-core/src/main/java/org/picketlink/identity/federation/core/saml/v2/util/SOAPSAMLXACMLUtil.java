@@ -39,9 +39,13 @@ import org.picketlink.identity.federation.core.exceptions.ConfigurationException
 import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
 import org.picketlink.identity.federation.core.factories.XACMLContextFactory;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Operation;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
 import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
 import org.picketlink.identity.federation.core.parsers.saml.xacml.SAMLXACMLRequestParser;
 import org.picketlink.identity.federation.core.parsers.util.StaxParserUtil;
+import org.picketlink.identity.federation.core.pdp.XACMLDecisionCache;
 import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
 import org.picketlink.identity.federation.core.saml.v2.factories.JBossSAMLAuthnResponseFactory;
 import org.picketlink.identity.federation.core.saml.v2.factories.SAMLAssertionFactory;
@@ -61,6 +65,15 @@ import org.w3c.dom.Node;
  * @since Jan 28, 2009
  */
 public class SOAPSAMLXACMLUtil {
+
+    private static final PicketLinkMetrics metrics = PicketLinkMetricsFactory.getMetrics();
+
+    private static final String CACHE_HIT = "cache hit";
+
+    private static final String CACHE_MISS = "cache miss";
+
+    private static final String UNCACHED = "uncached";
+
     /**
      * Parse the XACML Authorization Decision Query from the Dom Element
      *
@@ -72,17 +85,15 @@ public class SOAPSAMLXACMLUtil {
      */
     public static XACMLAuthzDecisionQueryType getXACMLQueryType(Node samlRequest) throws ParsingException,
             ConfigurationException, ProcessingException {
-        // We reparse it because the document may have issues with namespaces
-        // String elementString = DocumentUtil.getDOMElementAsString(samlRequest);
-
-        XMLEventReader xmlEventReader = StaxParserUtil.getXMLEventReader(DocumentUtil.getNodeAsStream(samlRequest));
+        // the reader declares the namespaces inherited from the ancestors of the node
+        XMLEventReader xmlEventReader = StaxParserUtil.getXMLEventReader(samlRequest);
         SAMLXACMLRequestParser samlXACMLRequestParser = new SAMLXACMLRequestParser();
         return (XACMLAuthzDecisionQueryType) samlXACMLRequestParser.parse(xmlEventReader);
     }
 
     public static XACMLAuthzDecisionStatementType getDecisionStatement(Node samlResponse) throws ConfigurationException,
             ProcessingException, ParsingException {
-        XMLEventReader xmlEventReader = StaxParserUtil.getXMLEventReader(DocumentUtil.getNodeAsStream(samlResponse));
+        XMLEventReader xmlEventReader = StaxParserUtil.getXMLEventReader(samlResponse);
         SAMLParser samlParser = new SAMLParser();
 
         JAXPValidationUtil.checkSchemaValidation(samlResponse);
@@ -105,24 +116,30 @@ public class SOAPSAMLXACMLUtil {
         throw new RuntimeException("Not found XACMLAuthzDecisionStatementType");
     }
 
-    public synchronized static org.picketlink.identity.federation.saml.v2.protocol.ResponseType handleXACMLQuery(
+    public static org.picketlink.identity.federation.saml.v2.protocol.ResponseType handleXACMLQuery(
             PolicyDecisionPoint pdp, String issuer, XACMLAuthzDecisionQueryType xacmlRequest) throws ProcessingException,
             ConfigurationException {
-        RequestType requestType = xacmlRequest.getRequest();
-
-        RequestContext requestContext = new JBossRequestContext();
-        try {
-            requestContext.setRequest(requestType);
-        } catch (IOException e) {
-            throw new ProcessingException(e);
-        }
+        return handleXACMLQuery(pdp, null, issuer, xacmlRequest);
+    }
 
-        // pdp evaluation is thread safe
-        ResponseContext responseContext = pdp.evaluate(requestContext);
+    /**
+     * Evaluate a XACML Authorization Decision Query and place the decision in a SAML Response
+     *
+     * @param pdp
+     * @param decisionCache cache of the decisions of the pdp, may be null
+     * @param issuer
+     * @param xacmlRequest
+     * @return
+     * @throws ProcessingException
+     * @throws ConfigurationException
+     */
+    public static org.picketlink.identity.federation.saml.v2.protocol.ResponseType handleXACMLQuery(
+            PolicyDecisionPoint pdp, XACMLDecisionCache decisionCache, String issuer, XACMLAuthzDecisionQueryType xacmlRequest)
+            throws ProcessingException, ConfigurationException {
+        RequestType requestType = xacmlRequest.getRequest();
 
         ResponseType responseType = new ResponseType();
-        ResultType resultType = responseContext.getResult();
-        responseType.getResult().add(resultType);
+        responseType.getResult().add(getResult(pdp, decisionCache, requestType));
 
         XACMLAuthzDecisionStatementType xacmlStatement = XACMLContextFactory.createXACMLAuthzDecisionStatementType(requestType,
                 responseType);
@@ -144,4 +161,43 @@ public class SOAPSAMLXACMLUtil {
 
         return samlResponseType;
     }
-}
\ No newline at end of file
+
+    private static ResultType getResult(PolicyDecisionPoint pdp, XACMLDecisionCache decisionCache, RequestType requestType)
+            throws ProcessingException {
+        long start = metrics.start();
+        String outcome = UNCACHED;
+        boolean failed = true;
+        try {
+            String key = decisionCache != null ? decisionCache.getKey(requestType) : null;
+            if (key != null) {
+                ResultType resultType = decisionCache.get(pdp, key);
+                if (resultType != null) {
+                    outcome = CACHE_HIT;
+                    failed = false;
+                    return resultType;
+                }
+                outcome = CACHE_MISS;
+            }
+
+            RequestContext requestContext = new JBossRequestContext();
+            try {
+                requestContext.setRequest(requestType);
+            } catch (IOException e) {
+                throw new ProcessingException(e);
+            }
+
+            // evaluations of a pdp stay serialized, cached decisions do not wait for them
+            ResponseContext responseContext;
+            synchronized (pdp) {
+                responseContext = pdp.evaluate(requestContext);
+            }
+            ResultType resultType = responseContext.getResult();
+            if (key != null)
+                decisionCache.put(pdp, key, resultType);
+            failed = false;
+            return resultType;
+        } finally {
+            metrics.operation(Operation.XACML, outcome, start, failed);
+        }
+    }
+}
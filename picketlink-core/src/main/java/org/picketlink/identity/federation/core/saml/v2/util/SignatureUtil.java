@@ -26,6 +26,11 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.picketlink.identity.federation.PicketLinkLogger;
 import org.picketlink.identity.federation.PicketLinkLoggerFactory;
@@ -33,7 +38,15 @@ import org.picketlink.identity.federation.core.constants.PicketLinkFederationCon
 import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLConstants;
 
 /**
+ * <p>
  * Signature utility for signing content
+ * </p>
+ * <p>
+ * {@link Signature} engines are looked up and initialized with their key once. After a signature or a verification they
+ * are back in their initialized state and are kept in a pool per algorithm and key, at most {@link #POOL_SIZE} idle
+ * engines for each of at most {@link #POOL_KEYS} algorithm and key pairs, the least recently used pairs being dropped
+ * first. {@link #clear()} empties the pools, for instance after a key rollover.
+ * </p>
  *
  * @author Anil.Saldhana@redhat.com
  * @since Dec 16, 2008
@@ -41,7 +54,31 @@ import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLConsta
 public class SignatureUtil {
     
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
-    
+
+    /**
+     * System property holding the maximum number of idle engines kept per algorithm and key. Defaults to 8.
+     */
+    public static final String POOL_SIZE = "picketlink.signature.pool.size";
+
+    /**
+     * System property holding the maximum number of algorithm and key pairs whose engines are pooled, the least recently
+     * used pair is dropped beyond it. Defaults to 64.
+     */
+    public static final String POOL_KEYS = "picketlink.signature.pool.keys";
+
+    private static final int maxIdle = Integer.parseInt(SecurityActions.getSystemProperty(POOL_SIZE, "8"));
+
+    private static final int maxKeys = Integer.parseInt(SecurityActions.getSystemProperty(POOL_KEYS, "64"));
+
+    private static final Map<EngineKey, EnginePool> pools = new LinkedHashMap<EngineKey, EnginePool>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<EngineKey, EnginePool> eldest) {
+            return size() > maxKeys;
+        }
+    };
+
     /**
      * Get the XML Signature URI for the algo (RSA, DSA)
      *
@@ -59,6 +96,22 @@ public class SignatureUtil {
         return xmlSignatureAlgo;
     }
 
+    /**
+     * Get the JCA signature algorithm of a XML Signature URI (dsa-sha1, rsa-sha1, rsa-sha256)
+     *
+     * @param xmlSignatureAlgorithmURI
+     * @return the algorithm, or null when the URI is not supported
+     */
+    public static String getJCASignatureAlgorithm(String xmlSignatureAlgorithmURI) {
+        if (JBossSAMLConstants.SIGNATURE_SHA1_WITH_DSA.get().equals(xmlSignatureAlgorithmURI))
+            return PicketLinkFederationConstants.DSA_SIGNATURE_ALGORITHM;
+        if (JBossSAMLConstants.SIGNATURE_SHA1_WITH_RSA.get().equals(xmlSignatureAlgorithmURI))
+            return PicketLinkFederationConstants.RSA_SIGNATURE_ALGORITHM;
+        if (JBossSAMLConstants.SIGNATURE_SHA256_WITH_RSA.get().equals(xmlSignatureAlgorithmURI))
+            return PicketLinkFederationConstants.RSA_SHA256_SIGNATURE_ALGORITHM;
+        return null;
+    }
+
     /**
      * Sign a string using the private key
      *
@@ -73,11 +126,12 @@ public class SignatureUtil {
         if (signingKey == null)
             throw logger.nullArgumentError("signingKey");
 
-        String algo = signingKey.getAlgorithm();
-        Signature sig = getSignature(algo);
-        sig.initSign(signingKey);
+        EngineKey engineKey = new EngineKey(getSignatureAlgorithm(signingKey.getAlgorithm()), signingKey, true);
+        Signature sig = acquire(engineKey);
         sig.update(stringToBeSigned.getBytes());
-        return sig.sign();
+        byte[] signatureValue = sig.sign();
+        release(engineKey, sig);
+        return signatureValue;
     }
 
     /**
@@ -91,21 +145,36 @@ public class SignatureUtil {
      */
     public static boolean validate(byte[] signedContent, byte[] signatureValue, PublicKey validatingKey)
             throws GeneralSecurityException {
+        if (validatingKey == null)
+            throw logger.nullArgumentError("validatingKey");
+
+        // We assume that the sigatureValue has the same algorithm as the public key
+        // If not, there will be an exception anyway
+        return validate(signedContent, signatureValue, getSignatureAlgorithm(validatingKey.getAlgorithm()), validatingKey);
+    }
+
+    /**
+     * Validate the signed content with the signature value, computed with the given algorithm
+     *
+     * @param signedContent
+     * @param signatureValue
+     * @param signatureAlgorithm the JCA signature algorithm, such as SHA256withRSA
+     * @param validatingKey
+     * @return
+     * @throws GeneralSecurityException
+     */
+    public static boolean validate(byte[] signedContent, byte[] signatureValue, String signatureAlgorithm,
+            PublicKey validatingKey) throws GeneralSecurityException {
         if (signedContent == null)
             throw logger.nullArgumentError("signedContent");
         if (signatureValue == null)
             throw logger.nullArgumentError("signatureValue");
+        if (signatureAlgorithm == null)
+            throw logger.nullArgumentError("signatureAlgorithm");
         if (validatingKey == null)
             throw logger.nullArgumentError("validatingKey");
 
-        // We assume that the sigatureValue has the same algorithm as the public key
-        // If not, there will be an exception anyway
-        String algo = validatingKey.getAlgorithm();
-        Signature sig = getSignature(algo);
-
-        sig.initVerify(validatingKey);
-        sig.update(signedContent);
-        return sig.verify(signatureValue);
+        return verify(new EngineKey(signatureAlgorithm, validatingKey, false), signedContent, signatureValue);
     }
 
     /**
@@ -129,22 +198,109 @@ public class SignatureUtil {
         if (validatingCert == null)
             throw logger.nullArgumentError("validatingCert");
 
-        Signature sig = getSignature(signatureAlgorithm);
+        return verify(new EngineKey(signatureAlgorithm, validatingCert, false), signedContent, signatureValue);
+    }
 
-        sig.initVerify(validatingCert);
-        sig.update(signedContent);
-        return sig.verify(signatureValue);
+    /**
+     * Drop the idle engines
+     */
+    public static void clear() {
+        synchronized (pools) {
+            pools.clear();
+        }
     }
 
-    private static Signature getSignature(String algo) throws GeneralSecurityException {
-        Signature sig = null;
+    private static boolean verify(EngineKey engineKey, byte[] signedContent, byte[] signatureValue)
+            throws GeneralSecurityException {
+        Signature sig = acquire(engineKey);
+        sig.update(signedContent);
+        boolean valid = sig.verify(signatureValue);
+        release(engineKey, sig);
+        return valid;
+    }
 
-        if ("DSA".equalsIgnoreCase(algo)) {
-            sig = Signature.getInstance(PicketLinkFederationConstants.DSA_SIGNATURE_ALGORITHM);
-        } else if ("RSA".equalsIgnoreCase(algo)) {
-            sig = Signature.getInstance(PicketLinkFederationConstants.RSA_SIGNATURE_ALGORITHM);
-        } else
+    private static String getSignatureAlgorithm(String algo) throws GeneralSecurityException {
+        if ("DSA".equalsIgnoreCase(algo))
+            return PicketLinkFederationConstants.DSA_SIGNATURE_ALGORITHM;
+        else if ("RSA".equalsIgnoreCase(algo))
+            return PicketLinkFederationConstants.RSA_SIGNATURE_ALGORITHM;
+        else
             throw logger.signatureUnknownAlgo(algo);
+    }
+
+    private static Signature acquire(EngineKey engineKey) throws GeneralSecurityException {
+        EnginePool pool;
+        synchronized (pools) {
+            pool = pools.get(engineKey);
+        }
+        if (pool != null) {
+            Signature sig = pool.engines.poll();
+            if (sig != null) {
+                pool.idle.decrementAndGet();
+                return sig;
+            }
+        }
+
+        Signature sig = Signature.getInstance(engineKey.algorithm);
+        if (engineKey.sign)
+            sig.initSign((PrivateKey) engineKey.key);
+        else if (engineKey.key instanceof X509Certificate)
+            sig.initVerify((X509Certificate) engineKey.key);
+        else
+            sig.initVerify((PublicKey) engineKey.key);
         return sig;
     }
-}
\ No newline at end of file
+
+    // the engines that failed are not released, they are dropped
+    private static void release(EngineKey engineKey, Signature sig) {
+        EnginePool pool;
+        synchronized (pools) {
+            pool = pools.get(engineKey);
+            if (pool == null) {
+                pool = new EnginePool();
+                pools.put(engineKey, pool);
+            }
+        }
+
+        if (pool.idle.incrementAndGet() <= maxIdle)
+            pool.engines.offer(sig);
+        else
+            pool.idle.decrementAndGet();
+    }
+
+    private static class EngineKey {
+        private final String algorithm;
+
+        // the private key, or the public key or certificate
+        private final Object key;
+
+        private final boolean sign;
+
+        private EngineKey(String algorithm, Object key, boolean sign) {
+            this.algorithm = algorithm;
+            this.key = key;
+            this.sign = sign;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj instanceof EngineKey == false)
+                return false;
+            EngineKey other = (EngineKey) obj;
+            return sign == other.sign && algorithm.equals(other.algorithm) && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * algorithm.hashCode() + key.hashCode();
+        }
+    }
+
+    private static class EnginePool {
+        private final Queue<Signature> engines = new ConcurrentLinkedQueue<Signature>();
+
+        private final AtomicInteger idle = new AtomicInteger();
+    }
+}
@@ -34,6 +34,7 @@ import org.picketlink.identity.federation.PicketLinkLogger;
 import org.picketlink.identity.federation.PicketLinkLoggerFactory;
 import org.picketlink.identity.federation.core.exceptions.ConfigurationException;
 import org.picketlink.identity.federation.core.exceptions.ParsingException;
+import org.picketlink.identity.federation.core.util.XMLFactoryUtil;
 import org.picketlink.identity.federation.web.constants.GeneralConstants;
 
 /**
@@ -59,7 +60,7 @@ public class XMLTimeUtil {
 
         Duration duration;
         try {
-            duration = DatatypeFactory.newInstance().newDuration(milis);
+            duration = XMLFactoryUtil.getDatatypeFactory().newDuration(milis);
         } catch (DatatypeConfigurationException e) {
             throw logger.configurationError(e);
         }
@@ -93,7 +94,7 @@ public class XMLTimeUtil {
         TimeZone tz = TimeZone.getTimeZone(timezone);
         DatatypeFactory dtf;
         try {
-            dtf = DatatypeFactory.newInstance();
+            dtf = XMLFactoryUtil.getDatatypeFactory();
         } catch (DatatypeConfigurationException e) {
             throw logger.configurationError(e);
         }
@@ -179,7 +180,7 @@ public class XMLTimeUtil {
         DatatypeFactory factory = null;
 
         try {
-            factory = DatatypeFactory.newInstance();
+            factory = XMLFactoryUtil.getDatatypeFactory();
         } catch (DatatypeConfigurationException e) {
             throw logger.parserError(e);
         }
@@ -206,7 +207,7 @@ public class XMLTimeUtil {
     public static XMLGregorianCalendar parse(String timeString) throws ParsingException {
         DatatypeFactory factory = null;
         try {
-            factory = DatatypeFactory.newInstance();
+            factory = XMLFactoryUtil.getDatatypeFactory();
         } catch (DatatypeConfigurationException e) {
             throw logger.parserError(e);
         }
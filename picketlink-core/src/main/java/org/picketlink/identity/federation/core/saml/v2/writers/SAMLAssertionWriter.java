@@ -54,7 +54,6 @@ import org.picketlink.identity.federation.saml.v2.assertion.StatementAbstractTyp
 import org.picketlink.identity.federation.saml.v2.assertion.SubjectType;
 import org.picketlink.identity.federation.saml.v2.assertion.URIType;
 import org.picketlink.identity.federation.saml.v2.profiles.xacml.assertion.XACMLAuthzDecisionStatementType;
-import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 /**
@@ -223,13 +222,11 @@ public class SAMLAssertionWriter extends BaseWriter {
         if (responseType == null)
             throw logger.writerNullValueError("XACML response");
 
-        Document doc = SAMLXACMLUtil.getXACMLResponse(responseType);
-        StaxUtil.writeDOMElement(writer, doc.getDocumentElement());
+        SAMLXACMLUtil.writeXACMLResponse(writer, responseType);
 
         RequestType requestType = xacmlStat.getRequest();
         if (requestType != null) {
-            StaxUtil.writeDOMNode(writer, SAMLXACMLUtil.getXACMLRequest(requestType).getDocumentElement());
-
+            SAMLXACMLUtil.writeXACMLRequest(writer, requestType);
         }
         StaxUtil.writeEndElement(writer);
         StaxUtil.flush(writer);
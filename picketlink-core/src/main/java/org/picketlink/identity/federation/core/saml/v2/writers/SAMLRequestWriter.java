@@ -24,24 +24,16 @@ package org.picketlink.identity.federation.core.saml.v2.writers;
 import static org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants.ASSERTION_NSURI;
 import static org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants.PROTOCOL_NSURI;
 
-import java.io.StringWriter;
 import java.net.URI;
 import java.util.List;
 
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamWriter;
 
-import org.jboss.security.xacml.core.model.context.ObjectFactory;
-import org.jboss.security.xacml.core.model.context.RequestType;
-import org.picketlink.identity.federation.core.exceptions.ConfigurationException;
-import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
 import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLConstants;
 import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants;
-import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
-import org.picketlink.identity.federation.core.util.JAXBUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.SAMLXACMLUtil;
 import org.picketlink.identity.federation.core.util.StaxUtil;
 import org.picketlink.identity.federation.core.util.StringUtil;
 import org.picketlink.identity.federation.saml.v2.assertion.AttributeType;
@@ -53,7 +45,6 @@ import org.picketlink.identity.federation.saml.v2.protocol.AuthnRequestType;
 import org.picketlink.identity.federation.saml.v2.protocol.LogoutRequestType;
 import org.picketlink.identity.federation.saml.v2.protocol.NameIDPolicyType;
 import org.picketlink.identity.federation.saml.v2.protocol.XACMLAuthzDecisionQueryType;
-import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 /**
@@ -332,26 +323,7 @@ public class SAMLRequestWriter extends BaseWriter {
             write(issuer, new QName(ASSERTION_NSURI.get(), JBossSAMLConstants.ISSUER.get(), ASSERTION_PREFIX));
         }
 
-        RequestType xacmlRequest = xacmlQuery.getRequest();
-
-        ObjectFactory of = new ObjectFactory();
-
-        StringWriter sw = new StringWriter();
-        try {
-            Marshaller m = JAXBUtil.getMarshaller(RequestType.class.getPackage().getName());
-            m.marshal(of.createRequest(xacmlRequest), sw);
-        } catch (JAXBException e) {
-            throw logger.processingError(e);
-        }
-
-        try {
-            Document xacmlDoc = DocumentUtil.getDocument(sw.toString());
-            StaxUtil.writeDOMNode(writer, xacmlDoc.getDocumentElement());
-        } catch (ConfigurationException e) {
-            throw logger.processingError(e);
-        } catch (ParsingException e) {
-            throw logger.processingError(e);
-        }
+        SAMLXACMLUtil.writeXACMLRequest(writer, xacmlQuery.getRequest());
 
         StaxUtil.writeEndElement(writer);
         StaxUtil.flush(writer);
@@ -25,14 +25,21 @@ import java.util.Map;
 
 import org.picketlink.identity.federation.PicketLinkLogger;
 import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.interfaces.SecurityTokenProvider;
+import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
 import org.picketlink.identity.federation.core.sts.registry.DefaultRevocationRegistry;
 import org.picketlink.identity.federation.core.sts.registry.DefaultTokenRegistry;
+import org.picketlink.identity.federation.core.sts.registry.ExpiringRevocationRegistry;
 import org.picketlink.identity.federation.core.sts.registry.FileBasedRevocationRegistry;
 import org.picketlink.identity.federation.core.sts.registry.FileBasedTokenRegistry;
+import org.picketlink.identity.federation.core.sts.registry.IndexedRevocationRegistry;
 import org.picketlink.identity.federation.core.sts.registry.JPABasedRevocationRegistry;
+import org.picketlink.identity.federation.core.sts.registry.LogBasedTokenRegistry;
 import org.picketlink.identity.federation.core.sts.registry.RevocationRegistry;
 import org.picketlink.identity.federation.core.sts.registry.SecurityTokenRegistry;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 /**
  * Base Class for instances of {@code SecurityTokenProvider}
@@ -79,6 +86,14 @@ public abstract class AbstractSecurityTokenProvider implements SecurityTokenProv
                 else
                     this.tokenRegistry = new FileBasedTokenRegistry();
             }
+            // an append-only log that does not rewrite the whole registry on every operation.
+            else if ("LOG".equalsIgnoreCase(tokenRegistryOption)) {
+                String tokenRegistryFile = this.properties.get(TOKEN_REGISTRY_FILE);
+                if (tokenRegistryFile != null)
+                    this.tokenRegistry = new LogBasedTokenRegistry(tokenRegistryFile);
+                else
+                    this.tokenRegistry = new LogBasedTokenRegistry();
+            }
             // the user has specified its own registry implementation class.
             else {
                 try {
@@ -113,6 +128,14 @@ public abstract class AbstractSecurityTokenProvider implements SecurityTokenProv
                 else
                     this.revocationRegistry = new FileBasedRevocationRegistry();
             }
+            // a memory-mapped index of the revoked ids, pruned as the tokens expire.
+            else if ("INDEXED".equalsIgnoreCase(registryOption)) {
+                String registryFile = this.properties.get(REVOCATION_REGISTRY_FILE);
+                if (registryFile != null)
+                    this.revocationRegistry = new IndexedRevocationRegistry(registryFile);
+                else
+                    this.revocationRegistry = new IndexedRevocationRegistry();
+            }
             // another option is to use the default JPA registry to store the revoked ids.
             else if ("JPA".equalsIgnoreCase(registryOption)) {
                 String configuration = this.properties.get(REVOCATION_REGISTRY_JPA_CONFIG);
@@ -143,4 +166,35 @@ public abstract class AbstractSecurityTokenProvider implements SecurityTokenProv
         if (this.revocationRegistry == null)
             this.revocationRegistry = new DefaultRevocationRegistry();
     }
-}
\ No newline at end of file
+
+    /**
+     * Add the assertion to the revocation registry. Registries that prune the revoked ids are given the
+     * {@code NotOnOrAfter} condition of the assertion, if any.
+     *
+     * @param tokenType the token type
+     * @param id the assertion id
+     * @param assertionElement the assertion being canceled
+     */
+    protected void revokeAssertion(String tokenType, String id, Element assertionElement) {
+        if (!(this.revocationRegistry instanceof ExpiringRevocationRegistry)) {
+            this.revocationRegistry.revokeToken(tokenType, id);
+            return;
+        }
+
+        long notOnOrAfter = 0;
+        for (Node child = assertionElement.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && "Conditions".equals(child.getLocalName())) {
+                String value = ((Element) child).getAttribute("NotOnOrAfter");
+                if (value != null && value.length() > 0) {
+                    try {
+                        notOnOrAfter = XMLTimeUtil.parse(value).toGregorianCalendar().getTimeInMillis();
+                    } catch (ParsingException e) {
+                        logger.trace(e);
+                    }
+                }
+                break;
+            }
+        }
+        ((ExpiringRevocationRegistry) this.revocationRegistry).revokeToken(tokenType, id, notOnOrAfter);
+    }
+}
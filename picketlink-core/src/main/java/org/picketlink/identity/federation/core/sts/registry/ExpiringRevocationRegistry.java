@@ -0,0 +1,41 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.sts.registry;
+
+/**
+ * <p>
+ * A {@code RevocationRegistry} that is told when the revoked tokens expire, so that their ids can be pruned once the
+ * tokens would be rejected anyway.
+ * </p>
+ */
+public interface ExpiringRevocationRegistry extends RevocationRegistry {
+    /**
+     * <p>
+     * Adds the specified id to the revocation registry until the given expiration time.
+     * </p>
+     *
+     * @param tokenType a {@code String} representing the security token type.
+     * @param id the id to registered.
+     * @param notOnOrAfter the time, in milliseconds, after which the token is no longer valid. Zero if it never expires.
+     */
+    public void revokeToken(String tokenType, String id, long notOnOrAfter);
+}
@@ -0,0 +1,712 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.sts.registry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.picketlink.identity.federation.core.sts.PicketLinkCoreSTS;
+
+/**
+ * <p>
+ * {@code IndexedRevocationRegistry} is a file based revocation registry that keeps the revoked (canceled) ids, keyed by token
+ * type and id, in a sorted index file that is memory-mapped for lookups. By default the index is stored in
+ * $HOME/picketlink-store/sts/revoked.idx.
+ * </p>
+ * <p>
+ * Each index carries a bloom filter so that the common case of a token that has not been revoked is answered without
+ * touching the mapped file. Recent revocations are appended to a journal and kept in memory until a background task merges
+ * them into a new index, dropping the ids of tokens that have expired. Lookups never take a lock.
+ * </p>
+ * <p>
+ * A merge unmaps the previous index before replacing its file, as some platforms do not replace or delete a mapped
+ * file; lookups are served from the new index held in memory meanwhile. When a merge fails, the journal is reopened and
+ * the revocations it was merging are merged again by the next one.
+ * </p>
+ * <p>
+ * Registries created on the same file, as the token providers using the default file do, share its index, its journal
+ * and its merges: the file is identified by its canonical path and is closed when the last registry using it is closed.
+ * </p>
+ * <p>
+ * NOTE: like {@code FileBasedRevocationRegistry}, each node has its own view of the registry, making it a bad choice for
+ * distributed scenarios.
+ * </p>
+ */
+public class IndexedRevocationRegistry extends FileBasedSTSOperations implements ExpiringRevocationRegistry {
+
+    protected static final String FILE_NAME = "revoked.idx";
+
+    private static final int MAGIC = 0x504c5249;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 12;
+
+    private static final int ENTRY_LENGTH = 24;
+
+    private static final int BLOOM_BITS_PER_ENTRY = 10;
+
+    private static final int BLOOM_HASHES = 7;
+
+    private static final int DEFAULT_MERGE_THRESHOLD = 1024;
+
+    // the open stores by canonical path, guarded by itself
+    private static final Map<String, RevocationStore> stores = new HashMap<String, RevocationStore>();
+
+    // the file that stores the index and the journal of the revocations not yet merged into it.
+    protected File indexFile;
+
+    protected File journalFile;
+
+    protected File mergingFile;
+
+    private final RevocationStore store;
+
+    // guarded by the stores map
+    private boolean closed;
+
+    /**
+     * <p>
+     * Creates an instance of {@code IndexedRevocationRegistry} that stores the canceled ids in the default
+     * {@code $HOME/picketlink-store/sts/revoked.idx} file.
+     * </p>
+     */
+    public IndexedRevocationRegistry() {
+        this(null);
+    }
+
+    /**
+     * <p>
+     * Creates an instance of {@code IndexedRevocationRegistry} that stores the canceled ids in specified file. Registries
+     * created on the same file share its index, its journal and its merges.
+     * </p>
+     *
+     * @param registryFileName a {@code String} that indicates the file that must be used to store the index.
+     */
+    public IndexedRevocationRegistry(String registryFileName) {
+        super();
+        if (registryFileName == null)
+            registryFileName = new File(directory, FILE_NAME).getPath();
+
+        this.indexFile = create(registryFileName);
+        try {
+            this.store = acquire(indexFile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.journalFile = store.journalFile;
+        this.mergingFile = store.mergingFile;
+    }
+
+    /**
+     * Set the number of recent revocations that triggers a merge into the index. The setting applies to all the
+     * registries sharing the file.
+     *
+     * @param mergeThreshold
+     */
+    public void setMergeThreshold(int mergeThreshold) {
+        store.mergeThreshold = mergeThreshold;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketlink.identity.federation.core.sts.registry.RevocationRegistry#isRevoked(java.lang.String,
+     * java.lang.String)
+     */
+    public boolean isRevoked(String tokenType, String id) {
+        return store.isRevoked(key(tokenType, id));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketlink.identity.federation.core.sts.registry.RevocationRegistry#revokeToken(java.lang.String,
+     * java.lang.String)
+     */
+    public void revokeToken(String tokenType, String id) {
+        revokeToken(tokenType, id, 0);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.picketlink.identity.federation.core.sts.registry.ExpiringRevocationRegistry#revokeToken(java.lang.String,
+     * java.lang.String, long)
+     */
+    public void revokeToken(String tokenType, String id, long notOnOrAfter) {
+        SecurityManager sm = System.getSecurityManager();
+        if (sm != null)
+            sm.checkPermission(PicketLinkCoreSTS.rte);
+
+        store.revoke(key(tokenType, id), notOnOrAfter);
+    }
+
+    /**
+     * Merge the recent revocations into a new index, dropping the ids of the tokens that have expired
+     *
+     * @throws IOException
+     */
+    public void merge() throws IOException {
+        store.merge();
+    }
+
+    /**
+     * Release the index, stopping the background merges and closing the journal when no other registry uses it
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        synchronized (stores) {
+            if (closed)
+                return;
+            closed = true;
+            if (--store.references > 0)
+                return;
+            stores.remove(store.path);
+        }
+        store.close();
+    }
+
+    private static RevocationStore acquire(File indexFile) throws IOException {
+        String path = indexFile.getCanonicalPath();
+        synchronized (stores) {
+            RevocationStore store = stores.get(path);
+            if (store == null) {
+                store = new RevocationStore(path, indexFile);
+                stores.put(path, store);
+            }
+            store.references++;
+            return store;
+        }
+    }
+
+    /**
+     * The index of a file, its journal and its merges, shared by the registries using that file
+     */
+    private static class RevocationStore {
+
+        private final String path;
+
+        private final File indexFile;
+
+        private final File journalFile;
+
+        private final File mergingFile;
+
+        private volatile Index index;
+
+        // revocations that are not part of the index yet, with their expiration.
+        private final ConcurrentMap<String, Long> recent = new ConcurrentHashMap<String, Long>();
+
+        private final Object journalLock = new Object();
+
+        private DataOutputStream journal;
+
+        private final Object mergeLock = new Object();
+
+        private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+
+        private final ExecutorService merger;
+
+        private volatile int mergeThreshold = DEFAULT_MERGE_THRESHOLD;
+
+        // guarded by the stores map
+        private int references;
+
+        RevocationStore(String path, File indexFile) throws IOException {
+            this.path = path;
+            this.indexFile = indexFile;
+            this.journalFile = new File(indexFile.getPath() + ".journal");
+            this.mergingFile = new File(indexFile.getPath() + ".merging");
+
+            this.index = Index.load(indexFile);
+            // a journal left by an interrupted merge is replayed as well.
+            replay(mergingFile);
+            replay(journalFile);
+            this.journal = openJournal(true);
+
+            this.merger = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "picketlink-revocation-registry-merger");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        boolean isRevoked(String key) {
+            if (recent.containsKey(key))
+                return true;
+
+            byte[] bytes = utf8(key);
+            long h = hash(bytes);
+            while (true) {
+                Index current = index;
+                if (!current.mightContain(h))
+                    return false;
+                // an index that has been replaced meanwhile may be unmapped, the lookup then goes to the new one
+                if (current.enter()) {
+                    try {
+                        return current.contains(bytes, h);
+                    } finally {
+                        current.exit();
+                    }
+                }
+            }
+        }
+
+        void revoke(String key, long notOnOrAfter) {
+            synchronized (journalLock) {
+                try {
+                    journal.writeLong(notOnOrAfter);
+                    journal.writeUTF(key);
+                    journal.flush();
+                } catch (IOException ioe) {
+                    logger.debug("Error appending content to registry journal: " + ioe.getMessage());
+                    logger.error(ioe);
+                }
+                recent.put(key, notOnOrAfter);
+            }
+
+            if (recent.size() >= mergeThreshold && mergeScheduled.compareAndSet(false, true)) {
+                merger.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            merge();
+                        } catch (Throwable t) {
+                            logger.error(t);
+                        } finally {
+                            mergeScheduled.set(false);
+                        }
+                    }
+                });
+            }
+        }
+
+        void merge() throws IOException {
+            synchronized (mergeLock) {
+                Map<String, Long> merged;
+                synchronized (journalLock) {
+                    merged = new HashMap<String, Long>(recent);
+                    journal.close();
+                    boolean truncate = false;
+                    try {
+                        if (mergingFile.exists()) {
+                            // left by a failed merge or by a crash, its revocations are merged again with the journal
+                            append(journalFile, mergingFile);
+                            truncate = true;
+                        } else if (!journalFile.renameTo(mergingFile))
+                            throw new IOException("Unable to rename " + journalFile + " to " + mergingFile);
+                    } finally {
+                        journal = openJournal(!truncate);
+                    }
+                }
+
+                Map<String, Long> entries = index.entries();
+                entries.putAll(merged);
+
+                long now = System.currentTimeMillis();
+                Map<String, Long> live = new HashMap<String, Long>(entries.size());
+                for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                    long expiration = entry.getValue();
+                    if (expiration == 0 || expiration > now)
+                        live.put(entry.getKey(), expiration);
+                }
+
+                replaceIndex(live);
+                mergingFile.delete();
+
+                for (Map.Entry<String, Long> entry : merged.entrySet())
+                    recent.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        void close() throws IOException {
+            merger.shutdown();
+            synchronized (journalLock) {
+                journal.close();
+            }
+            synchronized (mergeLock) {
+                Index current = index;
+                index = Index.EMPTY;
+                current.close();
+            }
+        }
+
+        private void replaceIndex(Map<String, Long> entries) throws IOException {
+            byte[] content = Index.serialize(entries);
+            File tmp = new File(indexFile.getPath() + ".tmp");
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+
+            // the lookups are served from memory until the new file is mapped
+            Index previous = index;
+            index = new Index(ByteBuffer.wrap(content), entries.size());
+            previous.close();
+
+            if (!tmp.renameTo(indexFile)) {
+                // some platforms do not replace an existing file on rename
+                if (!indexFile.delete() || !tmp.renameTo(indexFile))
+                    throw new IOException("Unable to replace " + indexFile + " with " + tmp);
+            }
+            index = Index.load(indexFile);
+        }
+
+        private DataOutputStream openJournal(boolean append) throws IOException {
+            return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, append)));
+        }
+
+        private void replay(File file) throws IOException {
+            if (!file.exists())
+                return;
+
+            long now = System.currentTimeMillis();
+            long position = 0;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                while (true) {
+                    long expiration = in.readLong();
+                    String key = in.readUTF();
+                    position += 8 + 2 + utfLength(key);
+                    if (expiration == 0 || expiration > now)
+                        recent.put(key, expiration);
+                }
+            } catch (EOFException e) {
+                // end of the journal, or a record left incomplete by a crash.
+            } finally {
+                in.close();
+            }
+
+            if (position < file.length()) {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.setLength(position);
+                } finally {
+                    raf.close();
+                }
+            }
+        }
+    }
+
+    private static void append(File from, File to) throws IOException {
+        if (!from.exists())
+            return;
+        FileInputStream in = new FileInputStream(from);
+        try {
+            FileOutputStream out = new FileOutputStream(to, true);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1)
+                    out.write(buffer, 0, read);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String key(String tokenType, String id) {
+        return (tokenType == null ? "" : tokenType) + '\n' + id;
+    }
+
+    // length of the modified UTF-8 encoding written by DataOutput.writeUTF
+    private static int utfLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F)
+                length++;
+            else if (c > 0x07FF)
+                length += 3;
+            else
+                length += 2;
+        }
+        return length;
+    }
+
+    private static byte[] utf8(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long hash(byte[] key) {
+        // FNV-1a followed by a 64 bit finalizer, so that both halves can be used by the bloom filter
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * An immutable, memory-mapped index of revoked ids sorted by hash, with a bloom filter of its content. The layout is
+     * a header (magic, version, count), fixed size entries (hash, expiration, key offset, key length) and the UTF-8 keys.
+     * The lookups that read the buffer are counted, so that the mapping is only released once none is running.
+     */
+    private static class Index {
+
+        // never closed, it has no mapping
+        private static final Index EMPTY = new Index(null, 0);
+
+        private final ByteBuffer buffer;
+
+        private final AtomicInteger readers = new AtomicInteger();
+
+        private volatile boolean closed;
+
+        private final int count;
+
+        private final long[] bloom;
+
+        private final int bloomBits;
+
+        private Index(ByteBuffer buffer, int count) {
+            this.buffer = buffer;
+            this.count = count;
+            this.bloomBits = Math.max(64, ((count * BLOOM_BITS_PER_ENTRY + 63) / 64) * 64);
+            this.bloom = new long[bloomBits / 64];
+            for (int i = 0; i < count; i++) {
+                long h = hashAt(i);
+                for (int k = 0; k < BLOOM_HASHES; k++) {
+                    int bit = bit(h, k);
+                    bloom[bit >>> 6] |= 1L << bit;
+                }
+            }
+        }
+
+        static Index load(File file) throws IOException {
+            if (file.length() == 0)
+                return EMPTY;
+
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+                if (buffer.limit() < HEADER_LENGTH || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                    throw new IOException(file + " is not a revocation registry index");
+                return new Index(buffer, buffer.getInt(8));
+            } finally {
+                // the mapping stays valid after the channel is closed.
+                raf.close();
+            }
+        }
+
+        static byte[] serialize(Map<String, Long> entries) throws IOException {
+            int count = entries.size();
+            long[] hashes = new long[count];
+            byte[][] keys = new byte[count][];
+            long[] expirations = new long[count];
+            Integer[] order = new Integer[count];
+
+            int i = 0;
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                keys[i] = utf8(entry.getKey());
+                hashes[i] = hash(keys[i]);
+                expirations[i] = entry.getValue();
+                order[i] = i;
+                i++;
+            }
+
+            final long[] sortHashes = hashes;
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    long x = sortHashes[a];
+                    long y = sortHashes[b];
+                    return x < y ? -1 : (x == y ? 0 : 1);
+                }
+            });
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_LENGTH + count * (ENTRY_LENGTH + 48));
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                int offset = HEADER_LENGTH + count * ENTRY_LENGTH;
+                for (Integer n : order) {
+                    out.writeLong(hashes[n]);
+                    out.writeLong(expirations[n]);
+                    out.writeInt(offset);
+                    out.writeInt(keys[n].length);
+                    offset += keys[n].length;
+                }
+                for (Integer n : order)
+                    out.write(keys[n]);
+                out.flush();
+            } finally {
+                out.close();
+            }
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Check the bloom filter, which does not read the buffer
+         */
+        boolean mightContain(long h) {
+            if (count == 0)
+                return false;
+            for (int k = 0; k < BLOOM_HASHES; k++) {
+                int bit = bit(h, k);
+                if ((bloom[bit >>> 6] & (1L << bit)) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Start a lookup of the buffer
+         *
+         * @return false if the index has been closed
+         */
+        boolean enter() {
+            readers.incrementAndGet();
+            if (closed) {
+                readers.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        void exit() {
+            readers.decrementAndGet();
+        }
+
+        /**
+         * Wait for the running lookups and release the mapping
+         */
+        void close() {
+            if (this == EMPTY)
+                return;
+            closed = true;
+            while (readers.get() > 0)
+                Thread.yield();
+
+            if (buffer instanceof MappedByteBuffer) {
+                try {
+                    SecurityActions.unmap(buffer);
+                } catch (Exception e) {
+                    // the mapping is released when the buffer is garbage collected
+                    logger.trace("Unable to unmap the revocation registry index", e);
+                }
+            }
+        }
+
+        boolean contains(byte[] bytes, long h) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midHash = hashAt(mid);
+                if (midHash < h)
+                    low = mid + 1;
+                else if (midHash > h)
+                    high = mid - 1;
+                else {
+                    // entries with the same hash are adjacent
+                    for (int i = mid; i >= 0 && hashAt(i) == h; i--) {
+                        if (keyEquals(i, bytes))
+                            return true;
+                    }
+                    for (int i = mid + 1; i < count && hashAt(i) == h; i++) {
+                        if (keyEquals(i, bytes))
+                            return true;
+                    }
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        Map<String, Long> entries() throws IOException {
+            Map<String, Long> entries = new HashMap<String, Long>(count * 2);
+            for (int i = 0; i < count; i++) {
+                int position = HEADER_LENGTH + i * ENTRY_LENGTH;
+                byte[] key = new byte[buffer.getInt(position + 20)];
+                int offset = buffer.getInt(position + 16);
+                for (int j = 0; j < key.length; j++)
+                    key[j] = buffer.get(offset + j);
+                entries.put(new String(key, "UTF-8"), buffer.getLong(position + 8));
+            }
+            return entries;
+        }
+
+        private long hashAt(int i) {
+            return buffer.getLong(HEADER_LENGTH + i * ENTRY_LENGTH);
+        }
+
+        private boolean keyEquals(int i, byte[] key) {
+            int position = HEADER_LENGTH + i * ENTRY_LENGTH;
+            if (buffer.getInt(position + 20) != key.length)
+                return false;
+            int offset = buffer.getInt(position + 16);
+            for (int j = 0; j < key.length; j++) {
+                if (buffer.get(offset + j) != key[j])
+                    return false;
+            }
+            return true;
+        }
+
+        private int bit(long h, int k) {
+            int combined = (int) h + k * (int) (h >>> 32);
+            return (combined & Integer.MAX_VALUE) % bloomBits;
+        }
+    }
+}
@@ -0,0 +1,626 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.sts.registry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.picketlink.identity.federation.core.sts.PicketLinkCoreSTS;
+import org.picketlink.identity.federation.saml.v2.assertion.AssertionType;
+
+/**
+ * <p>
+ * A File based implementation of the {@code SecurityTokenRegistry} that stores the tokens in an append-only log.
+ * </p>
+ * <p>
+ * Adding or removing a token appends a single record to the log instead of rewriting the whole registry, so the cost of
+ * an operation does not depend on the number of live tokens. Records appended concurrently are written and forced to
+ * disk together (group commit). The in-memory index is rebuilt from the log on startup, a background task evicts expired
+ * tokens and compacts the log once it contains more obsolete records than live ones.
+ * </p>
+ * <p>
+ * Registries created on the same file, as the token providers using the default file do, share the log, its index and
+ * its compaction: the file is identified by its canonical path and is closed when the last registry using it is closed.
+ * A single daemon thread compacts all the open logs.
+ * </p>
+ * <p>
+ * Tokens are considered expired after the {@code NotOnOrAfter} condition of a SAML assertion or, for other tokens, after
+ * the configured time to live (never by default).
+ * </p>
+ */
+public class LogBasedTokenRegistry extends FileBasedSTSOperations implements SecurityTokenRegistry {
+
+    protected static final String FILE_NAME = "token.log";
+
+    private static final int MAGIC = 0x504c5452;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 8;
+
+    private static final byte ADD = 1;
+
+    private static final byte REMOVE = 2;
+
+    private static final int MIN_COMPACTION_RECORDS = 1024;
+
+    private static final long COMPACTION_INTERVAL = 60;
+
+    // the open logs by canonical path, guarded by itself
+    private static final Map<String, TokenLog> logs = new HashMap<String, TokenLog>();
+
+    // compacts all the open logs, only running while a log is open
+    private static ScheduledExecutorService compactor;
+
+    // the file that stores the log.
+    protected File registryFile;
+
+    protected final ConcurrentMap<String, TokenHolder> holders;
+
+    private final TokenLog log;
+
+    // guarded by the logs map, read without it to reject operations after close
+    private volatile boolean closed;
+
+    private long timeToLive = 0;
+
+    public LogBasedTokenRegistry() {
+        this(null);
+    }
+
+    public LogBasedTokenRegistry(String fileName) {
+        super();
+        if (directory == null)
+            throw logger.nullValueError("directory");
+
+        if (fileName == null)
+            fileName = new File(directory, FILE_NAME).getPath();
+
+        this.registryFile = create(fileName);
+
+        try {
+            this.log = acquire(registryFile);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.holders = log.holders;
+    }
+
+    /**
+     * Set the time to live, in milliseconds, of tokens that do not carry their own expiration. Zero means never.
+     *
+     * @param timeToLive
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Whether the log is forced to the storage device on every commit. Defaults to true. The setting applies to all the
+     * registries sharing the file.
+     *
+     * @param forceOnCommit
+     */
+    public void setForceOnCommit(boolean forceOnCommit) {
+        log.forceOnCommit = forceOnCommit;
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.core.sts.registry.SecurityTokenRegistry#addToken(java.lang.String,
+     *      java.lang.Object)
+     */
+    public void addToken(String tokenID, Object token) throws IOException {
+        SecurityManager sm = System.getSecurityManager();
+        if (sm != null)
+            sm.checkPermission(PicketLinkCoreSTS.rte);
+
+        if (!(token instanceof Serializable))
+            throw logger.notSerializableError("Token");
+        checkOpen();
+
+        TokenHolder holder = new TokenHolder(tokenID, token, getExpiration(token));
+        LogRecord record = new LogRecord(encode(ADD, tokenID, holder.expiration, token));
+        synchronized (log.pending) {
+            holders.put(tokenID, holder);
+            log.pending.add(record);
+        }
+        log.commit(record);
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.core.sts.registry.SecurityTokenRegistry#removeToken(java.lang.String)
+     */
+    public void removeToken(String tokenID) throws IOException {
+        SecurityManager sm = System.getSecurityManager();
+        if (sm != null)
+            sm.checkPermission(PicketLinkCoreSTS.rte);
+
+        checkOpen();
+        LogRecord record = new LogRecord(encode(REMOVE, tokenID, 0, null));
+        synchronized (log.pending) {
+            holders.remove(tokenID);
+            log.pending.add(record);
+        }
+        log.commit(record);
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.core.sts.registry.SecurityTokenRegistry#getToken(java.lang.String)
+     */
+    public Object getToken(String tokenID) {
+        SecurityManager sm = System.getSecurityManager();
+        if (sm != null)
+            sm.checkPermission(PicketLinkCoreSTS.rte);
+
+        TokenHolder holder = holders.get(tokenID);
+        if (holder != null && !holder.isExpired(System.currentTimeMillis()))
+            return holder.token;
+
+        return null;
+    }
+
+    /**
+     * Number of records currently held by the log
+     *
+     * @return
+     */
+    public long getLogRecordCount() {
+        synchronized (log.writeLock) {
+            return log.logRecords;
+        }
+    }
+
+    /**
+     * Remove the expired tokens from the index and rewrite the log if it holds more obsolete records than live ones
+     *
+     * @throws IOException
+     */
+    public void compactIfNeeded() throws IOException {
+        log.compactIfNeeded();
+    }
+
+    /**
+     * Rewrite the log so that it only contains the live tokens. Operations performed concurrently are appended to the new
+     * log once it has been written.
+     *
+     * @throws IOException
+     */
+    public void compact() throws IOException {
+        log.compact();
+    }
+
+    /**
+     * Release the log, closing it when no other registry uses it. A compaction of the log that is running is completed
+     * first. Tokens can no longer be added or removed through this registry once it is closed.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        synchronized (logs) {
+            if (closed)
+                return;
+            closed = true;
+            if (--log.references > 0)
+                return;
+            logs.remove(log.path);
+            log.compaction.cancel(false);
+            if (logs.isEmpty()) {
+                // not shutdownNow, interrupting a compaction would close the channel it is writing to
+                compactor.shutdown();
+                compactor = null;
+            }
+        }
+        log.close();
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed)
+            throw new IOException(registryFile + " registry is closed");
+    }
+
+    private static TokenLog acquire(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        synchronized (logs) {
+            TokenLog log = logs.get(path);
+            if (log == null) {
+                log = new TokenLog(path, file);
+                log.read();
+                log.open();
+
+                if (compactor == null) {
+                    compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "picketlink-token-registry-compactor");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+                final TokenLog compacted = log;
+                log.compaction = compactor.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        try {
+                            compacted.compactIfNeeded();
+                        } catch (Throwable t) {
+                            logger.error(t);
+                        }
+                    }
+                }, COMPACTION_INTERVAL, COMPACTION_INTERVAL, TimeUnit.SECONDS);
+                logs.put(path, log);
+            }
+            log.references++;
+            return log;
+        }
+    }
+
+    private static byte[] encode(byte type, String id, long expiration, Object token) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeByte(type);
+        data.writeUTF(id);
+        data.writeLong(expiration);
+        if (token != null) {
+            ObjectOutputStream oos = new ObjectOutputStream(data);
+            oos.writeObject(token);
+            oos.close();
+        } else
+            data.close();
+        return bytes.toByteArray();
+    }
+
+    private long getExpiration(Object token) {
+        if (token instanceof AssertionType) {
+            AssertionType assertion = (AssertionType) token;
+            if (assertion.getConditions() != null) {
+                XMLGregorianCalendar notOnOrAfter = assertion.getConditions().getNotOnOrAfter();
+                if (notOnOrAfter != null)
+                    return notOnOrAfter.toGregorianCalendar().getTimeInMillis();
+            }
+        }
+        if (timeToLive > 0)
+            return System.currentTimeMillis() + timeToLive;
+        return 0;
+    }
+
+    /**
+     * The log of a file and its index, shared by the registries using that file
+     */
+    private static class TokenLog {
+
+        private final String path;
+
+        private final File registryFile;
+
+        private final ConcurrentMap<String, TokenHolder> holders = new ConcurrentHashMap<String, TokenHolder>();
+
+        // records waiting to be written, in the order in which they were applied to the index.
+        private final List<LogRecord> pending = new ArrayList<LogRecord>();
+
+        private final Object writeLock = new Object();
+
+        private FileOutputStream fileStream;
+
+        private DataOutputStream out;
+
+        // number of records in the log, guarded by the write lock.
+        private long logRecords;
+
+        private volatile boolean forceOnCommit = true;
+
+        // guarded by the logs map
+        private int references;
+
+        private ScheduledFuture<?> compaction;
+
+        // guarded by the write lock
+        private boolean closed;
+
+        TokenLog(String path, File registryFile) {
+            this.path = path;
+            this.registryFile = registryFile;
+        }
+
+        void compactIfNeeded() throws IOException {
+            long now = System.currentTimeMillis();
+            for (TokenHolder holder : holders.values()) {
+                if (holder.isExpired(now))
+                    holders.remove(holder.id, holder);
+            }
+
+            long live = holders.size();
+            long obsolete;
+            synchronized (writeLock) {
+                obsolete = logRecords - live;
+            }
+            if (obsolete > MIN_COMPACTION_RECORDS && obsolete > live)
+                compact();
+        }
+
+        /**
+         * Rewrite the log with the live tokens. The previous log is kept until the compacted one has replaced it, so that a
+         * failure leaves the registry with its previous log.
+         */
+        void compact() throws IOException {
+            synchronized (writeLock) {
+                // a compaction that was already running when the log was closed
+                if (closed)
+                    return;
+                write(drain());
+
+                File compacted = new File(registryFile.getPath() + ".compact");
+                DataOutputStream compactedOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                        compacted)));
+                long records = 0;
+                long now = System.currentTimeMillis();
+                try {
+                    compactedOut.writeInt(MAGIC);
+                    compactedOut.writeInt(VERSION);
+                    for (TokenHolder holder : holders.values()) {
+                        if (holder.isExpired(now))
+                            continue;
+                        byte[] data = encode(ADD, holder.id, holder.expiration, holder.token);
+                        compactedOut.writeInt(data.length);
+                        compactedOut.write(data);
+                        records++;
+                    }
+                    compactedOut.flush();
+                } finally {
+                    compactedOut.close();
+                }
+
+                out.close();
+                if (!compacted.renameTo(registryFile)) {
+                    // some platforms do not replace an existing file on rename, move the previous log aside first
+                    File previous = getPreviousFile();
+                    if (!registryFile.renameTo(previous)) {
+                        compacted.delete();
+                        open();
+                        throw new IOException("Unable to replace " + registryFile + " with the compacted log");
+                    }
+                    if (!compacted.renameTo(registryFile)) {
+                        compacted.delete();
+                        if (!previous.renameTo(registryFile))
+                            throw new IOException("Unable to restore " + registryFile + " from " + previous);
+                        open();
+                        throw new IOException("Unable to replace " + registryFile + " with the compacted log");
+                    }
+                    previous.delete();
+                }
+                open();
+                logRecords = records;
+            }
+        }
+
+        void close() throws IOException {
+            synchronized (writeLock) {
+                if (closed)
+                    return;
+                closed = true;
+                try {
+                    write(drain());
+                } finally {
+                    out.close();
+                }
+            }
+        }
+
+        /**
+         * Make sure the given record has been written. The first thread to get here writes all the pending records, the
+         * threads whose records were part of that batch return without any further I/O.
+         */
+        void commit(LogRecord record) throws IOException {
+            synchronized (writeLock) {
+                if (!record.written && record.failure == null) {
+                    if (closed)
+                        throw new IOException(registryFile + " registry is closed");
+                    write(drain());
+                }
+            }
+            if (record.failure != null)
+                throw new IOException(record.failure);
+        }
+
+        private List<LogRecord> drain() {
+            synchronized (pending) {
+                List<LogRecord> batch = new ArrayList<LogRecord>(pending);
+                pending.clear();
+                return batch;
+            }
+        }
+
+        private void write(List<LogRecord> batch) throws IOException {
+            if (batch.isEmpty())
+                return;
+            try {
+                for (LogRecord record : batch) {
+                    out.writeInt(record.data.length);
+                    out.write(record.data);
+                }
+                out.flush();
+                if (forceOnCommit)
+                    fileStream.getChannel().force(false);
+            } catch (IOException e) {
+                for (LogRecord record : batch)
+                    record.failure = e;
+                throw e;
+            }
+            for (LogRecord record : batch)
+                record.written = true;
+            logRecords += batch.size();
+        }
+
+        void open() throws IOException {
+            boolean empty = registryFile.length() == 0;
+            fileStream = new FileOutputStream(registryFile, true);
+            out = new DataOutputStream(new BufferedOutputStream(fileStream));
+            if (empty) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.flush();
+            }
+        }
+
+        /**
+         * Rebuild the index from the log. A record left incomplete by a crash is discarded.
+         */
+        void read() throws IOException {
+            SecurityManager sm = System.getSecurityManager();
+            if (sm != null)
+                sm.checkPermission(PicketLinkCoreSTS.rte);
+
+            // the previous log left aside by a compaction that did not complete, the compacted log has at least a header
+            File previous = getPreviousFile();
+            if (previous.exists()) {
+                if (registryFile.length() > 0)
+                    previous.delete();
+                else if ((registryFile.exists() && !registryFile.delete()) || !previous.renameTo(registryFile))
+                    throw new IOException("Unable to restore " + registryFile + " from " + previous);
+            }
+
+            long length = registryFile.length();
+            if (length == 0)
+                return;
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(registryFile)));
+            long position = HEADER_LENGTH;
+            long now = System.currentTimeMillis();
+            try {
+                if (length < HEADER_LENGTH || in.readInt() != MAGIC || in.readInt() != VERSION)
+                    throw new IOException(registryFile + " is not a token registry log");
+
+                while (position < length) {
+                    byte[] data;
+                    try {
+                        int size = in.readInt();
+                        if (size <= 0 || position + 4 + size > length)
+                            break;
+                        data = new byte[size];
+                        in.readFully(data);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    apply(data, now);
+                    position += 4 + data.length;
+                    logRecords++;
+                }
+            } finally {
+                in.close();
+            }
+
+            if (position < length) {
+                logger.warn("Discarding incomplete record at the end of " + registryFile);
+                RandomAccessFile file = new RandomAccessFile(registryFile, "rw");
+                try {
+                    file.setLength(position);
+                } finally {
+                    file.close();
+                }
+            }
+        }
+
+        private File getPreviousFile() {
+            return new File(registryFile.getPath() + ".previous");
+        }
+
+        private void apply(byte[] data, long now) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            byte type = in.readByte();
+            String id = in.readUTF();
+            long expiration = in.readLong();
+            if (type == REMOVE) {
+                holders.remove(id);
+            } else if (type == ADD) {
+                TokenHolder holder = new TokenHolder(id, null, expiration);
+                if (holder.isExpired(now)) {
+                    holders.remove(id);
+                    return;
+                }
+                ObjectInputStream ois = new ObjectInputStream(in);
+                try {
+                    holder.token = ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                } finally {
+                    ois.close();
+                }
+                holders.put(id, holder);
+            } else
+                throw new IOException("Unknown record type " + type + " in " + registryFile);
+        }
+    }
+
+    private static class LogRecord {
+        final byte[] data;
+
+        volatile boolean written;
+
+        volatile IOException failure;
+
+        LogRecord(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    protected static class TokenHolder {
+        String id;
+
+        Object token;
+
+        long expiration;
+
+        public TokenHolder(String id, Object token, long expiration) {
+            this.id = id;
+            this.token = token;
+            this.expiration = expiration;
+        }
+
+        public boolean isExpired(long now) {
+            return expiration > 0 && now >= expiration;
+        }
+    }
+}
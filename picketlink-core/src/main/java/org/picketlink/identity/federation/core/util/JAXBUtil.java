@@ -23,7 +23,8 @@ package org.picketlink.identity.federation.core.util;
 
 import java.io.IOException;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
@@ -52,7 +53,14 @@ public class JAXBUtil {
 
     public static final String W3C_XML_SCHEMA_NS_URI = "http://www.w3.org/2001/XMLSchema";
 
-    private static HashMap<String, JAXBContext> jaxbContextHash = new HashMap<String, JAXBContext>();
+    /**
+     * System property telling whether the endpoints build the JAXB contexts they use when they start, rather than on their
+     * first request. Defaults to true.
+     */
+    public static final String WARM_UP = "picketlink.jaxb.warmup";
+
+    // contexts are thread safe and built once per context path or class
+    private static final ConcurrentMap<String, ContextHolder> jaxbContextHash = new ConcurrentHashMap<String, ContextHolder>();
 
     static {
         // Useful on Sun VMs. Harmless on other VMs.
@@ -120,9 +128,6 @@ public class JAXBUtil {
     public static Unmarshaller getUnmarshaller(String... pkgNames) throws JAXBException {
         if (pkgNames == null)
             throw logger.nullArgumentError("pkgName");
-        int len = pkgNames.length;
-        if (len == 0)
-            return getUnmarshaller(pkgNames[0]);
 
         JAXBContext jc = getJAXBContext(pkgNames);
         return jc.createUnmarshaller();
@@ -148,17 +153,7 @@ public class JAXBUtil {
 
     public static Unmarshaller getValidatingUnmarshaller(String[] pkgNames, String[] schemaLocations) throws JAXBException,
             SAXException, IOException {
-        StringBuilder builder = new StringBuilder();
-        int len = pkgNames.length;
-        if (len == 0)
-            throw logger.nullValueError("Packages are empty");
-
-        for (String pkg : pkgNames) {
-            builder.append(pkg);
-            builder.append(":");
-        }
-
-        Unmarshaller unmarshaller = getUnmarshaller(builder.toString());
+        Unmarshaller unmarshaller = getUnmarshaller(pkgNames);
 
         SchemaFactory schemaFactory = getSchemaFactory();
 
@@ -234,42 +229,92 @@ public class JAXBUtil {
     }
 
     public static JAXBContext getJAXBContext(String path) throws JAXBException {
-        JAXBContext jx = jaxbContextHash.get(path);
-        if (jx == null) {
-            jx = JAXBContext.newInstance(path);
-            jaxbContextHash.put(path, jx);
-        }
-        return jx;
+        return getContextHolder(path, null).get();
     }
 
     public static JAXBContext getJAXBContext(String... paths) throws JAXBException {
-        int len = paths.length;
-        if (len == 0)
+        if (paths.length == 0)
+            throw logger.nullValueError("Packages are empty");
+        if (paths.length == 1)
             return getJAXBContext(paths[0]);
 
         StringBuilder builder = new StringBuilder();
         for (String path : paths) {
-            builder.append(path).append(":");
+            if (builder.length() > 0)
+                builder.append(":");
+            builder.append(path);
+        }
+        return getJAXBContext(builder.toString());
+    }
+
+    public static JAXBContext getJAXBContext(Class<?> clazz) throws JAXBException {
+        return getContextHolder(clazz.getName(), clazz).get();
+    }
+
+    /**
+     * Build the contexts of the given context paths ahead of their first use. A context that cannot be built is skipped,
+     * the error is reported again on its first use.
+     *
+     * @param paths
+     */
+    public static void warmUp(String... paths) {
+        for (String path : paths) {
+            try {
+                getJAXBContext(path);
+            } catch (JAXBException e) {
+                logger.trace("Unable to build the JAXB context of " + path, e);
+            }
         }
+    }
 
-        String finalPath = builder.toString();
+    /**
+     * Whether the endpoints should build their JAXB contexts when they start
+     *
+     * @return the value of the {@link #WARM_UP} system property
+     */
+    public static boolean isWarmUpEnabled() {
+        return Boolean.parseBoolean(SecurityActions.getSystemProperty(WARM_UP, "true"));
+    }
 
-        JAXBContext jx = jaxbContextHash.get(finalPath);
-        if (jx == null) {
-            jx = JAXBContext.newInstance(finalPath);
-            jaxbContextHash.put(finalPath, jx);
+    private static ContextHolder getContextHolder(String key, Class<?> clazz) {
+        ContextHolder holder = jaxbContextHash.get(key);
+        if (holder == null) {
+            ContextHolder newHolder = new ContextHolder(key, clazz);
+            holder = jaxbContextHash.putIfAbsent(key, newHolder);
+            if (holder == null)
+                holder = newHolder;
         }
-        return jx;
+        return holder;
     }
 
-    public static JAXBContext getJAXBContext(Class<?> clazz) throws JAXBException {
-        String clazzName = clazz.getName();
+    /**
+     * Builds its context on the first call, concurrent callers wait for it instead of building their own. A context that
+     * failed to build is tried again on the next call.
+     */
+    private static class ContextHolder {
+        private final String path;
+
+        private final Class<?> clazz;
 
-        JAXBContext jx = jaxbContextHash.get(clazzName);
-        if (jx == null) {
-            jx = JAXBContext.newInstance(clazz);
-            jaxbContextHash.put(clazzName, jx);
+        private volatile JAXBContext context;
+
+        private ContextHolder(String path, Class<?> clazz) {
+            this.path = path;
+            this.clazz = clazz;
+        }
+
+        private JAXBContext get() throws JAXBException {
+            JAXBContext current = context;
+            if (current == null) {
+                synchronized (this) {
+                    current = context;
+                    if (current == null) {
+                        current = clazz != null ? JAXBContext.newInstance(clazz) : JAXBContext.newInstance(path);
+                        context = current;
+                    }
+                }
+            }
+            return current;
         }
-        return jx;
     }
-}
\ No newline at end of file
+}
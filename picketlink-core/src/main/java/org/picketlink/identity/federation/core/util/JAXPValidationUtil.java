@@ -25,8 +25,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
@@ -35,14 +39,19 @@ import javax.xml.validation.Validator;
 import org.picketlink.identity.federation.PicketLinkLogger;
 import org.picketlink.identity.federation.PicketLinkLoggerFactory;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
-import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
 import org.w3c.dom.Node;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
 /**
+ * <p>
  * Utility class associated with JAXP Validation
+ * </p>
+ * <p>
+ * The compiled schema is shared. {@link Validator}s are not thread safe: they are reset and kept in a pool once a
+ * document is validated, at most {@link #POOL_SIZE} idle instances.
+ * </p>
  *
  * @author Anil.Saldhana@redhat.com
  * @since Jun 30, 2011
@@ -51,16 +60,45 @@ public class JAXPValidationUtil {
     
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
     
+    /**
+     * System property holding the maximum number of idle validators kept in the pool. Defaults to 16.
+     */
+    public static final String POOL_SIZE = "picketlink.schema.validator.pool.size";
+
+    private static final int maxIdle = Integer.parseInt(SecurityActions.getSystemProperty(POOL_SIZE, "16"));
+
+    /**
+     * @deprecated not used anymore, a {@link Validator} is not thread safe and cannot be shared. See {@link #validator()}.
+     */
+    @Deprecated
     protected static Validator validator;
 
+    // the compiled grammar is thread safe and shared
+    private static volatile Schema schema;
+
+    private static final Queue<Validator> validators = new ConcurrentLinkedQueue<Validator>();
+
+    private static final AtomicInteger idleValidators = new AtomicInteger();
+
     protected static SchemaFactory schemaFactory;
 
     public static void validate(String str) throws SAXException, IOException {
-        validator().validate(new StreamSource(str));
+        validate(new StreamSource(str));
     }
 
     public static void validate(InputStream stream) throws SAXException, IOException {
-        validator().validate(new StreamSource(stream));
+        validate(new StreamSource(stream));
+    }
+
+    /**
+     * Validate a DOM node without serializing it first
+     *
+     * @param node
+     * @throws SAXException
+     * @throws IOException
+     */
+    public static void validate(Node node) throws SAXException, IOException {
+        validate(new DOMSource(node));
     }
 
     /**
@@ -72,28 +110,73 @@ public class JAXPValidationUtil {
     public static void checkSchemaValidation(Node samlDocument) throws ProcessingException {
         if (SecurityActions.getSystemProperty("picketlink.schema.validate", "false").equalsIgnoreCase("true")) {
             try {
-                JAXPValidationUtil.validate(DocumentUtil.getNodeAsStream(samlDocument));
+                JAXPValidationUtil.validate(samlDocument);
             } catch (Exception e) {
                 throw logger.processingError(e);
             }
         }
     }
 
+    /**
+     * Get a new {@link Validator} for the PicketLink schemas. A validator is not thread safe, the returned instance must not
+     * be shared between threads.
+     *
+     * @return
+     * @throws SAXException
+     * @throws IOException
+     */
     public static Validator validator() throws SAXException, IOException {
         SystemPropertiesUtil.ensure();
 
-        if (validator == null) {
-            Schema schema = getSchema();
-            if (schema == null)
-                throw logger.nullValueError("schema");
+        Validator newValidator = getSchema().newValidator();
+        newValidator.setErrorHandler(new CustomErrorHandler());
+        return newValidator;
+    }
 
-            validator = schema.newValidator();
-            validator.setErrorHandler(new CustomErrorHandler());
-        }
-        return validator;
+    /**
+     * Number of idle validators in the pool
+     *
+     * @return
+     */
+    public static int getIdleValidatorCount() {
+        return idleValidators.get();
+    }
+
+    private static void validate(Source source) throws SAXException, IOException {
+        Validator pooled = validators.poll();
+        if (pooled != null)
+            idleValidators.decrementAndGet();
+        else
+            pooled = validator();
+
+        pooled.validate(source);
+
+        // a validator whose validation failed is not reused
+        pooled.reset();
+        pooled.setErrorHandler(new CustomErrorHandler());
+        if (idleValidators.incrementAndGet() <= maxIdle)
+            validators.offer(pooled);
+        else
+            idleValidators.decrementAndGet();
     }
 
     private static Schema getSchema() throws IOException {
+        Schema schemaGrammar = schema;
+        if (schemaGrammar == null) {
+            synchronized (JAXPValidationUtil.class) {
+                schemaGrammar = schema;
+                if (schemaGrammar == null) {
+                    schemaGrammar = loadSchema();
+                    if (schemaGrammar == null)
+                        throw logger.nullValueError("schema");
+                    schema = schemaGrammar;
+                }
+            }
+        }
+        return schemaGrammar;
+    }
+
+    private static Schema loadSchema() throws IOException {
         schemaFactory = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
 
         schemaFactory.setResourceResolver(new IDFedLSInputResolver());
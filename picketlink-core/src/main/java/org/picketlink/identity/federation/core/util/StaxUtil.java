@@ -79,7 +79,7 @@ public class StaxUtil {
      * @throws ProcessingException
      */
     public static XMLEventWriter getXMLEventWriter(final OutputStream outStream) throws ProcessingException {
-        XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+        XMLOutputFactory xmlOutputFactory = XMLFactoryUtil.getXMLOutputFactory();
         try {
             return xmlOutputFactory.createXMLEventWriter(outStream, "UTF-8");
         } catch (XMLStreamException e) {
@@ -95,7 +95,7 @@ public class StaxUtil {
      * @throws ProcessingException
      */
     public static XMLStreamWriter getXMLStreamWriter(final OutputStream outStream) throws ProcessingException {
-        XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+        XMLOutputFactory xmlOutputFactory = XMLFactoryUtil.getXMLOutputFactory();
         try {
             return xmlOutputFactory.createXMLStreamWriter(outStream, "UTF-8");
         } catch (XMLStreamException e) {
@@ -111,7 +111,7 @@ public class StaxUtil {
      * @throws ProcessingException
      */
     public static XMLStreamWriter getXMLStreamWriter(final Writer writer) throws ProcessingException {
-        XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+        XMLOutputFactory xmlOutputFactory = XMLFactoryUtil.getXMLOutputFactory();
         try {
             return xmlOutputFactory.createXMLStreamWriter(writer);
         } catch (XMLStreamException e) {
@@ -120,7 +120,7 @@ public class StaxUtil {
     }
 
     public static XMLStreamWriter getXMLStreamWriter(final Result result) throws ProcessingException {
-        XMLOutputFactory factory = XMLOutputFactory.newInstance();
+        XMLOutputFactory factory = XMLFactoryUtil.getXMLOutputFactory();
         try {
             return factory.createXMLStreamWriter(result);
         } catch (XMLStreamException xe) {
@@ -72,8 +72,6 @@ public class TransformerUtil {
     
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
     
-    private static TransformerFactory transformerFactory;
-    
     /**
      * Get the Default Transformer
      *
@@ -103,11 +101,7 @@ public class TransformerUtil {
      * @throws TransformerFactoryConfigurationError
      */
     private static TransformerFactory getTransformerFactory() throws TransformerFactoryConfigurationError {
-        if (transformerFactory == null) {
-            transformerFactory = TransformerFactory.newInstance();
-        }
-
-        return transformerFactory;
+        return XMLFactoryUtil.getTransformerFactory();
     }
 
     /**
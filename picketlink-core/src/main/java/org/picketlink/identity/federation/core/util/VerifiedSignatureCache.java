@@ -0,0 +1,355 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.util;
+
+import java.security.Key;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.XMLConstants;
+import javax.xml.crypto.dsig.XMLSignature;
+
+import org.picketlink.identity.federation.PicketLinkLogger;
+import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLConstants;
+import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants;
+import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * <p>
+ * Bounded cache of the XML signatures that {@link XMLSignatureUtil#validate(org.w3c.dom.Document, Key)} has
+ * successfully verified, so that a document presented again is not validated again.
+ * </p>
+ * <p>
+ * Only enveloped signatures are cached: all the references have to point to the same element, the whole document or an
+ * element by its ID, and that element has to contain the signature. Entries are keyed by a SHA-256 digest of that
+ * signed element (the namespaces declared by its ancestors, then names, namespaces, attributes and text of all its
+ * nodes, the signature included), of the SignatureValue and of the encoded validating key. Any change to the signed
+ * content, to the signature or to the key is therefore a miss. An entry expires after the configured time to live or at
+ * the NotOnOrAfter condition of the signed SAML assertion, whichever comes first. When full, the least recently used
+ * entry is evicted.
+ * </p>
+ */
+public class VerifiedSignatureCache {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    /**
+     * System property holding the maximum number of verified signatures kept. Defaults to 0, no cache.
+     */
+    public static final String CACHE_SIZE = "picketlink.xmlsig.verified.cache.size";
+
+    /**
+     * System property holding the time to live of a verified signature, in milliseconds. Defaults to 5 minutes.
+     */
+    public static final String CACHE_TTL = "picketlink.xmlsig.verified.cache.ttl";
+
+    public static final long DEFAULT_TTL = 300000;
+
+    private final long timeToLive;
+
+    private final Map<String, Long> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a cache configured by the {@link #CACHE_SIZE} and {@link #CACHE_TTL} system properties
+     *
+     * @return the cache, or null when no size is configured
+     */
+    public static VerifiedSignatureCache fromSystemProperties() {
+        int maxEntries = Integer.parseInt(SecurityActions.getSystemProperty(CACHE_SIZE, "0"));
+        if (maxEntries <= 0)
+            return null;
+        long timeToLive = Long.parseLong(SecurityActions.getSystemProperty(CACHE_TTL, String.valueOf(DEFAULT_TTL)));
+        return new VerifiedSignatureCache(maxEntries, timeToLive);
+    }
+
+    /**
+     * @param maxEntries maximum number of signatures kept
+     * @param timeToLive maximum time a signature is kept, in milliseconds
+     */
+    public VerifiedSignatureCache(final int maxEntries, long timeToLive) {
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Key of a signature validated with a key
+     *
+     * @param signatureElement the ds:Signature element
+     * @param validatingKey
+     * @return the key, or null when the signature is not cached
+     */
+    public String getKey(Element signatureElement, Key validatingKey) {
+        Element signedInfo = getChildElement(signatureElement, "SignedInfo");
+        Element signatureValue = getChildElement(signatureElement, "SignatureValue");
+        byte[] encodedKey = validatingKey.getEncoded();
+        if (signedInfo == null || signatureValue == null || encodedKey == null)
+            return null;
+        Element signed = getSignedElement(signatureElement, signedInfo);
+        if (signed == null)
+            return null;
+
+        StringBuilder canonical = new StringBuilder();
+        for (Node ancestor = signed.getParentNode(); ancestor instanceof Element; ancestor = ancestor.getParentNode()) {
+            appendNamespaces(canonical.append('N'), (Element) ancestor);
+        }
+        append(canonical, signed);
+        append(canonical.append('V'), signatureValue.getTextContent());
+        append(canonical.append('K'), validatingKey.getAlgorithm());
+        append(canonical, Base64.encodeBytes(encodedKey, Base64.DONT_BREAK_LINES));
+
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return Base64.encodeBytes(messageDigest.digest(canonical.toString().getBytes("UTF-8")));
+        } catch (Exception e) {
+            logger.trace("Unable to digest signature", e);
+            return null;
+        }
+    }
+
+    /**
+     * Check whether the signature was already verified
+     *
+     * @param key the key of the signature, see {@link #getKey(Element, Key)}
+     * @return
+     */
+    public boolean isVerified(String key) {
+        boolean verified = false;
+        if (key != null) {
+            synchronized (entries) {
+                Long expiration = entries.get(key);
+                if (expiration != null) {
+                    if (System.currentTimeMillis() >= expiration)
+                        entries.remove(key);
+                    else
+                        verified = true;
+                }
+            }
+        }
+
+        if (verified)
+            hits.incrementAndGet();
+        else
+            misses.incrementAndGet();
+        return verified;
+    }
+
+    /**
+     * Record a successful verification of a signature
+     *
+     * @param key the key of the signature, see {@link #getKey(Element, Key)}
+     * @param signatureElement the ds:Signature element
+     */
+    public void put(String key, Element signatureElement) {
+        if (key == null)
+            return;
+
+        long expiration = System.currentTimeMillis() + timeToLive;
+        Node signed = signatureElement.getParentNode();
+        if (signed instanceof Element) {
+            Long notOnOrAfter = getNotOnOrAfter((Element) signed);
+            if (notOnOrAfter != null)
+                expiration = Math.min(expiration, notOnOrAfter);
+        }
+
+        if (expiration > System.currentTimeMillis()) {
+            synchronized (entries) {
+                entries.put(key, expiration);
+            }
+        }
+    }
+
+    /**
+     * Drop all the verified signatures
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private Long getNotOnOrAfter(Element signed) {
+        Element conditions = null;
+        for (Node child = signed.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE
+                    && JBossSAMLURIConstants.ASSERTION_NSURI.get().equals(child.getNamespaceURI())
+                    && JBossSAMLConstants.CONDITIONS.get().equals(child.getLocalName())) {
+                conditions = (Element) child;
+                break;
+            }
+        }
+        if (conditions == null)
+            return null;
+
+        String notOnOrAfter = conditions.getAttribute(JBossSAMLConstants.NOT_ON_OR_AFTER.get());
+        if (notOnOrAfter.length() == 0)
+            return null;
+        try {
+            return XMLTimeUtil.parse(notOnOrAfter).toGregorianCalendar().getTimeInMillis();
+        } catch (Exception e) {
+            // a signature we cannot bound is not cached
+            return 0L;
+        }
+    }
+
+    // the element all the references point to, when it contains the signature
+    private static Element getSignedElement(Element signatureElement, Element signedInfo) {
+        Element signed = null;
+        for (Node child = signedInfo.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() != Node.ELEMENT_NODE || !XMLSignature.XMLNS.equals(child.getNamespaceURI())
+                    || !"Reference".equals(child.getLocalName()))
+                continue;
+
+            Element reference = (Element) child;
+            if (!reference.hasAttribute("URI"))
+                return null;
+            String uri = reference.getAttribute("URI");
+            Element referenced;
+            if (uri.length() == 0)
+                referenced = signatureElement.getOwnerDocument().getDocumentElement();
+            else if (uri.startsWith("#") && !uri.startsWith("#xpointer("))
+                referenced = signatureElement.getOwnerDocument().getElementById(uri.substring(1));
+            else
+                return null;
+
+            if (referenced == null || (signed != null && signed != referenced))
+                return null;
+            signed = referenced;
+        }
+
+        for (Node ancestor = signatureElement.getParentNode(); ancestor != null; ancestor = ancestor.getParentNode()) {
+            if (ancestor == signed)
+                return signed;
+        }
+        return null;
+    }
+
+    private static Element getChildElement(Element element, String localName) {
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && XMLSignature.XMLNS.equals(child.getNamespaceURI())
+                    && localName.equals(child.getLocalName()))
+                return (Element) child;
+        }
+        return null;
+    }
+
+    // the nodes of the subtree, the attributes of an element in name order
+    private static void append(StringBuilder builder, Node node) {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                append(builder.append('E'), node.getNamespaceURI());
+                append(builder, node.getNodeName());
+
+                NamedNodeMap attributes = node.getAttributes();
+                String[] names = new String[attributes.getLength()];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = attributes.item(i).getNodeName();
+                }
+                Arrays.sort(names);
+                for (String name : names) {
+                    Attr attr = (Attr) attributes.getNamedItem(name);
+                    append(builder.append('A'), attr.getNamespaceURI());
+                    append(builder, name);
+                    append(builder, attr.getValue());
+                }
+
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    append(builder, child);
+                }
+                builder.append('e');
+                break;
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                append(builder.append('T'), node.getNodeValue());
+                break;
+            case Node.COMMENT_NODE:
+                append(builder.append('C'), node.getNodeValue());
+                break;
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                append(builder.append('P'), node.getNodeName());
+                append(builder, node.getNodeValue());
+                break;
+            default:
+                break;
+        }
+    }
+
+    // the namespace declarations of an element, in name order
+    private static void appendNamespaces(StringBuilder builder, Element element) {
+        NamedNodeMap attributes = element.getAttributes();
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attr = attributes.item(i);
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr.getNamespaceURI()))
+                names.add(attr.getNodeName());
+        }
+        Collections.sort(names);
+        for (String name : names) {
+            append(builder, name);
+            append(builder, attributes.getNamedItem(name).getNodeValue());
+        }
+        builder.append('n');
+    }
+
+    private static void append(StringBuilder builder, String value) {
+        if (value == null) {
+            builder.append("-1:");
+        } else {
+            builder.append(value.length()).append(':').append(value);
+        }
+    }
+}
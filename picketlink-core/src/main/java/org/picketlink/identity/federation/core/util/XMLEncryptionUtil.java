@@ -37,6 +37,9 @@ import org.picketlink.identity.federation.PicketLinkLogger;
 import org.picketlink.identity.federation.PicketLinkLoggerFactory;
 import org.picketlink.identity.federation.core.exceptions.ConfigurationException;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Phase;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
 import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -53,6 +56,8 @@ import org.w3c.dom.NodeList;
 public class XMLEncryptionUtil {
     
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    private static final PicketLinkMetrics metrics = PicketLinkMetricsFactory.getMetrics();
     
     static {
         // Initialize the Apache XML Security Library
@@ -184,6 +189,7 @@ public class XMLEncryptionUtil {
             throw logger.domMissingDocElementError(elementQName.toString());
 
         XMLCipher cipher = null;
+        long start = metrics.start();
         EncryptedKey encryptedKey = encryptKey(document, secretKey, publicKey, keySize);
 
         String encryptionAlgorithm = getXMLEncryptionURL(secretKey.getAlgorithm(), keySize);
@@ -201,6 +207,7 @@ public class XMLEncryptionUtil {
         } catch (Exception e) {
             throw logger.processingError(e);
         }
+        metrics.phase(Phase.ENCRYPT, start);
 
         // The EncryptedKey element is added
         Element encryptedKeyElement = cipher.martial(document, encryptedKey);
@@ -292,6 +299,7 @@ public class XMLEncryptionUtil {
             throw logger.nullArgumentError("document");
 
         XMLCipher cipher = null;
+        long start = metrics.start();
         EncryptedKey encryptedKey = encryptKey(document, secretKey, publicKey, keySize);
         String encryptionAlgorithm = getXMLEncryptionURL(secretKey.getAlgorithm(), keySize);
 
@@ -309,6 +317,7 @@ public class XMLEncryptionUtil {
         } catch (Exception e) {
             throw logger.processingError(e);
         }
+        metrics.phase(Phase.ENCRYPT, start);
 
         // The EncryptedKey element is added
         Element encryptedKeyElement = cipher.martial(document, encryptedKey);
@@ -348,6 +357,7 @@ public class XMLEncryptionUtil {
             throw logger.wrongTypeError("Wrapping element prefix invalid");
 
         XMLCipher cipher = null;
+        long start = metrics.start();
         EncryptedKey encryptedKey = encryptKey(document, secretKey, publicKey, keySize);
 
         String encryptionAlgorithm = getXMLEncryptionURL(secretKey.getAlgorithm(), keySize);
@@ -365,6 +375,7 @@ public class XMLEncryptionUtil {
         } catch (Exception e) {
             throw logger.processingError(e);
         }
+        metrics.phase(Phase.ENCRYPT, start);
 
         // The EncryptedKey element is added
         Element encryptedKeyElement = cipher.martial(document, encryptedKey);
@@ -0,0 +1,181 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.util;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.TransformerFactoryConfigurationError;
+
+/**
+ * <p>
+ * Holds the XML factories used by PicketLink. Looking up a factory goes through the service loader, which scans the
+ * classpath, so each factory is looked up and configured once and then shared. The factories must not be reconfigured by
+ * callers.
+ * </p>
+ * <p>
+ * {@code DocumentBuilder}s are not thread safe and are kept per thread.
+ * </p>
+ */
+public class XMLFactoryUtil {
+
+    private static volatile XMLInputFactory xmlInputFactory;
+
+    private static volatile XMLOutputFactory xmlOutputFactory;
+
+    private static volatile XMLEventFactory xmlEventFactory;
+
+    private static volatile DocumentBuilderFactory documentBuilderFactory;
+
+    private static volatile TransformerFactory transformerFactory;
+
+    private static volatile DatatypeFactory datatypeFactory;
+
+    private static final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<DocumentBuilder>();
+
+    /**
+     * Get the {@link XMLInputFactory} used by the stax based parsers. Entity references are replaced, external entities are
+     * not supported and adjacent text is coalesced.
+     *
+     * @return
+     */
+    public static XMLInputFactory getXMLInputFactory() {
+        if (xmlInputFactory == null) {
+            synchronized (XMLFactoryUtil.class) {
+                if (xmlInputFactory == null) {
+                    XMLInputFactory factory = XMLInputFactory.newInstance();
+                    factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+                    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+                    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+                    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+                    xmlInputFactory = factory;
+                }
+            }
+        }
+        return xmlInputFactory;
+    }
+
+    /**
+     * Get the {@link XMLOutputFactory} used by the stax based writers
+     *
+     * @return
+     */
+    public static XMLOutputFactory getXMLOutputFactory() {
+        if (xmlOutputFactory == null) {
+            synchronized (XMLFactoryUtil.class) {
+                if (xmlOutputFactory == null)
+                    xmlOutputFactory = XMLOutputFactory.newInstance();
+            }
+        }
+        return xmlOutputFactory;
+    }
+
+    /**
+     * Get the {@link XMLEventFactory}
+     *
+     * @return
+     */
+    public static XMLEventFactory getXMLEventFactory() {
+        if (xmlEventFactory == null) {
+            synchronized (XMLFactoryUtil.class) {
+                if (xmlEventFactory == null)
+                    xmlEventFactory = XMLEventFactory.newInstance();
+            }
+        }
+        return xmlEventFactory;
+    }
+
+    /**
+     * Get the namespace aware {@link DocumentBuilderFactory}
+     *
+     * @return
+     */
+    public static DocumentBuilderFactory getDocumentBuilderFactory() {
+        if (documentBuilderFactory == null) {
+            synchronized (XMLFactoryUtil.class) {
+                if (documentBuilderFactory == null) {
+                    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                    factory.setNamespaceAware(true);
+                    factory.setXIncludeAware(true);
+                    documentBuilderFactory = factory;
+                }
+            }
+        }
+        return documentBuilderFactory;
+    }
+
+    /**
+     * Get a {@link DocumentBuilder} that belongs to the calling thread. It is reset before being returned, and must not be
+     * kept nor shared with other threads.
+     *
+     * @return
+     * @throws ParserConfigurationException
+     */
+    public static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder builder = documentBuilders.get();
+        if (builder == null) {
+            builder = getDocumentBuilderFactory().newDocumentBuilder();
+            documentBuilders.set(builder);
+        } else {
+            builder.reset();
+        }
+        return builder;
+    }
+
+    /**
+     * Get the {@link TransformerFactory}
+     *
+     * @return
+     * @throws TransformerFactoryConfigurationError
+     */
+    public static TransformerFactory getTransformerFactory() throws TransformerFactoryConfigurationError {
+        if (transformerFactory == null) {
+            synchronized (XMLFactoryUtil.class) {
+                if (transformerFactory == null)
+                    transformerFactory = TransformerFactory.newInstance();
+            }
+        }
+        return transformerFactory;
+    }
+
+    /**
+     * Get the {@link DatatypeFactory}
+     *
+     * @return
+     * @throws DatatypeConfigurationException
+     */
+    public static DatatypeFactory getDatatypeFactory() throws DatatypeConfigurationException {
+        if (datatypeFactory == null) {
+            synchronized (XMLFactoryUtil.class) {
+                if (datatypeFactory == null)
+                    datatypeFactory = DatatypeFactory.newInstance();
+            }
+        }
+        return datatypeFactory;
+    }
+}
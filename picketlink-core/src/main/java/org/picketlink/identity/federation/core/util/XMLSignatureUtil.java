@@ -22,16 +22,21 @@ import java.io.OutputStream;
 import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.DSAPublicKey;
 import java.security.interfaces.RSAPublicKey;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.bind.JAXBException;
 import javax.xml.crypto.MarshalException;
@@ -55,13 +60,15 @@ import javax.xml.namespace.QName;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 
 import org.picketlink.identity.federation.PicketLinkLogger;
 import org.picketlink.identity.federation.PicketLinkLoggerFactory;
 import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Phase;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
 import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants;
 import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
 import org.picketlink.identity.federation.core.transfer.SignatureUtilTransferObject;
@@ -89,6 +96,8 @@ import org.xml.sax.SAXException;
 public class XMLSignatureUtil {
     
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    private static final PicketLinkMetrics metrics = PicketLinkMetricsFactory.getMetrics();
     
     // Set some system properties and Santuario providers. Run this block before any other class initialization.
     static {
@@ -109,6 +118,29 @@ public class XMLSignatureUtil {
      */
     private static boolean includeKeyInfoInSignature = true;
 
+    /**
+     * System property holding the maximum number of certificates decoded by
+     * {@link #getX509CertificateFromKeyInfoString(String)} that are kept. Defaults to 256.
+     */
+    public static final String CERTIFICATE_CACHE_SIZE = "picketlink.xmlsig.certificate.cache.size";
+
+    private static final int maxCertificates = Integer.parseInt(SecurityActions.getSystemProperty(CERTIFICATE_CACHE_SIZE,
+            "256"));
+
+    // decoded certificates by the digest of their DER encoding, least recently used first
+    private static final Map<String, X509Certificate> certificates = new LinkedHashMap<String, X509Certificate>(16, 0.75f,
+            true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, X509Certificate> eldest) {
+            return size() > maxCertificates;
+        }
+    };
+
+    // opt-in, see VerifiedSignatureCache#CACHE_SIZE
+    private static volatile VerifiedSignatureCache verifiedSignatures = VerifiedSignatureCache.fromSystemProperties();
+
     private static XMLSignatureFactory getXMLSignatureFactory() {
         XMLSignatureFactory xsf = null;
 
@@ -144,6 +176,19 @@ public class XMLSignatureUtil {
         XMLSignatureUtil.includeKeyInfoInSignature = includeKeyInfoInSignature;
     }
 
+    /**
+     * Set the cache of the signatures already verified by {@link #validate(Document, Key)}, null for none
+     *
+     * @param verifiedSignatureCache
+     */
+    public static void setVerifiedSignatureCache(VerifiedSignatureCache verifiedSignatureCache) {
+        verifiedSignatures = verifiedSignatureCache;
+    }
+
+    public static VerifiedSignatureCache getVerifiedSignatureCache() {
+        return verifiedSignatures;
+    }
+
     /**
      * Precheck whether the document that will be validated has the right signedinfo
      *
@@ -200,9 +245,7 @@ public class XMLSignatureUtil {
         if (nodeToBeSigned == null)
             throw logger.nullArgumentError("Node to be signed");
         
-        if (logger.isTraceEnabled()) {
-            logger.trace("Document to be signed=" + DocumentUtil.asString(doc));
-        }
+        logger.tracef("Document to be signed=%s", doc);
 
         Node parentNode = nodeToBeSigned.getParentNode();
 
@@ -276,7 +319,7 @@ public class XMLSignatureUtil {
      */
     public static Document sign(Document doc, KeyPair keyPair, String digestMethod, String signatureMethod, String referenceURI)
             throws GeneralSecurityException, MarshalException, XMLSignatureException {
-        logger.trace("Document to be signed=" + DocumentUtil.asString(doc));
+        logger.tracef("Document to be signed=%s", doc);
         PrivateKey signingKey = keyPair.getPrivate();
         PublicKey publicKey = keyPair.getPublic();
 
@@ -309,7 +352,9 @@ public class XMLSignatureUtil {
         }
         XMLSignature signature = fac.newXMLSignature(si, ki);
 
+        long start = metrics.start();
         signature.sign(dsc);
+        metrics.phase(Phase.SIGN, start);
 
         return doc;
     }
@@ -337,7 +382,7 @@ public class XMLSignatureUtil {
         String referenceURI = dto.getReferenceURI();
         String signatureMethod = dto.getSignatureMethod();
 
-        logger.trace("Document to be signed=" + DocumentUtil.asString(doc));
+        logger.tracef("Document to be signed=%s", doc);
 
         PrivateKey signingKey = keyPair.getPrivate();
         PublicKey publicKey = keyPair.getPublic();
@@ -371,13 +416,16 @@ public class XMLSignatureUtil {
         }
         XMLSignature signature = fac.newXMLSignature(si, ki);
 
+        long start = metrics.start();
         signature.sign(dsc);
+        metrics.phase(Phase.SIGN, start);
 
         return doc;
     }
 
     /**
-     * Validate a signed document with the given public key
+     * Validate a signed document with the given public key. When a {@link VerifiedSignatureCache} is set and the same
+     * signed element was already verified with that key, the signature is not validated again.
      *
      * @param signedDoc
      * @param publicKey
@@ -399,10 +447,23 @@ public class XMLSignatureUtil {
         if (publicKey == null)
             throw logger.nullValueError("Public Key");
 
-        DOMValidateContext valContext = new DOMValidateContext(publicKey, nl.item(0));
-        XMLSignature signature = fac.unmarshalXMLSignature(valContext);
+        long start = metrics.start();
+        Element signatureElement = (Element) nl.item(0);
 
+        VerifiedSignatureCache cache = verifiedSignatures;
+        String key = cache != null ? cache.getKey(signatureElement, publicKey) : null;
+        if (key != null && cache.isVerified(key)) {
+            metrics.phase(Phase.SIGNATURE_VALIDATION, start);
+            return true;
+        }
+
+        DOMValidateContext valContext = new DOMValidateContext(publicKey, signatureElement);
+        XMLSignature signature = fac.unmarshalXMLSignature(valContext);
         boolean coreValidity = signature.validate(valContext);
+        metrics.phase(Phase.SIGNATURE_VALIDATION, start);
+
+        if (coreValidity && key != null)
+            cache.put(key, signatureElement);
 
         if (logger.isTraceEnabled() && !coreValidity) {
             boolean sv = signature.getSignatureValue().validate(valContext);
@@ -440,34 +501,44 @@ public class XMLSignatureUtil {
      * @throws TransformerException
      */
     public static void marshall(Document signedDocument, OutputStream os) throws TransformerException {
-        TransformerFactory tf = TransformerFactory.newInstance();
-        Transformer trans = tf.newTransformer();
+        Transformer trans = XMLFactoryUtil.getTransformerFactory().newTransformer();
         trans.transform(DocumentUtil.getXMLSource(signedDocument), new StreamResult(os));
     }
 
     /**
-     * Given the X509Certificate in the keyinfo element, get a {@link X509Certificate}
+     * Given the X509Certificate in the keyinfo element, get a {@link X509Certificate}. Certificates are decoded once and
+     * cached by the digest of their DER encoding, the same certificate usually comes with every message of a party.
      *
      * @param certificateString
      * @return
      * @throws ProcessingException
      */
     public static X509Certificate getX509CertificateFromKeyInfoString(String certificateString) throws ProcessingException {
-        X509Certificate cert = null;
-        StringBuilder builder = new StringBuilder();
-        builder.append("-----BEGIN CERTIFICATE-----\n").append(certificateString).append("\n-----END CERTIFICATE-----");
-
-        String derFormattedString = builder.toString();
+        byte[] der = Base64.decode(certificateString);
+        if (der == null)
+            throw logger.processingError(new CertificateException("Invalid base64 encoded certificate"));
 
+        String digest;
         try {
-            CertificateFactory cf = CertificateFactory.getInstance("X.509");
-            ByteArrayInputStream bais = new ByteArrayInputStream(derFormattedString.getBytes());
+            digest = Base64.encodeBytes(MessageDigest.getInstance("SHA-256").digest(der));
+        } catch (NoSuchAlgorithmException e) {
+            throw logger.processingError(e);
+        }
 
-            while (bais.available() > 0) {
-                cert = (X509Certificate) cf.generateCertificate(bais);
+        X509Certificate cert;
+        synchronized (certificates) {
+            cert = certificates.get(digest);
+        }
+        if (cert == null) {
+            try {
+                CertificateFactory cf = CertificateFactory.getInstance("X.509");
+                cert = (X509Certificate) cf.generateCertificate(new ByteArrayInputStream(der));
+            } catch (CertificateException e) {
+                throw logger.processingError(e);
+            }
+            synchronized (certificates) {
+                certificates.put(digest, cert);
             }
-        } catch (java.security.cert.CertificateException e) {
-            throw logger.processingError(e);
         }
         return cert;
     }
@@ -23,9 +23,24 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
 import java.security.AccessController;
+import java.security.Principal;
 import java.security.PrivilegedAction;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import javax.security.auth.Subject;
 import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPHeader;
 import javax.xml.soap.SOAPMessage;
@@ -44,6 +59,10 @@ import org.picketlink.identity.federation.PicketLinkLoggerFactory;
 import org.picketlink.identity.federation.core.ErrorCodes;
 import org.picketlink.identity.federation.core.config.STSType;
 import org.picketlink.identity.federation.core.exceptions.ConfigurationException;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Operation;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Phase;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
 import org.picketlink.identity.federation.core.parsers.sts.STSConfigParser;
 import org.picketlink.identity.federation.core.parsers.wst.WSTrustParser;
 import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
@@ -56,6 +75,7 @@ import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityT
 import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityTokenResponseCollection;
 import org.picketlink.identity.federation.core.wstrust.writers.WSTrustResponseWriter;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -73,6 +93,8 @@ public class PicketLinkSTS implements Provider<SOAPMessage>// SecurityTokenServi
 {
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
 
+    private static final PicketLinkMetrics metrics = PicketLinkMetricsFactory.getMetrics();
+
     private static final String SEPARATOR = AccessController.doPrivileged(new PrivilegedAction<String>() {
         public String run() {
             return System.getProperty("file.separator");
@@ -83,18 +105,46 @@ public class PicketLinkSTS implements Provider<SOAPMessage>// SecurityTokenServi
 
     private static final String STS_CONFIG_DIR = "picketlink-store" + SEPARATOR + "sts" + SEPARATOR;
 
+    /**
+     * System property holding the number of threads processing the requests of a batch. Must be a positive number and
+     * defaults to the number of processors.
+     */
+    public static final String BATCH_THREADS = "picketlink.sts.batch.threads";
+
     @Resource
     protected WebServiceContext context;
 
     protected STSConfiguration config;
 
+    private ThreadPoolExecutor batchExecutor;
+
+    private int batchThreads;
+
+    private boolean started;
+
     // If the SOAP Message contained a wsse:binaryToken, all the providers can have access to it
-    public static ThreadLocal<BinaryToken> binaryToken = new InheritableThreadLocal<BinaryToken>();
+    private static final ThreadLocal<BinaryToken> currentBinaryToken = new ThreadLocal<BinaryToken>();
+
+    /**
+     * @deprecated use {@link #getCurrentBinaryToken()}. The token is no longer inherited by the threads created while a
+     *             message is processed.
+     */
+    @Deprecated
+    public static final ThreadLocal<BinaryToken> binaryToken = currentBinaryToken;
 
     public static class BinaryToken {
         public Node token;
     }
 
+    /**
+     * Returns the wsse:BinarySecurityToken of the SOAP message being processed by the current thread.
+     *
+     * @return the token or null if the message didn't contain one
+     */
+    public static BinaryToken getCurrentBinaryToken() {
+        return currentBinaryToken.get();
+    }
+
     public SOAPMessage invoke(SOAPMessage request) {
         String valueType = null;
         Node binaryToken = null;
@@ -119,14 +169,30 @@ public class PicketLinkSTS implements Provider<SOAPMessage>// SecurityTokenServi
         } catch (SOAPException e) {
             throw logger.stsWSError(e);
         }
+
+        if (binaryToken != null) {
+            BinaryToken token = new BinaryToken();
+            token.token = binaryToken;
+            currentBinaryToken.set(token);
+        }
+        try {
+            return this.handleMessage(request, binaryToken, valueType, soap12);
+        } finally {
+            currentBinaryToken.remove();
+        }
+    }
+
+    private SOAPMessage handleMessage(SOAPMessage request, Node binaryToken, String valueType, boolean soap12) {
         Node payLoad;
         BaseRequestSecurityToken baseRequest;
         try {
             payLoad = SOAPUtil.getSOAPData(request);
 
+            long start = metrics.start();
             WSTrustParser parser = new WSTrustParser();
 
             baseRequest = (BaseRequestSecurityToken) parser.parse(DocumentUtil.getNodeAsStream(payLoad));
+            metrics.phase(Phase.PARSE, start);
         } catch (Exception e) {
             throw logger.stsWSError(e);
         }
@@ -149,7 +215,23 @@ public class PicketLinkSTS implements Provider<SOAPMessage>// SecurityTokenServi
             Source theResponse = this.handleTokenRequest(req);
             return convert(theResponse, soap12);
         } else if (baseRequest instanceof RequestSecurityTokenCollection) {
-            return convert(this.handleTokenRequestCollection((RequestSecurityTokenCollection) baseRequest), soap12);
+            RequestSecurityTokenCollection requestCollection = (RequestSecurityTokenCollection) baseRequest;
+            try {
+                setRequestDocuments(requestCollection, (Document) payLoad);
+            } catch (Exception e) {
+                throw logger.stsWSError(e);
+            }
+
+            for (RequestSecurityToken req : requestCollection.getRequestSecurityTokens()) {
+                if (binaryToken != null) {
+                    req.setBinaryToken(binaryToken);
+                }
+
+                if (valueType != null) {
+                    req.setBinaryValueType(URI.create(valueType));
+                }
+            }
+            return convert(this.handleTokenRequestCollection(requestCollection), soap12);
         } else
             throw logger.stsWSInvalidTokenRequestError();
     }
@@ -197,53 +279,253 @@ public class PicketLinkSTS implements Provider<SOAPMessage>// SecurityTokenServi
     protected Source handleTokenRequest(RequestSecurityToken request) {
         if (context == null)
             throw new IllegalStateException(ErrorCodes.NULL_VALUE + "WebServiceContext");
-        if (this.config == null)
-            try {
-                logger.info("Loading STS configuration");
-                this.config = this.getConfiguration();
-            } catch (ConfigurationException e) {
-                throw logger.stsWSConfigurationError(e);
-            }
 
-        WSTrustRequestHandler handler = this.config.getRequestHandler();
-        if (handler == null)
-            throw logger.nullValueError("WSTrustRequestHandler");
+        return this.handleTokenRequest(request, this.getRequestHandler(), this.context.getUserPrincipal());
+    }
 
-        String requestType = request.getRequestType().toString();
+    private Source handleTokenRequest(RequestSecurityToken request, WSTrustRequestHandler handler, Principal callerPrincipal) {
+        String receivedType = request.getRequestType().toString();
         
-        logger.trace("STS received request of type " + requestType);
+        logger.trace("STS received request of type " + receivedType);
+
+        // the requests of a batch are processed as individual requests
+        String requestType = receivedType;
+        if (requestType.equals(WSTrustConstants.BATCH_ISSUE_REQUEST))
+            requestType = WSTrustConstants.ISSUE_REQUEST;
+        else if (requestType.equals(WSTrustConstants.BATCH_RENEW_REQUEST))
+            requestType = WSTrustConstants.RENEW_REQUEST;
+        else if (requestType.equals(WSTrustConstants.BATCH_CANCEL_REQUEST))
+            requestType = WSTrustConstants.CANCEL_REQUEST;
+        else if (requestType.equals(WSTrustConstants.BATCH_VALIDATE_REQUEST))
+            requestType = WSTrustConstants.VALIDATE_REQUEST;
+        if (!requestType.equals(receivedType)) {
+            // the handler sees the single request type, the caller keeps its request untouched
+            request = new RequestSecurityToken(request);
+            request.setRequestType(URI.create(requestType));
+        }
 
+        long start = metrics.start();
+        boolean failed = true;
         try {
+            Source response;
             if (requestType.equals(WSTrustConstants.ISSUE_REQUEST)) {
-                Source source = this.marshallResponse(handler.issue(request, this.context.getUserPrincipal()));
+                Source source = this.marshallResponse(handler.issue(request, callerPrincipal));
                 Document doc = handler.postProcess((Document) ((DOMSource) source).getNode(), request);
-                return new DOMSource(doc);
+                response = new DOMSource(doc);
             } else if (requestType.equals(WSTrustConstants.RENEW_REQUEST)) {
-                Source source = this.marshallResponse(handler.renew(request, this.context.getUserPrincipal()));
+                Source source = this.marshallResponse(handler.renew(request, callerPrincipal));
                 // we need to sign/encrypt renewed tokens.
                 Document document = handler.postProcess((Document) ((DOMSource) source).getNode(), request);
-                return new DOMSource(document);
+                response = new DOMSource(document);
             } else if (requestType.equals(WSTrustConstants.CANCEL_REQUEST))
-                return this.marshallResponse(handler.cancel(request, this.context.getUserPrincipal()));
+                response = this.marshallResponse(handler.cancel(request, callerPrincipal));
             else if (requestType.equals(WSTrustConstants.VALIDATE_REQUEST))
-                return this.marshallResponse(handler.validate(request, this.context.getUserPrincipal()));
+                response = this.marshallResponse(handler.validate(request, callerPrincipal));
             else
                 throw logger.stsWSInvalidRequestTypeError(requestType);
+            failed = false;
+            return response;
         } catch (WSTrustException we) {
             throw logger.stsWSHandlingTokenRequestError(we);
+        } finally {
+            if (metrics.isEnabled())
+                metrics.operation(Operation.STS, getMetricsKey(requestType, request.getTokenType()), start, failed);
         }
     }
 
+    /**
+     * Key of the STS operations: the last segment of the request type followed by the token type
+     *
+     * @param requestType
+     * @param tokenType
+     * @return
+     */
+    private String getMetricsKey(String requestType, URI tokenType) {
+        String name = requestType.substring(requestType.lastIndexOf('/') + 1);
+        return name + " " + (tokenType != null ? tokenType.toString() : "unknown");
+    }
+
     /**
      * <p>
      * Process a collection of security token requests.
      * </p>
+     * <p>
+     * The requests are handled concurrently by a bounded pool of threads (see {@link #BATCH_THREADS}) and their responses
+     * are returned in a single {@code RequestSecurityTokenResponseCollection}, in the order of the requests. The pool
+     * threads run with the context classloader, {@code Subject} and binary token of the calling thread. A collection never
+     * has more requests in progress than there are threads in the pool: the calling thread waits for one of them to
+     * complete before handing over the next one, so that large or concurrent collections queue up instead of being
+     * rejected.
+     * </p>
      * 
      * @param requestCollection a {@code RequestSecurityTokenCollection} containing the various requests information.
      * @return a {@code Source} instance representing the marshalled response.
      */
     protected Source handleTokenRequestCollection(RequestSecurityTokenCollection requestCollection) {
-        throw new UnsupportedOperationException();
+        if (context == null)
+            throw new IllegalStateException(ErrorCodes.NULL_VALUE + "WebServiceContext");
+
+        final WSTrustRequestHandler handler = this.getRequestHandler();
+        // the web service context and the security context are bound to the calling thread
+        final Principal callerPrincipal = this.context.getUserPrincipal();
+        final ClassLoader classLoader = SecurityActions.getContextClassLoader();
+        final Subject subject = SecurityActions.getSubject();
+        final BinaryToken token = currentBinaryToken.get();
+
+        List<RequestSecurityToken> requests = requestCollection.getRequestSecurityTokens();
+        if (requests.isEmpty())
+            throw logger.stsWSInvalidTokenRequestError();
+
+        List<Source> responses = new ArrayList<Source>(requests.size());
+        if (requests.size() == 1) {
+            responses.add(this.handleTokenRequest(requests.get(0), handler, callerPrincipal));
+        } else {
+            ThreadPoolExecutor executor = this.getBatchExecutor();
+            final Semaphore inProgress = new Semaphore(this.batchThreads);
+            List<Future<Source>> futures = new ArrayList<Future<Source>>(requests.size());
+            try {
+                for (final RequestSecurityToken request : requests) {
+                    inProgress.acquire();
+                    futures.add(executor.submit(new Callable<Source>() {
+                        public Source call() throws Exception {
+                            ClassLoader previous = SecurityActions.getContextClassLoader();
+                            SecurityActions.setContextClassLoader(classLoader);
+                            currentBinaryToken.set(token);
+                            try {
+                                if (subject == null)
+                                    return handleTokenRequest(request, handler, callerPrincipal);
+                                return Subject.doAs(subject, new PrivilegedAction<Source>() {
+                                    public Source run() {
+                                        return handleTokenRequest(request, handler, callerPrincipal);
+                                    }
+                                });
+                            } finally {
+                                currentBinaryToken.remove();
+                                SecurityActions.setContextClassLoader(previous);
+                                inProgress.release();
+                            }
+                        }
+                    }));
+                }
+                for (Future<Source> future : futures)
+                    responses.add(future.get());
+            } catch (RejectedExecutionException e) {
+                throw logger.stsWSError(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw logger.stsWSError(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw logger.stsWSError(e.getCause());
+            } finally {
+                for (Future<Source> future : futures)
+                    future.cancel(true);
+            }
+        }
+
+        // merge the individual response collections into the first one
+        Document responseDocument = (Document) ((DOMSource) responses.get(0)).getNode();
+        Element root = responseDocument.getDocumentElement();
+        for (int i = 1; i < responses.size(); i++) {
+            Document document = (Document) ((DOMSource) responses.get(i)).getNode();
+            NodeList children = document.getDocumentElement().getChildNodes();
+            for (int j = 0; j < children.getLength(); j++)
+                root.appendChild(responseDocument.importNode(children.item(j), true));
+        }
+        return new DOMSource(responseDocument);
+    }
+
+    private WSTrustRequestHandler getRequestHandler() {
+        if (this.config == null)
+            try {
+                logger.info("Loading STS configuration");
+                this.config = this.getConfiguration();
+            } catch (ConfigurationException e) {
+                throw logger.stsWSConfigurationError(e);
+            }
+
+        WSTrustRequestHandler handler = this.config.getRequestHandler();
+        if (handler == null)
+            throw logger.nullValueError("WSTrustRequestHandler");
+        return handler;
+    }
+
+    /**
+     * <p>
+     * Registers the metrics MBean, if any, while the STS is deployed.
+     * </p>
+     */
+    @PostConstruct
+    public synchronized void start() {
+        if (!this.started) {
+            PicketLinkMetricsFactory.acquire();
+            this.started = true;
+        }
+    }
+
+    /**
+     * <p>
+     * Stops the threads processing the requests of a batch. Collections received afterwards are rejected.
+     * </p>
+     */
+    @PreDestroy
+    public synchronized void destroy() {
+        if (this.batchExecutor != null)
+            this.batchExecutor.shutdown();
+        if (this.started) {
+            PicketLinkMetricsFactory.release();
+            this.started = false;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getBatchExecutor() {
+        if (this.batchExecutor == null) {
+            int poolSize = Runtime.getRuntime().availableProcessors();
+            String threads = SecurityActions.getSystemProperty(BATCH_THREADS, null);
+            if (threads != null) {
+                try {
+                    poolSize = Integer.parseInt(threads.trim());
+                } catch (NumberFormatException e) {
+                    poolSize = 0;
+                }
+                if (poolSize < 1)
+                    throw logger.stsWSConfigurationError(new ConfigurationException(ErrorCodes.WRONG_TYPE + BATCH_THREADS
+                            + "=" + threads));
+            }
+
+            // each collection has at most poolSize requests queued or running, see handleTokenRequestCollection
+            this.batchExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "PicketLink STS Batch");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, new ThreadPoolExecutor.AbortPolicy());
+            this.batchExecutor.allowCoreThreadTimeOut(true);
+            this.batchThreads = poolSize;
+        }
+        return this.batchExecutor;
+    }
+
+    /**
+     * Give each request of a collection its own document, so that the targets of validate, renew and cancel requests are
+     * looked up in the request they belong to.
+     */
+    private void setRequestDocuments(RequestSecurityTokenCollection requestCollection, Document payLoad)
+            throws ConfigurationException {
+        List<RequestSecurityToken> requests = requestCollection.getRequestSecurityTokens();
+        NodeList children = payLoad.getDocumentElement().getChildNodes();
+        int index = 0;
+        for (int i = 0; i < children.getLength() && index < requests.size(); i++) {
+            Node child = children.item(i);
+            if (child instanceof Element && WSTrustConstants.RST.equals(child.getLocalName())) {
+                Document rstDocument = DocumentUtil.createDocument();
+                rstDocument.appendChild(rstDocument.importNode(child, true));
+                requests.get(index++).setRSTDocument(rstDocument);
+            }
+        }
     }
 
     /**
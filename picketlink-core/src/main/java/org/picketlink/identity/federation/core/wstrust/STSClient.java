@@ -66,7 +66,13 @@ public class STSClient {
     
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
     
-    private final ThreadLocal<Dispatch<Source>> dispatchLocal = new InheritableThreadLocal<Dispatch<Source>>();
+    private volatile Dispatch<Source> dispatch;
+
+    // the key under which the client is pooled by the STSClientFactory, if any
+    String poolKey;
+
+    // the request context of the dispatch while the client is idle in the pool
+    Map<String, Object> poolContext;
 
     private final String targetNS = "http://org.picketlink.trust/sts/";
 
@@ -134,7 +140,7 @@ public class STSClient {
         if (dispatch == null)
             throw logger.nullArgumentError("dispatch");
 
-        dispatchLocal.set(dispatch);
+        this.dispatch = dispatch;
     }
 
     /**
@@ -267,7 +273,7 @@ public class STSClient {
 
         validateDispatch();
         DOMSource requestSource = this.createSourceFromRequest(request);
-        Source response = dispatchLocal.get().invoke(requestSource);
+        Source response = getDispatch().invoke(requestSource);
 
         NodeList nodes;
         try {
@@ -324,7 +330,7 @@ public class STSClient {
 
         // send the token request to JBoss STS and get the response.
         DOMSource requestSource = this.createSourceFromRequest(request);
-        Source response = dispatchLocal.get().invoke(requestSource);
+        Source response = getDispatch().invoke(requestSource);
         NodeList nodes;
         try {
             Node documentNode = DocumentUtil.getNodeFromSource(response);
@@ -376,7 +382,7 @@ public class STSClient {
 
         DOMSource requestSource = this.createSourceFromRequest(request);
 
-        Source response = dispatchLocal.get().invoke(requestSource);
+        Source response = getDispatch().invoke(requestSource);
         
         try {
             InputStream stream = DocumentUtil.getNodeAsStream(DocumentUtil.getNodeFromSource(response));
@@ -415,7 +421,7 @@ public class STSClient {
         request.setContext("context");
 
         DOMSource requestSource = this.createSourceFromRequest(request);
-        Source response = dispatchLocal.get().invoke(requestSource);
+        Source response = getDispatch().invoke(requestSource);
         // get the WS-Trust response and check for presence of the RequestTokenCanceled element.
         try {
             InputStream stream = DocumentUtil.getNodeAsStream(DocumentUtil.getNodeFromSource(response));
@@ -436,7 +442,7 @@ public class STSClient {
      * @return
      */
     public Dispatch<Source> getDispatch() {
-        return dispatchLocal.get();
+        return dispatch;
     }
 
     private DOMSource createSourceFromRequest(RequestSecurityToken request) throws WSTrustException {
@@ -26,6 +26,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.ws.soap.SOAPBinding;
 
@@ -92,6 +94,9 @@ public class STSClientConfig {
     public static final String REQUEST_TYPE = "requestType";
 
     public static final String SOAP_BINDING = "soapBinding";
+
+    // configuration files already read, so that login modules do not parse them on every login
+    private static final ConcurrentMap<String, CachedProperties> propertiesCache = new ConcurrentHashMap<String, CachedProperties>();
     
     private final String serviceName;
 
@@ -274,16 +279,8 @@ public class STSClientConfig {
         }
 
         private void populate(final String configFile) {
-            InputStream in = null;
-
             try {
-                in = getResource(configFile);
-                if (in == null) {
-                    throw logger.nullValueError("properties file " + configFile);
-
-                }
-                final Properties properties = new Properties();
-                properties.load(in);
+                final Properties properties = getProperties(configFile);
                 this.serviceName = properties.getProperty(SERVICE_NAME);
                 this.portName = properties.getProperty(PORT_NAME);
                 this.endpointAddress = properties.getProperty(ENDPOINT_ADDRESS);
@@ -312,13 +309,6 @@ public class STSClientConfig {
                 }
             } catch (IOException e) {
                 throw logger.couldNotLoadProperties(configFile);
-            } finally {
-                try {
-                    if (in != null)
-                        in.close();
-                } catch (final IOException ignored) {
-                    ignored.printStackTrace();
-                }
             }
         }
 
@@ -355,6 +345,54 @@ public class STSClientConfig {
         }
     }
 
+    /**
+     * Get the properties of a configuration file. Files are read again when their modification time changes, classpath
+     * resources are read once.
+     *
+     * @param configFile
+     * @return
+     * @throws IOException
+     */
+    private static Properties getProperties(String configFile) throws IOException {
+        final File file = new File(configFile);
+        final long lastModified = file.exists() && !file.isDirectory() ? file.lastModified() : 0;
+
+        CachedProperties cached = propertiesCache.get(configFile);
+        if (cached != null && cached.lastModified == lastModified)
+            return cached.properties;
+
+        InputStream in = null;
+        try {
+            in = getResource(configFile);
+            if (in == null) {
+                throw logger.nullValueError("properties file " + configFile);
+
+            }
+            final Properties properties = new Properties();
+            properties.load(in);
+            propertiesCache.put(configFile, new CachedProperties(properties, lastModified));
+            return properties;
+        } finally {
+            try {
+                if (in != null)
+                    in.close();
+            } catch (final IOException ignored) {
+                ignored.printStackTrace();
+            }
+        }
+    }
+
+    private static class CachedProperties {
+        private final Properties properties;
+
+        private final long lastModified;
+
+        private CachedProperties(Properties properties, long lastModified) {
+            this.properties = properties;
+            this.lastModified = lastModified;
+        }
+    }
+
     private static InputStream getResource(String resource) throws IOException {
         // Try it as a File resource...
         final File file = new File(resource);
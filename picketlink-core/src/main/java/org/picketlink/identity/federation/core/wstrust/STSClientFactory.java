@@ -20,16 +20,52 @@
  */
 package org.picketlink.identity.federation.core.wstrust;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.ws.BindingProvider;
+
 import org.picketlink.identity.federation.core.exceptions.ParsingException;
 
 /**
+ * <p>
  * Simple factory for creating {@link STSClient}s.
+ * </p>
+ * <p>
+ * Besides creating new clients, the factory keeps pools of ready to use clients keyed by the STS endpoint configuration,
+ * so that the JAX-WS {@code Service} and {@code Dispatch} are not built again for every call. A client obtained with
+ * {@link #borrow(STSClientConfig)} is used by a single thread until it is handed back with {@link #release(STSClient)}.
+ * At most {@link #POOL_SIZE} idle clients are kept per configuration.
+ * </p>
  *
  * @author <a href="mailto:dbevenius@jboss.com">Daniel Bevenius</a>
  */
 public final class STSClientFactory {
     private static final STSClientFactory INSTANCE = new STSClientFactory();
 
+    /**
+     * System property holding the maximum number of idle clients kept per configuration. Defaults to 16.
+     */
+    public static final String POOL_SIZE = "picketlink.sts.client.pool.size";
+
+    private final int maxIdle = Integer.parseInt(SecurityActions.getSystemProperty(POOL_SIZE, "16"));
+
+    private final ConcurrentMap<String, Pool> pools = new ConcurrentHashMap<String, Pool>();
+
+    private final AtomicLong createdCount = new AtomicLong();
+
+    private final AtomicLong borrowCount = new AtomicLong();
+
+    private final AtomicLong borrowTimeNanos = new AtomicLong();
+
     private STSClientFactory() {
     }
 
@@ -40,4 +76,157 @@ public final class STSClientFactory {
     public STSClient create(final STSClientConfig config) throws ParsingException {
         return new STSClient(config);
     }
+
+    /**
+     * Obtain a pooled client for the given configuration. The credentials of the configuration are set on the client.
+     *
+     * @param config
+     * @return
+     * @throws ParsingException
+     */
+    public STSClient borrow(final STSClientConfig config) throws ParsingException {
+        return borrow(config, null);
+    }
+
+    /**
+     * Obtain a pooled client for the given configuration, whose {@code Dispatch} request context also holds the given
+     * properties. Clients with different properties are pooled separately.
+     *
+     * @param config
+     * @param requestProperties
+     * @return
+     * @throws ParsingException
+     */
+    public STSClient borrow(final STSClientConfig config, final Map<String, ?> requestProperties) throws ParsingException {
+        long start = System.nanoTime();
+        String key = key(config, requestProperties);
+
+        Pool pool = pools.get(key);
+        if (pool == null) {
+            Pool newPool = new Pool();
+            pool = pools.putIfAbsent(key, newPool);
+            if (pool == null)
+                pool = newPool;
+        }
+
+        STSClient client = pool.idle.poll();
+        if (client != null) {
+            pool.size.decrementAndGet();
+        } else {
+            client = create(config);
+            client.poolKey = key;
+            Map<String, Object> requestContext = client.getDispatch().getRequestContext();
+            requestContext.remove(BindingProvider.USERNAME_PROPERTY);
+            requestContext.remove(BindingProvider.PASSWORD_PROPERTY);
+            if (requestProperties != null)
+                requestContext.putAll(requestProperties);
+            // the state the request context is brought back to on release
+            client.poolContext = new HashMap<String, Object>(requestContext);
+            createdCount.incrementAndGet();
+        }
+
+        // the credentials may change from one call to the other
+        Map<String, Object> requestContext = client.getDispatch().getRequestContext();
+        if (config.getUsername() != null) {
+            requestContext.put(BindingProvider.USERNAME_PROPERTY, config.getUsername());
+            requestContext.put(BindingProvider.PASSWORD_PROPERTY, config.getPassword());
+        }
+
+        borrowCount.incrementAndGet();
+        borrowTimeNanos.addAndGet(System.nanoTime() - start);
+        return client;
+    }
+
+    /**
+     * Hand back a client obtained with {@link #borrow(STSClientConfig)}. The request context of the client is restored to
+     * the state it had when the client was pooled, which drops the credentials and any property set while borrowed.
+     * Clients that were not borrowed from the factory are ignored.
+     *
+     * @param client
+     */
+    public void release(final STSClient client) {
+        if (client == null || client.poolKey == null)
+            return;
+
+        Map<String, Object> requestContext = client.getDispatch().getRequestContext();
+        for (String name : new ArrayList<String>(requestContext.keySet())) {
+            if (!client.poolContext.containsKey(name))
+                requestContext.remove(name);
+        }
+        requestContext.putAll(client.poolContext);
+
+        Pool pool = pools.get(client.poolKey);
+        if (pool != null && pool.size.incrementAndGet() <= maxIdle) {
+            pool.idle.offer(client);
+        } else if (pool != null) {
+            pool.size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Number of idle clients in the pools
+     *
+     * @return
+     */
+    public int getPoolSize() {
+        int size = 0;
+        for (Pool pool : pools.values())
+            size += pool.size.get();
+        return size;
+    }
+
+    /**
+     * Number of clients created for the pools
+     *
+     * @return
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * Number of clients borrowed from the pools
+     *
+     * @return
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * Average time spent obtaining a pooled client, creation included, in nanoseconds
+     *
+     * @return
+     */
+    public long getAverageBorrowTimeNanos() {
+        long count = borrowCount.get();
+        return count == 0 ? 0 : borrowTimeNanos.get() / count;
+    }
+
+    /**
+     * Discard the idle clients and reset the statistics
+     */
+    public void clear() {
+        pools.clear();
+        createdCount.set(0);
+        borrowCount.set(0);
+        borrowTimeNanos.set(0);
+    }
+
+    private String key(STSClientConfig config, Map<String, ?> requestProperties) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(config.getEndPointAddress()).append('|').append(config.getServiceName()).append('|')
+                .append(config.getPortName()).append('|').append(config.getSoapBinding()).append('|')
+                .append(config.getWsaIssuer()).append('|').append(config.getWspAppliesTo()).append('|')
+                .append(config.isBatch());
+        if (requestProperties != null && !requestProperties.isEmpty())
+            builder.append('|').append(new TreeMap<String, Object>(requestProperties));
+        return builder.toString();
+    }
+
+    private static class Pool {
+        private final Queue<STSClient> idle = new ConcurrentLinkedQueue<STSClient>();
+
+        private final AtomicInteger size = new AtomicInteger();
+    }
 }
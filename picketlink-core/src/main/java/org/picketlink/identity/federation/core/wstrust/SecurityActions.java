@@ -22,9 +22,12 @@
 package org.picketlink.identity.federation.core.wstrust;
 
 import java.net.URL;
+import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 
+import javax.security.auth.Subject;
+
 /**
  * <p>
  * Utility class that executes actions such as creating a class in privileged blocks.
@@ -141,5 +144,88 @@ class SecurityActions {
             return url;
         }
     }
-    
-}
\ No newline at end of file
+
+    /**
+     * <p>
+     * Returns a system property value using the specified <code>key</code>. If not found the <code>defaultValue</code> will be
+     * returned.
+     * </p>
+     *
+     * @param key
+     * @param defaultValue
+     * @return
+     */
+    static String getSystemProperty(final String key, final String defaultValue) {
+        SecurityManager sm = System.getSecurityManager();
+
+        if (sm != null) {
+            return AccessController.doPrivileged(new PrivilegedAction<String>() {
+                public String run() {
+                    return System.getProperty(key, defaultValue);
+                }
+            });
+        } else {
+            return System.getProperty(key, defaultValue);
+        }
+    }
+
+    /**
+     * <p>Returns the context classloader of the current thread.</p>
+     *
+     * @return
+     */
+    static ClassLoader getContextClassLoader() {
+        SecurityManager sm = System.getSecurityManager();
+
+        if (sm != null) {
+            return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
+                public ClassLoader run() {
+                    return Thread.currentThread().getContextClassLoader();
+                }
+            });
+        } else {
+            return Thread.currentThread().getContextClassLoader();
+        }
+    }
+
+    /**
+     * <p>Sets the context classloader of the current thread.</p>
+     *
+     * @param classLoader
+     */
+    static void setContextClassLoader(final ClassLoader classLoader) {
+        SecurityManager sm = System.getSecurityManager();
+
+        if (sm != null) {
+            AccessController.doPrivileged(new PrivilegedAction<Void>() {
+                public Void run() {
+                    Thread.currentThread().setContextClassLoader(classLoader);
+                    return null;
+                }
+            });
+        } else {
+            Thread.currentThread().setContextClassLoader(classLoader);
+        }
+    }
+
+    /**
+     * <p>Returns the {@link Subject} associated with the access control context of the current thread, if any.</p>
+     *
+     * @return the subject or null
+     */
+    static Subject getSubject() {
+        // the context is read outside of the privileged block, which would drop the subject
+        final AccessControlContext context = AccessController.getContext();
+        SecurityManager sm = System.getSecurityManager();
+
+        if (sm != null) {
+            return AccessController.doPrivileged(new PrivilegedAction<Subject>() {
+                public Subject run() {
+                    return Subject.getSubject(context);
+                }
+            });
+        } else {
+            return Subject.getSubject(context);
+        }
+    }
+}
@@ -441,12 +441,7 @@ public class StandardRequestHandler implements WSTrustRequestHandler {
         if (this.configuration.signIssuedToken() && this.configuration.getSTSKeyPair() != null) {
             KeyPair keyPair = this.configuration.getSTSKeyPair();
             try {
-                if (logger.isTraceEnabled()) {
-                    try {
-                        logger.trace("Going to validate signature for: " + DocumentUtil.getNodeAsString(securityToken));
-                    } catch (Exception e) {
-                    }
-                }
+                logger.tracef("Going to validate signature for: %s", securityToken);
                 Document tokenDocument = DocumentUtil.createDocument();
                 Node importedNode = tokenDocument.importNode(securityToken, true);
                 tokenDocument.appendChild(importedNode);
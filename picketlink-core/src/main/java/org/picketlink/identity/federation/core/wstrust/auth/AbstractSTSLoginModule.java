@@ -371,7 +371,12 @@ public abstract class AbstractSTSLoginModule implements LoginModule {
 
             final STSClient stsClient = createWSTrustClient(builder.build());
 
-            final Element token = invokeSTS(stsClient);
+            final Element token;
+            try {
+                token = invokeSTS(stsClient);
+            } finally {
+                STSClientFactory.getInstance().release(stsClient);
+            }
 
             if (token == null) {
                 // Throw an exception as returing false only says that this login module should be ignored.
@@ -516,9 +521,16 @@ public abstract class AbstractSTSLoginModule implements LoginModule {
         return new STSClientConfig.Builder(configFile).build();
     }
 
+    /**
+     * Obtain the client used to call the STS. By default it is borrowed from the pools of the {@link STSClientFactory} and
+     * released once {@link #invokeSTS(STSClient)} returns.
+     *
+     * @param config
+     * @return
+     */
     protected STSClient createWSTrustClient(final STSClientConfig config) {
         try {
-            return STSClientFactory.getInstance().create(config);
+            return STSClientFactory.getInstance().borrow(config);
         } catch (final ParsingException e) {
             throw logger.authCouldNotCreateWSTrustClient(e);
         }
@@ -0,0 +1,306 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.core.wstrust.auth;
+
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.picketlink.identity.federation.PicketLinkLogger;
+import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLConstants;
+import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
+import org.picketlink.identity.federation.core.sts.registry.DefaultRevocationRegistry;
+import org.picketlink.identity.federation.core.sts.registry.FileBasedRevocationRegistry;
+import org.picketlink.identity.federation.core.sts.registry.IndexedRevocationRegistry;
+import org.picketlink.identity.federation.core.sts.registry.JPABasedRevocationRegistry;
+import org.picketlink.identity.federation.core.sts.registry.RevocationRegistry;
+import org.picketlink.identity.federation.core.wstrust.plugins.saml.SAMLUtil;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * <p>
+ * Bounded cache of the SAML assertions that an STS has successfully validated, so that login modules presented the same
+ * assertion again can skip the call to the STS.
+ * </p>
+ * <p>
+ * Entries are keyed by assertion ID and hold a SHA-256 digest of the whole assertion, signature included, so that an
+ * assertion altered after its validation is never a hit. An entry expires after the configured time to live or at the
+ * NotOnOrAfter condition of the assertion, whichever comes first. It is dropped by {@link #invalidate(String)} and, when a
+ * {@link RevocationRegistry} is set, as soon as the registry reports the assertion as revoked. Only successful validations
+ * are cached. When full, the least recently used entry is evicted.
+ * </p>
+ * <p>
+ * Caches are shared by name and bounds through {@link #getCache(String, int, long)}, as login modules are instantiated for
+ * each login. Revocation registries are shared through {@link #getRevocationRegistry(String, String, ClassLoader)}.
+ * </p>
+ * <p>
+ * The registry must see the revocations of the STS: an {@code INDEXED} registry shares the index of the STS registry
+ * stored in the same file when the STS runs in the same VM, while a {@code JPA} registry, or any other registry backed by
+ * a shared store, also works when it runs elsewhere. {@code FILE} and in-memory registries only see the revocations made
+ * through themselves and are rejected.
+ * </p>
+ */
+public class ValidationResultCache {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    private static final ConcurrentMap<String, ValidationResultCache> caches = new ConcurrentHashMap<String, ValidationResultCache>();
+
+    private static final ConcurrentMap<String, RevocationRegistry> registries = new ConcurrentHashMap<String, RevocationRegistry>();
+
+    private final long timeToLive;
+
+    private final Map<String, Entry> entries;
+
+    private volatile RevocationRegistry revocationRegistry;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Get the cache registered under a name with the given bounds, creating it if needed. Callers using the same name
+     * with different bounds get different caches.
+     *
+     * @param name
+     * @param maxEntries
+     * @param timeToLive in milliseconds
+     * @return
+     */
+    public static ValidationResultCache getCache(String name, int maxEntries, long timeToLive) {
+        String key = name + ":" + maxEntries + ":" + timeToLive;
+        ValidationResultCache cache = caches.get(key);
+        if (cache == null) {
+            ValidationResultCache newCache = new ValidationResultCache(maxEntries, timeToLive);
+            cache = caches.putIfAbsent(key, newCache);
+            if (cache == null)
+                cache = newCache;
+        }
+        return cache;
+    }
+
+    /**
+     * Get a revocation registry sharing the revocations of the STS, creating it if needed. A single registry is created
+     * per option and configuration, whatever the cache or login module using it.
+     *
+     * @param registryOption {@code INDEXED}, {@code JPA} or the fully qualified name of a {@link RevocationRegistry}
+     *        implementation, as in the STS configuration
+     * @param configuration the file of an {@code INDEXED} registry or the persistence unit of a {@code JPA} one, may be
+     *        null for the defaults
+     * @param classLoader
+     * @return
+     * @throws ProcessingException if the registry cannot be created
+     * @throws IllegalArgumentException if the registry does not see the revocations of the STS
+     */
+    public static RevocationRegistry getRevocationRegistry(String registryOption, String configuration,
+            ClassLoader classLoader) throws ProcessingException {
+        String key = registryOption + ":" + configuration;
+        RevocationRegistry registry = registries.get(key);
+        if (registry == null) {
+            RevocationRegistry newRegistry;
+            if ("INDEXED".equalsIgnoreCase(registryOption))
+                newRegistry = configuration != null ? new IndexedRevocationRegistry(configuration)
+                        : new IndexedRevocationRegistry();
+            else if ("JPA".equalsIgnoreCase(registryOption))
+                newRegistry = configuration != null ? new JPABasedRevocationRegistry(configuration)
+                        : new JPABasedRevocationRegistry();
+            else if ("FILE".equalsIgnoreCase(registryOption))
+                throw logger.invalidArgumentError(registryOption);
+            else {
+                try {
+                    newRegistry = (RevocationRegistry) classLoader.loadClass(registryOption).newInstance();
+                } catch (Exception e) {
+                    throw logger.classNotLoadedError(registryOption);
+                }
+                // their revoked ids are held by each instance
+                if (newRegistry instanceof FileBasedRevocationRegistry || newRegistry instanceof DefaultRevocationRegistry)
+                    throw logger.invalidArgumentError(registryOption);
+            }
+            registry = registries.putIfAbsent(key, newRegistry);
+            if (registry == null)
+                registry = newRegistry;
+        }
+        return registry;
+    }
+
+    /**
+     * @param maxEntries maximum number of assertions kept
+     * @param timeToLive maximum time an assertion is kept, in milliseconds
+     */
+    public ValidationResultCache(final int maxEntries, long timeToLive) {
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Set the registry checked for revoked assertions on every hit
+     *
+     * @param revocationRegistry
+     */
+    public void setRevocationRegistry(RevocationRegistry revocationRegistry) {
+        this.revocationRegistry = revocationRegistry;
+    }
+
+    public RevocationRegistry getRevocationRegistry() {
+        return revocationRegistry;
+    }
+
+    /**
+     * Check whether the assertion was already validated
+     *
+     * @param assertion
+     * @return
+     */
+    public boolean isValid(Element assertion) {
+        String id = assertion.getAttribute(JBossSAMLConstants.ID.get());
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(id);
+        }
+
+        boolean valid = false;
+        if (entry != null) {
+            if (System.currentTimeMillis() >= entry.expiration) {
+                remove(id, entry);
+            } else if (revocationRegistry != null && revocationRegistry.isRevoked(SAMLUtil.SAML2_TOKEN_TYPE, id)) {
+                logger.trace("Assertion " + id + " has been revoked, removing it from the validation cache");
+                remove(id, entry);
+            } else {
+                valid = MessageDigest.isEqual(entry.digest, digest(assertion));
+            }
+        }
+
+        if (valid)
+            hits.incrementAndGet();
+        else
+            misses.incrementAndGet();
+        return valid;
+    }
+
+    /**
+     * Record a successful validation of the assertion
+     *
+     * @param assertion
+     */
+    public void put(Element assertion) {
+        String id = assertion.getAttribute(JBossSAMLConstants.ID.get());
+        if (id.length() == 0)
+            return;
+
+        long expiration = System.currentTimeMillis() + timeToLive;
+        Long notOnOrAfter = getNotOnOrAfter(assertion);
+        if (notOnOrAfter != null)
+            expiration = Math.min(expiration, notOnOrAfter);
+
+        byte[] digest = digest(assertion);
+        if (digest != null && expiration > System.currentTimeMillis()) {
+            synchronized (entries) {
+                entries.put(id, new Entry(digest, expiration));
+            }
+        }
+    }
+
+    /**
+     * Forget an assertion, for instance because it was canceled
+     *
+     * @param id
+     */
+    public void invalidate(String id) {
+        synchronized (entries) {
+            entries.remove(id);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private void remove(String id, Entry entry) {
+        synchronized (entries) {
+            if (entries.get(id) == entry)
+                entries.remove(id);
+        }
+    }
+
+    private Long getNotOnOrAfter(Element assertion) {
+        NodeList conditions = assertion.getElementsByTagNameNS(JBossSAMLURIConstants.ASSERTION_NSURI.get(),
+                JBossSAMLConstants.CONDITIONS.get());
+        if (conditions.getLength() == 0)
+            return null;
+
+        String notOnOrAfter = ((Element) conditions.item(0)).getAttribute(JBossSAMLConstants.NOT_ON_OR_AFTER.get());
+        if (notOnOrAfter.length() == 0)
+            return null;
+        try {
+            return XMLTimeUtil.parse(notOnOrAfter).toGregorianCalendar().getTimeInMillis();
+        } catch (Exception e) {
+            // an assertion we cannot bound is not cached
+            return 0L;
+        }
+    }
+
+    private byte[] digest(Element assertion) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return messageDigest.digest(DocumentUtil.getNodeAsString(assertion).getBytes("UTF-8"));
+        } catch (Exception e) {
+            logger.trace("Unable to digest assertion " + assertion.getAttribute(JBossSAMLConstants.ID.get()), e);
+            return null;
+        }
+    }
+
+    private static class Entry {
+        private final byte[] digest;
+
+        private final long expiration;
+
+        private Entry(byte[] digest, long expiration) {
+            this.digest = digest;
+            this.expiration = expiration;
+        }
+    }
+}
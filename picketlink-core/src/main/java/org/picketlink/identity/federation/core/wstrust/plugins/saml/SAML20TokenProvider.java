@@ -120,7 +120,7 @@ public class SAML20TokenProvider extends AbstractSecurityTokenProvider implement
 
         // get the assertion ID and add it to the canceled assertions set.
         String assertionId = assertionElement.getAttribute("ID");
-        this.revocationRegistry.revokeToken(SAMLUtil.SAML2_TOKEN_TYPE, assertionId);
+        this.revokeAssertion(SAMLUtil.SAML2_TOKEN_TYPE, assertionId, assertionElement);
     }
 
     /*
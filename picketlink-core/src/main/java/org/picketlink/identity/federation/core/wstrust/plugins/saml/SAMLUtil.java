@@ -133,7 +133,7 @@ public class SAMLUtil {
         SAMLParser samlParser = new SAMLParser();
 
         JAXPValidationUtil.checkSchemaValidation(assertionElement);
-        AssertionType assertion = (AssertionType) samlParser.parse(DocumentUtil.getNodeAsStream(assertionElement));
+        AssertionType assertion = (AssertionType) samlParser.parse(assertionElement);
         return assertion;
     }
 
@@ -148,6 +148,6 @@ public class SAMLUtil {
         SAMLParser samlParser = new SAMLParser();
 
         JAXPValidationUtil.checkSchemaValidation(assertionElement);
-        return (SAML11AssertionType) samlParser.parse(DocumentUtil.getNodeAsStream(assertionElement));
+        return (SAML11AssertionType) samlParser.parse(assertionElement);
     }
 }
\ No newline at end of file
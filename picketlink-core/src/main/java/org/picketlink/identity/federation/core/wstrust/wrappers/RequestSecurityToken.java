@@ -273,6 +273,58 @@ public class RequestSecurityToken implements BaseRequestSecurityToken {
         this.rstDocument = rstDocument;
     }
 
+    /**
+     * <p>
+     * Creates a copy of the specified {@code RequestSecurityToken}. The copy has its own delegate, so changing the copy
+     * doesn't change the original request.
+     * </p>
+     *
+     * @param request the {@code RequestSecurityToken} to be copied.
+     */
+    public RequestSecurityToken(RequestSecurityToken request) {
+        this.delegate = new RequestSecurityTokenType();
+        this.delegate.setContext(request.delegate.getContext());
+        this.delegate.addOtherAttributes(request.delegate.getOtherAttributes());
+        for (Object obj : request.delegate.getAny())
+            this.delegate.addAny(obj);
+
+        this.tokenType = request.tokenType;
+        this.requestType = request.requestType;
+        this.appliesTo = request.appliesTo;
+        this.claims = request.claims;
+        this.entropy = request.entropy;
+        this.lifetime = request.lifetime;
+        this.allowPostDating = request.allowPostDating;
+        this.renewing = request.renewing;
+        this.onBehalfOf = request.onBehalfOf;
+        this.issuer = request.issuer;
+        this.authenticationType = request.authenticationType;
+        this.keyType = request.keyType;
+        this.keySize = request.keySize;
+        this.signatureAlgorithm = request.signatureAlgorithm;
+        this.encryption = request.encryption;
+        this.encryptionAlgorithm = request.encryptionAlgorithm;
+        this.canonicalizationAlgorithm = request.canonicalizationAlgorithm;
+        this.keyWrapAlgorithm = request.keyWrapAlgorithm;
+        this.proofEncryption = request.proofEncryption;
+        this.useKey = request.useKey;
+        this.signWith = request.signWith;
+        this.encryptWith = request.encryptWith;
+        this.delegateTo = request.delegateTo;
+        this.forwardable = request.forwardable;
+        this.delegatable = request.delegatable;
+        this.policy = request.policy;
+        this.policyReference = request.policyReference;
+        this.validateTarget = request.validateTarget;
+        this.renewTarget = request.renewTarget;
+        this.cancelTarget = request.cancelTarget;
+        this.extensionElements.addAll(request.extensionElements);
+        this.rstDocument = request.rstDocument;
+        this.binaryValueType = request.binaryValueType;
+        this.binaryToken = request.binaryToken;
+        this.computedKeyAlgorithm = request.computedKeyAlgorithm;
+    }
+
     /**
      * Get the Binary Value Type
      *
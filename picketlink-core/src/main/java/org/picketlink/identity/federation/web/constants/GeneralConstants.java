@@ -113,8 +113,15 @@ public interface GeneralConstants {
     
     String SP_SSO_METADATA_DESCRIPTOR = "SP_SSO_METADATA_DESCRIPTOR";
 
+    String SP_METADATA_REGISTRY = "SP_METADATA_REGISTRY";
+
     String SENDER_PUBLIC_KEY = "SENDER_PUBLIC_KEY";
 
+    /**
+     * List of the public keys the sender may sign with, tried in turn during a key rollover
+     */
+    String SENDER_PUBLIC_KEYS = "SENDER_PUBLIC_KEYS";
+
     String SIGN_OUTGOING_MESSAGES = "SIGN_OUTGOING_MESSAGES";
     
     String SUPPORTS_SIGNATURES = "SUPPORTS_SIGNATURES";
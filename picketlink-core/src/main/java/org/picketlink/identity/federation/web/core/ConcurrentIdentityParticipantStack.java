@@ -0,0 +1,360 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.web.core;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * An {@link IdentityParticipantStack} safe for concurrent SSO and SLO interactions of the same session.
+ * </p>
+ * <p>
+ * Each session keeps its participants and its participants in transit in small arrays, updated while holding the lock of
+ * the session only. Participant URLs are interned: all the sessions share a single entry per participant, holding its
+ * binding. The entries no session refers to anymore keep the binding, so that it is still known while a logout completes,
+ * until more than {@link #MAX_IDLE_PARTICIPANTS} participants are interned. They are dropped at that point, and the next
+ * scan waits for {@link #MAX_IDLE_PARTICIPANTS} more participants, so that its cost is spread over the new ones.
+ * </p>
+ */
+public class ConcurrentIdentityParticipantStack implements IdentityParticipantStack {
+
+    /**
+     * System property holding the number of interned participants above which the ones no session refers to are dropped.
+     * Defaults to 1000.
+     */
+    public static final String MAX_IDLE_PARTICIPANTS = "picketlink.identity.participants.max.idle";
+
+    private static final Participant[] EMPTY = new Participant[0];
+
+    private final int maxIdleParticipants = AccessController.doPrivileged(new PrivilegedAction<Integer>() {
+        public Integer run() {
+            return Integer.parseInt(System.getProperty(MAX_IDLE_PARTICIPANTS, "1000"));
+        }
+    });
+
+    // the number of interned participants above which the idle ones are dropped
+    private final AtomicInteger scanThreshold = new AtomicInteger(maxIdleParticipants);
+
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+
+    private final ConcurrentMap<String, Participant> participants = new ConcurrentHashMap<String, Participant>();
+
+    /**
+     * Like {@link #pop(String)}, null is returned when the session is unknown or has no participant
+     *
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#peek(java.lang.String)
+     */
+    public String peek(String sessionID) {
+        Session session = sessions.get(sessionID);
+        if (session == null)
+            return null;
+
+        synchronized (session) {
+            return session.stackSize == 0 ? null : session.stack[session.stackSize - 1].url;
+        }
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#pop(java.lang.String)
+     */
+    public String pop(String sessionID) {
+        Session session = sessions.get(sessionID);
+        if (session == null)
+            return null;
+
+        synchronized (session) {
+            if (session.stackSize == 0)
+                return null;
+
+            Participant participant = session.stack[--session.stackSize];
+            session.stack[session.stackSize] = null;
+            return participant.url;
+        }
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#register(java.lang.String,
+     *      java.lang.String, boolean)
+     */
+    public void register(String sessionID, String participant, boolean postBinding) {
+        Session session = getOrCreateSession(sessionID);
+
+        synchronized (session) {
+            if (session.removed)
+                return;
+
+            Participant entry = reference(session, participant);
+            if (indexOf(session.stack, session.stackSize, entry) == -1) {
+                session.stack = add(session.stack, session.stackSize++, entry);
+                entry.postBinding = postBinding;
+            }
+        }
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#getParticipants(java.lang.String)
+     */
+    public int getParticipants(String sessionID) {
+        Session session = sessions.get(sessionID);
+        if (session == null)
+            return 0;
+
+        synchronized (session) {
+            return session.stackSize;
+        }
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#registerTransitParticipant(java.lang.String,
+     *      java.lang.String)
+     */
+    public boolean registerTransitParticipant(String sessionID, String participant) {
+        Session session = getOrCreateSession(sessionID);
+
+        synchronized (session) {
+            if (session.removed)
+                return false;
+
+            Participant entry = reference(session, participant);
+            if (indexOf(session.transit, session.transitSize, entry) != -1)
+                return false;
+
+            session.transit = add(session.transit, session.transitSize++, entry);
+            return true;
+        }
+    }
+
+    /**
+     * The binding of the participant is kept as long as a session refers to it
+     *
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#deRegisterTransitParticipant(java.lang.String,
+     *      java.lang.String)
+     */
+    public boolean deRegisterTransitParticipant(String sessionID, String participant) {
+        Session session = sessions.get(sessionID);
+        Participant entry = participants.get(participant);
+        if (session == null || entry == null)
+            return false;
+
+        synchronized (session) {
+            int index = indexOf(session.transit, session.transitSize, entry);
+            if (index == -1)
+                return false;
+
+            System.arraycopy(session.transit, index + 1, session.transit, index, session.transitSize - index - 1);
+            session.transit[--session.transitSize] = null;
+            return true;
+        }
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#getNumOfParticipantsInTransit(java.lang.String)
+     */
+    public int getNumOfParticipantsInTransit(String sessionID) {
+        Session session = sessions.get(sessionID);
+        if (session == null)
+            return 0;
+
+        synchronized (session) {
+            return session.transitSize;
+        }
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#getBinding(java.lang.String)
+     */
+    public Boolean getBinding(String participant) {
+        Participant entry = participants.get(participant);
+        if (entry == null)
+            return null;
+        return Boolean.valueOf(entry.postBinding);
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#totalSessions()
+     */
+    public int totalSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#createSession(java.lang.String)
+     */
+    public void createSession(String id) {
+        sessions.putIfAbsent(id, new Session());
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#removeSession(java.lang.String)
+     */
+    public void removeSession(String id) {
+        Session session = sessions.remove(id);
+        if (session == null)
+            return;
+
+        synchronized (session) {
+            session.removed = true;
+            for (int i = 0; i < session.referencedSize; i++) {
+                release(session.referenced[i]);
+            }
+            session.referenced = session.stack = session.transit = EMPTY;
+            session.referencedSize = session.stackSize = session.transitSize = 0;
+        }
+    }
+
+    /**
+     * Number of interned participants
+     *
+     * @return
+     */
+    public int getInternedParticipantCount() {
+        return participants.size();
+    }
+
+    private Session getOrCreateSession(String sessionID) {
+        Session session = sessions.get(sessionID);
+        if (session == null) {
+            Session newSession = new Session();
+            session = sessions.putIfAbsent(sessionID, newSession);
+            if (session == null)
+                session = newSession;
+        }
+        return session;
+    }
+
+    /**
+     * Get the interned entry of a participant, making sure the session holds a reference to it. Called with the lock of the
+     * session held.
+     */
+    private Participant reference(Session session, String url) {
+        Participant entry = participants.get(url);
+        if (entry != null && indexOf(session.referenced, session.referencedSize, entry) != -1)
+            return entry;
+
+        entry = acquire(url);
+        session.referenced = add(session.referenced, session.referencedSize++, entry);
+        return entry;
+    }
+
+    private Participant acquire(String url) {
+        while (true) {
+            Participant entry = participants.get(url);
+            if (entry == null) {
+                Participant newEntry = new Participant(url);
+                entry = participants.putIfAbsent(url, newEntry);
+                if (entry == null) {
+                    int threshold = scanThreshold.get();
+                    if (participants.size() > threshold && scanThreshold.compareAndSet(threshold, Integer.MAX_VALUE))
+                        dropIdleParticipants();
+                    return newEntry;
+                }
+            }
+
+            if (entry.acquire())
+                return entry;
+
+            // dropped, help removing it
+            participants.remove(url, entry);
+        }
+    }
+
+    private void release(Participant entry) {
+        entry.references.decrementAndGet();
+    }
+
+    private void dropIdleParticipants() {
+        for (Participant entry : participants.values()) {
+            if (entry.references.compareAndSet(0, -1))
+                participants.remove(entry.url, entry);
+        }
+        scanThreshold.set(participants.size() + maxIdleParticipants);
+    }
+
+    private static int indexOf(Participant[] array, int size, Participant entry) {
+        for (int i = 0; i < size; i++) {
+            if (array[i] == entry)
+                return i;
+        }
+        return -1;
+    }
+
+    private static Participant[] add(Participant[] array, int size, Participant entry) {
+        if (size == array.length) {
+            Participant[] newArray = new Participant[size == 0 ? 2 : size * 2];
+            System.arraycopy(array, 0, newArray, 0, size);
+            array = newArray;
+        }
+        array[size] = entry;
+        return array;
+    }
+
+    /**
+     * The participants of a session, guarded by its lock
+     */
+    private static class Session {
+        private Participant[] referenced = EMPTY;
+
+        private int referencedSize;
+
+        private Participant[] stack = EMPTY;
+
+        private int stackSize;
+
+        private Participant[] transit = EMPTY;
+
+        private int transitSize;
+
+        private boolean removed;
+    }
+
+    /**
+     * An interned participant, shared by the sessions that refer to it
+     */
+    private static class Participant {
+        private final String url;
+
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private volatile boolean postBinding;
+
+        private Participant(String url) {
+            this.url = url;
+        }
+
+        /**
+         * Add a reference, unless the entry was dropped
+         */
+        private boolean acquire() {
+            while (true) {
+                int count = references.get();
+                if (count < 0)
+                    return false;
+                if (references.compareAndSet(count, count + 1))
+                    return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.web.core;
+
+/**
+ * <p>
+ * Storage of the participants of the identity sessions shared by the nodes of an IDP cluster, used by the
+ * {@link ReplicatedIdentityParticipantStack}.
+ * </p>
+ * <p>
+ * The participants of a session are stored as an immutable {@link SessionParticipants} value and updated with
+ * {@link #compareAndSet(String, SessionParticipants, SessionParticipants)}, which maps to the conditional replace of most
+ * distributed caches. Values are compared with {@link SessionParticipants#equals(Object)}, so they may be serialized.
+ * </p>
+ */
+public interface IdentityParticipantStore {
+
+    /**
+     * Get the participants of a session
+     *
+     * @param sessionID
+     * @return the participants, null if the session is unknown
+     */
+    SessionParticipants get(String sessionID);
+
+    /**
+     * Store the participants of a session if the stored ones are still the expected ones
+     *
+     * @param sessionID
+     * @param expected the participants read before, null if the session was unknown
+     * @param update
+     * @return whether the participants were stored
+     */
+    boolean compareAndSet(String sessionID, SessionParticipants expected, SessionParticipants update);
+
+    /**
+     * Replace the participants of a session by the tombstone of its removal if the stored participants are still the
+     * expected ones. The store drops the tombstone once its time to live has elapsed, whatever the node that removed the
+     * session, as the lifespan of the entries of most distributed caches does.
+     *
+     * @param sessionID
+     * @param expected the participants read before, null if the session was unknown
+     * @param tombstone
+     * @param timeToLive in milliseconds
+     * @return whether the tombstone was stored
+     */
+    boolean putTombstone(String sessionID, SessionParticipants expected, SessionParticipants tombstone, long timeToLive);
+
+    /**
+     * The number of sessions stored, tombstones of removed sessions excluded
+     *
+     * @return
+     */
+    int size();
+
+    /**
+     * Get the binding of a participant, true: POST, false: REDIRECT, null: unknown
+     *
+     * @param participant
+     * @return
+     */
+    Boolean getBinding(String participant);
+
+    /**
+     * Set the binding of a participant
+     *
+     * @param participant
+     * @param postBinding
+     */
+    void setBinding(String participant, boolean postBinding);
+}
@@ -27,6 +27,7 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpSession;
@@ -55,10 +56,13 @@ public class IdentityServer implements HttpSessionListener {
         }
     });
 
-    private static int activeSessionCount = 0;
+    private static final AtomicInteger activeSessionCount = new AtomicInteger();
 
-    private IdentityParticipantStack stack = new STACK();
+    private IdentityParticipantStack stack = new ConcurrentIdentityParticipantStack();
 
+    /**
+     * The original {@link IdentityParticipantStack}, superseded by {@link ConcurrentIdentityParticipantStack}
+     */
     public static class STACK implements IdentityParticipantStack {
         private final ConcurrentHashMap<String, Stack<String>> sessionParticipantsMap = new ConcurrentHashMap<String, Stack<String>>();
 
@@ -188,7 +192,7 @@ public class IdentityServer implements HttpSessionListener {
      * @return
      */
     public int getActiveSessionCount() {
-        return activeSessionCount;
+        return activeSessionCount.get();
     }
 
     /**
@@ -213,14 +217,14 @@ public class IdentityServer implements HttpSessionListener {
      * @see HttpSessionListener#sessionCreated(HttpSessionEvent)
      */
     public void sessionCreated(HttpSessionEvent sessionEvent) {
-        activeSessionCount++;
+        int activeSessions = activeSessionCount.incrementAndGet();
 
-        if (activeSessionCount % count == 0)
-            logger.samlIdentityServerActiveSessionCount(activeSessionCount);
+        if (activeSessions % count == 0)
+            logger.samlIdentityServerActiveSessionCount(activeSessions);
 
         HttpSession session = sessionEvent.getSession();
 
-        logger.samlIdentityServerSessionCreated(session.getId(), activeSessionCount);
+        logger.samlIdentityServerSessionCreated(session.getId(), activeSessions);
 
         // Ensure that the IdentityServer instance is set on the servlet context
         ServletContext servletContext = session.getServletContext();
@@ -243,11 +247,11 @@ public class IdentityServer implements HttpSessionListener {
      * @see HttpSessionListener#sessionDestroyed(HttpSessionEvent)
      */
     public void sessionDestroyed(HttpSessionEvent sessionEvent) {
-        --activeSessionCount;
+        int activeSessions = activeSessionCount.decrementAndGet();
 
         String id = sessionEvent.getSession().getId();
         
-        logger.samlIdentityServerSessionDestroyed(id, activeSessionCount);
+        logger.samlIdentityServerSessionDestroyed(id, activeSessions);
         
         stack.removeSession(id);
     }
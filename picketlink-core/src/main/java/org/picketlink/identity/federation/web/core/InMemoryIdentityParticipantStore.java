@@ -0,0 +1,129 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.web.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link IdentityParticipantStore} held in the memory of a single JVM. It stands in for a distributed store in tests, by
+ * sharing an instance between several {@link ReplicatedIdentityParticipantStack}s, and in single node deployments.
+ * Expired tombstones are dropped by the next call to the store.
+ */
+public class InMemoryIdentityParticipantStore implements IdentityParticipantStore {
+
+    private final ConcurrentMap<String, SessionParticipants> sessions = new ConcurrentHashMap<String, SessionParticipants>();
+
+    private final ConcurrentMap<String, Boolean> bindings = new ConcurrentHashMap<String, Boolean>();
+
+    // the stored tombstones, by expiration
+    private final DelayQueue<Tombstone> tombstones = new DelayQueue<Tombstone>();
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStore#get(java.lang.String)
+     */
+    public SessionParticipants get(String sessionID) {
+        dropExpiredTombstones();
+        return sessions.get(sessionID);
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStore#compareAndSet(java.lang.String,
+     *      org.picketlink.identity.federation.web.core.SessionParticipants,
+     *      org.picketlink.identity.federation.web.core.SessionParticipants)
+     */
+    public boolean compareAndSet(String sessionID, SessionParticipants expected, SessionParticipants update) {
+        dropExpiredTombstones();
+        if (expected == null)
+            return sessions.putIfAbsent(sessionID, update) == null;
+        return sessions.replace(sessionID, expected, update);
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStore#putTombstone(java.lang.String,
+     *      org.picketlink.identity.federation.web.core.SessionParticipants,
+     *      org.picketlink.identity.federation.web.core.SessionParticipants, long)
+     */
+    public boolean putTombstone(String sessionID, SessionParticipants expected, SessionParticipants tombstone,
+            long timeToLive) {
+        if (!compareAndSet(sessionID, expected, tombstone))
+            return false;
+        tombstones.offer(new Tombstone(sessionID, tombstone, System.nanoTime() + timeToLive * 1000000L));
+        return true;
+    }
+
+    /**
+     * The count is approximate while tombstones are being stored or dropped
+     *
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStore#size()
+     */
+    public int size() {
+        dropExpiredTombstones();
+        return Math.max(0, sessions.size() - tombstones.size());
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStore#getBinding(java.lang.String)
+     */
+    public Boolean getBinding(String participant) {
+        return bindings.get(participant);
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStore#setBinding(java.lang.String, boolean)
+     */
+    public void setBinding(String participant, boolean postBinding) {
+        bindings.put(participant, Boolean.valueOf(postBinding));
+    }
+
+    private void dropExpiredTombstones() {
+        Tombstone tombstone;
+        while ((tombstone = tombstones.poll()) != null)
+            sessions.remove(tombstone.sessionID, tombstone.participants);
+    }
+
+    private static class Tombstone implements Delayed {
+        private final String sessionID;
+
+        private final SessionParticipants participants;
+
+        private final long expiration;
+
+        private Tombstone(String sessionID, SessionParticipants participants, long expiration) {
+            this.sessionID = sessionID;
+            this.participants = participants;
+            this.expiration = expiration;
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(expiration - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        public int compareTo(Delayed other) {
+            long diff = expiration - ((Tombstone) other).expiration;
+            return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+        }
+    }
+}
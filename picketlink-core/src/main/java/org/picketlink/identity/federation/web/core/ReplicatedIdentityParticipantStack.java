@@ -0,0 +1,368 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.web.core;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.picketlink.identity.federation.PicketLinkLogger;
+import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+
+/**
+ * <p>
+ * An {@link IdentityParticipantStack} whose state is shared by the nodes of an IDP cluster through an
+ * {@link IdentityParticipantStore}, so that a logout handled by any node reaches all the participants of the session.
+ * </p>
+ * <p>
+ * The participants of a session are updated optimistically: the update is applied to the last known value and stored
+ * only if no other node changed it meanwhile, otherwise it is applied again to the stored value. Each node keeps the
+ * values it last read or wrote in a bounded near-cache, which saves the read from the store when the node has the latest
+ * value. Reads of the sessions and of the bindings of the participants are served from the near-cache when the value is
+ * younger than the configured time to live, which defaults to 0: a stack shared by round-robin nodes always reads the
+ * store.
+ * </p>
+ * <p>
+ * A removed session is replaced by a tombstone, so that a node still handling a request of the session does not create it
+ * again. The store drops the tombstone once it is older than {@link #TOMBSTONE_TTL}, whatever the node that removed the
+ * session. Tombstones are not counted by {@link #totalSessions()}.
+ * </p>
+ * <p>
+ * The store used by the no-arg constructor is an instance of the class named by the {@link #STORE} system property, which
+ * must be set: an {@link InMemoryIdentityParticipantStore} is only shared by the stacks of a single JVM.
+ * </p>
+ */
+public class ReplicatedIdentityParticipantStack implements IdentityParticipantStack {
+
+    private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    /**
+     * System property holding the name of the {@link IdentityParticipantStore} class
+     */
+    public static final String STORE = "picketlink.identity.participant.store";
+
+    /**
+     * System property holding the time to live of the near-cached sessions, in milliseconds. Defaults to 0.
+     */
+    public static final String NEAR_CACHE_TTL = "picketlink.identity.participant.near.cache.ttl";
+
+    /**
+     * System property holding the maximum number of near-cached sessions and bindings. Defaults to 10000.
+     */
+    public static final String NEAR_CACHE_SIZE = "picketlink.identity.participant.near.cache.size";
+
+    /**
+     * System property holding the time the tombstones of the removed sessions are kept, in milliseconds. Defaults to 5
+     * minutes.
+     */
+    public static final String TOMBSTONE_TTL = "picketlink.identity.participant.tombstone.ttl";
+
+    private final IdentityParticipantStore store;
+
+    private final long nearCacheTTLNanos;
+
+    private final Map<String, CachedValue<SessionParticipants>> nearCache;
+
+    private final Map<String, CachedValue<Boolean>> bindings;
+
+    private final long tombstoneTTL = Long.parseLong(SecurityActions.getSystemProperty(TOMBSTONE_TTL, "300000"));
+
+    /**
+     * Create a stack on an instance of the store named by the {@link #STORE} system property
+     */
+    public ReplicatedIdentityParticipantStack() {
+        this(createStore(), Long.parseLong(SecurityActions.getSystemProperty(NEAR_CACHE_TTL, "0")), Integer
+                .parseInt(SecurityActions.getSystemProperty(NEAR_CACHE_SIZE, "10000")));
+    }
+
+    /**
+     * @param store the shared store
+     * @param nearCacheTTL time to live of the near-cached sessions and bindings, in milliseconds
+     * @param nearCacheSize maximum number of near-cached sessions and bindings
+     */
+    public ReplicatedIdentityParticipantStack(IdentityParticipantStore store, long nearCacheTTL, int nearCacheSize) {
+        if (store == null)
+            throw logger.nullArgumentError("store");
+
+        this.store = store;
+        this.nearCacheTTLNanos = nearCacheTTL * 1000000L;
+        this.nearCache = Collections.synchronizedMap(new LRUMap<CachedValue<SessionParticipants>>(nearCacheSize));
+        this.bindings = Collections.synchronizedMap(new LRUMap<CachedValue<Boolean>>(nearCacheSize));
+    }
+
+    /**
+     * The shared store
+     *
+     * @return
+     */
+    public IdentityParticipantStore getStore() {
+        return store;
+    }
+
+    /**
+     * Like {@link #pop(String)}, null is returned when the session is unknown or has no participant
+     *
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#peek(java.lang.String)
+     */
+    public String peek(String sessionID) {
+        SessionParticipants participants = read(sessionID);
+        if (participants == null)
+            return null;
+        return participants.peek();
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#pop(java.lang.String)
+     */
+    public String pop(String sessionID) {
+        Update pop = new Update() {
+            SessionParticipants apply(SessionParticipants participants) {
+                result = participants.peek();
+                return result == null ? null : participants.pop();
+            }
+        };
+        update(sessionID, pop, false);
+        return (String) pop.result;
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#register(java.lang.String,
+     *      java.lang.String, boolean)
+     */
+    public void register(String sessionID, final String participant, boolean postBinding) {
+        Update register = new Update() {
+            SessionParticipants apply(SessionParticipants participants) {
+                return participants.contains(participant) ? null : participants.push(participant);
+            }
+        };
+        if (update(sessionID, register, true)) {
+            store.setBinding(participant, postBinding);
+            bindings.put(participant, new CachedValue<Boolean>(Boolean.valueOf(postBinding)));
+        }
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#getParticipants(java.lang.String)
+     */
+    public int getParticipants(String sessionID) {
+        SessionParticipants participants = read(sessionID);
+        return participants == null ? 0 : participants.getParticipantCount();
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#registerTransitParticipant(java.lang.String,
+     *      java.lang.String)
+     */
+    public boolean registerTransitParticipant(String sessionID, final String participant) {
+        Update register = new Update() {
+            SessionParticipants apply(SessionParticipants participants) {
+                return participants.isInTransit(participant) ? null : participants.addInTransit(participant);
+            }
+        };
+        return update(sessionID, register, true);
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#deRegisterTransitParticipant(java.lang.String,
+     *      java.lang.String)
+     */
+    public boolean deRegisterTransitParticipant(String sessionID, final String participant) {
+        Update deRegister = new Update() {
+            SessionParticipants apply(SessionParticipants participants) {
+                return participants.isInTransit(participant) ? participants.removeInTransit(participant) : null;
+            }
+        };
+        return update(sessionID, deRegister, false);
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#getNumOfParticipantsInTransit(java.lang.String)
+     */
+    public int getNumOfParticipantsInTransit(String sessionID) {
+        SessionParticipants participants = read(sessionID);
+        return participants == null ? 0 : participants.getInTransitCount();
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#getBinding(java.lang.String)
+     */
+    public Boolean getBinding(String participant) {
+        CachedValue<Boolean> cached = bindings.get(participant);
+        if (cached != null && cached.isFresh(nearCacheTTLNanos))
+            return cached.value;
+
+        Boolean binding = store.getBinding(participant);
+        if (binding != null)
+            bindings.put(participant, new CachedValue<Boolean>(binding));
+        else
+            bindings.remove(participant);
+        return binding;
+    }
+
+    /**
+     * The tombstones of the removed sessions are not counted
+     *
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#totalSessions()
+     */
+    public int totalSessions() {
+        return store.size();
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#createSession(java.lang.String)
+     */
+    public void createSession(String id) {
+        SessionParticipants participants = new SessionParticipants();
+        if (store.compareAndSet(id, null, participants))
+            cache(id, participants);
+    }
+
+    /**
+     * @see org.picketlink.identity.federation.web.core.IdentityParticipantStack#removeSession(java.lang.String)
+     */
+    public void removeSession(String id) {
+        nearCache.remove(id);
+
+        while (true) {
+            SessionParticipants current = store.get(id);
+            if (current != null && current.isRemoved())
+                return;
+
+            SessionParticipants tombstone = current != null ? current.remove() : new SessionParticipants().remove();
+            if (store.putTombstone(id, current, tombstone, tombstoneTTL))
+                return;
+        }
+    }
+
+    private SessionParticipants read(String sessionID) {
+        CachedValue<SessionParticipants> cached = nearCache.get(sessionID);
+        if (cached != null && cached.isFresh(nearCacheTTLNanos))
+            return cached.value;
+
+        SessionParticipants participants = store.get(sessionID);
+        if (participants != null && !participants.isRemoved()) {
+            cache(sessionID, participants);
+            return participants;
+        }
+        nearCache.remove(sessionID);
+        return null;
+    }
+
+    /**
+     * Apply an update to the participants of a session until it is stored without conflict
+     *
+     * @param sessionID
+     * @param update
+     * @param create whether an unknown session is created
+     * @return whether the participants were changed
+     */
+    private boolean update(String sessionID, Update update, boolean create) {
+        CachedValue<SessionParticipants> cached = nearCache.get(sessionID);
+        SessionParticipants current = cached != null ? cached.value : store.get(sessionID);
+        boolean fresh = cached == null;
+
+        while (true) {
+            // a removed session is never created again
+            if (current != null && current.isRemoved()) {
+                nearCache.remove(sessionID);
+                return false;
+            }
+            if (current == null && !create)
+                return false;
+
+            SessionParticipants updated = update.apply(current != null ? current : new SessionParticipants());
+            if (updated == null) {
+                if (fresh)
+                    return false;
+            } else if (store.compareAndSet(sessionID, current, updated)) {
+                cache(sessionID, updated);
+                return true;
+            }
+
+            // another node changed the session, or a no-op decided on a near-cached value
+            current = store.get(sessionID);
+            fresh = true;
+        }
+    }
+
+    private void cache(String sessionID, SessionParticipants participants) {
+        nearCache.put(sessionID, new CachedValue<SessionParticipants>(participants));
+    }
+
+    /**
+     * A change of the participants of a session
+     */
+    private abstract static class Update {
+        Object result;
+
+        /**
+         * @return the updated participants, null if unchanged
+         */
+        abstract SessionParticipants apply(SessionParticipants participants);
+    }
+
+    private static class CachedValue<V> {
+        private final V value;
+
+        private final long time = System.nanoTime();
+
+        private CachedValue(V value) {
+            this.value = value;
+        }
+
+        private boolean isFresh(long ttlNanos) {
+            return System.nanoTime() - time < ttlNanos;
+        }
+    }
+
+    private static class LRUMap<V> extends LinkedHashMap<String, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        private LRUMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private static IdentityParticipantStore createStore() {
+        String fqn = SecurityActions.getSystemProperty(STORE, null);
+        if (fqn == null)
+            throw logger.optionNotSet(STORE);
+
+        Class<?> clazz = SecurityActions.loadClass(ReplicatedIdentityParticipantStack.class, fqn);
+        if (clazz == null)
+            throw new RuntimeException(logger.classNotLoadedError(fqn));
+
+        try {
+            return (IdentityParticipantStore) clazz.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(logger.couldNotCreateInstance(fqn, e));
+        }
+    }
+}
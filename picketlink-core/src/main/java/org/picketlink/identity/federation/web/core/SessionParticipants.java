@@ -0,0 +1,201 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.web.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Immutable participants of an identity session: the participants stack, most recent last, and the participants in transit
+ * in a logout interaction.
+ * </p>
+ * <p>
+ * Every update returns a new instance with the next version. Two instances are equal when they have the same version and
+ * participants, which lets an {@link IdentityParticipantStore} detect concurrent updates.
+ * </p>
+ * <p>
+ * A removed session is stored as a tombstone, see {@link #remove()}, so that a node still handling a request of the
+ * session cannot create it again.
+ * </p>
+ */
+public final class SessionParticipants implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] EMPTY = new String[0];
+
+    private final long version;
+
+    private final String[] participants;
+
+    private final String[] inTransit;
+
+    // the time the session was removed at, 0 if it was not
+    private final long removedAt;
+
+    public SessionParticipants() {
+        this(0, EMPTY, EMPTY);
+    }
+
+    private SessionParticipants(long version, String[] participants, String[] inTransit) {
+        this(version, participants, inTransit, 0);
+    }
+
+    private SessionParticipants(long version, String[] participants, String[] inTransit, long removedAt) {
+        this.version = version;
+        this.participants = participants;
+        this.inTransit = inTransit;
+        this.removedAt = removedAt;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getParticipantCount() {
+        return participants.length;
+    }
+
+    /**
+     * The most recent participant
+     *
+     * @return the participant, null if there is none
+     */
+    public String peek() {
+        return participants.length == 0 ? null : participants[participants.length - 1];
+    }
+
+    public boolean contains(String participant) {
+        return indexOf(participants, participant) != -1;
+    }
+
+    /**
+     * Add a participant on top of the stack
+     *
+     * @param participant
+     * @return
+     */
+    public SessionParticipants push(String participant) {
+        return new SessionParticipants(version + 1, add(participants, participant), inTransit);
+    }
+
+    /**
+     * Remove the most recent participant
+     *
+     * @return
+     */
+    public SessionParticipants pop() {
+        if (participants.length == 0)
+            return this;
+        return new SessionParticipants(version + 1, remove(participants, participants.length - 1), inTransit);
+    }
+
+    /**
+     * The tombstone of the session: no participant and the time of the removal
+     *
+     * @return
+     */
+    public SessionParticipants remove() {
+        return new SessionParticipants(version + 1, EMPTY, EMPTY, System.currentTimeMillis());
+    }
+
+    public boolean isRemoved() {
+        return removedAt != 0;
+    }
+
+    /**
+     * The time the session was removed at, in milliseconds
+     *
+     * @return the time, 0 if the session was not removed
+     */
+    public long getRemovedAt() {
+        return removedAt;
+    }
+
+    public int getInTransitCount() {
+        return inTransit.length;
+    }
+
+    public boolean isInTransit(String participant) {
+        return indexOf(inTransit, participant) != -1;
+    }
+
+    public SessionParticipants addInTransit(String participant) {
+        return new SessionParticipants(version + 1, participants, add(inTransit, participant));
+    }
+
+    public SessionParticipants removeInTransit(String participant) {
+        int index = indexOf(inTransit, participant);
+        if (index == -1)
+            return this;
+        return new SessionParticipants(version + 1, participants, remove(inTransit, index));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof SessionParticipants))
+            return false;
+
+        SessionParticipants other = (SessionParticipants) obj;
+        return version == other.version && removedAt == other.removedAt && Arrays.equals(participants, other.participants)
+                && Arrays.equals(inTransit, other.inTransit);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (version ^ (version >>> 32)) * 31 + Arrays.hashCode(participants);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionParticipants[version=" + version + ", participants=" + Arrays.toString(participants) + ", inTransit="
+                + Arrays.toString(inTransit) + ", removedAt=" + removedAt + "]";
+    }
+
+    private static int indexOf(String[] array, String value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i].equals(value))
+                return i;
+        }
+        return -1;
+    }
+
+    private static String[] add(String[] array, String value) {
+        String[] result = new String[array.length + 1];
+        System.arraycopy(array, 0, result, 0, array.length);
+        result[array.length] = value;
+        return result;
+    }
+
+    private static String[] remove(String[] array, int index) {
+        if (array.length == 1)
+            return EMPTY;
+
+        String[] result = new String[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+}
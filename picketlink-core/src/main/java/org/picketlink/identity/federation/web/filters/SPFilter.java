@@ -58,6 +58,7 @@ import org.apache.log4j.Logger;
 import org.picketlink.identity.federation.api.saml.v2.request.SAML2Request;
 import org.picketlink.identity.federation.api.saml.v2.response.SAML2Response;
 import org.picketlink.identity.federation.api.saml.v2.sig.SAML2Signature;
+import org.picketlink.identity.federation.api.util.DeflateUtil;
 import org.picketlink.identity.federation.core.ErrorCodes;
 import org.picketlink.identity.federation.core.config.AuthPropertyType;
 import org.picketlink.identity.federation.core.config.KeyProviderType;
@@ -72,6 +73,7 @@ import org.picketlink.identity.federation.core.interfaces.ProtocolContext;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyConfigurationException;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyManager;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyProcessingException;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
 import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
 import org.picketlink.identity.federation.core.saml.v2.common.SAMLDocumentHolder;
 import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants;
@@ -91,7 +93,6 @@ import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRe
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest.GENERATE_REQUEST_TYPE;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
 import org.picketlink.identity.federation.core.saml.v2.util.AssertionUtil;
-import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
 import org.picketlink.identity.federation.core.saml.v2.util.HandlerUtil;
 import org.picketlink.identity.federation.core.util.CoreConfigUtil;
 import org.picketlink.identity.federation.core.util.StringUtil;
@@ -154,6 +155,10 @@ public class SPFilter implements Filter {
     protected String canonicalizationMethod = CanonicalizationMethod.EXCLUSIVE_WITH_COMMENTS;
 
     public void destroy() {
+        if (chain != null)
+            HandlerUtil.destroy(chain.handlers());
+        PicketLinkMetricsFactory.release();
+        DeflateUtil.clear();
     }
 
     public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain)
@@ -517,6 +522,8 @@ public class SPFilter implements Filter {
         String gloPage = filterConfig.getInitParameter(GeneralConstants.LOGOUT_PAGE);
         if (gloPage != null && !"".equals(gloPage))
             this.logOutPage = gloPage;
+
+        PicketLinkMetricsFactory.acquire();
     }
 
     /**
@@ -561,8 +568,7 @@ public class SPFilter implements Filter {
             KeyPair keypair = keyManager.getSigningKeyPair();
             samlSignature.signSAMLDocument(samlDocument, keypair);
         }
-        String samlMessage = PostBindingUtil.base64Encode(DocumentUtil.getDocumentAsString(samlDocument));
-        PostBindingUtil.sendPost(new DestinationInfoHolder(destination, samlMessage, relayState), response, request);
+        PostBindingUtil.sendPost(samlDocument, destination, relayState, response, request);
     }
 
     protected boolean validate(HttpServletRequest request) throws IOException, GeneralSecurityException {
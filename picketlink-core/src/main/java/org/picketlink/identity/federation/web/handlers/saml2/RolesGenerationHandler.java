@@ -41,6 +41,7 @@ import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerCh
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerConfig;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.ThreadSafeSAML2Handler;
 import org.picketlink.identity.federation.saml.v2.protocol.LogoutRequestType;
 import org.picketlink.identity.federation.web.constants.GeneralConstants;
 import org.picketlink.identity.federation.web.core.HTTPContext;
@@ -51,7 +52,7 @@ import org.picketlink.identity.federation.web.core.HTTPContext;
  * @author Anil.Saldhana@redhat.com
  * @since Oct 7, 2009
  */
-public class RolesGenerationHandler extends BaseSAML2Handler {
+public class RolesGenerationHandler extends BaseSAML2Handler implements ThreadSafeSAML2Handler {
 
     private transient RoleGenerator roleGenerator = new EmptyRoleGenerator();
 
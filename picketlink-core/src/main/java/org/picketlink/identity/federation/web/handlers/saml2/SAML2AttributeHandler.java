@@ -39,6 +39,7 @@ import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerCh
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerConfig;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.ThreadSafeSAML2Handler;
 import org.picketlink.identity.federation.core.util.StringUtil;
 import org.picketlink.identity.federation.saml.v2.assertion.AssertionType;
 import org.picketlink.identity.federation.saml.v2.assertion.AttributeStatementType;
@@ -69,7 +70,7 @@ import org.picketlink.identity.federation.web.core.HTTPContext;
  * @author Anil.Saldhana@redhat.com
  * @since Oct 12, 2009
  */
-public class SAML2AttributeHandler extends BaseSAML2Handler {
+public class SAML2AttributeHandler extends BaseSAML2Handler implements ThreadSafeSAML2Handler {
 
     protected AttributeManager attribManager = new EmptyAttributeManager();
 
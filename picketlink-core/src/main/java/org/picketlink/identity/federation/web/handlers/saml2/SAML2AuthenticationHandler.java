@@ -56,6 +56,7 @@ import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest.GENERATE_REQUEST_TYPE;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.ThreadSafeSAML2Handler;
 import org.picketlink.identity.federation.core.saml.v2.util.AssertionUtil;
 import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
 import org.picketlink.identity.federation.core.saml.v2.util.StatementUtil;
@@ -106,7 +107,7 @@ import org.w3c.dom.Node;
  * @author Anil.Saldhana@redhat.com
  * @since Oct 8, 2009
  */
-public class SAML2AuthenticationHandler extends BaseSAML2Handler {
+public class SAML2AuthenticationHandler extends BaseSAML2Handler implements ThreadSafeSAML2Handler {
 
     private final IDPAuthenticationHandler idp = new IDPAuthenticationHandler();
 
@@ -310,9 +311,7 @@ public class SAML2AuthenticationHandler extends BaseSAML2Handler {
             try {
                 samlResponseDocument = saml2Response.convert(responseType);
                 
-                if (logger.isTraceEnabled()) {
-                    logger.trace("SAML Response Document: " + DocumentUtil.asString(samlResponseDocument));
-                }
+                logger.tracef("SAML Response Document: %s", samlResponseDocument);
             } catch (Exception e) {
                 logger.samlAssertionMarshallError(e);
             }
@@ -456,8 +455,8 @@ public class SAML2AuthenticationHandler extends BaseSAML2Handler {
                 SAMLParser parser = new SAMLParser();
 
                 JAXPValidationUtil.checkSchemaValidation(decryptedDocumentElement);
-                AssertionType assertion = (AssertionType) parser.parse(StaxParserUtil.getXMLEventReader(DocumentUtil
-                        .getNodeAsStream(decryptedDocumentElement)));
+                AssertionType assertion = (AssertionType) parser.parse(StaxParserUtil
+                        .getXMLEventReader(decryptedDocumentElement));
 
                 responseType.replaceAssertion(oldID, new RTChoiceType(assertion));
                 return responseType;
@@ -37,6 +37,7 @@ import org.picketlink.identity.federation.core.config.TrustType;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.ThreadSafeSAML2Handler;
 import org.picketlink.identity.federation.saml.v2.protocol.RequestAbstractType;
 import org.picketlink.identity.federation.web.constants.GeneralConstants;
 
@@ -49,7 +50,7 @@ import org.picketlink.identity.federation.web.constants.GeneralConstants;
  * @author Anil.Saldhana@redhat.com
  * @since Oct 8, 2009
  */
-public class SAML2IssuerTrustHandler extends BaseSAML2Handler {
+public class SAML2IssuerTrustHandler extends BaseSAML2Handler implements ThreadSafeSAML2Handler {
 
     private final IDPTrustHandler idp = new IDPTrustHandler();
 
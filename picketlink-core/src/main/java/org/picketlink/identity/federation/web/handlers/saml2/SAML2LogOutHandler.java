@@ -22,8 +22,19 @@
 package org.picketlink.identity.federation.web.handlers.saml2;
 
 import java.net.URI;
+import java.security.KeyPair;
 import java.security.Principal;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -33,21 +44,28 @@ import javax.xml.parsers.ParserConfigurationException;
 import org.jboss.security.audit.AuditLevel;
 import org.picketlink.identity.federation.api.saml.v2.request.SAML2Request;
 import org.picketlink.identity.federation.api.saml.v2.response.SAML2Response;
+import org.picketlink.identity.federation.api.saml.v2.sig.SAML2Signature;
+import org.picketlink.identity.federation.api.soap.SOAPSAMLLogout;
 import org.picketlink.identity.federation.core.audit.PicketLinkAuditEvent;
 import org.picketlink.identity.federation.core.audit.PicketLinkAuditEventType;
 import org.picketlink.identity.federation.core.audit.PicketLinkAuditHelper;
 import org.picketlink.identity.federation.core.exceptions.ConfigurationException;
 import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.saml.md.providers.SPMetadataRegistry;
 import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
 import org.picketlink.identity.federation.core.saml.v2.common.SAMLProtocolContext;
 import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.DestroyableSAML2Handler;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerConfig;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest.GENERATE_REQUEST_TYPE;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.ThreadSafeSAML2Handler;
 import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
 import org.picketlink.identity.federation.core.sts.PicketLinkCoreSTS;
+import org.picketlink.identity.federation.core.util.StringUtil;
 import org.picketlink.identity.federation.saml.v2.SAML2Object;
 import org.picketlink.identity.federation.saml.v2.assertion.AssertionType;
 import org.picketlink.identity.federation.saml.v2.assertion.NameIDType;
@@ -60,6 +78,7 @@ import org.picketlink.identity.federation.saml.v2.protocol.StatusType;
 import org.picketlink.identity.federation.web.constants.GeneralConstants;
 import org.picketlink.identity.federation.web.core.HTTPContext;
 import org.picketlink.identity.federation.web.core.IdentityServer;
+import org.w3c.dom.Document;
 
 /**
  * SAML2 LogOut Profile
@@ -67,12 +86,59 @@ import org.picketlink.identity.federation.web.core.IdentityServer;
  * @author Anil.Saldhana@redhat.com
  * @since Sep 17, 2009
  */
-public class SAML2LogOutHandler extends BaseSAML2Handler {
+public class SAML2LogOutHandler extends BaseSAML2Handler implements ThreadSafeSAML2Handler, DestroyableSAML2Handler {
+
+    /**
+     * When "true", the IDP sends the LogoutRequests to the other participants of the session over the SOAP back channel,
+     * all at once, instead of redirecting the browser from one participant to the next. The requests go to the SOAP single
+     * logout service found in the metadata of each participant, and are signed when the chain has a signing key pair.
+     */
+    public static final String BACK_CHANNEL_LOGOUT = "BACK_CHANNEL_LOGOUT";
+
+    /**
+     * Time in milliseconds the IDP waits for the participants to answer a back channel logout
+     */
+    public static final String BACK_CHANNEL_LOGOUT_TIMEOUT = "BACK_CHANNEL_LOGOUT_TIMEOUT";
+
+    /**
+     * Maximum number of LogoutRequests sent over the back channel at the same time. Up to 16 times as many wait for a
+     * thread, the participants of a logout that finds the queue full are not logged out.
+     */
+    public static final String BACK_CHANNEL_LOGOUT_THREADS = "BACK_CHANNEL_LOGOUT_THREADS";
+
+    public static final int DEFAULT_BACK_CHANNEL_LOGOUT_TIMEOUT = 5000;
+
+    public static final int DEFAULT_BACK_CHANNEL_LOGOUT_THREADS = 10;
 
     private final IDPLogOutHandler idp = new IDPLogOutHandler();
 
     private final SPLogOutHandler sp = new SPLogOutHandler();
 
+    private boolean backChannelLogout = false;
+
+    private int backChannelLogoutTimeout = DEFAULT_BACK_CHANNEL_LOGOUT_TIMEOUT;
+
+    private int backChannelLogoutThreads = DEFAULT_BACK_CHANNEL_LOGOUT_THREADS;
+
+    private ThreadPoolExecutor backChannelExecutor;
+
+    @Override
+    public void initHandlerConfig(SAML2HandlerConfig handlerConfig) throws ConfigurationException {
+        super.initHandlerConfig(handlerConfig);
+
+        String backChannel = (String) handlerConfig.getParameter(BACK_CHANNEL_LOGOUT);
+        if (StringUtil.isNotNull(backChannel))
+            backChannelLogout = Boolean.parseBoolean(backChannel);
+
+        String timeout = (String) handlerConfig.getParameter(BACK_CHANNEL_LOGOUT_TIMEOUT);
+        if (StringUtil.isNotNull(timeout))
+            backChannelLogoutTimeout = Integer.parseInt(timeout);
+
+        String threads = (String) handlerConfig.getParameter(BACK_CHANNEL_LOGOUT_THREADS);
+        if (StringUtil.isNotNull(threads))
+            backChannelLogoutThreads = Integer.parseInt(threads);
+    }
+
     /**
      * @see SAML2Handler#generateSAMLRequest(SAML2HandlerRequest, SAML2HandlerResponse)
      */
@@ -122,6 +188,34 @@ public class SAML2LogOutHandler extends BaseSAML2Handler {
         }
     }
 
+    private synchronized ThreadPoolExecutor getBackChannelExecutor() {
+        if (this.backChannelExecutor == null) {
+            int poolSize = backChannelLogoutThreads;
+            this.backChannelExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(poolSize * 16), new ThreadFactory() {
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "PicketLink Back Channel Logout");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, new ThreadPoolExecutor.AbortPolicy());
+            this.backChannelExecutor.allowCoreThreadTimeOut(true);
+        }
+        return this.backChannelExecutor;
+    }
+
+    /**
+     * Stop the back channel logout threads
+     *
+     * @see org.picketlink.identity.federation.core.saml.v2.interfaces.DestroyableSAML2Handler#destroy()
+     */
+    public synchronized void destroy() {
+        if (this.backChannelExecutor != null) {
+            this.backChannelExecutor.shutdownNow();
+            this.backChannelExecutor = null;
+        }
+    }
+
     private class IDPLogOutHandler {
         public void generateSAMLRequest(SAML2HandlerRequest request, SAML2HandlerResponse response) throws ProcessingException {
         }
@@ -164,7 +258,8 @@ public class SAML2LogOutHandler extends BaseSAML2Handler {
                 // TODO: check the in transit map for partial logouts
 
                 try {
-                    generateSuccessStatusResponseType(statusResponseType.getInResponseTo(), request, response, relayState);
+                    generateStatusResponseType(statusResponseType.getInResponseTo(), request, response, relayState,
+                            JBossSAMLURIConstants.STATUS_SUCCESS);
 
                     boolean isPost = isPostBindingForResponse(server, relayState, request);
                     response.setPostBindingForResponse(isPost);
@@ -225,6 +320,11 @@ public class SAML2LogOutHandler extends BaseSAML2Handler {
 
                 String originalIssuer = (relayState == null) ? issuer : relayState;
 
+                if (backChannelLogout) {
+                    backChannelLogout(request, response, server, logOutRequest, originalIssuer);
+                    return;
+                }
+
                 String participant = this.getParticipant(server, sessionID, originalIssuer);
 
                 if (participant == null || participant.equals(originalIssuer)) {
@@ -232,7 +332,8 @@ public class SAML2LogOutHandler extends BaseSAML2Handler {
                     session.invalidate();
                     server.stack().pop(sessionID);
 
-                    generateSuccessStatusResponseType(logOutRequest.getID(), request, response, originalIssuer);
+                    generateStatusResponseType(logOutRequest.getID(), request, response, originalIssuer,
+                            JBossSAMLURIConstants.STATUS_SUCCESS);
 
                     boolean isPost = isPostBindingForResponse(server, participant, request);
                     response.setPostBindingForResponse(isPost);
@@ -253,20 +354,7 @@ public class SAML2LogOutHandler extends BaseSAML2Handler {
                     boolean isPost = isPostBindingForResponse(server, participant, request);
                     response.setPostBindingForResponse(isPost);
 
-                    LogoutRequestType lort = saml2Request.createLogoutRequest(request.getIssuer().getValue());
-
-                    Principal userPrincipal = httpServletRequest.getUserPrincipal();
-                    if (userPrincipal == null) {
-                        throw logger.samlHandlerPrincipalNotFoundError();
-                    }
-                    NameIDType nameID = new NameIDType();
-                    nameID.setValue(userPrincipal.getName());
-                    lort.setNameID(nameID);
-
-                    long assertionValidity = PicketLinkCoreSTS.instance().getConfiguration().getIssuedTokenTimeout();
-
-                    lort.setNotOnOrAfter(XMLTimeUtil.add(lort.getIssueInstant(), assertionValidity));
-                    lort.setDestination(URI.create(participant));
+                    LogoutRequestType lort = createLogoutRequest(request, httpServletRequest, participant);
 
                     response.setResultingDocument(saml2Request.convert(lort));
                     response.setSendRequest(true);
@@ -282,11 +370,143 @@ public class SAML2LogOutHandler extends BaseSAML2Handler {
             return;
         }
 
-        private void generateSuccessStatusResponseType(String logOutRequestID, SAML2HandlerRequest request,
-                SAML2HandlerResponse response, String originalIssuer) throws ConfigurationException,
-                ParserConfigurationException, ProcessingException {
+        /**
+         * Send the LogoutRequests to all the other participants of the session at once over the SOAP back channel, wait
+         * for their answers up to the configured timeout and reply to the original issuer with a single LogoutResponse.
+         * A participant that fails, does not answer in time or reports a partial logout turns the response into a
+         * partial logout.
+         */
+        private void backChannelLogout(SAML2HandlerRequest request, SAML2HandlerResponse response, IdentityServer server,
+                LogoutRequestType logOutRequest, String originalIssuer) throws ConfigurationException,
+                ParserConfigurationException, ProcessingException, ParsingException {
+            HTTPContext httpContext = (HTTPContext) request.getContext();
+            HttpServletRequest httpServletRequest = httpContext.getRequest();
+            HttpSession session = httpServletRequest.getSession(false);
+            String sessionID = session.getId();
+
+            SPMetadataRegistry spMetadataRegistry = (SPMetadataRegistry) request.getOptions().get(
+                    GeneralConstants.SP_METADATA_REGISTRY);
+            final KeyPair keypair = getSigningKeyPair(request);
+
+            SAML2Request saml2Request = new SAML2Request();
+            ThreadPoolExecutor executor = getBackChannelExecutor();
+            final SOAPSAMLLogout soapLogout = new SOAPSAMLLogout();
+            long deadline = System.currentTimeMillis() + backChannelLogoutTimeout;
+            boolean partialLogout = false;
+
+            Map<String, Future<Boolean>> logouts = new LinkedHashMap<String, Future<Boolean>>();
+            for (int participants = server.stack().getParticipants(sessionID); participants > 0; participants--) {
+                String participant = server.stack().pop(sessionID);
+                if (participant == null || participant.equals(originalIssuer) || logouts.containsKey(participant))
+                    continue;
+
+                final String endpoint = spMetadataRegistry != null ? spMetadataRegistry.getSingleLogoutService(participant,
+                        JBossSAMLURIConstants.SAML_SOAP_BINDING.get()) : null;
+                if (endpoint == null) {
+                    logger.samlHandlerNoBackChannelLogoutEndpoint(participant);
+                    partialLogout = true;
+                    continue;
+                }
+
+                // the request documents are built here, the executor threads sign them and do the I/O
+                final Document logoutRequest = saml2Request.convert(createLogoutRequest(request, httpServletRequest, endpoint));
+                try {
+                    logouts.put(participant, executor.submit(new Callable<Boolean>() {
+                        public Boolean call() throws Exception {
+                            if (keypair != null)
+                                sign(logoutRequest, keypair);
+                            return SOAPSAMLLogout.isSuccess(soapLogout.send(endpoint, logoutRequest,
+                                    backChannelLogoutTimeout));
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    logger.samlHandlerBackChannelLogoutFailed(participant, e);
+                    partialLogout = true;
+                }
+            }
+
+            for (Map.Entry<String, Future<Boolean>> logout : logouts.entrySet()) {
+                Future<Boolean> future = logout.getValue();
+                try {
+                    long remaining = Math.max(deadline - System.currentTimeMillis(), 0);
+                    if (!future.get(remaining, TimeUnit.MILLISECONDS))
+                        partialLogout = true;
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    logger.samlHandlerBackChannelLogoutFailed(logout.getKey(), e);
+                    partialLogout = true;
+                } catch (ExecutionException e) {
+                    logger.samlHandlerBackChannelLogoutFailed(logout.getKey(), e.getCause());
+                    partialLogout = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.cancel(true);
+                    partialLogout = true;
+                }
+            }
+
+            // the binding of the original issuer is looked up before the session, and its participants, go away
+            boolean isPost = isPostBindingForResponse(server, originalIssuer, request);
+
+            session.invalidate();
+            server.stack().pop(sessionID);
+
+            generateStatusResponseType(logOutRequest.getID(), request, response, originalIssuer,
+                    partialLogout ? JBossSAMLURIConstants.STATUS_PARTIAL_LOGOUT : JBossSAMLURIConstants.STATUS_SUCCESS);
+
+            response.setPostBindingForResponse(isPost);
+            response.setSendRequest(false);
+        }
 
-            logger.trace("Generating Success Status Response for " + originalIssuer);
+        /**
+         * The key pair the back channel LogoutRequests are signed with, as the front channel messages are signed by the
+         * signature generation handler
+         *
+         * @return null if the requests are not signed
+         */
+        private KeyPair getSigningKeyPair(SAML2HandlerRequest request) throws ProcessingException {
+            Boolean supportsSignatures = (Boolean) request.getOptions().get(GeneralConstants.SUPPORTS_SIGNATURES);
+            if (supportsSignatures == Boolean.FALSE)
+                return null;
+
+            KeyPair keypair = (KeyPair) handlerChainConfig.getParameter(GeneralConstants.KEYPAIR);
+            if (keypair == null && supportsSignatures == Boolean.TRUE) {
+                logger.samlHandlerKeyPairNotFound();
+                throw logger.samlHandlerKeyPairNotFoundError();
+            }
+            return keypair;
+        }
+
+        private void sign(Document samlDocument, KeyPair keypair) throws ProcessingException {
+            SAML2Signature samlSignature = new SAML2Signature();
+            samlSignature.setNextSibling(samlSignature.getNextSiblingOfIssuer(samlDocument));
+            samlSignature.signSAMLDocument(samlDocument, keypair);
+        }
+
+        private LogoutRequestType createLogoutRequest(SAML2HandlerRequest request, HttpServletRequest httpServletRequest,
+                String participant) throws ConfigurationException, ProcessingException {
+            LogoutRequestType lort = new SAML2Request().createLogoutRequest(request.getIssuer().getValue());
+
+            Principal userPrincipal = httpServletRequest.getUserPrincipal();
+            if (userPrincipal == null) {
+                throw logger.samlHandlerPrincipalNotFoundError();
+            }
+            NameIDType nameID = new NameIDType();
+            nameID.setValue(userPrincipal.getName());
+            lort.setNameID(nameID);
+
+            long assertionValidity = PicketLinkCoreSTS.instance().getConfiguration().getIssuedTokenTimeout();
+
+            lort.setNotOnOrAfter(XMLTimeUtil.add(lort.getIssueInstant(), assertionValidity));
+            lort.setDestination(URI.create(participant));
+            return lort;
+        }
+
+        private void generateStatusResponseType(String logOutRequestID, SAML2HandlerRequest request,
+                SAML2HandlerResponse response, String originalIssuer, JBossSAMLURIConstants status)
+                throws ConfigurationException, ParserConfigurationException, ProcessingException {
+
+            logger.trace("Generating " + status.get() + " Status Response for " + originalIssuer);
 
             StatusResponseType statusResponse = new StatusResponseType(IDGenerator.create("ID_"), XMLTimeUtil.getIssueInstant());
 
@@ -297,7 +517,7 @@ public class SAML2LogOutHandler extends BaseSAML2Handler {
 
             // 2nd level status code
             StatusCodeType status2ndLevel = new StatusCodeType();
-            status2ndLevel.setValue(URI.create(JBossSAMLURIConstants.STATUS_SUCCESS.get()));
+            status2ndLevel.setValue(URI.create(status.get()));
             statusCodeType.setStatusCode(status2ndLevel);
 
             statusType.setStatusCode(statusCodeType);
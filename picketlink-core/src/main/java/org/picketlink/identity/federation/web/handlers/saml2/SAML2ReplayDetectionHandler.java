@@ -0,0 +1,169 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.identity.federation.web.handlers.saml2;
+
+import javax.xml.datatype.XMLGregorianCalendar;
+
+import org.picketlink.identity.federation.core.exceptions.ConfigurationException;
+import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultReplayCache;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.ReplayCache;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerConfig;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.ThreadSafeSAML2Handler;
+import org.picketlink.identity.federation.core.util.StringUtil;
+import org.picketlink.identity.federation.saml.v2.assertion.AssertionType;
+import org.picketlink.identity.federation.saml.v2.assertion.ConditionsType;
+import org.picketlink.identity.federation.saml.v2.protocol.ResponseType;
+import org.picketlink.identity.federation.saml.v2.protocol.ResponseType.RTChoiceType;
+
+/**
+ * <p>
+ * Handler used on the SP side to reject SAML responses and assertions that have already been consumed.
+ * </p>
+ * <p>
+ * The IDs of the received Response and of its assertions are recorded in a {@link ReplayCache} until the assertions expire,
+ * as given by their Conditions NotOnOrAfter, plus the {@link #CLOCK_SKEW_MILIS} if configured. IDs of messages without an
+ * expiration are kept for {@link #REPLAY_CACHE_TIME_TO_LIVE} milliseconds. The cache is a {@link DefaultReplayCache} unless
+ * another implementation, for instance backed by a store shared by the nodes of a cluster, is configured with the
+ * {@link #REPLAY_CACHE} option.
+ * </p>
+ * <p>
+ * The ID of every Response reaching this handler is recorded, so the handler must come after the
+ * {@link SAML2SignatureValidationHandler} in the chain: otherwise an unsigned or forged message could consume the ID of a
+ * genuine one. A chain where it comes first is rejected when it is loaded. The IDs of signed messages that fail in a later
+ * handler stay recorded, as a replay of such a message would fail as well. When the signature is validated outside of the
+ * chain, the handler must only be used if the message is validated before the chain runs.
+ * </p>
+ * <p>
+ * Encrypted assertions are only decrypted by the {@link SAML2AuthenticationHandler}: they are covered by the ID of their
+ * Response, unless this handler is placed after it in the chain.
+ * </p>
+ */
+public class SAML2ReplayDetectionHandler extends BaseSAML2Handler implements ThreadSafeSAML2Handler {
+
+    /**
+     * Fully qualified name of the {@link ReplayCache} implementation
+     */
+    public static final String REPLAY_CACHE = "REPLAY_CACHE";
+
+    /**
+     * Time in milliseconds the ID of a message without expiration is kept
+     */
+    public static final String REPLAY_CACHE_TIME_TO_LIVE = "REPLAY_CACHE_TIME_TO_LIVE";
+
+    public static final long DEFAULT_TIME_TO_LIVE = 5 * 60 * 1000L;
+
+    private ReplayCache replayCache;
+
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    private long clockSkew = 0;
+
+    @Override
+    public void initHandlerConfig(SAML2HandlerConfig handlerConfig) throws ConfigurationException {
+        super.initHandlerConfig(handlerConfig);
+
+        String cacheClass = (String) handlerConfig.getParameter(REPLAY_CACHE);
+        if (StringUtil.isNotNull(cacheClass)) {
+            try {
+                replayCache = (ReplayCache) SecurityActions.loadClass(getClass(), cacheClass).newInstance();
+            } catch (Exception e) {
+                throw logger.configurationError(e);
+            }
+        } else {
+            replayCache = new DefaultReplayCache();
+        }
+        replayCache.initialize(handlerConfig);
+
+        String ttl = (String) handlerConfig.getParameter(REPLAY_CACHE_TIME_TO_LIVE);
+        if (StringUtil.isNotNull(ttl))
+            timeToLive = Long.parseLong(ttl);
+
+        String skew = (String) handlerConfig.getParameter(CLOCK_SKEW_MILIS);
+        if (StringUtil.isNotNull(skew))
+            clockSkew = Long.parseLong(skew);
+    }
+
+    /**
+     * Get the cache of the consumed IDs
+     *
+     * @return
+     */
+    public ReplayCache getReplayCache() {
+        return replayCache;
+    }
+
+    public void handleRequestType(SAML2HandlerRequest request, SAML2HandlerResponse response) throws ProcessingException {
+    }
+
+    @Override
+    public void handleStatusResponseType(SAML2HandlerRequest request, SAML2HandlerResponse response) throws ProcessingException {
+        if (getType() == HANDLER_TYPE.IDP)
+            return;
+
+        if (request.getSAML2Object() instanceof ResponseType == false)
+            return;
+
+        ResponseType responseType = (ResponseType) request.getSAML2Object();
+        long now = System.currentTimeMillis();
+
+        // the response can be replayed as long as any of its assertions is valid
+        long responseNotOnOrAfter = 0;
+        for (RTChoiceType choice : responseType.getAssertions()) {
+            AssertionType assertion = choice.getAssertion();
+            if (assertion != null)
+                responseNotOnOrAfter = Math.max(responseNotOnOrAfter, getNotOnOrAfter(assertion, now));
+        }
+        if (responseNotOnOrAfter == 0)
+            responseNotOnOrAfter = now + timeToLive + clockSkew;
+
+        consume(responseType.getID(), responseNotOnOrAfter);
+
+        for (RTChoiceType choice : responseType.getAssertions()) {
+            AssertionType assertion = choice.getAssertion();
+            if (assertion != null)
+                consume(assertion.getID(), getNotOnOrAfter(assertion, now));
+        }
+    }
+
+    private void consume(String id, long notOnOrAfter) throws ProcessingException {
+        if (id == null)
+            throw logger.nullValueError("ID");
+
+        if (!replayCache.add(id, notOnOrAfter))
+            throw logger.samlHandlerMessageReplayedError(id);
+
+        logger.trace("ID " + id + " recorded in the replay cache");
+    }
+
+    private long getNotOnOrAfter(AssertionType assertion, long now) {
+        ConditionsType conditions = assertion.getConditions();
+        if (conditions != null) {
+            XMLGregorianCalendar notOnOrAfter = conditions.getNotOnOrAfter();
+            if (notOnOrAfter != null)
+                return notOnOrAfter.toGregorianCalendar().getTimeInMillis() + clockSkew;
+        }
+        return now + timeToLive + clockSkew;
+    }
+}
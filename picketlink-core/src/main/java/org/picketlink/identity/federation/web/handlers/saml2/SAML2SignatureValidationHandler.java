@@ -22,6 +22,8 @@
 package org.picketlink.identity.federation.web.handlers.saml2;
 
 import java.security.PublicKey;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.jboss.security.audit.AuditLevel;
@@ -33,7 +35,7 @@ import org.picketlink.identity.federation.core.exceptions.ProcessingException;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerErrorCodes;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
-import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.ThreadSafeSAML2Handler;
 import org.picketlink.identity.federation.web.constants.GeneralConstants;
 import org.picketlink.identity.federation.web.core.HTTPContext;
 import org.picketlink.identity.federation.web.util.RedirectBindingSignatureUtil;
@@ -45,7 +47,7 @@ import org.w3c.dom.Document;
  * @author Anil.Saldhana@redhat.com
  * @since Nov 13, 2009
  */
-public class SAML2SignatureValidationHandler extends AbstractSignatureHandler {
+public class SAML2SignatureValidationHandler extends AbstractSignatureHandler implements ThreadSafeSAML2Handler {
 
     private SAML2Signature saml2Signature = new SAML2Signature();
 
@@ -75,23 +77,26 @@ public class SAML2SignatureValidationHandler extends AbstractSignatureHandler {
 
         Document signedDocument = request.getRequestDocument();
 
-        if (logger.isTraceEnabled()) {
-            logger.trace("Going to validate signature for: " + DocumentUtil.asString(signedDocument));
-        }
+        logger.tracef("Going to validate signature for: %s", signedDocument);
 
-        PublicKey publicKey = (PublicKey) request.getOptions().get(GeneralConstants.SENDER_PUBLIC_KEY);
+        List<PublicKey> publicKeys = getSenderPublicKeys(request);
         try {
-            boolean isValid;
+            boolean isValid = false;
 
             HTTPContext httpContext = (HTTPContext) request.getContext();
             boolean isPost = httpContext.getRequest().getMethod().equalsIgnoreCase("POST");
 
             logger.trace("HTTP method for validating response: " + httpContext.getRequest().getMethod());
 
-            if (isPost) {
-                isValid = verifyPostBindingSignature(signedDocument, publicKey);
-            } else {
-                isValid = verifyRedirectBindingSignature(httpContext, publicKey);
+            // during a key rollover the sender may sign with any of its keys
+            for (PublicKey publicKey : publicKeys) {
+                if (isPost) {
+                    isValid = verifyPostBindingSignature(signedDocument, publicKey);
+                } else {
+                    isValid = verifyRedirectBindingSignature(httpContext, publicKey);
+                }
+                if (isValid)
+                    break;
             }
 
             if (!isValid) {
@@ -116,6 +121,14 @@ public class SAML2SignatureValidationHandler extends AbstractSignatureHandler {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private List<PublicKey> getSenderPublicKeys(SAML2HandlerRequest request) {
+        List<PublicKey> publicKeys = (List<PublicKey>) request.getOptions().get(GeneralConstants.SENDER_PUBLIC_KEYS);
+        if (publicKeys == null || publicKeys.isEmpty())
+            publicKeys = Collections.singletonList((PublicKey) request.getOptions().get(GeneralConstants.SENDER_PUBLIC_KEY));
+        return publicKeys;
+    }
+
     private boolean verifyPostBindingSignature(Document signedDocument, PublicKey publicKey) throws ProcessingException {
         try {
             return this.saml2Signature.validate(signedDocument, publicKey);
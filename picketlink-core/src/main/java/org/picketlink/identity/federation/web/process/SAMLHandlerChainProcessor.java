@@ -27,6 +27,9 @@ import java.util.Set;
 import java.util.concurrent.locks.Lock;
 
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Phase;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
@@ -41,6 +44,8 @@ import org.picketlink.identity.federation.web.core.HTTPContext;
  * @since Oct 27, 2009
  */
 public class SAMLHandlerChainProcessor {
+    private static final PicketLinkMetrics metrics = PicketLinkMetricsFactory.getMetrics();
+
     private final Set<SAML2Handler> handlers = new LinkedHashSet<SAML2Handler>();
 
     public SAMLHandlerChainProcessor(Set<SAML2Handler> handlers) {
@@ -50,8 +55,10 @@ public class SAMLHandlerChainProcessor {
     public void callHandlerChain(SAML2Object samlObject, SAML2HandlerRequest saml2HandlerRequest,
             SAML2HandlerResponse saml2HandlerResponse, HTTPContext httpContext, Lock chainLock) throws ProcessingException,
             IOException {
+        long start = 0;
         try {
             chainLock.lock();
+            start = metrics.start();
             // Deal with handler chains
             for (SAML2Handler handler : handlers) {
                 if (saml2HandlerResponse.isInError()) {
@@ -65,6 +72,7 @@ public class SAMLHandlerChainProcessor {
                 }
             }
         } finally {
+            metrics.phase(Phase.HANDLER_CHAIN, start);
             chainLock.unlock();
         }
     }
@@ -43,6 +43,9 @@ import org.picketlink.identity.federation.core.exceptions.ProcessingException;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyConfigurationException;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyManager;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyProcessingException;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Operation;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
 import org.picketlink.identity.federation.core.saml.v2.common.SAMLDocumentHolder;
 import org.picketlink.identity.federation.core.saml.v2.holders.IssuerInfoHolder;
 import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerRequest;
@@ -53,6 +56,10 @@ import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRe
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest.GENERATE_REQUEST_TYPE;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
 import org.picketlink.identity.federation.core.util.StringUtil;
+import org.picketlink.identity.federation.saml.v2.SAML2Object;
+import org.picketlink.identity.federation.saml.v2.assertion.NameIDType;
+import org.picketlink.identity.federation.saml.v2.protocol.RequestAbstractType;
+import org.picketlink.identity.federation.saml.v2.protocol.StatusResponseType;
 import org.picketlink.identity.federation.web.constants.GeneralConstants;
 import org.picketlink.identity.federation.web.core.HTTPContext;
 
@@ -66,6 +73,8 @@ public class ServiceProviderBaseProcessor {
     
     protected static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
 
+    protected static final PicketLinkMetrics metrics = PicketLinkMetricsFactory.getMetrics();
+
     protected boolean postBinding;
 
     protected String serviceURL;
@@ -235,6 +244,28 @@ public class ServiceProviderBaseProcessor {
         return keyManager.getValidatingKey(idpValidatingAlias);
     }
 
+    /**
+     * Record an operation of the SP, keyed by the issuer of the SAML message that was processed
+     *
+     * @param operation
+     * @param documentHolder the message, null if it could not be parsed
+     * @param start
+     * @param failed
+     */
+    protected void recordOperation(Operation operation, SAMLDocumentHolder documentHolder, long start, boolean failed) {
+        if (!metrics.isEnabled())
+            return;
+
+        NameIDType messageIssuer = null;
+        SAML2Object samlObject = documentHolder != null ? documentHolder.getSamlObject() : null;
+        if (samlObject instanceof RequestAbstractType)
+            messageIssuer = ((RequestAbstractType) samlObject).getIssuer();
+        else if (samlObject instanceof StatusResponseType)
+            messageIssuer = ((StatusResponseType) samlObject).getIssuer();
+
+        metrics.operation(operation, messageIssuer != null ? messageIssuer.getValue() : null, start, failed);
+    }
+
     protected void setRequestOptions(SAML2HandlerRequest saml2HandlerRequest) throws TrustKeyConfigurationException, TrustKeyProcessingException {
         if (spConfiguration != null) {
             Map<String, Object> requestOptions = new HashMap<String, Object>();
@@ -32,6 +32,7 @@ import org.picketlink.identity.federation.api.saml.v2.request.SAML2Request;
 import org.picketlink.identity.federation.core.exceptions.ConfigurationException;
 import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Operation;
 import org.picketlink.identity.federation.core.saml.v2.common.SAMLDocumentHolder;
 import org.picketlink.identity.federation.core.saml.v2.holders.DestinationInfoHolder;
 import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerResponse;
@@ -79,7 +80,21 @@ public class ServiceProviderSAMLRequestProcessor extends ServiceProviderBaseProc
      */
     public boolean process(String samlRequest, HTTPContext httpContext, Set<SAML2Handler> handlers, Lock chainLock)
             throws ProcessingException, IOException, ParsingException, ConfigurationException {
+        long start = metrics.start();
         SAML2Request saml2Request = new SAML2Request();
+        boolean failed = true;
+        try {
+            boolean processed = processLogoutRequest(saml2Request, samlRequest, httpContext, handlers, chainLock);
+            failed = false;
+            return processed;
+        } finally {
+            recordOperation(Operation.SLO, saml2Request.getSamlDocumentHolder(), start, failed);
+        }
+    }
+
+    private boolean processLogoutRequest(SAML2Request saml2Request, String samlRequest, HTTPContext httpContext,
+            Set<SAML2Handler> handlers, Lock chainLock) throws ProcessingException, IOException, ParsingException,
+            ConfigurationException {
         SAML2HandlerResponse saml2HandlerResponse = null;
         SAML2Object samlObject = null;
         SAMLDocumentHolder documentHolder = null;
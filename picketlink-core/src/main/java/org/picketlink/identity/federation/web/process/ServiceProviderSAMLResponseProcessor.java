@@ -32,11 +32,13 @@ import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyConfigurationException;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyProcessingException;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Operation;
 import org.picketlink.identity.federation.core.saml.v2.common.SAMLDocumentHolder;
 import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerResponse;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
 import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
+import org.picketlink.identity.federation.saml.v2.protocol.ResponseType;
 import org.picketlink.identity.federation.web.constants.GeneralConstants;
 import org.picketlink.identity.federation.web.core.HTTPContext;
 import org.picketlink.identity.federation.web.util.PostBindingUtil;
@@ -81,9 +83,19 @@ public class ServiceProviderSAMLResponseProcessor extends ServiceProviderBasePro
      */
     public SAML2HandlerResponse process(String samlResponse, HTTPContext httpContext, Set<SAML2Handler> handlers, Lock chainLock)
             throws ProcessingException, IOException, ParsingException, ConfigurationException {
-        SAMLDocumentHolder documentHolder = getSAMLDocumentHolder(samlResponse);
+        long start = metrics.start();
+        SAMLDocumentHolder documentHolder = null;
+        SAML2HandlerResponse saml2HandlerResponse = null;
 
-        SAML2HandlerResponse saml2HandlerResponse = processHandlersChain(httpContext, handlers, chainLock, documentHolder);
+        try {
+            documentHolder = getSAMLDocumentHolder(samlResponse);
+
+            saml2HandlerResponse = processHandlersChain(httpContext, handlers, chainLock, documentHolder);
+        } finally {
+            Operation operation = documentHolder == null || documentHolder.getSamlObject() instanceof ResponseType ? Operation.SSO
+                    : Operation.SLO;
+            recordOperation(operation, documentHolder, start, saml2HandlerResponse == null || saml2HandlerResponse.isInError());
+        }
 
         return saml2HandlerResponse;
     }
@@ -60,6 +60,7 @@ import org.picketlink.identity.federation.core.interfaces.RoleGenerator;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyConfigurationException;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyManager;
 import org.picketlink.identity.federation.core.interfaces.TrustKeyProcessingException;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
 import org.picketlink.identity.federation.core.saml.v2.common.SAMLDocumentHolder;
 import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants;
 import org.picketlink.identity.federation.core.saml.v2.exceptions.IssueInstantMissingException;
@@ -152,6 +153,14 @@ public class IDPServlet extends HttpServlet {
         return ignoreIncomingSignatures;
     }
 
+    @Override
+    public void destroy() {
+        if (chain != null)
+            HandlerUtil.destroy(chain.handlers());
+        PicketLinkMetricsFactory.release();
+        super.destroy();
+    }
+
     @Override
     public void init(ServletConfig config) throws ServletException {
         Handlers handlers = null;
@@ -311,6 +320,8 @@ public class IDPServlet extends HttpServlet {
             sts.installDefaultConfiguration();
         else
             sts.installDefaultConfiguration(configPath);
+
+        PicketLinkMetricsFactory.acquire();
     }
 
     @SuppressWarnings("unchecked")
@@ -32,6 +32,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.JAXBException;
 import javax.xml.soap.SOAPBody;
 import javax.xml.soap.SOAPEnvelope;
 import javax.xml.soap.SOAPException;
@@ -45,11 +46,14 @@ import org.picketlink.identity.federation.core.ErrorCodes;
 import org.picketlink.identity.federation.core.exceptions.ConfigurationException;
 import org.picketlink.identity.federation.core.exceptions.ParsingException;
 import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.pdp.XACMLDecisionCache;
 import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
 import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLConstants;
 import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.SAMLXACMLUtil;
 import org.picketlink.identity.federation.core.saml.v2.util.SOAPSAMLXACMLUtil;
 import org.picketlink.identity.federation.core.saml.v2.writers.SAMLResponseWriter;
+import org.picketlink.identity.federation.core.util.JAXBUtil;
 import org.picketlink.identity.federation.core.util.SOAPUtil;
 import org.picketlink.identity.federation.core.util.StaxUtil;
 import org.picketlink.identity.federation.saml.v2.protocol.XACMLAuthzDecisionQueryType;
@@ -79,7 +83,9 @@ public class SOAPSAMLXACMLServlet extends HttpServlet {
 
     boolean debug = false;
 
-    private transient PolicyDecisionPoint pdp = null;
+    private transient volatile PolicyDecisionPoint pdp = null;
+
+    private transient XACMLDecisionCache decisionCache = null;
 
     private String soapVersion = "1.1";
 
@@ -118,13 +124,44 @@ public class SOAPSAMLXACMLServlet extends HttpServlet {
             SecurityActions.setSystemProperty("jaxb.debug", "true");
         }
 
+        String decisionCacheSize = config.getInitParameter("decisionCacheSize");
+        if (decisionCacheSize != null && Integer.parseInt(decisionCacheSize) > 0) {
+            String decisionCacheTTL = config.getInitParameter("decisionCacheTTL");
+            decisionCache = new XACMLDecisionCache(Integer.parseInt(decisionCacheSize),
+                    decisionCacheTTL != null ? Long.parseLong(decisionCacheTTL) : XACMLDecisionCache.DEFAULT_TTL);
+        } else {
+            decisionCache = XACMLDecisionCache.fromSystemProperties();
+        }
+
+        reloadPolicies();
+
+        if (JAXBUtil.isWarmUpEnabled()) {
+            try {
+                SAMLXACMLUtil.warmUp();
+            } catch (JAXBException e) {
+                log("Exception building the XACML JAXB context::", e);
+                throw new ServletException(ErrorCodes.PROCESSING_EXCEPTION + "Unable to build the XACML JAXB context");
+            }
+        }
+        super.init(config);
+    }
+
+    /**
+     * Load the policy configuration again into a new PDP, dropping the cached decisions of the previous one
+     *
+     * @throws ServletException
+     */
+    public void reloadPolicies() throws ServletException {
+        PolicyDecisionPoint newPdp;
         try {
-            pdp = this.getPDP();
+            newPdp = this.getPDP();
         } catch (IOException e) {
             log("Exception loading PDP::", e);
             throw new ServletException(ErrorCodes.PROCESSING_EXCEPTION + "Unable to load PDP");
         }
-        super.init(config);
+        if (decisionCache != null)
+            decisionCache.setPolicyDecisionPoint(newPdp);
+        pdp = newPdp;
     }
 
     @Override
@@ -199,7 +236,7 @@ public class SOAPSAMLXACMLServlet extends HttpServlet {
                 throw new IOException(ErrorCodes.NULL_VALUE + "XACML Request not parsed");
 
             org.picketlink.identity.federation.saml.v2.protocol.ResponseType samlResponseType = SOAPSAMLXACMLUtil
-                    .handleXACMLQuery(pdp, issuer, xacmlRequest);
+                    .handleXACMLQuery(pdp, decisionCache, issuer, xacmlRequest);
 
             /*
              * RequestType requestType = xacmlRequest.getRequest();
@@ -25,6 +25,10 @@ import java.io.IOException;
 
 import javax.servlet.http.HttpServletResponse;
 
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Phase;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
+
 /**
  * Utility Class for http/redirect
  *
@@ -32,6 +36,9 @@ import javax.servlet.http.HttpServletResponse;
  * @since Dec 15, 2008
  */
 public class HTTPRedirectUtil {
+
+    private static final PicketLinkMetrics metrics = PicketLinkMetricsFactory.getMetrics();
+
     /**
      * Send the response to the redirected destination while adding the character encoding of "UTF-8" as well as adding headers
      * for cache-control and Pragma
@@ -62,7 +69,9 @@ public class HTTPRedirectUtil {
     }
 
     private static void sendRedirect(HttpServletResponse response, String destination) throws IOException {
+        long start = metrics.start();
         response.setStatus(HttpServletResponse.SC_MOVED_TEMPORARILY);
         response.sendRedirect(destination);
+        metrics.phase(Phase.SEND, start);
     }
 }
\ No newline at end of file
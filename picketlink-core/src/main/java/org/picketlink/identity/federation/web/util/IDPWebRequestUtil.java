@@ -52,7 +52,6 @@ import org.picketlink.identity.federation.core.saml.v2.common.SAMLDocumentHolder
 import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants;
 import org.picketlink.identity.federation.core.saml.v2.exceptions.IssuerNotTrustedException;
 import org.picketlink.identity.federation.core.saml.v2.factories.JBossSAMLAuthnResponseFactory;
-import org.picketlink.identity.federation.core.saml.v2.holders.DestinationInfoHolder;
 import org.picketlink.identity.federation.core.saml.v2.holders.IDPInfoHolder;
 import org.picketlink.identity.federation.core.saml.v2.holders.IssuerInfoHolder;
 import org.picketlink.identity.federation.core.saml.v2.holders.SPInfoHolder;
@@ -223,15 +222,9 @@ public class IDPWebRequestUtil {
             logger.trace("Destination = " + finalDest);
             HTTPRedirectUtil.sendRedirectForResponder(finalDest, response);
         } else {
-            if (logger.isTraceEnabled()) {
-                logger.trace("SAML Response Document: " + DocumentUtil.asString(responseDoc));
-            }
+            logger.tracef("SAML Response Document: %s", responseDoc);
             
-            byte[] responseBytes = DocumentUtil.getDocumentAsString(responseDoc).getBytes("UTF-8");
-
-            String samlResponse = PostBindingUtil.base64Encode(new String(responseBytes));
-
-            PostBindingUtil.sendPost(new DestinationInfoHolder(destination, samlResponse, relayState), response, sendRequest);
+            PostBindingUtil.sendPost(responseDoc, destination, relayState, response, sendRequest);
         }
     }
 
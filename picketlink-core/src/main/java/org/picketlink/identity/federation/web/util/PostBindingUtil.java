@@ -26,15 +26,24 @@ import static org.picketlink.identity.federation.core.util.StringUtil.isNotNull;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.Writer;
 
 import javax.servlet.http.HttpServletResponse;
 
 import org.picketlink.identity.federation.PicketLinkLogger;
 import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+import org.picketlink.identity.federation.core.exceptions.ConfigurationException;
+import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Phase;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
 import org.picketlink.identity.federation.core.saml.v2.holders.DestinationInfoHolder;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
 import org.picketlink.identity.federation.core.util.Base64;
 import org.picketlink.identity.federation.web.constants.GeneralConstants;
+import org.w3c.dom.Document;
 
 /**
  * Utility for the HTTP/Post binding
@@ -45,6 +54,8 @@ import org.picketlink.identity.federation.web.constants.GeneralConstants;
 public class PostBindingUtil {
     
     private static final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    private static final PicketLinkMetrics metrics = PicketLinkMetricsFactory.getMetrics();
     
     /**
      * Apply base64 encoding on the message
@@ -100,11 +111,91 @@ public class PostBindingUtil {
         if (destination == null)
             throw logger.nullValueError("Destination is null");
 
+        long start = metrics.start();
         response.setContentType("text/html");
         PrintWriter out = response.getWriter();
         common(holder.getDestination(), response);
         StringBuilder builder = new StringBuilder();
 
+        builder.append(formStart(destination, key, request));
+        builder.append(samlMessage);
+        builder.append(formEnd(relayState));
+
+        String str = builder.toString();
+        logger.trace(str);
+        out.println(str);
+        out.close();
+        metrics.phase(Phase.SEND, start);
+    }
+
+    /**
+     * <p>
+     * Send a SAML document to the destination with the HTTP/POST binding.
+     * </p>
+     * <p>
+     * Unlike {@link #sendPost(DestinationInfoHolder, HttpServletResponse, boolean)}, the document is serialized and base64
+     * encoded straight into the response writer, so that neither the message nor the HTML page are built in memory.
+     * </p>
+     *
+     * @param samlDocument the SAML request or response
+     * @param destination Destination URI where the document is posted
+     * @param relayState optional relay state
+     * @param response HttpServletResponse
+     * @param request whether the document is a SAML request
+     * @throws IOException
+     * @throws ConfigurationException
+     * @throws ProcessingException
+     */
+    public static void sendPost(Document samlDocument, String destination, String relayState, HttpServletResponse response,
+            boolean request) throws IOException, ConfigurationException, ProcessingException {
+        if (destination == null)
+            throw logger.nullValueError("Destination is null");
+
+        long start = metrics.start();
+        response.setContentType("text/html");
+        PrintWriter out = response.getWriter();
+        common(destination, response);
+        logger.trace("Posting SAML document to " + destination);
+
+        writePost(samlDocument, destination, relayState, out, request);
+        out.close();
+        metrics.phase(Phase.SEND, start);
+    }
+
+    /**
+     * Write the HTTP/POST binding page for a SAML document, serializing and base64 encoding the document on the fly. The
+     * writer is flushed but not closed.
+     *
+     * @param samlDocument the SAML request or response
+     * @param destination Destination URI where the document is posted
+     * @param relayState optional relay state
+     * @param out
+     * @param request whether the document is a SAML request
+     * @throws IOException
+     * @throws ConfigurationException
+     * @throws ProcessingException
+     */
+    public static void writePost(Document samlDocument, String destination, String relayState, Writer out, boolean request)
+            throws IOException, ConfigurationException, ProcessingException {
+        String key = request ? GeneralConstants.SAML_REQUEST_KEY : GeneralConstants.SAML_RESPONSE_KEY;
+
+        out.write(formStart(destination, key, request));
+
+        // base64 is plain ASCII, the encoded bytes go to the writer as they are
+        AsciiOutputStream ascii = new AsciiOutputStream(out);
+        Base64.OutputStream base64 = new Base64.OutputStream(ascii, Base64.ENCODE | Base64.DONT_BREAK_LINES);
+        DocumentUtil.writeNode(samlDocument, base64);
+        // not closed, as it would close the writer
+        base64.flushBase64();
+        ascii.flush();
+
+        out.write(formEnd(relayState));
+        out.flush();
+    }
+
+    private static String formStart(String destination, String key, boolean request) {
+        StringBuilder builder = new StringBuilder();
+
         builder.append("<HTML>");
         builder.append("<HEAD>");
         if (request)
@@ -116,16 +207,54 @@ public class PostBindingUtil {
         builder.append("<BODY Onload=\"document.forms[0].submit()\">");
 
         builder.append("<FORM METHOD=\"POST\" ACTION=\"" + destination + "\">");
-        builder.append("<INPUT TYPE=\"HIDDEN\" NAME=\"" + key + "\"" + " VALUE=\"" + samlMessage + "\"/>");
+        builder.append("<INPUT TYPE=\"HIDDEN\" NAME=\"" + key + "\"" + " VALUE=\"");
+        return builder.toString();
+    }
+
+    private static String formEnd(String relayState) {
+        StringBuilder builder = new StringBuilder();
+
+        builder.append("\"/>");
         if (isNotNull(relayState)) {
             builder.append("<INPUT TYPE=\"HIDDEN\" NAME=\"RelayState\" " + "VALUE=\"" + relayState + "\"/>");
         }
         builder.append("</FORM></BODY></HTML>");
+        return builder.toString();
+    }
 
-        String str = builder.toString();
-        logger.trace(str);
-        out.println(str);
-        out.close();
+    /**
+     * Buffers the bytes of an ASCII encoded stream and hands them over to a writer as characters
+     */
+    private static class AsciiOutputStream extends OutputStream {
+        private final Writer writer;
+
+        private final char[] buffer = new char[4096];
+
+        private int count;
+
+        private AsciiOutputStream(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length)
+                flush();
+            buffer[count++] = (char) (b & 0xFF);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.write(buffer, 0, count);
+            count = 0;
+        }
     }
 
     private static void common(String destination, HttpServletResponse response) {
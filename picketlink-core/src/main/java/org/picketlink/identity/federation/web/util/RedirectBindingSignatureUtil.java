@@ -26,10 +26,12 @@ import static org.picketlink.identity.federation.core.util.StringUtil.isNotNull;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.SignatureException;
 
 import org.picketlink.identity.federation.PicketLinkLogger;
 import org.picketlink.identity.federation.PicketLinkLoggerFactory;
@@ -203,33 +205,54 @@ public class RedirectBindingSignatureUtil {
         return getTokenValue(getToken(queryString, token));
     }
 
+    /**
+     * Validate the signature of a HTTP-Redirect query string. The signed content is rebuilt from the SAMLRequest or
+     * SAMLResponse, RelayState and SigAlg parameters. The signature algorithm is the one given by SigAlg when it is
+     * supported (dsa-sha1, rsa-sha1, rsa-sha256), otherwise the SHA1 algorithm of the validating key.
+     *
+     * @param queryString
+     * @param validatingKey
+     * @param sigValue
+     * @return
+     * @throws UnsupportedEncodingException
+     * @throws GeneralSecurityException
+     */
     public static boolean validateSignature(String queryString, PublicKey validatingKey, byte[] sigValue)
             throws UnsupportedEncodingException, GeneralSecurityException {
         // Construct the url again
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder(queryString.length());
 
-        if (isRequestQueryString(queryString)) {
-            addParameter(sb, GeneralConstants.SAML_REQUEST_KEY,
-                    RedirectBindingSignatureUtil.getTokenValue(queryString, GeneralConstants.SAML_REQUEST_KEY));
+        String samlRequest = getTokenValue(queryString, GeneralConstants.SAML_REQUEST_KEY);
+        if (samlRequest != null) {
+            addParameter(sb, GeneralConstants.SAML_REQUEST_KEY, samlRequest);
         } else {
             addParameter(sb, GeneralConstants.SAML_RESPONSE_KEY,
-                    RedirectBindingSignatureUtil.getTokenValue(queryString, GeneralConstants.SAML_RESPONSE_KEY));
+                    getTokenValue(queryString, GeneralConstants.SAML_RESPONSE_KEY));
         }
 
-        String relayStateFromURL = RedirectBindingSignatureUtil.getTokenValue(queryString, GeneralConstants.RELAY_STATE);
+        String relayStateFromURL = getTokenValue(queryString, GeneralConstants.RELAY_STATE);
 
         if (isNotNull(relayStateFromURL)) {
             addParameter(sb, GeneralConstants.RELAY_STATE, relayStateFromURL);
         }
 
-        addParameter(sb, GeneralConstants.SAML_SIG_ALG_REQUEST_KEY,
-                RedirectBindingSignatureUtil.getTokenValue(queryString, GeneralConstants.SAML_SIG_ALG_REQUEST_KEY));
+        String sigAlg = getTokenValue(queryString, GeneralConstants.SAML_SIG_ALG_REQUEST_KEY);
+        addParameter(sb, GeneralConstants.SAML_SIG_ALG_REQUEST_KEY, sigAlg);
 
-        return SignatureUtil.validate(sb.toString().getBytes("UTF-8"), sigValue, validatingKey);
-    }
+        byte[] signedContent = sb.toString().getBytes("UTF-8");
 
-    private static boolean isRequestQueryString(String queryString) {
-        return RedirectBindingSignatureUtil.getTokenValue(queryString, GeneralConstants.SAML_REQUEST_KEY) != null;
+        String signatureAlgorithm = sigAlg != null ? SignatureUtil.getJCASignatureAlgorithm(URLDecoder.decode(sigAlg, "UTF-8"))
+                : null;
+        if (signatureAlgorithm == null)
+            return SignatureUtil.validate(signedContent, sigValue, validatingKey);
+
+        try {
+            return SignatureUtil.validate(signedContent, sigValue, signatureAlgorithm, validatingKey);
+        } catch (SignatureException e) {
+            // the signature value was not produced with the announced SigAlg
+            logger.trace(e);
+            return false;
+        }
     }
 
     // ***************** Private Methods **************
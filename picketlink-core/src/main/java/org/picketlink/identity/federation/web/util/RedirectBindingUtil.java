@@ -25,6 +25,7 @@ import static org.picketlink.identity.federation.core.util.StringUtil.isNotNull;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
@@ -69,8 +70,11 @@ public class RedirectBindingUtil {
      * @throws IOException
      */
     public static String base64URLEncode(byte[] stringToEncode) throws IOException {
-        String base64Request = Base64.encodeBytes(stringToEncode, Base64.DONT_BREAK_LINES);
-        return urlEncode(base64Request);
+        URLEncodingOutputStream urlEncoder = new URLEncodingOutputStream(stringToEncode.length * 4 / 3 + 16);
+        Base64.OutputStream base64 = new Base64.OutputStream(urlEncoder, Base64.ENCODE | Base64.DONT_BREAK_LINES);
+        base64.write(stringToEncode);
+        base64.flushBase64();
+        return urlEncoder.toString();
     }
 
     /**
@@ -97,15 +101,19 @@ public class RedirectBindingUtil {
     }
 
     /**
-     * Apply deflate compression followed by base64 encoding and URL encoding
+     * Apply deflate compression followed by base64 encoding and URL encoding. The compressed bytes are encoded as they come
+     * out of the deflater, without intermediate byte arrays.
      *
      * @param stringToEncode
      * @return
      * @throws IOException
      */
     public static String deflateBase64URLEncode(byte[] stringToEncode) throws IOException {
-        byte[] deflatedMsg = DeflateUtil.encode(stringToEncode);
-        return base64URLEncode(deflatedMsg);
+        URLEncodingOutputStream urlEncoder = new URLEncodingOutputStream(stringToEncode.length / 2 + 16);
+        Base64.OutputStream base64 = new Base64.OutputStream(urlEncoder, Base64.ENCODE | Base64.DONT_BREAK_LINES);
+        DeflateUtil.encode(stringToEncode, base64);
+        base64.flushBase64();
+        return urlEncoder.toString();
     }
 
     /**
@@ -185,6 +193,48 @@ public class RedirectBindingUtil {
         return destinationURL.toString();
     }
 
+    /**
+     * URL encodes the base64 characters written to it. Only '+', '/' and '=' of the base64 alphabet need escaping, which gives
+     * the same result as {@link URLEncoder} in UTF-8.
+     */
+    private static class URLEncodingOutputStream extends OutputStream {
+        private final StringBuilder builder;
+
+        private URLEncodingOutputStream(int capacity) {
+            builder = new StringBuilder(capacity);
+        }
+
+        @Override
+        public void write(int b) {
+            char c = (char) (b & 0xFF);
+            switch (c) {
+                case '+':
+                    builder.append("%2B");
+                    break;
+                case '/':
+                    builder.append("%2F");
+                    break;
+                case '=':
+                    builder.append("%3D");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return builder.toString();
+        }
+    }
+
     /**
      * A Destination holder that holds the destination host url and the destination query string
      */
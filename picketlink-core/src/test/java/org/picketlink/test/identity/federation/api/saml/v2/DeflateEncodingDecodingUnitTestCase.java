@@ -22,6 +22,7 @@
 package org.picketlink.test.identity.federation.api.saml.v2;
 
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
@@ -33,6 +34,7 @@ import org.picketlink.identity.federation.api.util.DeflateUtil;
 import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
 import org.picketlink.identity.federation.core.util.Base64;
 import org.picketlink.identity.federation.saml.v2.protocol.AuthnRequestType;
+import org.picketlink.identity.federation.web.util.RedirectBindingUtil;
 
 /**
  * Unit test the DEFLATE compression encoding/decoding cycles
@@ -62,4 +64,55 @@ public class DeflateEncodingDecodingUnitTestCase extends TestCase {
 
         assertNotNull(decodedRequestType);
     }
-}
\ No newline at end of file
+
+    public void testPooledDeflaterAndInflater() throws Exception {
+        DeflateUtil.clear();
+        byte[] message = "<samlp:AuthnRequest ID=\"ID_1\"/>".getBytes("UTF-8");
+
+        for (int i = 0; i < 3; i++) {
+            InputStream is = DeflateUtil.decode(DeflateUtil.encode(message));
+            assertEquals(new String(message, "UTF-8"), read(is));
+            assertEquals(-1, is.read());
+            is.close();
+        }
+        assertEquals(1, DeflateUtil.getIdleDeflaterCount());
+        assertEquals(1, DeflateUtil.getIdleInflaterCount());
+
+        // closed before the end of the stream
+        InputStream is = DeflateUtil.decode(DeflateUtil.encode(message));
+        assertEquals(0, DeflateUtil.getIdleInflaterCount());
+        is.close();
+        assertEquals(1, DeflateUtil.getIdleInflaterCount());
+
+        DeflateUtil.clear();
+        assertEquals(0, DeflateUtil.getIdleDeflaterCount());
+        assertEquals(0, DeflateUtil.getIdleInflaterCount());
+    }
+
+    public void testStreamingRedirectEncoding() throws Exception {
+        StringBuilder builder = new StringBuilder("<samlp:AuthnRequest ID=\"ID_1\">");
+        for (int i = 0; i < 1000; i++) {
+            builder.append("<saml:Attribute Name=\"r\u00f4le").append(i).append("\"/>");
+        }
+        byte[] message = builder.append("</samlp:AuthnRequest>").toString().getBytes("UTF-8");
+
+        String expected = URLEncoder.encode(Base64.encodeBytes(DeflateUtil.encode(message), Base64.DONT_BREAK_LINES), "UTF-8");
+        String encoded = RedirectBindingUtil.deflateBase64URLEncode(message);
+        assertEquals(expected, encoded);
+        assertEquals(URLEncoder.encode(Base64.encodeBytes(message, Base64.DONT_BREAK_LINES), "UTF-8"),
+                RedirectBindingUtil.base64URLEncode(message));
+
+        assertEquals(new String(message, "UTF-8"), read(RedirectBindingUtil.urlBase64DeflateDecode(encoded)));
+    }
+
+    private String read(InputStream is) throws Exception {
+        StringBuilder builder = new StringBuilder();
+        InputStreamReader reader = new InputStreamReader(is, "UTF-8");
+        char[] buffer = new char[256];
+        int count;
+        while ((count = reader.read(buffer)) != -1) {
+            builder.append(buffer, 0, count);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.api.saml.v2.metadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.List;
+
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.SignatureMethod;
+
+import org.junit.Test;
+import org.picketlink.identity.federation.core.exceptions.ParsingException;
+import org.picketlink.identity.federation.core.saml.md.providers.SPMetadataRegistry;
+import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.util.XMLSignatureUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit test the {@link SPMetadataRegistry}
+ */
+public class SPMetadataRegistryUnitTestCase {
+
+    private static final String SHIB_SP = "https://sp.testshib.org/shibboleth-sp";
+
+    @Test
+    public void testIndexes() throws Exception {
+        SPMetadataRegistry registry = new SPMetadataRegistry();
+        registry.load(resource("sp-metadata.xml"));
+
+        // the IDP of the aggregate is not indexed
+        assertEquals(1, registry.size());
+        assertNull(registry.getEntityDescriptor("https://idp.testshib.org/idp/shibboleth"));
+
+        assertNotNull(registry.getEntityDescriptor(SHIB_SP));
+        assertNotNull(registry.getSPDescriptor(SHIB_SP));
+        assertEquals(SHIB_SP, registry.getEntityIDByAssertionConsumerService("https://sp.testshib.org/Shibboleth.sso/SAML2/POST"));
+        assertTrue(registry.getSPDescriptor("https://sp.testshib.org/Shibboleth.sso/SAML2/POST") == registry
+                .getSPDescriptor(SHIB_SP));
+        // the metadata is not signed, its keys are not trusted
+        assertTrue(registry.getValidatingKeys(SHIB_SP).isEmpty());
+        assertTrue(registry.getValidatingKeys("https://unknown.org").isEmpty());
+    }
+
+    @Test
+    public void testSingleLogoutServices() throws Exception {
+        SPMetadataRegistry registry = new SPMetadataRegistry();
+        registry.load(resource("sp-metadata.xml"));
+
+        String soap = JBossSAMLURIConstants.SAML_SOAP_BINDING.get();
+        assertEquals("https://sp.testshib.org/Shibboleth.sso/SLO/SOAP", registry.getSingleLogoutService(SHIB_SP, soap));
+        // a participant registered by its redirect single logout service
+        assertEquals("https://sp.testshib.org/Shibboleth.sso/SLO/SOAP", registry.getSingleLogoutService(
+                "https://sp.testshib.org/Shibboleth.sso/SLO/Redirect", soap));
+        assertNull(registry.getSingleLogoutService(SHIB_SP, "urn:unknown:binding"));
+        assertNull(registry.getSingleLogoutService("https://unknown.org", soap));
+    }
+
+    @Test
+    public void testKeysOfSignedMetadata() throws Exception {
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").genKeyPair();
+        Document document = DocumentUtil.getDocument(resource("sp-metadata.xml"));
+
+        // publish a second key for the SP, as during a key rollover
+        Element entity = (Element) document.getElementsByTagNameNS("*", "EntityDescriptor").item(1);
+        Element keyDescriptor = (Element) entity.getElementsByTagNameNS("*", "KeyDescriptor").item(0);
+        keyDescriptor.getParentNode().insertBefore(keyDescriptor.cloneNode(true), keyDescriptor);
+        byte[] signed = sign(document, keyPair);
+
+        SPMetadataRegistry registry = new SPMetadataRegistry();
+        registry.setMetadataSigningKey(keyPair.getPublic());
+        registry.load(new ByteArrayInputStream(signed));
+
+        // every key is returned, and the issuer may be an assertion consumer service
+        List<PublicKey> keys = registry.getValidatingKeys(SHIB_SP);
+        assertEquals(2, keys.size());
+        assertEquals(keys, registry.getValidatingKeys("https://sp.testshib.org/Shibboleth.sso/SAML2/POST"));
+        assertTrue(registry.getValidatingKeys("https://unknown.org").isEmpty());
+    }
+
+    @Test
+    public void testInvalidMetadataSignature() throws Exception {
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").genKeyPair();
+        byte[] signed = sign("sp-metadata.xml", keyPair);
+
+        SPMetadataRegistry registry = new SPMetadataRegistry();
+        registry.setMetadataSigningKey(KeyPairGenerator.getInstance("RSA").genKeyPair().getPublic());
+        try {
+            registry.load(new ByteArrayInputStream(signed));
+            fail("metadata signed by another key accepted");
+        } catch (ParsingException e) {
+        }
+
+        registry.setMetadataSigningKey(keyPair.getPublic());
+        byte[] tampered = new String(signed, "UTF-8").replace("https://sp.testshib.org/Shibboleth.sso/SAML2/POST",
+                "https://attacker.org/SAML2/POST").getBytes("UTF-8");
+        try {
+            registry.load(new ByteArrayInputStream(tampered));
+            fail("tampered metadata accepted");
+        } catch (ParsingException e) {
+        }
+
+        try {
+            registry.load(resource("sp-metadata.xml"));
+            fail("unsigned metadata accepted");
+        } catch (ParsingException e) {
+        }
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testSingleEntityDescriptor() throws Exception {
+        SPMetadataRegistry registry = new SPMetadataRegistry();
+        registry.load(resource("saml2/metadata/sp-entitydescriptor.xml"));
+
+        assertEquals(1, registry.size());
+        assertNotNull(registry.getSPDescriptor("https://service.example.org/shibboleth"));
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        File file = File.createTempFile("sp-metadata", ".xml");
+        file.deleteOnExit();
+
+        copy("saml2/metadata/sp-two-salesforce-googleapps.xml", file);
+        SPMetadataRegistry registry = new SPMetadataRegistry();
+        registry.setSource(file.toURI().toURL());
+        assertTrue(registry.refresh());
+        assertEquals(2, registry.size());
+        assertTrue(registry.getSPDescriptor("https://saml.salesforce.com").isAuthnRequestsSigned());
+
+        copy("sp-metadata.xml", file);
+        file.setLastModified(file.lastModified() + 2000);
+        assertTrue(registry.refresh());
+        assertEquals(1, registry.size());
+        assertNull(registry.getSPDescriptor("https://saml.salesforce.com"));
+        assertNotNull(registry.getSPDescriptor(SHIB_SP));
+
+        // a broken file keeps the last good content
+        OutputStream os = new FileOutputStream(file);
+        os.write("<EntitiesDescriptor".getBytes());
+        os.close();
+        file.setLastModified(file.lastModified() + 4000);
+        assertFalse(registry.refresh());
+        assertNotNull(registry.getSPDescriptor(SHIB_SP));
+    }
+
+    private byte[] sign(String name, KeyPair keyPair) throws Exception {
+        return sign(DocumentUtil.getDocument(resource(name)), keyPair);
+    }
+
+    private byte[] sign(Document document, KeyPair keyPair) throws Exception {
+        XMLSignatureUtil.sign(document, keyPair, DigestMethod.SHA1, SignatureMethod.RSA_SHA1, "");
+        return DocumentUtil.getDocumentAsString(document).getBytes("UTF-8");
+    }
+
+    private InputStream resource(String name) {
+        return Thread.currentThread().getContextClassLoader().getResourceAsStream(name);
+    }
+
+    private void copy(String name, File file) throws IOException {
+        InputStream is = resource(name);
+        OutputStream os = new FileOutputStream(file);
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) != -1)
+            os.write(buffer, 0, read);
+        os.close();
+        is.close();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.identity.federation.DefaultPicketLinkLogger;
+import org.picketlink.identity.federation.PicketLinkLogger;
+import org.picketlink.identity.federation.PicketLinkLoggerFactory;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Unit test the lazy message construction of the {@link DefaultPicketLinkLogger}
+ */
+public class DefaultPicketLinkLoggerUnitTestCase {
+
+    private final PicketLinkLogger logger = PicketLinkLoggerFactory.getLogger();
+
+    private final Logger log4j = Logger.getLogger(PicketLinkLogger.class.getPackage().getName());
+
+    private final List<String> messages = new ArrayList<String>();
+
+    private final AppenderSkeleton appender = new AppenderSkeleton() {
+        protected void append(LoggingEvent event) {
+            messages.add(event.getRenderedMessage());
+        }
+
+        public boolean requiresLayout() {
+            return false;
+        }
+
+        public void close() {
+        }
+    };
+
+    private Level level;
+
+    @Before
+    public void addAppender() {
+        level = log4j.getLevel();
+        log4j.addAppender(appender);
+    }
+
+    @After
+    public void removeAppender() {
+        log4j.removeAppender(appender);
+        log4j.setLevel(level);
+    }
+
+    @Test
+    public void noSerializationAtInfo() throws Exception {
+        log4j.setLevel(Level.INFO);
+
+        final AtomicInteger calls = new AtomicInteger();
+        Node node = (Node) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Node.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        calls.incrementAndGet();
+                        return null;
+                    }
+                });
+        Object param = new Object() {
+            public String toString() {
+                calls.incrementAndGet();
+                return "param";
+            }
+        };
+
+        logger.tracef("SAML Response Document: %s %s", node, param);
+        logger.debugf("SAML Response Document: %s %s", node, param);
+
+        assertEquals(0, calls.get());
+        assertTrue(messages.isEmpty());
+    }
+
+    @Test
+    public void serializationAtTrace() throws Exception {
+        log4j.setLevel(Level.TRACE);
+
+        Document doc = DocumentUtil.getDocument("<Response xmlns=\"urn:test\"><Status>Success</Status></Response>");
+
+        logger.tracef("SAML Response Document: %s", doc);
+
+        assertEquals(1, messages.size());
+        assertTrue(messages.get(0), messages.get(0).startsWith("SAML Response Document: "));
+        assertTrue(messages.get(0), messages.get(0).contains("<Status>Success</Status>"));
+    }
+}
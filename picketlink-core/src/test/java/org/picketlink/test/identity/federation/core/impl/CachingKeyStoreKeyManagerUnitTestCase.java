@@ -0,0 +1,197 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.identity.federation.core.config.AuthPropertyType;
+import org.picketlink.identity.federation.core.config.KeyValueType;
+import org.picketlink.identity.federation.core.impl.CachingKeyStoreKeyManager;
+import org.picketlink.identity.federation.core.impl.KeyStoreKeyManager;
+
+/**
+ * Unit test the {@link CachingKeyStoreKeyManager}
+ */
+public class CachingKeyStoreKeyManagerUnitTestCase {
+
+    private static final String PROVIDER1 = "http://services.testcorp.org/provider1";
+
+    private static final char[] STORE_PASS = "testpass".toCharArray();
+
+    private File keyStoreFile;
+
+    @Before
+    public void setUp() throws Exception {
+        keyStoreFile = File.createTempFile("caching-keystore", ".jks");
+        InputStream is = getClass().getClassLoader().getResourceAsStream("keystore/sts_keystore.jks");
+        OutputStream os = new FileOutputStream(keyStoreFile);
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                os.write(buffer, 0, read);
+            }
+        } finally {
+            is.close();
+            os.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        keyStoreFile.delete();
+    }
+
+    @Test
+    public void testSameKeysAsKeyStoreKeyManager() throws Exception {
+        KeyStoreKeyManager reference = createKeyManager(new KeyStoreKeyManager(), null);
+        CachingKeyStoreKeyManager cached = createKeyManager(new CachingKeyStoreKeyManager(), null);
+
+        assertEquals(reference.getSigningKey(), cached.getSigningKey());
+        KeyPair referencePair = reference.getSigningKeyPair();
+        KeyPair cachedPair = cached.getSigningKeyPair();
+        assertEquals(referencePair.getPublic(), cachedPair.getPublic());
+        assertEquals(referencePair.getPrivate(), cachedPair.getPrivate());
+        assertEquals(reference.getValidatingKey(PROVIDER1), cached.getValidatingKey(PROVIDER1));
+        assertEquals(reference.getCertificate("service2"), cached.getCertificate("service2"));
+        assertEquals(reference.getPublicKey("service2"), cached.getPublicKey("service2"));
+        assertNull(cached.getPublicKey("unknown"));
+
+        // served from the snapshot
+        assertSame(cached.getValidatingKey(PROVIDER1), cached.getValidatingKey(PROVIDER1));
+        assertSame(cachedPair, cached.getSigningKeyPair());
+
+        try {
+            cached.getValidatingKey("http://unknown.org");
+            fail("Domain without alias must be rejected");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testSigningKeyPairOfACertificateAlias() throws Exception {
+        KeyStoreKeyManager reference = createKeyManager(new KeyStoreKeyManager(), null);
+        CachingKeyStoreKeyManager cached = createKeyManager(new CachingKeyStoreKeyManager(), null);
+        List<AuthPropertyType> auth = new ArrayList<AuthPropertyType>();
+        auth.add(authProperty(KeyStoreKeyManager.SIGNING_KEY_ALIAS, "service2"));
+        reference.setAuthProperties(auth);
+        cached.setAuthProperties(auth);
+
+        KeyPair referencePair = reference.getSigningKeyPair();
+        KeyPair cachedPair = cached.getSigningKeyPair();
+        assertNotNull(cachedPair);
+        assertEquals(referencePair.getPublic(), cachedPair.getPublic());
+        assertNull(referencePair.getPrivate());
+        assertNull(cachedPair.getPrivate());
+        assertNull(cached.getSigningKey());
+    }
+
+    @Test
+    public void testKeyRolloverIsReloaded() throws Exception {
+        CachingKeyStoreKeyManager keyManager = createKeyManager(new CachingKeyStoreKeyManager(), "1");
+
+        PublicKey oldKey = keyManager.getValidatingKey(PROVIDER1);
+        PublicKey service2Key = keyManager.getPublicKey("service2");
+        assertNotNull(oldKey);
+
+        // roll the key of provider1 over to the certificate of service2
+        KeyStore ks = KeyStore.getInstance(KeyStore.getDefaultType());
+        InputStream is = new FileInputStream(keyStoreFile);
+        try {
+            ks.load(is, STORE_PASS);
+        } finally {
+            is.close();
+        }
+        ks.setCertificateEntry("service1", ks.getCertificate("service2"));
+        OutputStream os = new FileOutputStream(keyStoreFile);
+        try {
+            ks.store(os, STORE_PASS);
+        } finally {
+            os.close();
+        }
+        keyStoreFile.setLastModified(System.currentTimeMillis() + 10000);
+        Thread.sleep(10);
+
+        assertEquals(service2Key, keyManager.getValidatingKey(PROVIDER1));
+        assertNotNull(keyManager.getSigningKey());
+    }
+
+    @Test
+    public void testCorruptedKeyStoreKeepsSnapshot() throws Exception {
+        CachingKeyStoreKeyManager keyManager = createKeyManager(new CachingKeyStoreKeyManager(), "1");
+        PublicKey key = keyManager.getValidatingKey(PROVIDER1);
+
+        OutputStream os = new FileOutputStream(keyStoreFile);
+        try {
+            os.write("not a keystore".getBytes());
+        } finally {
+            os.close();
+        }
+        Thread.sleep(10);
+
+        assertEquals(key, keyManager.getValidatingKey(PROVIDER1));
+    }
+
+    private <T extends KeyStoreKeyManager> T createKeyManager(T keyManager, String reloadInterval) throws Exception {
+        List<AuthPropertyType> auth = new ArrayList<AuthPropertyType>();
+        auth.add(authProperty(KeyStoreKeyManager.KEYSTORE_URL, keyStoreFile.getAbsolutePath()));
+        auth.add(authProperty(KeyStoreKeyManager.KEYSTORE_PASS, "testpass"));
+        auth.add(authProperty(KeyStoreKeyManager.SIGNING_KEY_ALIAS, "sts"));
+        auth.add(authProperty(KeyStoreKeyManager.SIGNING_KEY_PASS, "keypass"));
+        if (reloadInterval != null)
+            auth.add(authProperty(CachingKeyStoreKeyManager.KEYSTORE_RELOAD_INTERVAL, reloadInterval));
+        keyManager.setAuthProperties(auth);
+
+        List<KeyValueType> aliases = new ArrayList<KeyValueType>();
+        KeyValueType alias = new KeyValueType();
+        alias.setKey(PROVIDER1);
+        alias.setValue("service1");
+        aliases.add(alias);
+        keyManager.setValidatingAlias(aliases);
+        return keyManager;
+    }
+
+    private AuthPropertyType authProperty(String key, String value) {
+        AuthPropertyType property = new AuthPropertyType();
+        property.setKey(key);
+        property.setValue(value);
+        return property;
+    }
+}
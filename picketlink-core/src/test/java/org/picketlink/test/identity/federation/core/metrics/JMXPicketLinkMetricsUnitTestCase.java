@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.identity.federation.core.metrics.JMXPicketLinkMetrics;
+import org.picketlink.identity.federation.core.metrics.OperationStatistics;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Operation;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetrics.Phase;
+import org.picketlink.identity.federation.core.metrics.PicketLinkMetricsFactory;
+
+/**
+ * Unit test the {@link JMXPicketLinkMetrics}
+ */
+public class JMXPicketLinkMetricsUnitTestCase {
+
+    private JMXPicketLinkMetrics metrics;
+
+    @Before
+    public void register() {
+        metrics = new JMXPicketLinkMetrics(2);
+        metrics.register();
+    }
+
+    @After
+    public void unregister() {
+        metrics.unregister();
+    }
+
+    @Test
+    public void disabledByDefault() {
+        PicketLinkMetrics defaultMetrics = PicketLinkMetricsFactory.getMetrics();
+        assertFalse(defaultMetrics.isEnabled());
+        assertEquals(0, defaultMetrics.start());
+    }
+
+    @Test
+    public void registration() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(JMXPicketLinkMetrics.DEFAULT_OBJECT_NAME);
+        int registered = server.queryNames(new ObjectName(JMXPicketLinkMetrics.DEFAULT_OBJECT_NAME + ",*"), null).size();
+
+        // registering again keeps a single MBean
+        metrics.register();
+        assertTrue(server.isRegistered(name));
+        assertEquals(registered, server.queryNames(new ObjectName(JMXPicketLinkMetrics.DEFAULT_OBJECT_NAME + ",*"), null)
+                .size());
+
+        // another deployment gets its own name, and both are removed when stopped
+        JMXPicketLinkMetrics other = new JMXPicketLinkMetrics(2);
+        other.register();
+        assertEquals(registered + 1, server.queryNames(new ObjectName(JMXPicketLinkMetrics.DEFAULT_OBJECT_NAME + ",*"), null)
+                .size());
+        other.unregister();
+        metrics.unregister();
+        assertFalse(server.isRegistered(name));
+        assertEquals(0, server.queryNames(new ObjectName(JMXPicketLinkMetrics.DEFAULT_OBJECT_NAME + ",*"), null).size());
+
+        // the disabled metrics ignore the components starting and stopping
+        PicketLinkMetricsFactory.acquire();
+        PicketLinkMetricsFactory.release();
+        PicketLinkMetricsFactory.release();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void phases() throws Exception {
+        long start = metrics.start();
+        Thread.sleep(5);
+        metrics.phase(Phase.SIGN, start);
+        metrics.phase(Phase.SIGN, metrics.start());
+
+        assertEquals(2, metrics.getPhases().get(Phase.SIGN.name()).getCount());
+        assertEquals(0, metrics.getPhases().get(Phase.PARSE.name()).getCount());
+        assertTrue(metrics.getPhases().get(Phase.SIGN.name()).getMaxMillis() >= 5);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        TabularData phases = (TabularData) server.getAttribute(new ObjectName(JMXPicketLinkMetrics.DEFAULT_OBJECT_NAME),
+                "Phases");
+        CompositeData sign = phases.get(new Object[] { Phase.SIGN.name() });
+        assertNotNull(sign);
+        assertEquals(2L, ((CompositeData) sign.get("value")).get("count"));
+    }
+
+    @Test
+    public void operations() throws Exception {
+        metrics.operation(Operation.SSO, "http://sp1/", metrics.start(), false);
+        metrics.operation(Operation.SSO, "http://sp1/", metrics.start(), true);
+        metrics.operation(Operation.SLO, null, metrics.start(), false);
+
+        // past the maximum number of keys
+        metrics.operation(Operation.SSO, "http://sp2/", metrics.start(), false);
+        metrics.operation(Operation.SSO, "http://sp3/", metrics.start(), true);
+
+        Map<String, OperationStatistics> operations = metrics.getOperations();
+        assertEquals(3, operations.size());
+        assertEquals(2, operations.get("SSO http://sp1/").getRequests());
+        assertEquals(1, operations.get("SSO http://sp1/").getErrors());
+        assertEquals(1, operations.get("SLO unknown").getRequests());
+        assertEquals(2, operations.get("SSO other").getRequests());
+        assertEquals(1, operations.get("SSO other").getErrors());
+
+        metrics.reset();
+        assertTrue(metrics.getOperations().isEmpty());
+        assertEquals(0, metrics.getPhases().get(Phase.SIGN.name()).getCount());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.junit.Test;
+import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
+import org.picketlink.identity.federation.core.parsers.util.StaxParserUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.saml.v2.assertion.AssertionType;
+import org.picketlink.identity.federation.saml.v2.protocol.ResponseType;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit test the {@code XMLEventReader} that walks a DOM tree
+ */
+public class DOMXMLEventReaderUnitTestCase {
+
+    private static final String[] RESOURCES = { "parser/saml2/saml2-response-assertion-subject.xml",
+            "parser/saml2/saml2-response-adfs-claims.xml", "parser/saml2/saml2-assertion-x500attrib.xml",
+            "parser/saml2/saml2-authnrequest.xml", "parser/saml2/saml2-logout-response-sig.xml",
+            "parser/saml2/saml2-artifact-response-response.xml" };
+
+    @Test
+    public void testSameEventsAsStream() throws Exception {
+        for (String resource : RESOURCES) {
+            Document doc = DocumentUtil.getDocument(getResource(resource));
+            XMLEventReader expected = StaxParserUtil.getXMLEventReader(getResource(resource));
+            XMLEventReader actual = StaxParserUtil.getXMLEventReader(doc);
+
+            XMLEvent event;
+            while ((event = nextContent(expected)) != null)
+                assertEquals(resource, describe(event), describe(nextContent(actual)));
+            assertNull(resource, nextContent(actual));
+        }
+    }
+
+    @Test
+    public void testParseNode() throws Exception {
+        Document doc = DocumentUtil.getDocument(getResource(RESOURCES[0]));
+        ResponseType response = (ResponseType) new SAMLParser().parse(doc);
+        assertEquals("ID_45df1ea5-81e4-4147-a39a-43a4ef613f4e", response.getID());
+
+        // a nested element is read with the namespaces declared by its ancestors
+        Element assertionElement = (Element) doc.getElementsByTagNameNS("urn:oasis:names:tc:SAML:2.0:assertion",
+                "Assertion").item(0);
+        AssertionType assertion = (AssertionType) new SAMLParser().parse(assertionElement);
+        assertEquals(response.getAssertions().get(0).getAssertion().getID(), assertion.getID());
+    }
+
+    // the elements and the text that the parsers consume, comments and whitespaces are filtered out
+    private XMLEvent nextContent(XMLEventReader reader) throws Exception {
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement() || event.isEndElement())
+                return event;
+            if (event.isCharacters() && event.asCharacters().getData().trim().length() > 0)
+                return event;
+        }
+        return null;
+    }
+
+    private InputStream getResource(String resource) {
+        return Thread.currentThread().getContextClassLoader().getResourceAsStream(resource);
+    }
+
+    @SuppressWarnings("unchecked")
+    private String describe(XMLEvent event) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(event.getEventType());
+        if (event.isStartElement()) {
+            StartElement startElement = event.asStartElement();
+            builder.append(startElement.getName());
+            Set<String> values = new TreeSet<String>();
+            for (Iterator<Attribute> it = startElement.getAttributes(); it.hasNext();) {
+                Attribute attribute = it.next();
+                values.add(attribute.getName() + "=" + attribute.getValue());
+            }
+            for (Iterator<Namespace> it = startElement.getNamespaces(); it.hasNext();) {
+                Namespace namespace = it.next();
+                values.add("xmlns:" + namespace.getPrefix() + "=" + namespace.getNamespaceURI());
+            }
+            builder.append(values);
+        } else if (event.isEndElement()) {
+            builder.append(event.asEndElement().getName());
+        } else if (event.isCharacters()) {
+            builder.append(event.asCharacters().getData());
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.pdp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+
+import org.jboss.security.xacml.core.JBossPDP;
+import org.jboss.security.xacml.core.model.context.ActionType;
+import org.jboss.security.xacml.core.model.context.AttributeType;
+import org.jboss.security.xacml.core.model.context.DecisionType;
+import org.jboss.security.xacml.core.model.context.RequestType;
+import org.jboss.security.xacml.core.model.context.ResourceContentType;
+import org.jboss.security.xacml.core.model.context.ResourceType;
+import org.jboss.security.xacml.core.model.context.ResultType;
+import org.jboss.security.xacml.core.model.context.SubjectType;
+import org.jboss.security.xacml.factories.RequestAttributeFactory;
+import org.jboss.security.xacml.interfaces.PolicyDecisionPoint;
+import org.junit.Test;
+import org.picketlink.identity.federation.core.pdp.XACMLDecisionCache;
+
+/**
+ * Unit test the {@link XACMLDecisionCache}
+ */
+public class XACMLDecisionCacheUnitTestCase {
+
+    private static final String ISSUER = "testIssuer";
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        PolicyDecisionPoint pdp = new JBossPDP();
+        XACMLDecisionCache cache = new XACMLDecisionCache(10, 60000);
+        cache.setPolicyDecisionPoint(pdp);
+
+        String key = cache.getKey(request("jduke", "developer", "read"));
+        assertNotNull(key);
+        assertNull(cache.get(pdp, key));
+
+        ResultType permit = result(DecisionType.PERMIT);
+        cache.put(pdp, key, permit);
+        ResultType cached = cache.get(pdp, cache.getKey(request("jduke", "developer", "read")));
+        assertEquals(DecisionType.PERMIT, cached.getDecision());
+        // callers may modify the decision they are given
+        cached.setDecision(DecisionType.DENY);
+        assertEquals(DecisionType.PERMIT, cache.get(pdp, key).getDecision());
+        assertNull(cache.get(pdp, cache.getKey(request("jduke", "developer", "write"))));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        cache.invalidateAll();
+        assertNull(cache.get(pdp, key));
+    }
+
+    @Test
+    public void testCanonicalKey() throws Exception {
+        XACMLDecisionCache cache = new XACMLDecisionCache(10, 60000);
+
+        // the order of the attributes does not matter
+        RequestType request = request("jduke", "developer", "read");
+        RequestType reordered = request("jduke", "developer", "read");
+        Collections.reverse(reordered.getSubject().get(0).getAttribute());
+        assertEquals(cache.getKey(request), cache.getKey(reordered));
+
+        // the values are not simply concatenated
+        assertEquals(false, cache.getKey(request("jduke", "developer", "read")).equals(
+                cache.getKey(request("jduk", "edeveloper", "read"))));
+
+        // requests carrying resource content are not cached
+        RequestType withContent = request("jduke", "developer", "read");
+        withContent.getResource().get(0).setResourceContent(new ResourceContentType());
+        assertNull(cache.getKey(withContent));
+    }
+
+    @Test
+    public void testReloadedPolicies() throws Exception {
+        PolicyDecisionPoint pdp = new JBossPDP();
+        XACMLDecisionCache cache = new XACMLDecisionCache(10, 60000);
+        cache.setPolicyDecisionPoint(pdp);
+
+        String key = cache.getKey(request("jduke", "developer", "read"));
+        cache.put(pdp, key, result(DecisionType.PERMIT));
+
+        PolicyDecisionPoint reloaded = new JBossPDP();
+        cache.setPolicyDecisionPoint(reloaded);
+        assertNull(cache.get(reloaded, key));
+
+        // a decision of the previous pdp, still being evaluated during the reload, is not kept
+        cache.put(pdp, key, result(DecisionType.PERMIT));
+        assertNull(cache.get(reloaded, key));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testBounds() throws Exception {
+        PolicyDecisionPoint pdp = new JBossPDP();
+        XACMLDecisionCache cache = new XACMLDecisionCache(2, 200);
+        cache.setPolicyDecisionPoint(pdp);
+
+        cache.put(pdp, cache.getKey(request("jduke", "developer", "read")), result(DecisionType.INDETERMINATE));
+        assertEquals(0, cache.size());
+
+        String key = cache.getKey(request("jduke", "developer", "read"));
+        cache.put(pdp, key, result(DecisionType.PERMIT));
+        cache.put(pdp, cache.getKey(request("jduke", "developer", "write")), result(DecisionType.DENY));
+        cache.put(pdp, cache.getKey(request("jduke", "developer", "delete")), result(DecisionType.DENY));
+        assertEquals(2, cache.size());
+        assertNull(cache.get(pdp, key));
+
+        key = cache.getKey(request("jduke", "developer", "write"));
+        assertNotNull(cache.get(pdp, key));
+        Thread.sleep(400);
+        assertNull(cache.get(pdp, key));
+    }
+
+    private RequestType request(String subjectId, String role, String action) {
+        SubjectType subject = new SubjectType();
+        subject.getAttribute().add(
+                RequestAttributeFactory.createStringAttributeType("urn:oasis:names:tc:xacml:1.0:subject:subject-id", ISSUER,
+                        subjectId));
+        subject.getAttribute().add(
+                RequestAttributeFactory.createStringAttributeType("urn:oasis:names:tc:xacml:2.0:subject:role", ISSUER, role));
+
+        ResourceType resource = new ResourceType();
+        resource.getAttribute().add(
+                RequestAttributeFactory.createStringAttributeType("urn:oasis:names:tc:xacml:1.0:resource:resource-id", ISSUER,
+                        "http://localhost:8080/sales/report"));
+
+        ActionType actionType = new ActionType();
+        AttributeType actionId = RequestAttributeFactory.createStringAttributeType(
+                "urn:oasis:names:tc:xacml:1.0:action:action-id", ISSUER, action);
+        actionType.getAttribute().add(actionId);
+
+        RequestType request = new RequestType();
+        request.getSubject().add(subject);
+        request.getResource().add(resource);
+        request.setAction(actionType);
+        return request;
+    }
+
+    private ResultType result(DecisionType decision) {
+        ResultType result = new ResultType();
+        result.setDecision(decision);
+        return result;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.saml.v2.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultReplayCache;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerConfig;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerConfig;
+
+/**
+ * Unit test the {@link DefaultReplayCache}
+ */
+public class DefaultReplayCacheUnitTestCase {
+
+    @Test
+    public void testDuplicateIsRejected() throws Exception {
+        DefaultReplayCache cache = new DefaultReplayCache();
+        long notOnOrAfter = System.currentTimeMillis() + 60000;
+
+        assertFalse(cache.contains("ID_1"));
+        assertTrue(cache.add("ID_1", notOnOrAfter));
+        assertTrue(cache.contains("ID_1"));
+        assertFalse(cache.add("ID_1", notOnOrAfter));
+        assertTrue(cache.add("ID_2", notOnOrAfter));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testExpiredIdIsForgotten() throws Exception {
+        DefaultReplayCache cache = new DefaultReplayCache(16, 1);
+        long now = System.currentTimeMillis();
+
+        assertTrue(cache.add("ID_1", now - 1));
+        assertFalse(cache.contains("ID_1"));
+        // an expired ID can be recorded again
+        assertTrue(cache.add("ID_1", now + 60000));
+        assertFalse(cache.add("ID_1", now + 60000));
+
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testExpiredIdsArePurged() throws Exception {
+        DefaultReplayCache cache = new DefaultReplayCache(16, 1);
+        long now = System.currentTimeMillis();
+
+        // expired IDs at the head are purged when a new ID is added
+        assertTrue(cache.add("ID_1", now - 2));
+        assertTrue(cache.add("ID_2", now - 1));
+        assertEquals(1, cache.size());
+        assertTrue(cache.add("ID_3", now + 60000));
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testMemoryIsBounded() throws Exception {
+        DefaultReplayCache cache = new DefaultReplayCache(1000, 4);
+        long notOnOrAfter = System.currentTimeMillis() + 60000;
+
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(cache.add("ID_" + i, notOnOrAfter));
+        }
+        assertTrue(cache.size() <= 1000);
+        assertEquals(10000 - cache.size(), cache.getEvictionCount());
+        // the most recent IDs are kept
+        assertTrue(cache.contains("ID_9999"));
+    }
+
+    @Test
+    public void testInitializeFromHandlerConfig() throws Exception {
+        SAML2HandlerConfig handlerConfig = new DefaultSAML2HandlerConfig();
+        handlerConfig.addParameter(DefaultReplayCache.REPLAY_CACHE_MAX_ENTRIES, "16");
+
+        DefaultReplayCache cache = new DefaultReplayCache();
+        cache.initialize(handlerConfig);
+
+        long notOnOrAfter = System.currentTimeMillis() + 60000;
+        for (int i = 0; i < 100; i++) {
+            cache.add("ID_" + i, notOnOrAfter);
+        }
+        assertTrue(cache.size() <= 16);
+    }
+
+    @Test
+    public void testConcurrentAddsOfSameId() throws Exception {
+        final DefaultReplayCache cache = new DefaultReplayCache();
+        final long notOnOrAfter = System.currentTimeMillis() + 60000;
+        int threads = 8;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < 100; round++) {
+                final String id = "ID_" + round;
+                final CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+                for (int i = 0; i < threads; i++) {
+                    results.add(executor.submit(new Callable<Boolean>() {
+                        public Boolean call() throws Exception {
+                            start.await();
+                            return cache.add(id, notOnOrAfter);
+                        }
+                    }));
+                }
+                start.countDown();
+
+                int accepted = 0;
+                for (Future<Boolean> result : results) {
+                    if (result.get(10, TimeUnit.SECONDS))
+                        accepted++;
+                }
+                assertEquals(1, accepted);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.saml.v2.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.impl.SAML2HandlerChainLock;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.ThreadSafeSAML2Handler;
+import org.picketlink.identity.federation.web.handlers.saml2.BaseSAML2Handler;
+import org.picketlink.identity.federation.web.process.SAMLHandlerChainProcessor;
+
+/**
+ * Unit test the {@link SAML2HandlerChainLock} under concurrent execution of a handler chain
+ */
+public class SAML2HandlerChainLockUnitTestCase {
+
+    private static final int THREADS = 8;
+
+    private static final int REQUESTS_PER_THREAD = 20;
+
+    @Test
+    public void testThreadSafeChainIsNotSerialized() throws Exception {
+        Set<SAML2Handler> handlers = new LinkedHashSet<SAML2Handler>();
+        handlers.add(new SlowThreadSafeHandler());
+        handlers.add(new SlowThreadSafeHandler());
+
+        SAML2HandlerChainLock lock = new SAML2HandlerChainLock();
+        lock.configure(handlers);
+        assertTrue(lock.isConcurrent());
+
+        int maxConcurrency = runLoad(handlers, lock);
+
+        assertEquals(THREADS * REQUESTS_PER_THREAD, lock.getAcquisitionCount());
+        assertEquals(0, lock.getContendedAcquisitionCount());
+        assertEquals(0, lock.getWaitTimeNanos());
+        assertTrue("Handlers were never executed concurrently", maxConcurrency > 1);
+    }
+
+    @Test
+    public void testStatefulHandlerSerializesChain() throws Exception {
+        Set<SAML2Handler> handlers = new LinkedHashSet<SAML2Handler>();
+        handlers.add(new SlowThreadSafeHandler());
+        handlers.add(new SlowStatefulHandler());
+
+        SAML2HandlerChainLock lock = new SAML2HandlerChainLock();
+        lock.configure(handlers);
+        assertFalse(lock.isConcurrent());
+
+        int maxConcurrency = runLoad(handlers, lock);
+
+        assertEquals(THREADS * REQUESTS_PER_THREAD, lock.getAcquisitionCount());
+        assertTrue(lock.getContendedAcquisitionCount() > 0);
+        assertTrue(lock.getWaitTimeNanos() > 0);
+        assertEquals(1, maxConcurrency);
+    }
+
+    @Test
+    public void testUnlockWithoutHoldingTheLock() throws Exception {
+        SAML2HandlerChainLock lock = new SAML2HandlerChainLock();
+        try {
+            lock.unlock();
+            fail("IllegalMonitorStateException expected");
+        } catch (IllegalMonitorStateException e) {
+        }
+
+        lock.lock();
+        lock.unlock();
+        assertEquals(0, lock.getQueueLength());
+
+        // nothing is held in the concurrent mode
+        lock.setConcurrent(true);
+        lock.unlock();
+    }
+
+    private int runLoad(Set<SAML2Handler> handlers, final SAML2HandlerChainLock lock) throws Exception {
+        final SAMLHandlerChainProcessor processor = new SAMLHandlerChainProcessor(handlers);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+
+        ACTIVE.set(0);
+        MAX_ACTIVE.set(0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < REQUESTS_PER_THREAD; j++) {
+                            SAML2HandlerResponse response = new DefaultSAML2HandlerResponse();
+                            processor.callHandlerChain(null, null, response, null, lock);
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+
+        return MAX_ACTIVE.get();
+    }
+
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+
+    private static final AtomicInteger MAX_ACTIVE = new AtomicInteger();
+
+    private static class SlowStatefulHandler extends BaseSAML2Handler {
+        public void handleRequestType(SAML2HandlerRequest request, SAML2HandlerResponse response) throws ProcessingException {
+        }
+
+        @Override
+        public void handleStatusResponseType(SAML2HandlerRequest request, SAML2HandlerResponse response)
+                throws ProcessingException {
+            int active = ACTIVE.incrementAndGet();
+            int max = MAX_ACTIVE.get();
+            while (active > max && !MAX_ACTIVE.compareAndSet(max, active)) {
+                max = MAX_ACTIVE.get();
+            }
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                throw new ProcessingException(e);
+            } finally {
+                ACTIVE.decrementAndGet();
+            }
+        }
+    }
+
+    private static class SlowThreadSafeHandler extends SlowStatefulHandler implements ThreadSafeSAML2Handler {
+    }
+}
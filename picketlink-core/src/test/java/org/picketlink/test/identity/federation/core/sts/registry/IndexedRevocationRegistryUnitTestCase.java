@@ -0,0 +1,188 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.sts.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.identity.federation.core.sts.registry.IndexedRevocationRegistry;
+
+/**
+ * Unit test the {@link IndexedRevocationRegistry}
+ */
+public class IndexedRevocationRegistryUnitTestCase {
+
+    private static final String SAML2 = "urn:oasis:names:tc:SAML:2.0:assertion";
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("revoked", ".idx");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+        new File(file.getPath() + ".journal").delete();
+        new File(file.getPath() + ".merging").delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void testRevocationsSurviveMergeAndRestart() throws Exception {
+        IndexedRevocationRegistry registry = new IndexedRevocationRegistry(file.getPath());
+        for (int i = 0; i < 500; i++)
+            registry.revokeToken(SAML2, "ID_" + i);
+        registry.merge();
+        for (int i = 500; i < 600; i++)
+            registry.revokeToken(SAML2, "ID_" + i);
+
+        assertTrue(registry.isRevoked(SAML2, "ID_42"));
+        assertTrue(registry.isRevoked(SAML2, "ID_550"));
+        assertFalse(registry.isRevoked(SAML2, "ID_600"));
+        assertFalse(registry.isRevoked("other", "ID_42"));
+        registry.close();
+
+        // the index and the journal are both loaded on startup
+        registry = new IndexedRevocationRegistry(file.getPath());
+        for (int i = 0; i < 600; i++)
+            assertTrue(registry.isRevoked(SAML2, "ID_" + i));
+        for (int i = 600; i < 2000; i++)
+            assertFalse(registry.isRevoked(SAML2, "ID_" + i));
+        registry.merge();
+        assertTrue(registry.isRevoked(SAML2, "ID_599"));
+        registry.close();
+    }
+
+    @Test
+    public void testExpiredRevocationsArePruned() throws Exception {
+        IndexedRevocationRegistry registry = new IndexedRevocationRegistry(file.getPath());
+        registry.revokeToken(SAML2, "expired", System.currentTimeMillis() - 1000);
+        registry.revokeToken(SAML2, "valid", System.currentTimeMillis() + 60000);
+        assertTrue(registry.isRevoked(SAML2, "expired"));
+
+        registry.merge();
+        assertFalse(registry.isRevoked(SAML2, "expired"));
+        assertTrue(registry.isRevoked(SAML2, "valid"));
+        registry.close();
+    }
+
+    @Test
+    public void testRevocationsOfAnInterruptedMergeAreKept() throws Exception {
+        IndexedRevocationRegistry registry = new IndexedRevocationRegistry(file.getPath());
+        registry.revokeToken(SAML2, "before");
+        registry.close();
+
+        // a merge interrupted after it moved the journal aside
+        assertTrue(new File(file.getPath() + ".journal").renameTo(new File(file.getPath() + ".merging")));
+
+        registry = new IndexedRevocationRegistry(file.getPath());
+        registry.revokeToken(SAML2, "after");
+        registry.merge();
+        assertFalse(new File(file.getPath() + ".merging").exists());
+        registry.revokeToken(SAML2, "journal");
+        registry.close();
+
+        registry = new IndexedRevocationRegistry(file.getPath());
+        assertTrue(registry.isRevoked(SAML2, "before"));
+        assertTrue(registry.isRevoked(SAML2, "after"));
+        assertTrue(registry.isRevoked(SAML2, "journal"));
+        registry.close();
+    }
+
+    @Test
+    public void testLookupsDuringMerges() throws Exception {
+        final IndexedRevocationRegistry registry = new IndexedRevocationRegistry(file.getPath());
+        for (int i = 0; i < 100; i++)
+            registry.revokeToken(SAML2, "ID_" + i);
+        registry.merge();
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread() {
+                public void run() {
+                    while (running.get()) {
+                        for (int i = 0; i < 100; i++) {
+                            if (!registry.isRevoked(SAML2, "ID_" + i) || registry.isRevoked(SAML2, "other_" + i))
+                                failures.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            readers[t].start();
+        }
+
+        // every merge replaces the mapped index file
+        for (int i = 0; i < 50; i++) {
+            registry.revokeToken(SAML2, "more_" + i);
+            registry.merge();
+        }
+        running.set(false);
+        for (Thread reader : readers)
+            reader.join();
+
+        assertEquals(0, failures.get());
+        assertTrue(registry.isRevoked(SAML2, "more_49"));
+        registry.close();
+    }
+
+    @Test
+    public void testRegistriesShareTheIndexOfAFile() throws Exception {
+        IndexedRevocationRegistry first = new IndexedRevocationRegistry(file.getPath());
+        IndexedRevocationRegistry second = new IndexedRevocationRegistry(file.getParent() + File.separator + "."
+                + File.separator + file.getName());
+
+        for (int i = 0; i < 200; i++) {
+            first.revokeToken(SAML2, "first_" + i);
+            second.revokeToken(SAML2, "second_" + i);
+            // merges through either registry keep the revocations appended through the other one
+            if (i % 50 == 0)
+                (i % 100 == 0 ? first : second).merge();
+        }
+        assertTrue(second.isRevoked(SAML2, "first_199"));
+        assertTrue(first.isRevoked(SAML2, "second_199"));
+
+        first.close();
+        second.revokeToken(SAML2, "after");
+        second.merge();
+        second.close();
+
+        IndexedRevocationRegistry registry = new IndexedRevocationRegistry(file.getPath());
+        for (int i = 0; i < 200; i++) {
+            assertTrue(registry.isRevoked(SAML2, "first_" + i));
+            assertTrue(registry.isRevoked(SAML2, "second_" + i));
+        }
+        assertTrue(registry.isRevoked(SAML2, "after"));
+        registry.close();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.sts.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.identity.federation.core.sts.registry.LogBasedTokenRegistry;
+
+/**
+ * Unit test the {@link LogBasedTokenRegistry}
+ */
+public class LogBasedTokenRegistryUnitTestCase {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("token", ".log");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void testRebuildIndexFromLog() throws Exception {
+        LogBasedTokenRegistry registry = new LogBasedTokenRegistry(file.getPath());
+        for (int i = 0; i < 100; i++)
+            registry.addToken("token" + i, "value" + i);
+        for (int i = 0; i < 50; i++)
+            registry.removeToken("token" + i);
+        registry.close();
+
+        registry = new LogBasedTokenRegistry(file.getPath());
+        assertNull(registry.getToken("token10"));
+        assertEquals("value75", registry.getToken("token75"));
+        assertEquals(150, registry.getLogRecordCount());
+        registry.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        LogBasedTokenRegistry registry = new LogBasedTokenRegistry(file.getPath());
+        for (int i = 0; i < 3000; i++) {
+            registry.addToken("token" + i, "value" + i);
+            if (i % 10 != 0)
+                registry.removeToken("token" + i);
+        }
+        registry.compactIfNeeded();
+        assertEquals(300, registry.getLogRecordCount());
+
+        registry.addToken("after", "compaction");
+        registry.close();
+
+        registry = new LogBasedTokenRegistry(file.getPath());
+        assertEquals("value2990", registry.getToken("token2990"));
+        assertEquals("compaction", registry.getToken("after"));
+        assertNull(registry.getToken("token2991"));
+        registry.close();
+    }
+
+    @Test
+    public void testExpiredTokensAreEvicted() throws Exception {
+        LogBasedTokenRegistry registry = new LogBasedTokenRegistry(file.getPath());
+        registry.setTimeToLive(1);
+        registry.addToken("expiring", "value");
+        Thread.sleep(10);
+        assertNull(registry.getToken("expiring"));
+        registry.close();
+
+        registry = new LogBasedTokenRegistry(file.getPath());
+        assertNull(registry.getToken("expiring"));
+        registry.close();
+    }
+
+    @Test
+    public void testIncompleteRecordIsDiscarded() throws Exception {
+        LogBasedTokenRegistry registry = new LogBasedTokenRegistry(file.getPath());
+        registry.addToken("first", "value");
+        registry.addToken("second", "value");
+        registry.close();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+
+        registry = new LogBasedTokenRegistry(file.getPath());
+        assertEquals("value", registry.getToken("first"));
+        assertNull(registry.getToken("second"));
+        registry.addToken("third", "value");
+        registry.close();
+
+        registry = new LogBasedTokenRegistry(file.getPath());
+        assertEquals("value", registry.getToken("third"));
+        assertEquals(2, registry.getLogRecordCount());
+        registry.close();
+    }
+
+    @Test
+    public void testRegistriesShareTheLogOfAFile() throws Exception {
+        LogBasedTokenRegistry first = new LogBasedTokenRegistry(file.getPath());
+        LogBasedTokenRegistry second = new LogBasedTokenRegistry(file.getParent() + File.separator + "." + File.separator
+                + file.getName());
+        assertEquals(1, countCompactorThreads(1));
+
+        for (int i = 0; i < 3000; i++) {
+            first.addToken("token" + i, "value" + i);
+            if (i % 10 != 0)
+                second.removeToken("token" + i);
+        }
+        assertEquals("value10", second.getToken("token10"));
+        assertNull(first.getToken("token11"));
+
+        // a compaction through one registry keeps the records appended through the other one
+        second.compactIfNeeded();
+        assertEquals(300, first.getLogRecordCount());
+        first.close();
+        second.addToken("after", "close");
+        second.close();
+        assertEquals(0, countCompactorThreads(0));
+
+        LogBasedTokenRegistry registry = new LogBasedTokenRegistry(file.getPath());
+        assertEquals("value2990", registry.getToken("token2990"));
+        assertEquals("close", registry.getToken("after"));
+        assertNull(registry.getToken("token2991"));
+        registry.close();
+    }
+
+    @Test
+    public void testClosedRegistryRejectsOperations() throws Exception {
+        LogBasedTokenRegistry registry = new LogBasedTokenRegistry(file.getPath());
+        registry.addToken("token", "value");
+        registry.close();
+        long length = file.length();
+
+        try {
+            registry.addToken("after", "close");
+            fail("a closed registry accepted a token");
+        } catch (IOException expected) {
+        }
+        try {
+            registry.removeToken("token");
+            fail("a closed registry removed a token");
+        } catch (IOException expected) {
+        }
+
+        // a compaction of a closed log does not reopen it
+        registry.compact();
+        assertEquals(length, file.length());
+        assertFalse(new File(file.getPath() + ".compact").exists());
+
+        registry = new LogBasedTokenRegistry(file.getPath());
+        assertEquals("value", registry.getToken("token"));
+        assertEquals(1, registry.getLogRecordCount());
+        registry.close();
+    }
+
+    @Test
+    public void testPreviousLogOfAnIncompleteCompactionIsRestored() throws Exception {
+        LogBasedTokenRegistry registry = new LogBasedTokenRegistry(file.getPath());
+        registry.addToken("token", "value");
+        registry.close();
+
+        // the log was moved aside but the compacted log never replaced it
+        File previous = new File(file.getPath() + ".previous");
+        file.renameTo(previous);
+
+        registry = new LogBasedTokenRegistry(file.getPath());
+        assertEquals("value", registry.getToken("token"));
+        assertFalse(previous.exists());
+        registry.close();
+    }
+
+    private int countCompactorThreads(int expected) throws InterruptedException {
+        // a compactor shut down may take a moment to terminate
+        for (int attempt = 0;; attempt++) {
+            int count = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.isAlive() && "picketlink-token-registry-compactor".equals(thread.getName()))
+                    count++;
+            }
+            if (count == expected || attempt == 50)
+                return count;
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.util;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.junit.Test;
+import org.picketlink.identity.federation.core.util.JAXBUtil;
+
+/**
+ * Unit test the context registry of {@link JAXBUtil}
+ */
+public class JAXBUtilUnitTestCase {
+
+    @Test
+    public void testConcurrentFirstAccess() throws Exception {
+        int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<JAXBContext>> futures = new ArrayList<Future<JAXBContext>>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<JAXBContext>() {
+                    public JAXBContext call() throws Exception {
+                        start.await();
+                        return JAXBUtil.getJAXBContext(Bound.class);
+                    }
+                }));
+            }
+            start.countDown();
+
+            // every caller gets the one context that was built
+            JAXBContext context = futures.get(0).get();
+            assertNotNull(context);
+            for (Future<JAXBContext> future : futures)
+                assertSame(context, future.get());
+            assertSame(context, JAXBUtil.getJAXBContext(Bound.class));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEmptyPaths() throws Exception {
+        try {
+            JAXBUtil.getJAXBContext(new String[0]);
+            fail("Packages are empty");
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    @XmlRootElement
+    public static class Bound {
+        public String value;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.util;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.validation.Validator;
+
+import org.junit.Test;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.util.JAXPValidationUtil;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * Unit test the {@link JAXPValidationUtil}
+ */
+public class JAXPValidationUtilUnitTestCase {
+
+    static final String RESPONSE = "parser/saml2/saml2-response-assertion-subject.xml";
+
+    static Document getResponse() throws Exception {
+        ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+        InputStream is = tcl.getResourceAsStream(RESPONSE);
+        try {
+            return DocumentUtil.getDocument(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    @Test
+    public void testValidateNode() throws Exception {
+        Document doc = getResponse();
+        JAXPValidationUtil.validate(doc);
+        JAXPValidationUtil.validate(doc.getDocumentElement());
+
+        doc.getDocumentElement().setAttribute("Unknown", "value");
+        try {
+            JAXPValidationUtil.validate(doc);
+            fail("invalid attribute accepted");
+        } catch (SAXException e) {
+        }
+
+        // the validator stays usable after a failure
+        JAXPValidationUtil.validate(getResponse());
+    }
+
+    @Test
+    public void testConcurrentValidation() throws Exception {
+        Validator validator = JAXPValidationUtil.validator();
+        assertNotSame(validator, JAXPValidationUtil.validator());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        final Document doc = getResponse();
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        Document copy = (Document) doc.cloneNode(true);
+                        for (int j = 0; j < 50; j++)
+                            JAXPValidationUtil.validate(copy);
+                        return null;
+                    }
+                });
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+        int idle = JAXPValidationUtil.getIdleValidatorCount();
+        assertTrue(idle > 0 && idle <= 8);
+    }
+}
@@ -21,14 +21,19 @@
  */
 package org.picketlink.test.identity.federation.core.util;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 
 import org.jboss.security.xacml.core.model.context.RequestType;
 import org.junit.Test;
 import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
+import org.picketlink.identity.federation.core.saml.v2.writers.SAMLRequestWriter;
+import org.picketlink.identity.federation.core.util.StaxUtil;
 import org.picketlink.identity.federation.saml.v2.protocol.RequestAbstractType;
 import org.picketlink.identity.federation.saml.v2.protocol.XACMLAuthzDecisionQueryType;
 
@@ -79,4 +84,32 @@ public class SAMLXACMLUnitTestCase {
         RequestType requestType = xadqt.getRequest();
         assertNotNull(requestType);
     }
-}
\ No newline at end of file
+
+    /**
+     * The XACML request is written to and read back from the SAML stream directly
+     */
+    @Test
+    public void testSAML_XACML_WriteRead() throws Exception {
+        String resourceName = "saml-xacml/saml-xacml-request-2.xml";
+
+        ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+        InputStream is = tcl.getResourceAsStream(resourceName);
+
+        SAMLParser parser = new SAMLParser();
+        XACMLAuthzDecisionQueryType xadqt = (XACMLAuthzDecisionQueryType) parser.parse(is);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new SAMLRequestWriter(StaxUtil.getXMLStreamWriter(baos)).write(xadqt);
+
+        XACMLAuthzDecisionQueryType read = (XACMLAuthzDecisionQueryType) parser.parse(new ByteArrayInputStream(baos
+                .toByteArray()));
+        assertEquals(xadqt.getID(), read.getID());
+
+        RequestType requestType = read.getRequest();
+        assertNotNull(requestType);
+        assertEquals(xadqt.getRequest().getSubject().size(), requestType.getSubject().size());
+        assertEquals(xadqt.getRequest().getSubject().get(0).getAttribute().get(0).getAttributeId(), requestType
+                .getSubject().get(0).getAttribute().get(0).getAttributeId());
+        assertEquals(xadqt.getRequest().getResource().size(), requestType.getResource().size());
+    }
+}
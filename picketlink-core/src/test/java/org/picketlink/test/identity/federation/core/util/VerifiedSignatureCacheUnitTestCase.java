@@ -0,0 +1,117 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+
+import javax.xml.crypto.dsig.DigestMethod;
+import javax.xml.crypto.dsig.SignatureMethod;
+
+import org.junit.After;
+import org.junit.Test;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
+import org.picketlink.identity.federation.core.util.KeyStoreUtil;
+import org.picketlink.identity.federation.core.util.VerifiedSignatureCache;
+import org.picketlink.identity.federation.core.util.XMLSignatureUtil;
+import org.w3c.dom.Document;
+
+/**
+ * Unit test the {@link VerifiedSignatureCache} through {@link XMLSignatureUtil#validate(Document, java.security.Key)}
+ */
+public class VerifiedSignatureCacheUnitTestCase {
+
+    @After
+    public void tearDown() {
+        XMLSignatureUtil.setVerifiedSignatureCache(null);
+    }
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        VerifiedSignatureCache cache = new VerifiedSignatureCache(10, 60000);
+        XMLSignatureUtil.setVerifiedSignatureCache(cache);
+
+        KeyPair keyPair = KeyStoreUtil.generateKeyPair("RSA");
+        String signed = sign(assertion("ID_1", 60000), keyPair);
+
+        assertTrue(XMLSignatureUtil.validate(parse(signed), keyPair.getPublic()));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.size());
+
+        assertTrue(XMLSignatureUtil.validate(parse(signed), keyPair.getPublic()));
+        assertEquals(1, cache.getHitCount());
+
+        // altered signed content is not a hit
+        Document altered = parse(signed);
+        altered.getDocumentElement().getElementsByTagNameNS("urn:oasis:names:tc:SAML:2.0:assertion", "Issuer").item(0)
+                .setTextContent("attacker");
+        assertFalse(XMLSignatureUtil.validate(altered, keyPair.getPublic()));
+        assertEquals(1, cache.getHitCount());
+
+        // another key is not a hit
+        assertFalse(XMLSignatureUtil.validate(parse(signed), KeyStoreUtil.generateKeyPair("RSA").getPublic()));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        VerifiedSignatureCache cache = new VerifiedSignatureCache(10, 60000);
+        XMLSignatureUtil.setVerifiedSignatureCache(cache);
+        KeyPair keyPair = KeyStoreUtil.generateKeyPair("RSA");
+
+        // the assertion bounds the entry
+        assertTrue(XMLSignatureUtil.validate(parse(sign(assertion("ID_expired", -1000), keyPair)), keyPair.getPublic()));
+        assertEquals(0, cache.size());
+
+        String signed = sign(assertion("ID_short", 200), keyPair);
+        assertTrue(XMLSignatureUtil.validate(parse(signed), keyPair.getPublic()));
+        assertEquals(1, cache.size());
+        Thread.sleep(400);
+        assertTrue(XMLSignatureUtil.validate(parse(signed), keyPair.getPublic()));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    private Document parse(String xml) throws Exception {
+        Document document = DocumentUtil.getDocument(xml);
+        document.getDocumentElement().setIdAttribute("ID", true);
+        return document;
+    }
+
+    private String sign(String xml, KeyPair keyPair) throws Exception {
+        Document document = parse(xml);
+        String id = document.getDocumentElement().getAttribute("ID");
+        XMLSignatureUtil.sign(document, keyPair, DigestMethod.SHA1, SignatureMethod.RSA_SHA1, "#" + id);
+        return DocumentUtil.getDocumentAsString(document);
+    }
+
+    private String assertion(String id, long notOnOrAfterOffset) throws Exception {
+        String notOnOrAfter = XMLTimeUtil.add(XMLTimeUtil.getIssueInstant(), notOnOrAfterOffset).toXMLFormat();
+        return "<saml:Assertion xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"" + id
+                + "\" Version=\"2.0\" IssueInstant=\"2012-01-01T00:00:00Z\"><saml:Issuer>sts</saml:Issuer>"
+                + "<saml:Conditions NotOnOrAfter=\"" + notOnOrAfter + "\"/></saml:Assertion>";
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+import org.junit.Test;
+import org.picketlink.identity.federation.core.util.Base64;
+import org.picketlink.identity.federation.core.util.KeyStoreUtil;
+import org.picketlink.identity.federation.core.util.XMLSignatureUtil;
+
+/**
+ * Unit test {@link XMLSignatureUtil#getX509CertificateFromKeyInfoString(String)}
+ */
+public class X509CertificateFromKeyInfoUnitTestCase {
+
+    @Test
+    public void testX509CertificateFromKeyInfoString() throws Exception {
+        ClassLoader tcl = Thread.currentThread().getContextClassLoader();
+        InputStream ksStream = tcl.getResourceAsStream("keystore/jbid_test_keystore.jks");
+        KeyStore ks = KeyStoreUtil.getKeyStore(ksStream, "store123".toCharArray());
+        X509Certificate certificate = (X509Certificate) ks.getCertificate("servercert");
+
+        // the KeyInfo text may be wrapped
+        String keyInfoString = Base64.encodeBytes(certificate.getEncoded());
+        X509Certificate decoded = XMLSignatureUtil.getX509CertificateFromKeyInfoString(keyInfoString);
+        assertEquals(certificate, decoded);
+
+        // the same certificate is decoded once
+        keyInfoString = Base64.encodeBytes(certificate.getEncoded(), Base64.DONT_BREAK_LINES);
+        assertSame(decoded, XMLSignatureUtil.getX509CertificateFromKeyInfoString(keyInfoString));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2012, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.util;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.junit.Test;
+import org.picketlink.identity.federation.core.util.XMLFactoryUtil;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+/**
+ * Unit test the per thread {@link DocumentBuilder} of {@link XMLFactoryUtil}
+ */
+public class XMLFactoryUtilUnitTestCase {
+
+    @Test
+    public void testDocumentBuilderIsResetAndReused() throws Exception {
+        // a DTD that does not exist, the parse fails unless an entity resolver provides it
+        File dtd = new File(System.getProperty("java.io.tmpdir"), "picketlink-missing-" + System.nanoTime() + ".dtd");
+        byte[] xml = ("<!DOCTYPE root SYSTEM \"" + dtd.toURI() + "\"><root/>").getBytes("UTF-8");
+
+        DocumentBuilder builder = XMLFactoryUtil.getDocumentBuilder();
+        builder.setEntityResolver(new EntityResolver() {
+            public InputSource resolveEntity(String publicId, String systemId) {
+                return new InputSource(new StringReader(""));
+            }
+        });
+        builder.parse(new ByteArrayInputStream(xml));
+
+        DocumentBuilder reused = XMLFactoryUtil.getDocumentBuilder();
+        assertSame(builder, reused);
+        try {
+            reused.parse(new ByteArrayInputStream(xml));
+            fail("the entity resolver of the previous caller was not reset");
+        } catch (IOException expected) {
+        }
+
+        // a builder left by a failed parse is still usable
+        XMLFactoryUtil.getDocumentBuilder().parse(new ByteArrayInputStream("<root/>".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testDocumentBuilderPerThread() throws Exception {
+        final AtomicReference<DocumentBuilder> other = new AtomicReference<DocumentBuilder>();
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    other.set(XMLFactoryUtil.getDocumentBuilder());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertNotSame(XMLFactoryUtil.getDocumentBuilder(), other.get());
+        assertSame(XMLFactoryUtil.getDocumentBuilder(), XMLFactoryUtil.getDocumentBuilder());
+    }
+}
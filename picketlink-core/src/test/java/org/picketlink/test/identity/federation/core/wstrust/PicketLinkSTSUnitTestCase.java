@@ -38,6 +38,7 @@ import java.security.interfaces.RSAPublicKey;
 import java.security.spec.RSAPublicKeySpec;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.xml.datatype.DatatypeConstants;
 import javax.xml.namespace.QName;
@@ -82,6 +83,7 @@ import org.picketlink.identity.federation.core.wstrust.wrappers.BaseRequestSecur
 import org.picketlink.identity.federation.core.wstrust.wrappers.Lifetime;
 import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityToken;
 import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityTokenResponse;
+import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityTokenCollection;
 import org.picketlink.identity.federation.core.wstrust.wrappers.RequestSecurityTokenResponseCollection;
 import org.picketlink.identity.federation.core.wstrust.writers.WSTrustRequestWriter;
 import org.picketlink.identity.federation.saml.v1.assertion.SAML11AssertionType;
@@ -794,6 +796,138 @@ public class PicketLinkSTSUnitTestCase {
         assertEquals("Unexpected status reason", "Validation failure: digital signature is invalid", status.getReason());
     }
 
+    /**
+     * <p>
+     * This test case generates two SAMLV2.0 assertions, tampers with one of them and then sends both to the STS in a single
+     * WS-Trust batch validate request. The responses must be returned in a single collection, in the order of the requests.
+     * </p>
+     *
+     * @throws Exception if an error occurs while running the test.
+     */
+    @Test
+    public void testInvokeSAML20BatchValidate() throws Exception {
+        WSTrustParser parser = new WSTrustParser();
+        RequestSecurityTokenCollection requestCollection = new RequestSecurityTokenCollection();
+
+        for (int i = 0; i < 2; i++) {
+            RequestSecurityToken request = this.createRequest("testcontext", WSTrustConstants.ISSUE_REQUEST,
+                    SAMLUtil.SAML2_TOKEN_TYPE, null);
+            Source responseMessage = this.tokenService.invoke(this.createSourceFromRequest(request));
+            RequestSecurityTokenResponseCollection collection = (RequestSecurityTokenResponseCollection) parser
+                    .parse(DocumentUtil.getSourceAsStream(responseMessage));
+            Element assertion = (Element) collection.getRequestSecurityTokenResponses().get(0).getRequestedSecurityToken()
+                    .getAny().get(0);
+            if (i == 1)
+                assertion.setAttribute("Version", "X");
+
+            request = this.createRequest("validatecontext" + i, WSTrustConstants.BATCH_VALIDATE_REQUEST,
+                    WSTrustConstants.STATUS_TYPE, null);
+            ValidateTargetType validateTarget = new ValidateTargetType();
+            validateTarget.add(assertion);
+            request.setValidateTarget(validateTarget);
+            requestCollection.addRequestSecurityToken(request);
+        }
+
+        DOMResult result = new DOMResult(DocumentUtil.createDocument());
+        new WSTrustRequestWriter(result).write(requestCollection);
+        Source responseMessage = this.tokenService.invoke(new DOMSource(result.getNode()));
+
+        RequestSecurityTokenResponseCollection collection = (RequestSecurityTokenResponseCollection) parser.parse(DocumentUtil
+                .getSourceAsStream(responseMessage));
+        assertEquals("Unexpected number of responses", 2, collection.getRequestSecurityTokenResponses().size());
+
+        RequestSecurityTokenResponse response = collection.getRequestSecurityTokenResponses().get(0);
+        assertEquals("Unexpected response context", "validatecontext0", response.getContext());
+        assertEquals("Unexpected status code", WSTrustConstants.STATUS_CODE_VALID, response.getStatus().getCode());
+
+        response = collection.getRequestSecurityTokenResponses().get(1);
+        assertEquals("Unexpected response context", "validatecontext1", response.getContext());
+        assertEquals("Unexpected status code", WSTrustConstants.STATUS_CODE_INVALID, response.getStatus().getCode());
+    }
+
+    /**
+     * <p>
+     * This test case sends a WS-Trust batch issue request to the STS and checks that the requests of the collection keep
+     * their batch request type, even though the request handler processes them as single issue requests.
+     * </p>
+     *
+     * @throws Exception if an error occurs while running the test.
+     */
+    @Test
+    public void testBatchRequestsAreNotModified() throws Exception {
+        RequestSecurityTokenCollection requestCollection = this.createBatchIssueCollection(2);
+
+        Source responseMessage = this.tokenService.handleTokenRequestCollection(requestCollection);
+        RequestSecurityTokenResponseCollection collection = (RequestSecurityTokenResponseCollection) new WSTrustParser()
+                .parse(DocumentUtil.getSourceAsStream(responseMessage));
+        assertEquals("Unexpected number of responses", 2, collection.getRequestSecurityTokenResponses().size());
+
+        for (RequestSecurityToken request : requestCollection.getRequestSecurityTokens())
+            assertEquals("Unexpected request type", WSTrustConstants.BATCH_ISSUE_REQUEST, request.getRequestType()
+                    .toString());
+        assertNull(PicketLinkSTS.getCurrentBinaryToken());
+    }
+
+    /**
+     * <p>
+     * This test case checks that an invalid number of batch threads is reported instead of being used to create the pool.
+     * </p>
+     *
+     * @throws Exception if an error occurs while running the test.
+     */
+    @Test
+    public void testInvalidBatchThreads() throws Exception {
+        System.setProperty(PicketLinkSTS.BATCH_THREADS, "0");
+        try {
+            this.tokenService.handleTokenRequestCollection(this.createBatchIssueCollection(2));
+            fail("An exception should have been raised by the security token service");
+        } catch (WebServiceException we) {
+            assertTrue(we.getCause() instanceof ConfigurationException);
+        } finally {
+            System.clearProperty(PicketLinkSTS.BATCH_THREADS);
+        }
+    }
+
+    /**
+     * <p>
+     * This test case checks that a collection with many more requests than there are batch threads is processed instead of
+     * overflowing the pool.
+     * </p>
+     *
+     * @throws Exception if an error occurs while running the test.
+     */
+    @Test
+    public void testLargeBatchIsNotRejected() throws Exception {
+        System.setProperty(PicketLinkSTS.BATCH_THREADS, "1");
+        try {
+            Source responseMessage = this.tokenService.handleTokenRequestCollection(this.createBatchIssueCollection(40));
+            RequestSecurityTokenResponseCollection collection = (RequestSecurityTokenResponseCollection) new WSTrustParser()
+                    .parse(DocumentUtil.getSourceAsStream(responseMessage));
+            assertEquals("Unexpected number of responses", 40, collection.getRequestSecurityTokenResponses().size());
+        } finally {
+            System.clearProperty(PicketLinkSTS.BATCH_THREADS);
+        }
+    }
+
+    /**
+     * <p>
+     * This test case checks that the STS rejects batch requests once it has been destroyed.
+     * </p>
+     *
+     * @throws Exception if an error occurs while running the test.
+     */
+    @Test
+    public void testBatchRejectedAfterDestroy() throws Exception {
+        this.tokenService.handleTokenRequestCollection(this.createBatchIssueCollection(2));
+        this.tokenService.destroy();
+        try {
+            this.tokenService.handleTokenRequestCollection(this.createBatchIssueCollection(2));
+            fail("An exception should have been raised by the security token service");
+        } catch (WebServiceException we) {
+            assertTrue(we.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
     /**
      * <p>
      * This test case first generates a SAMLV1.1 assertion and then sends a WS-Trust renew message to the STS to get the
@@ -1605,6 +1739,17 @@ public class PicketLinkSTSUnitTestCase {
         return request;
     }
 
+    private RequestSecurityTokenCollection createBatchIssueCollection(int size) throws Exception {
+        RequestSecurityTokenCollection requestCollection = new RequestSecurityTokenCollection();
+        for (int i = 0; i < size; i++) {
+            RequestSecurityToken request = this.createRequest("batchcontext" + i, WSTrustConstants.BATCH_ISSUE_REQUEST,
+                    SAMLUtil.SAML2_TOKEN_TYPE, null);
+            request.setRSTDocument((Document) ((DOMSource) this.createSourceFromRequest(request)).getNode());
+            requestCollection.addRequestSecurityToken(request);
+        }
+        return requestCollection;
+    }
+
     /**
      * <p>
      * Creates a simple token that is not known to the STS for testing purposes.
@@ -1711,6 +1856,11 @@ public class PicketLinkSTSUnitTestCase {
             super.context = context;
         }
 
+        @Override
+        public Source handleTokenRequestCollection(RequestSecurityTokenCollection requestCollection) {
+            return super.handleTokenRequestCollection(requestCollection);
+        }
+
         public void setSoap12(boolean soap12) {
             this.soap12 = soap12;
         }
@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.wstrust;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.ws.BindingProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.identity.federation.core.wstrust.STSClient;
+import org.picketlink.identity.federation.core.wstrust.STSClientConfig;
+import org.picketlink.identity.federation.core.wstrust.STSClientConfig.Builder;
+import org.picketlink.identity.federation.core.wstrust.STSClientFactory;
+
+/**
+ * Unit test the pooling of {@link STSClient}s by the {@link STSClientFactory}
+ */
+public class STSClientFactoryUnitTestCase {
+
+    private final STSClientFactory factory = STSClientFactory.getInstance();
+
+    @Before
+    public void setUp() {
+        factory.clear();
+    }
+
+    @Test
+    public void testBorrowAndRelease() throws Exception {
+        STSClient first = factory.borrow(config("http://localhost:8080/picketlink-sts/PicketLinkSTS", "user1"));
+        STSClient second = factory.borrow(config("http://localhost:8080/picketlink-sts/PicketLinkSTS", "user2"));
+        assertNotSame(first, second);
+        assertEquals(2, factory.getCreatedCount());
+        assertEquals(0, factory.getPoolSize());
+
+        factory.release(first);
+        factory.release(second);
+        assertEquals(2, factory.getPoolSize());
+        assertNull(first.getDispatch().getRequestContext().get(BindingProvider.USERNAME_PROPERTY));
+
+        // a pooled client gets the credentials of the new configuration
+        STSClient third = factory.borrow(config("http://localhost:8080/picketlink-sts/PicketLinkSTS", "user3"));
+        assertTrue(third == first || third == second);
+        assertEquals("user3", third.getDispatch().getRequestContext().get(BindingProvider.USERNAME_PROPERTY));
+        assertEquals(2, factory.getCreatedCount());
+        assertEquals(3, factory.getBorrowCount());
+        assertEquals(1, factory.getPoolSize());
+    }
+
+    @Test
+    public void testPoolsAreKeyedByEndpointAndProperties() throws Exception {
+        STSClient client = factory.borrow(config("http://localhost:8080/picketlink-sts/PicketLinkSTS", "user"));
+        factory.release(client);
+
+        assertNotSame(client, factory.borrow(config("http://otherhost:8080/picketlink-sts/PicketLinkSTS", "user")));
+
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("javax.xml.ws.client.connectionTimeout", "1000");
+        STSClient withProperties = factory.borrow(config("http://localhost:8080/picketlink-sts/PicketLinkSTS", "user"),
+                properties);
+        assertNotSame(client, withProperties);
+        assertEquals("1000", withProperties.getDispatch().getRequestContext().get("javax.xml.ws.client.connectionTimeout"));
+
+        assertSame(client, factory.borrow(config("http://localhost:8080/picketlink-sts/PicketLinkSTS", "user")));
+    }
+
+    @Test
+    public void testReleaseRestoresRequestContext() throws Exception {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("javax.xml.ws.client.connectionTimeout", "1000");
+        STSClient client = factory.borrow(config("http://localhost:8080/picketlink-sts/PicketLinkSTS", "user"), properties);
+        Map<String, Object> requestContext = client.getDispatch().getRequestContext();
+        requestContext.put("javax.xml.ws.client.connectionTimeout", "5000");
+        requestContext.put("javax.xml.ws.client.receiveTimeout", "5000");
+        factory.release(client);
+
+        assertEquals("1000", requestContext.get("javax.xml.ws.client.connectionTimeout"));
+        assertFalse(requestContext.containsKey("javax.xml.ws.client.receiveTimeout"));
+        assertFalse(requestContext.containsKey(BindingProvider.USERNAME_PROPERTY));
+        assertFalse(requestContext.containsKey(BindingProvider.PASSWORD_PROPERTY));
+    }
+
+    @Test
+    public void testClientsNotBorrowedAreIgnored() throws Exception {
+        factory.release(factory.create(config("http://localhost:8080/picketlink-sts/PicketLinkSTS", "user")));
+        assertEquals(0, factory.getPoolSize());
+    }
+
+    private STSClientConfig config(String endpointAddress, String username) {
+        Builder builder = new Builder();
+        builder.serviceName("PicketLinkSTS").portName("PicketLinkSTSPort").endpointAddress(endpointAddress);
+        return builder.username(username).password("password").build();
+    }
+}
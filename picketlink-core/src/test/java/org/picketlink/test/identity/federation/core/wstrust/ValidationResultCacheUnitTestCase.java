@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.core.wstrust;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.XMLTimeUtil;
+import org.picketlink.identity.federation.core.sts.registry.DefaultRevocationRegistry;
+import org.picketlink.identity.federation.core.sts.registry.IndexedRevocationRegistry;
+import org.picketlink.identity.federation.core.sts.registry.RevocationRegistry;
+import org.picketlink.identity.federation.core.wstrust.auth.ValidationResultCache;
+import org.picketlink.identity.federation.core.wstrust.plugins.saml.SAMLUtil;
+import org.w3c.dom.Element;
+
+/**
+ * Unit test the {@link ValidationResultCache}
+ */
+public class ValidationResultCacheUnitTestCase {
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        ValidationResultCache cache = new ValidationResultCache(10, 60000);
+        String xml = assertion("ID_1", 60000);
+        Element assertion = parse(xml);
+        assertFalse(cache.isValid(assertion));
+
+        cache.put(assertion);
+        assertTrue(cache.isValid(parse(xml)));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // an assertion with the same id but a different content is not a hit
+        Element altered = parse(xml);
+        altered.setAttribute("Version", "X");
+        assertFalse(cache.isValid(altered));
+
+        cache.invalidate("ID_1");
+        assertFalse(cache.isValid(assertion));
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        ValidationResultCache cache = new ValidationResultCache(10, 60000);
+
+        cache.put(parse(assertion("ID_expired", -1000)));
+        assertEquals(0, cache.size());
+
+        String xml = assertion("ID_short", 200);
+        cache.put(parse(xml));
+        assertTrue(cache.isValid(parse(xml)));
+        Thread.sleep(400);
+        assertFalse(cache.isValid(parse(xml)));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testRevocationAndBounds() throws Exception {
+        ValidationResultCache cache = new ValidationResultCache(2, 60000);
+        DefaultRevocationRegistry registry = new DefaultRevocationRegistry();
+        cache.setRevocationRegistry(registry);
+
+        Element assertion = parse(assertion("ID_revoked", 60000));
+        cache.put(assertion);
+        registry.revokeToken(SAMLUtil.SAML2_TOKEN_TYPE, "ID_revoked");
+        assertFalse(cache.isValid(assertion));
+
+        String a = assertion("ID_a", 60000);
+        String c = assertion("ID_c", 60000);
+        cache.put(parse(a));
+        cache.put(parse(assertion("ID_b", 60000)));
+        cache.put(parse(c));
+        assertEquals(2, cache.size());
+        assertFalse(cache.isValid(parse(a)));
+        assertTrue(cache.isValid(parse(c)));
+    }
+
+    @Test
+    public void testSharedByNameAndBounds() {
+        assertSame(ValidationResultCache.getCache("sts", 10, 1000), ValidationResultCache.getCache("sts", 10, 1000));
+        assertNotSame(ValidationResultCache.getCache("sts", 10, 1000), ValidationResultCache.getCache("sts", 20, 2000));
+    }
+
+    @Test
+    public void testSharedRevocationRegistry() throws Exception {
+        ClassLoader classLoader = getClass().getClassLoader();
+        File file = File.createTempFile("revoked", ".idx");
+        file.delete();
+        IndexedRevocationRegistry stsRegistry = new IndexedRevocationRegistry(file.getPath());
+        try {
+            RevocationRegistry registry = ValidationResultCache.getRevocationRegistry("INDEXED", file.getPath(), classLoader);
+            assertSame(registry, ValidationResultCache.getRevocationRegistry("INDEXED", file.getPath(), classLoader));
+
+            // the revocations of the STS registry are seen by the cache
+            ValidationResultCache cache = new ValidationResultCache(10, 60000);
+            cache.setRevocationRegistry(registry);
+            Element assertion = parse(assertion("ID_sts_revoked", 60000));
+            cache.put(assertion);
+            stsRegistry.revokeToken(SAMLUtil.SAML2_TOKEN_TYPE, "ID_sts_revoked");
+            assertFalse(cache.isValid(assertion));
+        } finally {
+            stsRegistry.close();
+        }
+
+        // registries holding their own revoked ids are rejected
+        for (String registry : new String[] { "FILE", DefaultRevocationRegistry.class.getName() }) {
+            try {
+                ValidationResultCache.getRevocationRegistry(registry, null, classLoader);
+                fail(registry + " registry accepted");
+            } catch (IllegalArgumentException e) {
+            }
+        }
+
+        try {
+            ValidationResultCache.getRevocationRegistry("org.picketlink.UnknownRegistry", null, classLoader);
+            fail("unknown registry class loaded");
+        } catch (ProcessingException e) {
+        }
+    }
+
+    private Element parse(String xml) throws Exception {
+        return DocumentUtil.getDocument(xml).getDocumentElement();
+    }
+
+    private String assertion(String id, long notOnOrAfterOffset) throws Exception {
+        String notOnOrAfter = XMLTimeUtil.add(XMLTimeUtil.getIssueInstant(), notOnOrAfterOffset).toXMLFormat();
+        return "<saml:Assertion xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"" + id
+                + "\" Version=\"2.0\" IssueInstant=\"2012-01-01T00:00:00Z\"><saml:Issuer>sts</saml:Issuer>"
+                + "<saml:Conditions NotOnOrAfter=\"" + notOnOrAfter + "\"/></saml:Assertion>";
+    }
+}
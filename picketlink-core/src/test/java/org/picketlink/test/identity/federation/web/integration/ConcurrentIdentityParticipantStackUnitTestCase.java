@@ -0,0 +1,151 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.web.integration;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.picketlink.identity.federation.web.core.ConcurrentIdentityParticipantStack;
+
+/**
+ * Unit test the {@link ConcurrentIdentityParticipantStack}
+ */
+public class ConcurrentIdentityParticipantStackUnitTestCase extends TestCase {
+    private static final String SALES = "http://localhost:8080/sales/";
+
+    private static final String EMPLOYEE = "http://localhost:8080/employee/";
+
+    public void testStack() {
+        ConcurrentIdentityParticipantStack stack = new ConcurrentIdentityParticipantStack();
+        stack.createSession("s1");
+        stack.register("s1", SALES, false);
+        stack.register("s1", EMPLOYEE, true);
+        stack.register("s1", SALES, true);
+
+        assertEquals(1, stack.totalSessions());
+        assertEquals(2, stack.getParticipants("s1"));
+        assertEquals(EMPLOYEE, stack.peek("s1"));
+        assertEquals(Boolean.FALSE, stack.getBinding(SALES));
+        assertEquals(Boolean.TRUE, stack.getBinding(EMPLOYEE));
+
+        assertEquals(EMPLOYEE, stack.pop("s1"));
+        assertTrue(stack.registerTransitParticipant("s1", EMPLOYEE));
+        assertFalse(stack.registerTransitParticipant("s1", EMPLOYEE));
+        assertEquals(1, stack.getNumOfParticipantsInTransit("s1"));
+        assertTrue(stack.deRegisterTransitParticipant("s1", EMPLOYEE));
+        assertFalse(stack.deRegisterTransitParticipant("s1", EMPLOYEE));
+        assertEquals(0, stack.getNumOfParticipantsInTransit("s1"));
+
+        assertEquals(SALES, stack.pop("s1"));
+        assertNull(stack.pop("s1"));
+        assertNull(stack.peek("s1"));
+
+        // the binding is still known once the session is gone
+        stack.removeSession("s1");
+        assertEquals(0, stack.totalSessions());
+        assertEquals(0, stack.getParticipants("s1"));
+        assertEquals(Boolean.FALSE, stack.getBinding(SALES));
+    }
+
+    public void testParticipantsAreShared() {
+        ConcurrentIdentityParticipantStack stack = new ConcurrentIdentityParticipantStack();
+        for (int i = 0; i < 100; i++) {
+            stack.createSession("s" + i);
+            stack.register("s" + i, new String(SALES), false);
+            stack.registerTransitParticipant("s" + i, new String(EMPLOYEE));
+        }
+        assertEquals(2, stack.getInternedParticipantCount());
+        assertSame(stack.peek("s0"), stack.peek("s99"));
+
+        // deregistering in a session keeps the binding for the others
+        stack.register("s0", EMPLOYEE, true);
+        stack.deRegisterTransitParticipant("s1", EMPLOYEE);
+        assertEquals(Boolean.TRUE, stack.getBinding(EMPLOYEE));
+    }
+
+    public void testIdleParticipantsAreDropped() {
+        ConcurrentIdentityParticipantStack stack = new ConcurrentIdentityParticipantStack();
+        stack.createSession("s1");
+        for (int i = 0; i < 1500; i++) {
+            stack.register("s1", "http://localhost:8080/sp" + i + "/", false);
+        }
+        stack.removeSession("s1");
+
+        // the scan at the 1001st participant found nothing to drop, the next one waits for 1000 more participants
+        stack.createSession("s2");
+        stack.register("s2", SALES, true);
+        assertEquals(1501, stack.getInternedParticipantCount());
+        assertEquals(Boolean.FALSE, stack.getBinding("http://localhost:8080/sp0/"));
+
+        for (int i = 0; i < 501; i++) {
+            stack.register("s2", "http://localhost:8080/other" + i + "/", false);
+        }
+        assertEquals(502, stack.getInternedParticipantCount());
+        assertEquals(Boolean.TRUE, stack.getBinding(SALES));
+        assertNull(stack.getBinding("http://localhost:8080/sp0/"));
+    }
+
+    public void testPeekOfUnknownSession() {
+        ConcurrentIdentityParticipantStack stack = new ConcurrentIdentityParticipantStack();
+        assertNull(stack.peek("unknown"));
+        stack.createSession("s1");
+        assertNull(stack.peek("s1"));
+    }
+
+    public void testConcurrentRegistration() throws Exception {
+        final ConcurrentIdentityParticipantStack stack = new ConcurrentIdentityParticipantStack();
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        for (int i = 0; i < 1000; i++) {
+                            String participant = "http://localhost:8080/sp" + (i % 50) + "/";
+                            stack.register("s1", participant, true);
+                            stack.registerTransitParticipant("s1", participant);
+                        }
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(1, stack.totalSessions());
+        assertEquals(50, stack.getParticipants("s1"));
+        assertEquals(50, stack.getNumOfParticipantsInTransit("s1"));
+        assertEquals(50, stack.getInternedParticipantCount());
+    }
+}
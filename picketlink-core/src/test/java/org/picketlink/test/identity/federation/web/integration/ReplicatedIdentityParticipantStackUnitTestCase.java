@@ -0,0 +1,216 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.web.integration;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.picketlink.identity.federation.web.core.InMemoryIdentityParticipantStore;
+import org.picketlink.identity.federation.web.core.ReplicatedIdentityParticipantStack;
+
+/**
+ * Unit test the {@link ReplicatedIdentityParticipantStack}, with two stacks sharing a store standing for two IDP nodes
+ */
+public class ReplicatedIdentityParticipantStackUnitTestCase extends TestCase {
+    private static final String SALES = "http://localhost:8080/sales/";
+
+    private static final String EMPLOYEE = "http://localhost:8080/employee/";
+
+    public void testParticipantsSharedByNodes() {
+        InMemoryIdentityParticipantStore store = new InMemoryIdentityParticipantStore();
+        ReplicatedIdentityParticipantStack node1 = new ReplicatedIdentityParticipantStack(store, 0, 100);
+        ReplicatedIdentityParticipantStack node2 = new ReplicatedIdentityParticipantStack(store, 0, 100);
+
+        node1.createSession("s1");
+        node1.register("s1", SALES, false);
+        assertEquals(1, node2.getParticipants("s1"));
+
+        node2.register("s1", EMPLOYEE, true);
+        node2.register("s1", SALES, true);
+        assertEquals(2, node1.getParticipants("s1"));
+        assertEquals(EMPLOYEE, node1.peek("s1"));
+        assertEquals(Boolean.FALSE, node1.getBinding(SALES));
+        assertEquals(Boolean.TRUE, node1.getBinding(EMPLOYEE));
+        assertEquals(1, node1.totalSessions());
+
+        // logout started on node 1 and completed on node 2
+        assertEquals(EMPLOYEE, node1.pop("s1"));
+        assertTrue(node1.registerTransitParticipant("s1", EMPLOYEE));
+        assertEquals(1, node2.getNumOfParticipantsInTransit("s1"));
+        assertTrue(node2.deRegisterTransitParticipant("s1", EMPLOYEE));
+        assertFalse(node1.deRegisterTransitParticipant("s1", EMPLOYEE));
+        assertEquals(SALES, node2.pop("s1"));
+        assertNull(node1.pop("s1"));
+
+        node2.removeSession("s1");
+        assertEquals(0, node1.getParticipants("s1"));
+        assertNull(node1.peek("s1"));
+        // the tombstone of the session is kept, but not counted
+        assertEquals(0, node1.totalSessions());
+        assertTrue(store.get("s1").isRemoved());
+    }
+
+    public void testRemovedSessionIsNotCreatedAgain() {
+        InMemoryIdentityParticipantStore store = new InMemoryIdentityParticipantStore();
+        ReplicatedIdentityParticipantStack node1 = new ReplicatedIdentityParticipantStack(store, 60000, 100);
+        ReplicatedIdentityParticipantStack node2 = new ReplicatedIdentityParticipantStack(store, 60000, 100);
+
+        node1.register("s1", SALES, true);
+        assertEquals(1, node2.getParticipants("s1"));
+
+        // the session is removed on node 1 while node 2 still handles a request of the session
+        node1.removeSession("s1");
+        node2.register("s1", EMPLOYEE, true);
+        node2.createSession("s1");
+        assertEquals(0, node2.getParticipants("s1"));
+        assertEquals(0, node1.getParticipants("s1"));
+        assertNull(node2.getBinding(EMPLOYEE));
+        assertTrue(store.get("s1").isRemoved());
+
+        // a session removed by a node that never saw it
+        node2.removeSession("s2");
+        node1.register("s2", SALES, true);
+        assertEquals(0, node1.getParticipants("s2"));
+    }
+
+    public void testExpiredTombstonesAreDropped() {
+        System.setProperty(ReplicatedIdentityParticipantStack.TOMBSTONE_TTL, "0");
+        try {
+            InMemoryIdentityParticipantStore store = new InMemoryIdentityParticipantStore();
+            ReplicatedIdentityParticipantStack node1 = new ReplicatedIdentityParticipantStack(store, 0, 100);
+            ReplicatedIdentityParticipantStack node2 = new ReplicatedIdentityParticipantStack(store, 0, 100);
+
+            node1.register("s1", SALES, true);
+            node1.register("s2", SALES, true);
+            assertEquals(2, node2.totalSessions());
+            node1.removeSession("s1");
+            assertEquals(1, node2.totalSessions());
+
+            // the tombstone is dropped although the node that removed the session is idle
+            assertEquals(0, node2.getParticipants("s1"));
+            assertNull(store.get("s1"));
+            assertEquals(1, node2.getParticipants("s2"));
+        } finally {
+            System.clearProperty(ReplicatedIdentityParticipantStack.TOMBSTONE_TTL);
+        }
+    }
+
+    public void testNearCachedBindingsExpire() {
+        InMemoryIdentityParticipantStore store = new InMemoryIdentityParticipantStore();
+        ReplicatedIdentityParticipantStack node1 = new ReplicatedIdentityParticipantStack(store, 0, 100);
+        ReplicatedIdentityParticipantStack node2 = new ReplicatedIdentityParticipantStack(store, 0, 100);
+
+        node1.register("s1", SALES, false);
+        assertEquals(Boolean.FALSE, node1.getBinding(SALES));
+
+        // the participant now uses the POST binding, registered on node 2
+        node2.register("s2", SALES, true);
+        assertEquals(Boolean.TRUE, node1.getBinding(SALES));
+    }
+
+    public void testStoreMustBeConfigured() {
+        System.clearProperty(ReplicatedIdentityParticipantStack.STORE);
+        try {
+            new ReplicatedIdentityParticipantStack();
+            fail("A stack without a configured store must not be created");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains(ReplicatedIdentityParticipantStack.STORE));
+        }
+
+        System.setProperty(ReplicatedIdentityParticipantStack.STORE, InMemoryIdentityParticipantStore.class.getName());
+        try {
+            ReplicatedIdentityParticipantStack node = new ReplicatedIdentityParticipantStack();
+            node.register("s1", SALES, true);
+            assertEquals(1, node.getParticipants("s1"));
+        } finally {
+            System.clearProperty(ReplicatedIdentityParticipantStack.STORE);
+        }
+    }
+
+    public void testStaleNearCache() {
+        InMemoryIdentityParticipantStore store = new InMemoryIdentityParticipantStore();
+        ReplicatedIdentityParticipantStack node1 = new ReplicatedIdentityParticipantStack(store, 60000, 100);
+        ReplicatedIdentityParticipantStack node2 = new ReplicatedIdentityParticipantStack(store, 60000, 100);
+
+        node1.register("s1", SALES, true);
+        node2.register("s1", EMPLOYEE, true);
+        assertEquals(2, node2.getParticipants("s1"));
+        assertEquals(EMPLOYEE, node2.pop("s1"));
+
+        // node 1 has not seen the changes of node 2, its updates are still applied to the stored participants
+        assertEquals(1, node1.getParticipants("s1"));
+        node1.register("s1", EMPLOYEE, true);
+        assertEquals(2, store.get("s1").getParticipantCount());
+        assertEquals(EMPLOYEE, node2.pop("s1"));
+        assertEquals(SALES, node1.pop("s1"));
+        assertNull(node2.pop("s1"));
+    }
+
+    public void testConcurrentLogoutFromTwoNodes() throws Exception {
+        InMemoryIdentityParticipantStore store = new InMemoryIdentityParticipantStore();
+        final ReplicatedIdentityParticipantStack[] nodes = new ReplicatedIdentityParticipantStack[] {
+                new ReplicatedIdentityParticipantStack(store, 0, 100), new ReplicatedIdentityParticipantStack(store, 0, 100) };
+        for (int i = 0; i < 200; i++) {
+            nodes[i % 2].register("s1", "http://localhost:8080/sp" + i + "/", true);
+        }
+
+        final Set<String> popped = Collections.synchronizedSet(new HashSet<String>());
+        final AtomicInteger pops = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int t = 0; t < 4; t++) {
+                final ReplicatedIdentityParticipantStack node = nodes[t % 2];
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        String participant;
+                        while ((participant = node.pop("s1")) != null) {
+                            popped.add(participant);
+                            pops.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(200, pops.get());
+        assertEquals(200, popped.size());
+        assertEquals(0, nodes[0].getParticipants("s1"));
+    }
+}
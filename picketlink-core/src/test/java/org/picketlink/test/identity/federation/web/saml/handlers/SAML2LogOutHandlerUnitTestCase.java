@@ -0,0 +1,350 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.web.saml.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.identity.federation.api.saml.v2.metadata.MetaDataBuilder;
+import org.picketlink.identity.federation.api.saml.v2.request.SAML2Request;
+import org.picketlink.identity.federation.api.saml.v2.sig.SAML2Signature;
+import org.picketlink.identity.federation.core.config.IDPType;
+import org.picketlink.identity.federation.core.parsers.saml.SAMLParser;
+import org.picketlink.identity.federation.core.saml.md.providers.SPMetadataRegistry;
+import org.picketlink.identity.federation.core.saml.v2.common.SAMLDocumentHolder;
+import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLURIConstants;
+import org.picketlink.identity.federation.core.saml.v2.holders.IssuerInfoHolder;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerChainConfig;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerConfig;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerRequest;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerChainConfig;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerConfig;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.core.sts.PicketLinkCoreSTS;
+import org.picketlink.identity.federation.saml.v2.metadata.EntityDescriptorType;
+import org.picketlink.identity.federation.saml.v2.metadata.EntityDescriptorType.EDTChoiceType;
+import org.picketlink.identity.federation.saml.v2.metadata.EntityDescriptorType.EDTDescriptorChoiceType;
+import org.picketlink.identity.federation.saml.v2.metadata.SPSSODescriptorType;
+import org.picketlink.identity.federation.saml.v2.protocol.LogoutRequestType;
+import org.picketlink.identity.federation.saml.v2.protocol.StatusResponseType;
+import org.picketlink.identity.federation.web.constants.GeneralConstants;
+import org.picketlink.identity.federation.web.core.HTTPContext;
+import org.picketlink.identity.federation.web.core.IdentityServer;
+import org.picketlink.identity.federation.web.handlers.saml2.SAML2LogOutHandler;
+import org.picketlink.test.identity.federation.web.mock.MockHttpServletRequest;
+import org.picketlink.test.identity.federation.web.mock.MockHttpServletResponse;
+import org.picketlink.test.identity.federation.web.mock.MockHttpSession;
+import org.picketlink.test.identity.federation.web.mock.MockServletContext;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit test the back channel logout of the {@link SAML2LogOutHandler}
+ */
+public class SAML2LogOutHandlerUnitTestCase {
+
+    private static final String ORIGINAL_ISSUER = "http://localhost:8080/sales/";
+
+    private static final int TIMEOUT = 1000;
+
+    private static final String LOGOUT_RESPONSE = "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+            + "<soap:Body><samlp:LogoutResponse xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" "
+            + "xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"ID_response\" Version=\"2.0\" "
+            + "IssueInstant=\"2012-01-01T00:00:00Z\"><saml:Issuer>http://localhost/sp/</saml:Issuer>"
+            + "<samlp:Status><samlp:StatusCode Value=\"urn:oasis:names:tc:SAML:2.0:status:Success\"/></samlp:Status>"
+            + "</samlp:LogoutResponse></soap:Body></soap:Envelope>";
+
+    private HttpServer server;
+
+    private String baseURL;
+
+    private final AtomicInteger received = new AtomicInteger();
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+    private SAML2LogOutHandler handler;
+
+    @Before
+    public void startServer() throws Exception {
+        PicketLinkCoreSTS.instance().installDefaultConfiguration();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/ok", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                received.incrementAndGet();
+                requests.add(read(exchange.getRequestBody()));
+                byte[] body = LOGOUT_RESPONSE.getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "text/xml");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        server.createContext("/slow", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                received.incrementAndGet();
+                try {
+                    Thread.sleep(TIMEOUT * 3);
+                } catch (InterruptedException e) {
+                }
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseURL = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        if (handler != null)
+            handler.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    public void backChannelLogout() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        SAML2HandlerResponse response = logout(session, null, participants("/ok/sp1", "/ok/sp2", "/ok/sp3"));
+
+        assertEquals(3, received.get());
+        assertTrue(session.isInvalidated());
+        assertFalse(response.getSendRequest());
+        assertEquals(ORIGINAL_ISSUER, response.getDestination());
+        assertEquals(JBossSAMLURIConstants.STATUS_SUCCESS.get(), secondLevelStatus(response));
+
+        // the requests are sent to the SOAP single logout service of the participants
+        for (String request : requests)
+            assertTrue(request, request.contains("Destination=\"" + baseURL + "/ok/sp"));
+    }
+
+    @Test
+    public void backChannelLogoutIsSigned() throws Exception {
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").genKeyPair();
+        MockHttpSession session = new MockHttpSession();
+        SAML2HandlerResponse response = logout(session, keyPair, participants("/ok/sp1", "/ok/sp2"));
+
+        assertEquals(JBossSAMLURIConstants.STATUS_SUCCESS.get(), secondLevelStatus(response));
+        assertEquals(2, requests.size());
+        for (String request : requests)
+            assertTrue(new SAML2Signature().validate(logoutRequest(request), keyPair.getPublic()));
+    }
+
+    @Test
+    public void backChannelLogoutWithoutEndpoint() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        Map<String, String> participants = participants("/ok/sp1", "/ok/sp2");
+        // a participant without metadata is not logged out
+        participants.put("http://localhost:8080/unknown/", null);
+
+        SAML2HandlerResponse response = logout(session, null, participants);
+
+        assertEquals(2, received.get());
+        assertTrue(session.isInvalidated());
+        assertEquals(JBossSAMLURIConstants.STATUS_PARTIAL_LOGOUT.get(), secondLevelStatus(response));
+    }
+
+    @Test
+    public void backChannelLogoutTimesOut() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        long start = System.currentTimeMillis();
+        SAML2HandlerResponse response = logout(session, null, participants("/ok/sp1", "/slow/sp2", "/ok/sp3"));
+        long elapsed = System.currentTimeMillis() - start;
+
+        // the participants are called concurrently, the slow one only costs the timeout once
+        assertTrue("Took " + elapsed + "ms", elapsed < TIMEOUT * 2);
+        assertEquals(3, received.get());
+        assertTrue(session.isInvalidated());
+        assertEquals(JBossSAMLURIConstants.STATUS_PARTIAL_LOGOUT.get(), secondLevelStatus(response));
+    }
+
+    @Test
+    public void saturatedBackChannelFailsFast() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        String[] paths = new String[20];
+        for (int i = 0; i < paths.length; i++)
+            paths[i] = "/slow/sp" + i;
+
+        // one thread and 16 queued requests, the other participants are rejected instead of run by the request thread
+        long start = System.currentTimeMillis();
+        SAML2HandlerResponse response = logout(session, null, participants(paths), SAML2LogOutHandler.BACK_CHANNEL_LOGOUT_THREADS,
+                "1");
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue("Took " + elapsed + "ms", elapsed < TIMEOUT * 2);
+        assertTrue(session.isInvalidated());
+        assertEquals(JBossSAMLURIConstants.STATUS_PARTIAL_LOGOUT.get(), secondLevelStatus(response));
+    }
+
+    @Test
+    public void destroyStopsTheBackChannelThreads() throws Exception {
+        logout(new MockHttpSession(), null, participants("/ok/sp1"));
+        assertTrue(backChannelThreads() > 0);
+
+        handler.destroy();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (backChannelThreads() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(0, backChannelThreads());
+
+        // a new logout starts new threads
+        assertEquals(JBossSAMLURIConstants.STATUS_SUCCESS.get(),
+                secondLevelStatus(logout(new MockHttpSession(), null, participants("/ok/sp2"))));
+    }
+
+    /**
+     * Map the entityIDs of participants to the SOAP single logout services at the given paths of the test server
+     */
+    private Map<String, String> participants(String... paths) {
+        Map<String, String> participants = new LinkedHashMap<String, String>();
+        for (String path : paths)
+            participants.put("http://localhost:8080" + path + "/", baseURL + path);
+        return participants;
+    }
+
+    private SAML2HandlerResponse logout(MockHttpSession session, KeyPair keyPair, Map<String, String> participants,
+            String... options) throws Exception {
+        handler = new SAML2LogOutHandler();
+
+        Map<String, Object> chainOptions = new HashMap<String, Object>();
+        chainOptions.put(GeneralConstants.CONFIGURATION, new IDPType());
+        if (keyPair != null)
+            chainOptions.put(GeneralConstants.KEYPAIR, keyPair);
+        SAML2HandlerChainConfig chainConfig = new DefaultSAML2HandlerChainConfig(chainOptions);
+        SAML2HandlerConfig handlerConfig = new DefaultSAML2HandlerConfig();
+        handlerConfig.addParameter(SAML2LogOutHandler.BACK_CHANNEL_LOGOUT, "true");
+        handlerConfig.addParameter(SAML2LogOutHandler.BACK_CHANNEL_LOGOUT_TIMEOUT, String.valueOf(TIMEOUT));
+        for (int i = 0; i < options.length; i += 2)
+            handlerConfig.addParameter(options[i], options[i + 1]);
+
+        handler.initChainConfig(chainConfig);
+        handler.initHandlerConfig(handlerConfig);
+
+        List<EntityDescriptorType> metadata = new ArrayList<EntityDescriptorType>();
+        IdentityServer identityServer = new IdentityServer();
+        identityServer.stack().createSession(session.getId());
+        identityServer.stack().register(session.getId(), ORIGINAL_ISSUER, true);
+        for (Map.Entry<String, String> participant : participants.entrySet()) {
+            identityServer.stack().register(session.getId(), participant.getKey(), true);
+            if (participant.getValue() != null)
+                metadata.add(entityDescriptor(participant.getKey(), participant.getValue()));
+        }
+        SPMetadataRegistry registry = new SPMetadataRegistry();
+        registry.load(metadata);
+
+        MockServletContext servletContext = new MockServletContext();
+        servletContext.setAttribute(GeneralConstants.IDENTITY_SERVER, identityServer);
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest(session, "POST");
+        HTTPContext httpContext = new HTTPContext(servletRequest, new MockHttpServletResponse(), servletContext);
+
+        LogoutRequestType logoutRequest = new SAML2Request().createLogoutRequest(ORIGINAL_ISSUER);
+        SAMLDocumentHolder docHolder = new SAMLDocumentHolder(logoutRequest, null);
+        IssuerInfoHolder issuerInfo = new IssuerInfoHolder("http://localhost:8080/idp/");
+
+        SAML2HandlerRequest request = new DefaultSAML2HandlerRequest(httpContext, issuerInfo.getIssuer(), docHolder,
+                SAML2Handler.HANDLER_TYPE.IDP);
+        request.addOption(GeneralConstants.SP_METADATA_REGISTRY, registry);
+        SAML2HandlerResponse response = new DefaultSAML2HandlerResponse();
+
+        handler.handleRequestType(request, response);
+
+        assertEquals(0, identityServer.stack().getParticipants(session.getId()));
+        return response;
+    }
+
+    private EntityDescriptorType entityDescriptor(String entityID, String soapLogoutService) {
+        SPSSODescriptorType spDescriptor = new SPSSODescriptorType(Collections.singletonList(JBossSAMLURIConstants.PROTOCOL_NSURI
+                .get()));
+        spDescriptor.addSingleLogoutService(MetaDataBuilder.createEndpoint(JBossSAMLURIConstants.SAML_HTTP_REDIRECT_BINDING.get(),
+                entityID, entityID));
+        spDescriptor.addSingleLogoutService(MetaDataBuilder.createEndpoint(JBossSAMLURIConstants.SAML_SOAP_BINDING.get(),
+                soapLogoutService, soapLogoutService));
+
+        EntityDescriptorType entityDescriptor = new EntityDescriptorType(entityID);
+        entityDescriptor.addChoiceType(new EDTChoiceType(Collections.singletonList(new EDTDescriptorChoiceType(spDescriptor))));
+        return entityDescriptor;
+    }
+
+    private Document logoutRequest(String soapRequest) throws Exception {
+        Document envelope = DocumentUtil.getDocument(soapRequest);
+        Node logoutRequest = envelope.getElementsByTagNameNS(JBossSAMLURIConstants.PROTOCOL_NSURI.get(), "LogoutRequest")
+                .item(0);
+        Document document = DocumentUtil.createDocument();
+        document.appendChild(document.importNode(logoutRequest, true));
+        return document;
+    }
+
+    private int backChannelThreads() {
+        int threads = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && "PicketLink Back Channel Logout".equals(thread.getName()))
+                threads++;
+        }
+        return threads;
+    }
+
+    private String secondLevelStatus(SAML2HandlerResponse response) throws Exception {
+        StatusResponseType statusResponse = (StatusResponseType) new SAMLParser().parse(DocumentUtil
+                .getNodeAsStream(response.getResultingDocument()));
+        return statusResponse.getStatus().getStatusCode().getStatusCode().getValue().toString();
+    }
+
+    private static String read(InputStream is) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) != -1)
+            bytes.write(buffer, 0, read);
+        is.close();
+        return bytes.toString("UTF-8");
+    }
+}
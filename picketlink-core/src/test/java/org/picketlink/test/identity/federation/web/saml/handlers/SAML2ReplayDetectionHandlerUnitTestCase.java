@@ -0,0 +1,179 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.web.saml.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.picketlink.identity.federation.api.saml.v2.response.SAML2Response;
+import org.picketlink.identity.federation.core.ErrorCodes;
+import org.picketlink.identity.federation.core.config.IDPType;
+import org.picketlink.identity.federation.core.config.SPType;
+import org.picketlink.identity.federation.core.exceptions.ConfigurationException;
+import org.picketlink.identity.federation.core.exceptions.ProcessingException;
+import org.picketlink.identity.federation.core.handler.config.Handler;
+import org.picketlink.identity.federation.core.handler.config.Handlers;
+import org.picketlink.identity.federation.core.saml.v2.common.IDGenerator;
+import org.picketlink.identity.federation.core.saml.v2.common.SAMLDocumentHolder;
+import org.picketlink.identity.federation.core.saml.v2.holders.IssuerInfoHolder;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultReplayCache;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerChainConfig;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerConfig;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerRequest;
+import org.picketlink.identity.federation.core.saml.v2.impl.DefaultSAML2HandlerResponse;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2Handler;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerChainConfig;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerConfig;
+import org.picketlink.identity.federation.core.saml.v2.interfaces.SAML2HandlerRequest;
+import org.picketlink.identity.federation.core.saml.v2.util.AssertionUtil;
+import org.picketlink.identity.federation.core.saml.v2.util.HandlerUtil;
+import org.picketlink.identity.federation.saml.v2.assertion.AssertionType;
+import org.picketlink.identity.federation.saml.v2.protocol.ResponseType;
+import org.picketlink.identity.federation.web.constants.GeneralConstants;
+import org.picketlink.identity.federation.web.handlers.saml2.SAML2ReplayDetectionHandler;
+import org.picketlink.identity.federation.web.handlers.saml2.SAML2SignatureValidationHandler;
+
+/**
+ * Unit test the {@link SAML2ReplayDetectionHandler}
+ */
+public class SAML2ReplayDetectionHandlerUnitTestCase {
+
+    private SAML2HandlerConfig handlerConfig;
+
+    @Before
+    public void setUp() {
+        handlerConfig = new DefaultSAML2HandlerConfig();
+        handlerConfig.addParameter(SAML2Handler.CLOCK_SKEW_MILIS, "1000");
+    }
+
+    @Test
+    public void testReplayedResponseIsRejected() throws Exception {
+        SAML2ReplayDetectionHandler handler = createHandler(new SPType());
+        ResponseType responseType = createResponse(createAssertion());
+
+        handler.handleStatusResponseType(createRequest(responseType), new DefaultSAML2HandlerResponse());
+        assertTrue(handler.getReplayCache().contains(responseType.getID()));
+        assertTrue(handler.getReplayCache().contains(responseType.getAssertions().get(0).getAssertion().getID()));
+
+        try {
+            handler.handleStatusResponseType(createRequest(responseType), new DefaultSAML2HandlerResponse());
+            fail("Replayed response must be rejected");
+        } catch (ProcessingException e) {
+            assertTrue(e.getMessage().startsWith(ErrorCodes.MESSAGE_REPLAYED));
+        }
+    }
+
+    @Test
+    public void testReplayedAssertionInNewResponseIsRejected() throws Exception {
+        SAML2ReplayDetectionHandler handler = createHandler(new SPType());
+        AssertionType assertion = createAssertion();
+
+        handler.handleStatusResponseType(createRequest(createResponse(assertion)), new DefaultSAML2HandlerResponse());
+        try {
+            handler.handleStatusResponseType(createRequest(createResponse(assertion)), new DefaultSAML2HandlerResponse());
+            fail("Replayed assertion must be rejected");
+        } catch (ProcessingException e) {
+            assertTrue(e.getMessage().contains(assertion.getID()));
+        }
+    }
+
+    @Test
+    public void testCustomReplayCache() throws Exception {
+        handlerConfig.addParameter(SAML2ReplayDetectionHandler.REPLAY_CACHE, DefaultReplayCache.class.getName());
+        handlerConfig.addParameter(DefaultReplayCache.REPLAY_CACHE_MAX_ENTRIES, "8");
+        SAML2ReplayDetectionHandler handler = createHandler(new SPType());
+
+        for (int i = 0; i < 20; i++) {
+            handler.handleStatusResponseType(createRequest(createResponse(createAssertion())),
+                    new DefaultSAML2HandlerResponse());
+        }
+        assertTrue(((DefaultReplayCache) handler.getReplayCache()).size() <= 8);
+    }
+
+    @Test
+    public void testIDPIsIgnored() throws Exception {
+        SAML2ReplayDetectionHandler handler = createHandler(new IDPType());
+        ResponseType responseType = createResponse(createAssertion());
+
+        handler.handleStatusResponseType(createRequest(responseType), new DefaultSAML2HandlerResponse());
+        handler.handleStatusResponseType(createRequest(responseType), new DefaultSAML2HandlerResponse());
+        assertEquals(0, ((DefaultReplayCache) handler.getReplayCache()).size());
+    }
+
+    @Test
+    public void testHandlerMustFollowSignatureValidation() throws Exception {
+        assertEquals(2, HandlerUtil.getHandlers(
+                createHandlers(SAML2SignatureValidationHandler.class, SAML2ReplayDetectionHandler.class)).size());
+
+        try {
+            HandlerUtil.getHandlers(createHandlers(SAML2ReplayDetectionHandler.class, SAML2SignatureValidationHandler.class));
+            fail("Replay detection before signature validation");
+        } catch (ConfigurationException e) {
+            assertTrue(e.getMessage().contains(ErrorCodes.REPLAY_DETECTION_BEFORE_SIGNATURE_VALIDATION));
+        }
+    }
+
+    private Handlers createHandlers(Class<?>... classes) {
+        Handlers handlers = new Handlers();
+        for (Class<?> clazz : classes) {
+            Handler handler = new Handler();
+            handler.setClazz(clazz.getName());
+            handlers.add(handler);
+        }
+        return handlers;
+    }
+
+    private SAML2ReplayDetectionHandler createHandler(Object configuration) throws Exception {
+        SAML2HandlerChainConfig chainConfig = new DefaultSAML2HandlerChainConfig();
+        Map<String, Object> chainOptions = new HashMap<String, Object>();
+        chainOptions.put(GeneralConstants.CONFIGURATION, configuration);
+        chainConfig.set(chainOptions);
+
+        SAML2ReplayDetectionHandler handler = new SAML2ReplayDetectionHandler();
+        handler.initChainConfig(chainConfig);
+        handler.initHandlerConfig(handlerConfig);
+        return handler;
+    }
+
+    private AssertionType createAssertion() throws Exception {
+        AssertionType assertion = AssertionUtil.createAssertion(IDGenerator.create("ID_"), new IssuerInfoHolder(
+                "http://localhost:8080/idp/").getIssuer());
+        AssertionUtil.createTimedConditions(assertion, 60000);
+        return assertion;
+    }
+
+    private ResponseType createResponse(AssertionType assertion) throws Exception {
+        return new SAML2Response().createResponseType(IDGenerator.create("ID_"),
+                new IssuerInfoHolder("http://localhost:8080/idp/"), assertion);
+    }
+
+    private SAML2HandlerRequest createRequest(ResponseType responseType) {
+        return new DefaultSAML2HandlerRequest(null, null, new SAMLDocumentHolder(responseType),
+                SAML2Handler.HANDLER_TYPE.SP);
+    }
+}
@@ -23,6 +23,8 @@ package org.picketlink.test.identity.federation.web.saml.handlers;
 
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -71,7 +73,22 @@ public class SAML2SignatureHandlerUnitTestCase extends TestCase {
         doSignatureTest(false);
     }
 
+    public void testKeyRolloverPostBinding() throws Exception {
+        doSignatureTest(true, true);
+    }
+
+    public void testKeyRolloverRedirectBinding() throws Exception {
+        doSignatureTest(false, true);
+    }
+
     private void doSignatureTest(boolean isPostBinding) throws Exception {
+        doSignatureTest(isPostBinding, false);
+    }
+
+    /**
+     * @param rollover whether the sender has a new key, which is tried before the one it signs with
+     */
+    private void doSignatureTest(boolean isPostBinding, boolean rollover) throws Exception {
         SAML2Request saml2Request = new SAML2Request();
         String id = IDGenerator.create("ID_");
         String assertionConsumerURL = "http://sp";
@@ -104,6 +121,7 @@ public class SAML2SignatureHandlerUnitTestCase extends TestCase {
         MockServletContext servletContext = new MockServletContext();
         String httpMethod = isPostBinding ? "POST" : "GET";
         MockHttpServletRequest servletRequest = new MockHttpServletRequest(session, httpMethod);
+        servletRequest.setRequestURL(new StringBuffer("http://localhost:8080/idp/"));
         MockHttpServletResponse servletResponse = new MockHttpServletResponse();
         HTTPContext httpContext = new HTTPContext(servletRequest, servletResponse, servletContext);
 
@@ -131,7 +149,13 @@ public class SAML2SignatureHandlerUnitTestCase extends TestCase {
         request = new DefaultSAML2HandlerRequest(httpContext, issuerInfo.getIssuer(), signedHolder,
                 SAML2Handler.HANDLER_TYPE.SP);
 
-        request.addOption(GeneralConstants.SENDER_PUBLIC_KEY, keypair.getPublic());
+        if (rollover) {
+            PublicKey newKey = kpg.genKeyPair().getPublic();
+            request.addOption(GeneralConstants.SENDER_PUBLIC_KEY, newKey);
+            request.addOption(GeneralConstants.SENDER_PUBLIC_KEYS, Arrays.asList(newKey, keypair.getPublic()));
+        } else {
+            request.addOption(GeneralConstants.SENDER_PUBLIC_KEY, keypair.getPublic());
+        }
 
         if (!isPostBinding) {
             servletRequest.setQueryString(response.getDestinationQueryStringWithSignature());
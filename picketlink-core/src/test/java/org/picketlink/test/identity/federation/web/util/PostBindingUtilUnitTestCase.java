@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.web.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.junit.Test;
+import org.picketlink.identity.federation.core.saml.v2.holders.DestinationInfoHolder;
+import org.picketlink.identity.federation.core.saml.v2.util.DocumentUtil;
+import org.picketlink.identity.federation.web.util.PostBindingUtil;
+import org.picketlink.test.identity.federation.web.mock.MockHttpServletResponse;
+import org.w3c.dom.Document;
+
+/**
+ * Unit test the {@link PostBindingUtil}
+ */
+public class PostBindingUtilUnitTestCase {
+
+    private static final String DESTINATION = "http://localhost:8080/sales/";
+
+    @Test
+    public void testStreamingPostMatchesBufferedPost() throws Exception {
+        StringBuilder attributes = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            attributes.append("<saml:Attribute Name=\"role").append(i).append("\"><saml:AttributeValue>rôle-")
+                    .append(i).append("</saml:AttributeValue></saml:Attribute>");
+        }
+        Document document = DocumentUtil.getDocument("<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" "
+                + "xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"ID_1\" Version=\"2.0\">"
+                + "<saml:AttributeStatement>" + attributes + "</saml:AttributeStatement></samlp:Response>");
+
+        for (String relayState : new String[] { null, "relay" }) {
+            for (boolean request : new boolean[] { true, false }) {
+                String samlMessage = PostBindingUtil.base64Encode(DocumentUtil.getDocumentAsString(document));
+                String expected = post(null, new DestinationInfoHolder(DESTINATION, samlMessage, relayState), request);
+                assertEquals(expected, post(document, new DestinationInfoHolder(DESTINATION, null, relayState), request));
+            }
+        }
+    }
+
+    private String post(Document document, DestinationInfoHolder holder, boolean request) throws Exception {
+        StringWriter writer = new StringWriter();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setWriter(new PrintWriter(writer));
+        if (document == null)
+            PostBindingUtil.sendPost(holder, response, request);
+        else
+            PostBindingUtil.sendPost(document, holder.getDestination(), holder.getRelayState(), response, request);
+        return writer.toString().trim();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2008, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.picketlink.test.identity.federation.web.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URLEncoder;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+
+import org.junit.Test;
+import org.picketlink.identity.federation.core.saml.v2.constants.JBossSAMLConstants;
+import org.picketlink.identity.federation.web.util.RedirectBindingSignatureUtil;
+import org.picketlink.identity.federation.web.util.RedirectBindingUtil;
+
+/**
+ * Unit test the {@link RedirectBindingSignatureUtil}
+ */
+public class RedirectBindingSignatureUtilUnitTestCase {
+
+    private static final String REQUEST = "<samlp:AuthnRequest xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"ID_1\"/>";
+
+    @Test
+    public void testSignAndValidate() throws Exception {
+        KeyPair keyPair = keyPair();
+        String urlEncodedRequest = RedirectBindingUtil.deflateBase64URLEncode(REQUEST);
+
+        // the pooled engines give the same results as new ones
+        for (int i = 0; i < 3; i++) {
+            String url = RedirectBindingSignatureUtil.getSAMLRequestURLWithSignature(urlEncodedRequest, "state" + i,
+                    keyPair.getPrivate());
+            byte[] sigValue = RedirectBindingSignatureUtil.getSignatureValueFromSignedURL(url);
+            assertTrue(RedirectBindingSignatureUtil.validateSignature(url, keyPair.getPublic(), sigValue));
+
+            String tampered = url.replace("RelayState=state" + i, "RelayState=other");
+            assertFalse(RedirectBindingSignatureUtil.validateSignature(tampered, keyPair.getPublic(), sigValue));
+        }
+    }
+
+    @Test
+    public void testValidateRSASHA256() throws Exception {
+        KeyPair keyPair = keyPair();
+        String signedContent = "SAMLRequest=" + RedirectBindingUtil.deflateBase64URLEncode(REQUEST) + "&RelayState=state"
+                + "&SigAlg=" + URLEncoder.encode(JBossSAMLConstants.SIGNATURE_SHA256_WITH_RSA.get(), "UTF-8");
+
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(signedContent.getBytes("UTF-8"));
+        byte[] sigValue = signature.sign();
+
+        String url = signedContent + "&Signature=" + RedirectBindingUtil.base64URLEncode(sigValue);
+        assertTrue(RedirectBindingSignatureUtil.validateSignature(url, keyPair.getPublic(),
+                RedirectBindingSignatureUtil.getSignatureValueFromSignedURL(url)));
+
+        // the SigAlg is part of the signed content
+        String downgraded = url.replace(URLEncoder.encode(JBossSAMLConstants.SIGNATURE_SHA256_WITH_RSA.get(), "UTF-8"),
+                URLEncoder.encode(JBossSAMLConstants.SIGNATURE_SHA1_WITH_RSA.get(), "UTF-8"));
+        assertFalse(RedirectBindingSignatureUtil.validateSignature(downgraded, keyPair.getPublic(), sigValue));
+    }
+
+    private KeyPair keyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        return generator.generateKeyPair();
+    }
+}